@@ -0,0 +1,148 @@
+package org.hotswap.agent.benchmark;
+
+import org.hotswap.agent.javassist.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Generate synthetic application classes for benchmarks.
+ * <p/>
+ * Each class implements {@link Callable} and call() returns the value the class was generated with. Changing
+ * the value produces a hotswap compatible (method body only) change of the class.
+ */
+public class SyntheticClasses {
+
+    // number of filler methods to get a class file of a realistic size
+    private static final int METHOD_COUNT = 10;
+
+    /**
+     * Class name of the index-th synthetic class. Classes are spread into packages of 100 classes.
+     *
+     * @param packageName root package
+     * @param index       class index
+     * @return fully qualified class name
+     */
+    public static String className(String packageName, int index) {
+        return packageName + ".p" + (index / 100) + ".Synthetic" + index;
+    }
+
+    /**
+     * Generate bytecode of a synthetic class.
+     *
+     * @param className fully qualified class name
+     * @param value     value returned by call()
+     * @return class file bytes
+     */
+    public static byte[] generate(String className, int value) {
+        ClassPool classPool = new ClassPool();
+        classPool.appendSystemPath();
+        try {
+            CtClass ctClass = classPool.makeClass(className);
+            ctClass.addInterface(classPool.get(Callable.class.getName()));
+            ctClass.addField(CtField.make("private int counter;", ctClass));
+            ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+            ctClass.addMethod(CtNewMethod.make("public Object call() { return Integer.valueOf(" + value + "); }", ctClass));
+            for (int i = 0; i < METHOD_COUNT; i++) {
+                ctClass.addMethod(CtNewMethod.make("public int method" + i + "(int a) { counter += a * " + i + "; return counter; }", ctClass));
+            }
+            byte[] bytes = ctClass.toBytecode();
+            ctClass.detach();
+            return bytes;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to generate class " + className, e);
+        }
+    }
+
+    /**
+     * Write synthetic classes to a classes directory.
+     *
+     * @param directory   classpath root directory
+     * @param packageName root package
+     * @param classCount  number of classes
+     */
+    public static void writeDirectory(File directory, String packageName, int classCount) throws IOException {
+        for (int i = 0; i < classCount; i++) {
+            writeClass(directory, className(packageName, i), i);
+        }
+    }
+
+    /**
+     * Write (or overwrite) single class file to a classes directory.
+     *
+     * @param directory classpath root directory
+     * @param className fully qualified class name
+     * @param value     value returned by call()
+     * @return the class file
+     */
+    public static File writeClass(File directory, String className, int value) throws IOException {
+        File file = new File(directory, className.replace('.', '/') + ".class");
+        file.getParentFile().mkdirs();
+        write(new FileOutputStream(file), generate(className, value));
+        return file;
+    }
+
+    /**
+     * Write synthetic classes to a JAR file.
+     *
+     * @param jarFile     the JAR file
+     * @param packageName root package
+     * @param classCount  number of classes
+     */
+    public static void writeJar(File jarFile, String packageName, int classCount) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+            String lastDirectory = null;
+            for (int i = 0; i < classCount; i++) {
+                String path = className(packageName, i).replace('.', '/') + ".class";
+                String directory = path.substring(0, path.lastIndexOf('/') + 1);
+                if (!directory.equals(lastDirectory)) {
+                    putDirectories(out, directory, lastDirectory);
+                    lastDirectory = directory;
+                }
+                out.putNextEntry(new ZipEntry(path));
+                out.write(generate(className(packageName, i), i));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // directory entries are required by ClassLoader.getResources() for a package in a JAR file
+    private static void putDirectories(JarOutputStream out, String directory, String previousDirectory) throws IOException {
+        int index = 0;
+        while ((index = directory.indexOf('/', index) + 1) > 0) {
+            String parent = directory.substring(0, index);
+            if (previousDirectory == null || !previousDirectory.startsWith(parent)) {
+                out.putNextEntry(new ZipEntry(parent));
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Recursively delete a file or directory.
+     */
+    public static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files)
+                delete(child);
+        }
+        file.delete();
+    }
+
+    private static void write(OutputStream out, byte[] bytes) throws IOException {
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
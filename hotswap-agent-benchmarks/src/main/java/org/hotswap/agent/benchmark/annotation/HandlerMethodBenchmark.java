@@ -0,0 +1,109 @@
+package org.hotswap.agent.benchmark.annotation;
+
+import org.hotswap.agent.annotation.LoadEvent;
+import org.hotswap.agent.annotation.handler.HandlerMethod;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parameter resolution and call of a plugin handler method with four parameters.
+ * <p/>
+ * Compares the precompiled argument kinds and MethodHandle of {@link HandlerMethod} to the former resolution
+ * by a chain of isAssignableFrom() checks over getParameterTypes() and Method.invoke() on each event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HandlerMethodBenchmark {
+
+    private static final Class<?>[] PARAMETER_TYPES = {ClassLoader.class, String.class, Class.class,
+            ProtectionDomain.class, byte[].class, LoadEvent.class};
+
+    BenchmarkPlugin plugin = new BenchmarkPlugin();
+
+    Method method;
+
+    HandlerMethod handlerMethod;
+
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    String className = "com/example/app/Service";
+
+    byte[] bytes = new byte[16];
+
+    @Setup
+    public void setup() throws Exception {
+        method = BenchmarkPlugin.class.getMethod("redefined", ClassLoader.class, String.class, byte[].class, LoadEvent.class);
+        handlerMethod = new HandlerMethod(method, plugin, PARAMETER_TYPES);
+    }
+
+    @Benchmark
+    public Object handlerMethod() throws Exception {
+        Object[] args = new Object[handlerMethod.getParameterCount()];
+        for (int i = 0; i < args.length; i++) {
+            switch (handlerMethod.getKind(i)) {
+                case 0:
+                    args[i] = classLoader;
+                    break;
+                case 1:
+                    args[i] = className;
+                    break;
+                case 2:
+                    args[i] = null;
+                    break;
+                case 3:
+                    args[i] = null;
+                    break;
+                case 4:
+                    args[i] = bytes;
+                    break;
+                case 5:
+                    args[i] = LoadEvent.REDEFINE;
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return handlerMethod.invoke(args);
+    }
+
+    // implementation before the precompiled handler method
+    @Benchmark
+    public Object reflection() throws Exception {
+        List<Object> args = new ArrayList<Object>();
+        for (Class<?> type : method.getParameterTypes()) {
+            if (type.isAssignableFrom(ClassLoader.class)) {
+                args.add(classLoader);
+            } else if (type.isAssignableFrom(String.class)) {
+                args.add(className);
+            } else if (type.isAssignableFrom(Class.class)) {
+                args.add(null);
+            } else if (type.isAssignableFrom(ProtectionDomain.class)) {
+                args.add(null);
+            } else if (type.isAssignableFrom(byte[].class)) {
+                args.add(bytes);
+            } else if (type.isAssignableFrom(LoadEvent.class)) {
+                args.add(LoadEvent.REDEFINE);
+            } else {
+                return null;
+            }
+        }
+        return method.invoke(plugin, args.toArray());
+    }
+
+    public static class BenchmarkPlugin {
+        int count;
+
+        public int redefined(ClassLoader classLoader, String className, byte[] bytes, LoadEvent event) {
+            return count += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.hotswap.agent.benchmark.annotation;
+
+import org.hotswap.agent.annotation.OnClassLoadEvent;
+import org.hotswap.agent.annotation.Plugin;
+import org.hotswap.agent.annotation.handler.OnClassLoadedHandler;
+import org.hotswap.agent.annotation.handler.PluginAnnotation;
+import org.hotswap.agent.benchmark.SyntheticClasses;
+import org.hotswap.agent.config.PluginManager;
+import org.hotswap.agent.javassist.CannotCompileException;
+import org.hotswap.agent.javassist.CtClass;
+import org.hotswap.agent.javassist.CtField;
+import org.hotswap.agent.util.ClassMetadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OnClassLoadedHandler.transform() cost of a single @OnClassLoadEvent method.
+ * <p/>
+ * Compares a method with byte[] parameter (no javassist involved) to a method with ClassMetadata parameter
+ * (class file parsed without ClassPool) and to methods with CtClass parameter, where the handler creates a new
+ * ClassPool and CtClass for each class and writes the bytecode back if the class is modified.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OnClassLoadedHandlerBenchmark {
+
+    OnClassLoadedHandler handler;
+
+    PluginAnnotation<OnClassLoadEvent> bytesAnnotation;
+    PluginAnnotation<OnClassLoadEvent> metadataAnnotation;
+    PluginAnnotation<OnClassLoadEvent> ctClassAnnotation;
+    PluginAnnotation<OnClassLoadEvent> modifyAnnotation;
+
+    ClassLoader classLoader;
+
+    String className;
+
+    byte[] bytes;
+
+    @Setup
+    public void setup() throws Exception {
+        handler = new OnClassLoadedHandler(PluginManager.getInstance());
+        // agent classloader - already initialized by the plugin manager
+        classLoader = PluginManager.class.getClassLoader();
+
+        bytesAnnotation = annotation("transformBytes", byte[].class);
+        metadataAnnotation = annotation("transformMetadata", ClassMetadata.class);
+        ctClassAnnotation = annotation("transformCtClass", CtClass.class);
+        modifyAnnotation = annotation("modifyCtClass", CtClass.class);
+
+        className = SyntheticClasses.className("com.example.app", 0);
+        bytes = SyntheticClasses.generate(className, 0);
+        className = className.replace('.', '/');
+    }
+
+    private PluginAnnotation<OnClassLoadEvent> annotation(String methodName, Class<?> parameterType) throws NoSuchMethodException {
+        Method method = BenchmarkPlugin.class.getDeclaredMethod(methodName, parameterType);
+        return new PluginAnnotation<OnClassLoadEvent>(BenchmarkPlugin.class, null,
+                method.getAnnotation(OnClassLoadEvent.class), method);
+    }
+
+    @Benchmark
+    public byte[] transformBytes() {
+        return handler.transform(bytesAnnotation, classLoader, className, null, null, bytes);
+    }
+
+    @Benchmark
+    public byte[] transformMetadata() {
+        return handler.transform(metadataAnnotation, classLoader, className, null, null, bytes);
+    }
+
+    @Benchmark
+    public byte[] transformCtClass() {
+        return handler.transform(ctClassAnnotation, classLoader, className, null, null, bytes);
+    }
+
+    @Benchmark
+    public byte[] modifyCtClass() {
+        return handler.transform(modifyAnnotation, classLoader, className, null, null, bytes);
+    }
+
+    /**
+     * Plugin with static transformation methods (no plugin instance is needed).
+     */
+    @Plugin(name = "OnClassLoadedHandlerBenchmark", testedVersions = {})
+    public static class BenchmarkPlugin {
+        // result of the metadata check
+        static volatile boolean entity;
+
+        @OnClassLoadEvent(classNameRegexp = "com.example.app.*")
+        public static byte[] transformBytes(byte[] bytes) {
+            return bytes;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = "com.example.app.*")
+        public static void transformMetadata(ClassMetadata classMetadata) {
+            entity = classMetadata.hasAnnotation("javax.persistence.Entity");
+        }
+
+        @OnClassLoadEvent(classNameRegexp = "com.example.app.*")
+        public static void transformCtClass(CtClass ctClass) {
+        }
+
+        @OnClassLoadEvent(classNameRegexp = "com.example.app.*")
+        public static void modifyCtClass(CtClass ctClass) throws CannotCompileException {
+            ctClass.addField(CtField.make("public static boolean $$ha$benchmark;", ctClass));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.hotswap.agent.benchmark.annotation;
+
+import org.hotswap.agent.annotation.LoadEvent;
+import org.hotswap.agent.annotation.OnClassLoadEvent;
+import org.hotswap.agent.annotation.Plugin;
+import org.hotswap.agent.annotation.handler.OnClassLoadedHandler;
+import org.hotswap.agent.annotation.handler.PluginAnnotation;
+import org.hotswap.agent.benchmark.SyntheticClasses;
+import org.hotswap.agent.config.PluginManager;
+import org.hotswap.agent.javassist.CtClass;
+import org.hotswap.agent.util.ClassMetadata;
+import org.hotswap.agent.util.HotswapTransformer;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.reflect.Method;
+import java.security.ProtectionDomain;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redefinition of a batch of 500 classes with the catch-all REDEFINE handlers of the agent plugins registered.
+ * <p/>
+ * The plugin mimics the handlers of ELResolver, Jersey2, Seam (2x), Zk and Hibernate (observers), OsgiEquinox
+ * (CtClass parameter) and Proxy and AnonymousClassPatch (transformers). In "chained" mode all handlers are
+ * registered as transformers (implementation before the redefinition bus, Jersey2 with CtClass parameter),
+ * in "bus" mode the observers are notified once per class with a shared ClassMetadata.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RedefinitionBusBenchmark {
+
+    private static final int BATCH = 500;
+
+    @Param({"chained", "bus"})
+    String mode;
+
+    HotswapTransformer hotswapTransformer;
+
+    ClassLoader classLoader;
+
+    String[] classNames = new String[BATCH];
+
+    byte[][] bytes = new byte[BATCH][];
+
+    @Setup
+    public void setup() throws Exception {
+        // do not schedule classloader initialization, the agent is not initialized
+        hotswapTransformer = new HotswapTransformer() {
+            @Override
+            protected void ensureClassLoaderInitialized(ClassLoader classLoader, ProtectionDomain protectionDomain) {
+            }
+        };
+        // agent classloader - already initialized by the plugin manager
+        classLoader = PluginManager.class.getClassLoader();
+
+        final boolean chained = mode.equals("chained");
+        OnClassLoadedHandler handler = new OnClassLoadedHandler(PluginManager.getInstance()) {
+            {
+                hotswapTransformer = RedefinitionBusBenchmark.this.hotswapTransformer;
+            }
+
+            @Override
+            protected boolean isRedefinitionObserver(PluginAnnotation<OnClassLoadEvent> pluginAnnotation) {
+                return !chained && super.isRedefinitionObserver(pluginAnnotation);
+            }
+        };
+
+        for (Method method : BenchmarkPlugin.class.getDeclaredMethods()) {
+            OnClassLoadEvent annotation = method.getAnnotation(OnClassLoadEvent.class);
+            if (annotation == null || method.getName().equals(chained ? "jerseyMetadata" : "jerseyCtClass"))
+                continue;
+            handler.initMethod(new PluginAnnotation<OnClassLoadEvent>(BenchmarkPlugin.class, null, annotation, method));
+        }
+
+        for (int i = 0; i < BATCH; i++) {
+            String className = SyntheticClasses.className("com.example.app", i);
+            bytes[i] = SyntheticClasses.generate(className, i);
+            classNames[i] = className.replace('.', '/');
+        }
+    }
+
+    @Benchmark
+    public int redefineBatch() throws IllegalClassFormatException {
+        int length = 0;
+        for (int i = 0; i < BATCH; i++)
+            length += hotswapTransformer.transform(classLoader, classNames[i], Object.class, null, bytes[i]).length;
+        return length;
+    }
+
+    /**
+     * Plugin with static handler methods (no plugin instance is needed).
+     */
+    @Plugin(name = "RedefinitionBusBenchmark", testedVersions = {})
+    public static class BenchmarkPlugin {
+        // results of the checks
+        static volatile Object last;
+        static volatile int count;
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void elResolver(ClassLoader appClassLoader) {
+            last = appClassLoader;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void jerseyCtClass(CtClass ctClass, Class original) {
+            last = original;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void jerseyMetadata(ClassMetadata classMetadata, Class original) {
+            last = original;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void seamIntrospectors() {
+            count++;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void seamReferences() {
+            count++;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void zk() {
+            count++;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void hibernate(ClassMetadata classMetadata, Class original) {
+            last = classMetadata.hasAnnotation("javax.persistence.Entity");
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void osgiEquinox(CtClass ctClass, Class original) {
+            last = original;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE, skipSynthetic = false)
+        public static byte[] proxy(Class<?> classBeingRedefined, byte[] classfileBuffer) {
+            return classfileBuffer;
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static byte[] anonymousClassPatch(String className, ClassLoader classLoader) {
+            return null;
+        }
+    }
+}
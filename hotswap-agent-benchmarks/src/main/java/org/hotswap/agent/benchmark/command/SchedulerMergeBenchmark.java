@@ -0,0 +1,57 @@
+package org.hotswap.agent.benchmark.command;
+
+import org.hotswap.agent.command.ReflectionCommand;
+import org.hotswap.agent.command.Scheduler;
+import org.hotswap.agent.command.impl.CommandExecutorPool;
+import org.hotswap.agent.command.impl.SchedulerImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedule mergeable commands with many equal pending commands (mass recompile scenario).
+ * <p/>
+ * Commands are scheduled with a long timeout, only the scheduling (and merging) cost is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SchedulerMergeBenchmark {
+
+    @Param("10000")
+    int commandCount;
+
+    @Param("1000")
+    int keyCount;
+
+    CommandExecutorPool executorPool;
+
+    String[] classNames;
+
+    @Setup
+    public void setup() {
+        executorPool = new CommandExecutorPool();
+        classNames = new String[keyCount];
+        for (int i = 0; i < keyCount; i++)
+            classNames[i] = "com.example.Target" + i;
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorPool.shutdown();
+    }
+
+    @Benchmark
+    public Scheduler scheduleMergeable() {
+        // the scheduler is not started, scheduled commands are never executed
+        // new command instances each time - merged commands are accumulated in the command
+        Scheduler scheduler = new SchedulerImpl(executorPool);
+        ClassLoader classLoader = getClass().getClassLoader();
+        for (int i = 0; i < commandCount; i++)
+            scheduler.scheduleCommand(new ReflectionCommand(null, classNames[i % keyCount], "reload", classLoader), 60000);
+        return scheduler;
+    }
+}
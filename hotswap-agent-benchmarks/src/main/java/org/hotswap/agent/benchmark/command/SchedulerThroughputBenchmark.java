@@ -0,0 +1,54 @@
+package org.hotswap.agent.benchmark.command;
+
+import org.hotswap.agent.command.Command;
+import org.hotswap.agent.command.impl.SchedulerImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SchedulerImpl throughput - schedule distinct commands without timeout and wait until all are executed.
+ * <p/>
+ * Measures the whole path of a command: schedule, delay queue, executor pool and finish callback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@OperationsPerInvocation(SchedulerThroughputBenchmark.COMMAND_COUNT)
+public class SchedulerThroughputBenchmark {
+
+    static final int COMMAND_COUNT = 1000;
+
+    SchedulerImpl scheduler;
+
+    @Setup
+    public void setup() {
+        scheduler = new SchedulerImpl();
+        scheduler.run();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Benchmark
+    public void scheduleAndExecute() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(COMMAND_COUNT);
+        for (int i = 0; i < COMMAND_COUNT; i++) {
+            // distinct instances are never merged
+            scheduler.scheduleCommand(new Command() {
+                @Override
+                public void executeCommand() {
+                    latch.countDown();
+                }
+            }, 0);
+        }
+        if (!latch.await(1, TimeUnit.MINUTES))
+            throw new IllegalStateException("Commands not executed, remaining " + latch.getCount());
+    }
+}
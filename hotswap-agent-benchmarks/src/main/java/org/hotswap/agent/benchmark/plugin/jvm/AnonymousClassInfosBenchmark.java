@@ -0,0 +1,66 @@
+package org.hotswap.agent.benchmark.plugin.jvm;
+
+import org.hotswap.agent.javassist.ClassPool;
+import org.hotswap.agent.javassist.LoaderClassPath;
+import org.hotswap.agent.plugin.jvm.AnonymousClassInfo;
+import org.hotswap.agent.plugin.jvm.AnonymousClassInfos;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AnonymousClassInfos - resolve new state of anonymous classes from class files and map it to
+ * the previous (loaded) state. This is done by AnonymousClassPatchPlugin on each reload of a class with anonymous classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnonymousClassInfosBenchmark {
+
+    ClassLoader classLoader;
+
+    String className;
+
+    AnonymousClassInfos previous;
+
+    AnonymousClassInfos current;
+
+    @Setup
+    public void setup() {
+        classLoader = getClass().getClassLoader();
+        className = AnonymousClassesSample.class.getName();
+
+        // load all anonymous classes
+        new AnonymousClassesSample().create();
+
+        previous = new AnonymousClassInfos(classLoader, className);
+        current = new AnonymousClassInfos(classPool(), className);
+    }
+
+    private ClassPool classPool() {
+        ClassPool classPool = new ClassPool();
+        classPool.appendSystemPath();
+        classPool.appendClassPath(new LoaderClassPath(classLoader));
+        return classPool;
+    }
+
+    @Benchmark
+    public AnonymousClassInfos previousState() {
+        return new AnonymousClassInfos(classLoader, className);
+    }
+
+    @Benchmark
+    public AnonymousClassInfos currentState() {
+        return new AnonymousClassInfos(classPool(), className);
+    }
+
+    @Benchmark
+    public Map<AnonymousClassInfo, AnonymousClassInfo> mapPreviousState() {
+        current.mapPreviousState(previous);
+        return current.getCompatibleTransitions();
+    }
+}
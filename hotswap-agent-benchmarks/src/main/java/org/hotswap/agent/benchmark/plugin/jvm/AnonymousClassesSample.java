@@ -0,0 +1,73 @@
+package org.hotswap.agent.benchmark.plugin.jvm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Class with many anonymous classes of different signatures for AnonymousClassInfosBenchmark.
+ */
+public class AnonymousClassesSample {
+
+    /**
+     * Instantiate all anonymous classes (and load them to the classloader).
+     */
+    public List<Object> create() {
+        List<Object> result = new ArrayList<Object>();
+        for (int i = 0; i < 2; i++) {
+            result.add(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            result.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return "call";
+                }
+            });
+            result.add(new Comparable<String>() {
+                @Override
+                public int compareTo(String o) {
+                    return 0;
+                }
+            });
+            result.add(new Object() {
+                int field;
+
+                @Override
+                public String toString() {
+                    return String.valueOf(field);
+                }
+            });
+            result.add(new Thread() {
+                @Override
+                public void run() {
+                }
+            });
+        }
+        result.add(runnable());
+        result.add(callable());
+        return result;
+    }
+
+    private Runnable runnable() {
+        return new Runnable() {
+            String state = "runnable";
+
+            @Override
+            public void run() {
+                state = state + state;
+            }
+        };
+    }
+
+    private Callable<Integer> callable() {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,218 @@
+package org.hotswap.agent.benchmark.scenario;
+
+import org.hotswap.agent.benchmark.SyntheticClasses;
+import org.hotswap.agent.util.IOUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * End to end scenario - boot a synthetic application with thousands of classes under the agent, then edit
+ * a class file and measure how long it takes until the application runs the new code.
+ * <p/>
+ * Startup is measured from JVM start to the moment when all application classes are loaded, once with
+ * the agent and once without it (baseline). Agent overhead is the difference. Edit-to-reload latency
+ * is measured from the class file write to the first call of the reloaded method, the first edit is a warmup
+ * (the agent initializes the application classloader asynchronously).
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar org.hotswap.agent.benchmark.scenario.ScenarioHarness \
+ *     path/to/hotswap-agent.jar [classCount=5000] [edits=10] [output=scenario.json]
+ * </pre>
+ * The result is written as JSON to the output file.
+ */
+public class ScenarioHarness {
+
+    private static final String PACKAGE = "com.example.app";
+
+    final File agentJar;
+    final int classCount;
+    final int edits;
+
+    File classesDirectory;
+
+    public ScenarioHarness(File agentJar, int classCount, int edits) {
+        this.agentJar = agentJar;
+        this.classCount = classCount;
+        this.edits = edits;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ScenarioHarness agentJar [classCount] [edits] [output]");
+            System.exit(1);
+        }
+        File agentJar = new File(args[0]);
+        int classCount = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int edits = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        File output = new File(args.length > 3 ? args[3] : "scenario.json");
+
+        String json = new ScenarioHarness(agentJar, classCount, edits).run();
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+        System.out.println(json);
+    }
+
+    /**
+     * Run the scenario.
+     *
+     * @return result as JSON
+     */
+    public String run() throws Exception {
+        classesDirectory = Files.createTempDirectory("hotswap-agent-scenario").toFile();
+        try {
+            SyntheticClasses.writeDirectory(classesDirectory, PACKAGE, classCount);
+            copyApplicationClass();
+
+            long baselineStartup = startup(false);
+            AppProcess app = new AppProcess(true);
+            try {
+                long agentStartup = app.ready;
+                List<Long> reloads = new ArrayList<Long>();
+                for (int i = 0; i <= edits; i++) {
+                    long latency = app.editAndWait(i);
+                    // the first edit is a warmup
+                    if (i > 0)
+                        reloads.add(latency);
+                }
+                return toJson(baselineStartup, agentStartup, reloads);
+            } finally {
+                app.exit();
+            }
+        } finally {
+            SyntheticClasses.delete(classesDirectory);
+        }
+    }
+
+    // SyntheticApp is copied to the application classpath (the benchmark JAR contains agent classes)
+    private void copyApplicationClass() throws IOException {
+        String path = SyntheticApp.class.getName().replace('.', '/') + ".class";
+        File file = new File(classesDirectory, path);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(IOUtils.toByteArray(SyntheticApp.class.getClassLoader().getResourceAsStream(path)));
+        } finally {
+            out.close();
+        }
+    }
+
+    private long startup(boolean withAgent) throws Exception {
+        AppProcess app = new AppProcess(withAgent);
+        app.exit();
+        return app.ready;
+    }
+
+    private String toJson(long baselineStartup, long agentStartup, List<Long> reloads) {
+        List<Long> sorted = new ArrayList<Long>(reloads);
+        Collections.sort(sorted);
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"classCount\": ").append(classCount).append(",\n");
+        json.append("  \"startup\": {\n");
+        json.append("    \"baselineMillis\": ").append(baselineStartup).append(",\n");
+        json.append("    \"agentMillis\": ").append(agentStartup).append(",\n");
+        json.append("    \"agentOverheadMillis\": ").append(agentStartup - baselineStartup).append("\n");
+        json.append("  },\n");
+        json.append("  \"reload\": {\n");
+        json.append("    \"edits\": ").append(reloads.size()).append(",\n");
+        if (!sorted.isEmpty()) {
+            json.append("    \"minMillis\": ").append(sorted.get(0)).append(",\n");
+            json.append("    \"medianMillis\": ").append(sorted.get(sorted.size() / 2)).append(",\n");
+            json.append("    \"maxMillis\": ").append(sorted.get(sorted.size() - 1)).append(",\n");
+        }
+        json.append("    \"samplesMillis\": ").append(reloads).append("\n");
+        json.append("  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * Running synthetic application.
+     */
+    class AppProcess {
+        final Process process;
+        final BufferedReader in;
+        final Writer out;
+
+        // startup time reported by the application
+        final long ready;
+
+        AppProcess(boolean withAgent) throws IOException {
+            List<String> command = new ArrayList<String>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            if (withAgent)
+                command.add("-javaagent:" + agentJar.getAbsolutePath() + "=autoHotswap=true");
+            command.add("-cp");
+            command.add(classesDirectory.getAbsolutePath());
+            command.add(SyntheticApp.class.getName());
+            command.add(PACKAGE);
+            command.add(String.valueOf(classCount));
+
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+            out = new OutputStreamWriter(process.getOutputStream(), "UTF-8");
+
+            ready = Long.parseLong(expect("READY"));
+        }
+
+        /**
+         * Change return value of the first class and wait for the application to reload it.
+         *
+         * @return latency in milliseconds
+         */
+        long editAndWait(int edit) throws IOException {
+            String className = SyntheticClasses.className(PACKAGE, 0);
+            int value = classCount + edit;
+
+            send("WAIT " + className + " " + value);
+            expect("WAITING");
+
+            long start = System.currentTimeMillis();
+            SyntheticClasses.writeClass(classesDirectory, className, value);
+            String reloaded = expect("RELOADED");
+            return Long.parseLong(reloaded) - start;
+        }
+
+        void exit() throws InterruptedException {
+            try {
+                send("EXIT");
+            } catch (IOException e) {
+                // already finished
+            }
+            process.waitFor();
+        }
+
+        private void send(String line) throws IOException {
+            out.write(line + "\n");
+            out.flush();
+        }
+
+        // read application output up to the expected line and return its argument, agent log is skipped
+        private String expect(String message) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.startsWith(SyntheticApp.PREFIX))
+                    continue;
+
+                String reported = line.substring(SyntheticApp.PREFIX.length());
+                if (reported.startsWith(message))
+                    return reported.substring(message.length()).trim();
+
+                process.destroy();
+                throw new IllegalStateException("Expected " + message + ", application reported " + reported);
+            }
+            throw new IllegalStateException("Application finished, expected " + message);
+        }
+    }
+}
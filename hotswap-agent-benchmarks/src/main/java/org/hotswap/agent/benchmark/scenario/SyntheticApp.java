@@ -0,0 +1,74 @@
+package org.hotswap.agent.benchmark.scenario;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+
+/**
+ * Synthetic application started by ScenarioHarness in a separate JVM.
+ * <p/>
+ * The class file is copied to the application classes directory, hence it must depend on JDK classes only
+ * (no inner classes and no benchmark or agent classes).
+ * <p/>
+ * Protocol (all reported lines start with {@link #PREFIX}):
+ * <ul>
+ * <li>on start load and call all synthetic classes and report "READY startupMillis" (since JVM start)</li>
+ * <li>"WAIT className value" on stdin - report "WAITING", poll call() of the class until it returns value
+ * and report "RELOADED currentTimeMillis" or "TIMEOUT"</li>
+ * <li>"EXIT" on stdin - exit the application</li>
+ * </ul>
+ */
+public class SyntheticApp {
+
+    public static final String PREFIX = "SCENARIO ";
+
+    // how long to wait for a reload
+    private static final long RELOAD_TIMEOUT = 30000;
+
+    /**
+     * @param args root package, number of classes
+     */
+    public static void main(String[] args) throws Exception {
+        String packageName = args[0];
+        int classCount = Integer.parseInt(args[1]);
+
+        // same naming as SyntheticClasses.className()
+        for (int i = 0; i < classCount; i++) {
+            Callable<?> instance = (Callable<?>) Class.forName(packageName + ".p" + (i / 100) + ".Synthetic" + i).newInstance();
+            instance.call();
+        }
+
+        long startup = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        report("READY " + startup);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] command = line.split(" ");
+            if ("WAIT".equals(command[0])) {
+                Callable<?> instance = (Callable<?>) Class.forName(command[1]).newInstance();
+                Integer expected = Integer.valueOf(command[2]);
+                report("WAITING");
+                report(waitForValue(instance, expected) ? "RELOADED " + System.currentTimeMillis() : "TIMEOUT");
+            } else if ("EXIT".equals(command[0])) {
+                break;
+            }
+        }
+    }
+
+    private static boolean waitForValue(Callable<?> instance, Integer expected) throws Exception {
+        long end = System.currentTimeMillis() + RELOAD_TIMEOUT;
+        while (System.currentTimeMillis() < end) {
+            if (expected.equals(instance.call()))
+                return true;
+            Thread.sleep(1);
+        }
+        return false;
+    }
+
+    private static void report(String message) {
+        System.out.println(PREFIX + message);
+        System.out.flush();
+    }
+}
@@ -0,0 +1,82 @@
+package org.hotswap.agent.benchmark.util;
+
+import org.hotswap.agent.util.HotswapTransformer;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HotswapTransformer.transform() dispatch cost with many registered class name regexps.
+ * <p/>
+ * Registrations are a mix of plain class names, package prefixes and true regexps (as used by plugins).
+ * Transform is called for a class without any matching transformer (the common case while the application
+ * is loading) and for a class with a matching plain name registration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HotswapTransformerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int patternCount;
+
+    HotswapTransformer hotswapTransformer;
+
+    ClassLoader classLoader;
+
+    byte[] bytes = new byte[0];
+
+    String matchingClassName;
+
+    @Setup
+    public void setup() {
+        // do not schedule classloader initialization, the agent is not initialized
+        hotswapTransformer = new HotswapTransformer() {
+            @Override
+            protected void ensureClassLoaderInitialized(ClassLoader classLoader, ProtectionDomain protectionDomain) {
+            }
+        };
+        classLoader = getClass().getClassLoader();
+
+        ClassFileTransformer transformer = new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                    ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+                return classfileBuffer;
+            }
+        };
+
+        for (int i = 0; i < patternCount; i++) {
+            String regexp;
+            switch (i % 3) {
+                case 0:
+                    regexp = "com.example.framework" + i + ".Configuration";
+                    break;
+                case 1:
+                    regexp = "com.example.framework" + i + ".*";
+                    break;
+                default:
+                    regexp = "com.example.framework" + i + ".(Service|Repository)[0-9]*";
+            }
+            hotswapTransformer.registerTransformer(null, regexp, transformer);
+        }
+
+        matchingClassName = "com/example/framework0/Configuration";
+    }
+
+    @Benchmark
+    public byte[] transformNotMatching() throws IllegalClassFormatException {
+        return hotswapTransformer.transform(classLoader, "org/example/app/service/CustomerService", null, null, bytes);
+    }
+
+    @Benchmark
+    public byte[] transformMatching() throws IllegalClassFormatException {
+        return hotswapTransformer.transform(classLoader, matchingClassName, null, null, bytes);
+    }
+}
@@ -0,0 +1,102 @@
+package org.hotswap.agent.benchmark.util;
+
+import org.hotswap.agent.benchmark.SyntheticClasses;
+import org.hotswap.agent.javassist.ClassPool;
+import org.hotswap.agent.javassist.CtClass;
+import org.hotswap.agent.javassist.CtNewMethod;
+import org.hotswap.agent.util.IOUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IOUtils.toByteArray(URI) read of a class file compared to the former URL stream copy and a memory-mapped read.
+ * <p/>
+ * Small is a typical class file (a few KB), large is a generated class with thousands of methods (hundreds of KB).
+ * The file is in the page cache, the benchmark measures the read overhead, not the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IOUtilsBenchmark {
+
+    @Param({"small", "large"})
+    String classFile;
+
+    Path file;
+
+    URI uri;
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] bytes;
+        if (classFile.equals("small")) {
+            bytes = SyntheticClasses.generate("org.hotswap.agent.benchmark.io.Small", 1);
+        } else {
+            ClassPool classPool = new ClassPool();
+            classPool.appendSystemPath();
+            CtClass ctClass = classPool.makeClass("org.hotswap.agent.benchmark.io.Large");
+            for (int i = 0; i < 3000; i++)
+                ctClass.addMethod(CtNewMethod.make("public String method" + i + "(int a) { return \"value" + i + "\" + a; }", ctClass));
+            bytes = ctClass.toBytecode();
+        }
+
+        file = Files.createTempFile("ioUtilsBenchmark", ".class");
+        Files.write(file, bytes);
+        uri = file.toUri();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] toByteArray() {
+        return IOUtils.toByteArray(uri);
+    }
+
+    // implementation before the file channel fast path
+    @Benchmark
+    public byte[] urlStream() throws IOException {
+        InputStream inputStream = uri.toURL().openStream();
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(chunk)) > 0) {
+                outputStream.write(chunk, 0, bytesRead);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Benchmark
+    public byte[] mapped() throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(uri), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        } finally {
+            channel.close();
+        }
+    }
+}
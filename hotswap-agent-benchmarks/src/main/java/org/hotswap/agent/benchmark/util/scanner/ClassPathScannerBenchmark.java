@@ -0,0 +1,74 @@
+package org.hotswap.agent.benchmark.util.scanner;
+
+import org.hotswap.agent.benchmark.SyntheticClasses;
+import org.hotswap.agent.util.IOUtils;
+import org.hotswap.agent.util.scanner.ClassPathAnnotationScanner;
+import org.hotswap.agent.util.scanner.ClassPathScanner;
+import org.hotswap.agent.util.scanner.ScannerVisitor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassPathScanner on a large JAR file - visit all class files of a package and scan them for an annotation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassPathScannerBenchmark {
+
+    private static final String PACKAGE = "com.example.app";
+
+    @Param({"1000", "10000"})
+    int classCount;
+
+    File jarFile;
+
+    ClassLoader classLoader;
+
+    ClassPathScanner scanner;
+
+    ClassPathAnnotationScanner annotationScanner;
+
+    @Setup
+    public void setup() throws IOException {
+        jarFile = File.createTempFile("hotswap-agent-scanner", ".jar");
+        SyntheticClasses.writeJar(jarFile, PACKAGE, classCount);
+        classLoader = new URLClassLoader(new URL[]{jarFile.toURI().toURL()}, null);
+
+        scanner = new ClassPathScanner();
+        // not a plugin annotation - the plugin index is not used, all classes are parsed
+        annotationScanner = new ClassPathAnnotationScanner(Deprecated.class.getName(), scanner);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jarFile.delete();
+    }
+
+    @Benchmark
+    public int scan() throws IOException {
+        final int[] count = new int[1];
+        scanner.scan(classLoader, PACKAGE.replace('.', '/'), new ScannerVisitor() {
+            @Override
+            public void visit(InputStream file) throws IOException {
+                count[0] += IOUtils.toByteArray(file).length;
+            }
+        });
+        return count[0];
+    }
+
+    @Benchmark
+    public List<String> scanAnnotation() throws IOException {
+        return annotationScanner.scanPlugins(classLoader, PACKAGE.replace('.', '/'));
+    }
+}
@@ -0,0 +1,89 @@
+package org.hotswap.agent.benchmark.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.benchmark.SyntheticClasses;
+import org.hotswap.agent.watch.WatchEventListener;
+import org.hotswap.agent.watch.WatchFileEvent;
+import org.hotswap.agent.watch.nio.WatcherNIO2;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WatcherNIO2 event fan-out - dispatch of a single filesystem event to listeners registered on many paths.
+ * <p/>
+ * Each listener watches its own directory (e.g. a classpath directory of a module), the event path
+ * matches exactly one of them. The dispatch is called directly by a watcher subclass,
+ * without the WatchService latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WatcherNIO2Benchmark {
+
+    @Param({"10", "100", "1000"})
+    int listenerCount;
+
+    File rootDirectory;
+
+    DispatchWatcher watcher;
+
+    Path[] eventPaths;
+
+    // number of listener calls, to check that the event is really dispatched
+    int notified;
+
+    int next;
+
+    @Setup
+    public void setup() throws IOException {
+        rootDirectory = Files.createTempDirectory("hotswap-agent-watcher").toFile();
+        watcher = new DispatchWatcher();
+
+        WatchEventListener listener = new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                notified++;
+            }
+        };
+
+        eventPaths = new Path[listenerCount];
+        for (int i = 0; i < listenerCount; i++) {
+            File directory = new File(rootDirectory, "module" + i + "/classes");
+            directory.mkdirs();
+            watcher.addEventListener(null, directory.toURI(), listener);
+            eventPaths[i] = new File(directory, "com/example/Service.class").toPath();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (notified == 0)
+            throw new IllegalStateException("No listener notified.");
+        watcher.stop();
+        SyntheticClasses.delete(rootDirectory);
+    }
+
+    @Benchmark
+    public void dispatch() {
+        next = (next + 1) % listenerCount;
+        watcher.dispatch(FileEvent.MODIFY, eventPaths[next]);
+    }
+
+    // expose listener dispatch
+    static class DispatchWatcher extends WatcherNIO2 {
+        DispatchWatcher() throws IOException {
+        }
+
+        void dispatch(FileEvent eventType, Path path) {
+            callListeners(eventType, path);
+        }
+    }
+}
@@ -16,6 +16,8 @@ import java.lang.annotation.*;
  * <li>Watcher - watcher service to register resource change listeners</li>
  * <li>Scheduler - schedule a command to run</li>
  * <li>HotswapTransformer - register class transformation</li>
+ * <li>ChangeSetCollector - register a listener notified once per batch of filesystem changes</li>
+ * <li>ClassPoolRegistry - shared javassist ClassPool of a classloader</li>
  * <li>PluginConfiguration - access plugin configuration properties</li>
  * <li>ClassLoader - current application classloader (for static method on a field, this is the plugin classloader) </li>
  * </ul>
@@ -19,11 +19,18 @@ import static org.hotswap.agent.annotation.LoadEvent.REDEFINE;
  * <li>ProtectionDomain - the protection domain of the class being defined or redefined</li>
  * <li>ClassPool - javassist default ClassPool</li>
  * <li>CtClass - javassist class created from byte[] source. If the method returns null/void,
- * this class is used as transformation result. You can modify this class directly.</li>
+ * this class is used as transformation result. You can modify this class directly. The class is parsed lazily
+ * and the bytecode is regenerated only if the class is actually modified.</li>
+ * <li>ClassMetadata - read only view of the class (name, superclass, interfaces, annotations). Prefer it to CtClass
+ * if the method only checks the class.</li>
  * <li>AppClassLoaderExecutor - executor to run code in app classloader</li>
  * <li>LoadEvent - originating load event. If classBeingRedefined is null, this is DEFINE, otherwise REDEFINE.</li>
  * </ul>
  * <p/>
+ * A method registered only for REDEFINE event which returns void and has no ClassPool or CtClass attribute
+ * cannot change the class. It is not chained with transformers, but notified after the transformation with
+ * a ClassMetadata instance shared by all such methods (see {@link org.hotswap.agent.util.RedefinitionBus}).
+ * <p/>
  * If registered on static method, transformation is invoked even before the plugin is initialized.
  * You need at least one static transformation method for a plugin to trigger plugin initialization.
  * <p/>
@@ -29,7 +29,10 @@ public @interface OnResourceFileEvent {
     String path();
 
     /**
-     * Regexp expression to filter resources.
+     * Regexp expression to filter resources (matched against the resource URI).
+     * <p/>
+     * A filter starting with '*' is a glob pattern - e.g. "*.properties" - where '*' matches any characters
+     * and '?' a single character.
      */
     String filter() default "";
 
@@ -0,0 +1,155 @@
+package org.hotswap.agent.annotation.handler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Precompiled invocation of an annotated plugin method.
+ * <p/>
+ * Handlers resolve method parameters from a fixed list of supported types. The parameter types are resolved
+ * to argument kinds once - the kind is index of the first supported type assignable to the parameter type (the same
+ * result as the chain of <code>type.isAssignableFrom(supportedType)</code> checks). On each event the handler only
+ * fills an argument array by kind and the method is called through a MethodHandle bound to the plugin instance.
+ */
+public class HandlerMethod {
+
+    /**
+     * Kind of a parameter type not assignable from any supported type.
+     */
+    public static final int UNKNOWN = -1;
+
+    private final Method method;
+
+    // target of an instance method, null for static method
+    private final Object plugin;
+
+    private final Class<?>[] parameterTypes;
+
+    // parameter types with primitives boxed, checked before the handle is invoked
+    private final Class<?>[] argumentTypes;
+
+    // index into supported types for each parameter
+    private final int[] kinds;
+
+    // (Object[])Object, receiver bound and arguments spread. Null if the method is not accessible.
+    private final MethodHandle handle;
+
+    /**
+     * @param method         the plugin method
+     * @param plugin         plugin instance (ignored for a static method)
+     * @param supportedTypes types the handler can provide in the order of resolution
+     */
+    public HandlerMethod(Method method, Object plugin, Class<?>... supportedTypes) {
+        this.method = method;
+        this.plugin = Modifier.isStatic(method.getModifiers()) ? null : plugin;
+        this.parameterTypes = method.getParameterTypes();
+
+        argumentTypes = new Class<?>[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++)
+            argumentTypes[i] = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+
+        kinds = new int[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            kinds[i] = UNKNOWN;
+            for (int kind = 0; kind < supportedTypes.length; kind++) {
+                if (parameterTypes[i].isAssignableFrom(supportedTypes[kind])) {
+                    kinds[i] = kind;
+                    break;
+                }
+            }
+        }
+
+        handle = createHandle();
+    }
+
+    private MethodHandle createHandle() {
+        // instance method without instance, Method.invoke() reports the error
+        if (plugin == null && !Modifier.isStatic(method.getModifiers()))
+            return null;
+
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException e) {
+            // try public access
+        }
+
+        try {
+            MethodHandle result = MethodHandles.lookup().unreflect(method);
+            if (plugin != null)
+                result = result.bindTo(plugin);
+            return result.asSpreader(Object[].class, parameterTypes.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            // Method.invoke() reports the error on each call
+            return null;
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getParameterCount() {
+        return parameterTypes.length;
+    }
+
+    public Class<?> getParameterType(int index) {
+        return parameterTypes[index];
+    }
+
+    /**
+     * @param index parameter index
+     * @return index of the supported type or {@link #UNKNOWN}
+     */
+    public int getKind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * @param kind index of a supported type
+     * @return true if any parameter is resolved to the kind
+     */
+    public boolean hasKind(int kind) {
+        for (int k : kinds) {
+            if (k == kind)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Invoke the method with the same contract as {@link Method#invoke(Object, Object...)} - exception thrown
+     * by the method is wrapped in InvocationTargetException, wrong arguments cause IllegalArgumentException.
+     *
+     * @param args arguments, length must be equal to parameter count
+     * @return method result, null for void method
+     */
+    public Object invoke(Object[] args) throws IllegalAccessException, InvocationTargetException {
+        // Method.invoke() reports wrong arguments (or converts primitive arguments by widening)
+        if (handle == null || !isExactArguments(args))
+            return method.invoke(plugin, args);
+
+        try {
+            return (Object) handle.invokeExact(args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    // arguments the handle accepts without any conversion, i.e. any exception is thrown by the method
+    private boolean isExactArguments(Object[] args) {
+        if ((args == null ? 0 : args.length) != argumentTypes.length)
+            return false;
+
+        for (int i = 0; i < argumentTypes.length; i++) {
+            Object arg = args[i];
+            if (arg == null ? parameterTypes[i].isPrimitive() : !argumentTypes[i].isInstance(arg))
+                return false;
+        }
+        return true;
+    }
+}
@@ -7,14 +7,14 @@ import org.hotswap.agent.command.Scheduler;
 import org.hotswap.agent.config.PluginConfiguration;
 import org.hotswap.agent.logging.AgentLogger;
 import org.hotswap.agent.util.HotswapTransformer;
+import org.hotswap.agent.util.classloader.ClassPoolRegistry;
+import org.hotswap.agent.watch.ChangeSetCollector;
 import org.hotswap.agent.watch.Watcher;
 
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Annotation handler - handle @Init annotation on fields/methods.
@@ -78,12 +78,14 @@ public class InitHandler implements PluginHandler<Init> {
 
     // resolve all method parameter types to actual values and invoke the plugin method (both static and non static)
     private boolean invokeInitMethod(PluginAnnotation pluginAnnotation, Object plugin, ClassLoader classLoader) {
-        List<Object> args = new ArrayList<Object>();
-        for (Class type : pluginAnnotation.getMethod().getParameterTypes()) {
-            args.add(resolveType(classLoader, pluginAnnotation.getPluginClass(), type));
+        // services are resolved by type for each classloader, only the invocation is precompiled
+        HandlerMethod handlerMethod = pluginAnnotation.getHandlerMethod();
+        Object[] args = new Object[handlerMethod.getParameterCount()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = resolveType(classLoader, pluginAnnotation.getPluginClass(), handlerMethod.getParameterType(i));
         }
         try {
-            pluginAnnotation.getMethod().invoke(plugin, args.toArray());
+            handlerMethod.invoke(args);
             return true;
         } catch (IllegalAccessException e) {
             LOGGER.error("IllegalAccessException in init method on plugin {}.", e, pluginAnnotation.getPluginClass());
@@ -138,6 +140,10 @@ public class InitHandler implements PluginHandler<Init> {
             return classLoader;
         } else if (type.isAssignableFrom(Instrumentation.class)) {
             return pluginManager.getInstrumentation();
+        } else if (type.isAssignableFrom(ChangeSetCollector.class)) {
+            return pluginManager.getChangeSetCollector();
+        } else if (type.isAssignableFrom(ClassPoolRegistry.class)) {
+            return pluginManager.getClassPoolRegistry();
         } else {
             LOGGER.error("Unable process @Init on plugin '{}'." +
                     " Type '" + type + "' is not recognized for @Init annotation.", pluginClass);
@@ -6,7 +6,10 @@ import org.hotswap.agent.config.PluginManager;
 import org.hotswap.agent.javassist.*;
 import org.hotswap.agent.logging.AgentLogger;
 import org.hotswap.agent.util.AppClassLoaderExecutor;
+import org.hotswap.agent.util.ClassMetadata;
 import org.hotswap.agent.util.HotswapTransformer;
+import org.hotswap.agent.util.RedefinitionEvent;
+import org.hotswap.agent.util.RedefinitionListener;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -14,9 +17,9 @@ import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.lang.reflect.InvocationTargetException;
 import java.security.ProtectionDomain;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Transform method handler - handle @OnClassLoadEvent annotation on a method.
@@ -26,6 +29,24 @@ import java.util.List;
 public class OnClassLoadedHandler implements PluginHandler<OnClassLoadEvent> {
     private static AgentLogger LOGGER = AgentLogger.getLogger(OnClassLoadedHandler.class);
 
+    // types of method parameters in the order of resolution and their kinds, see HandlerMethod
+    private static final Class<?>[] PARAMETER_TYPES = {ClassLoader.class, String.class, Class.class,
+            ProtectionDomain.class, byte[].class, ClassPool.class, CtClass.class, ClassMetadata.class, LoadEvent.class,
+            AppClassLoaderExecutor.class};
+    private static final int CLASS_LOADER = 0;
+    private static final int CLASS_NAME = 1;
+    private static final int REDEFINING_CLASS = 2;
+    private static final int PROTECTION_DOMAIN = 3;
+    private static final int BYTES = 4;
+    private static final int CLASS_POOL = 5;
+    private static final int CT_CLASS = 6;
+    private static final int CLASS_METADATA = 7;
+    private static final int LOAD_EVENT = 8;
+    private static final int APP_CLASS_LOADER_EXECUTOR = 9;
+
+    // anonymous class name suffix, compiled once instead of String.matches() on each call
+    private static final Pattern ANONYMOUS_CLASS = Pattern.compile("\\$\\d+$");
+
     protected PluginManager pluginManager;
 
     protected HotswapTransformer hotswapTransformer;
@@ -60,15 +81,33 @@ public class OnClassLoadedHandler implements PluginHandler<OnClassLoadEvent> {
             return false;
         }
 
+        // compile the invocation at registration time, not on the first class
+        pluginAnnotation.getHandlerMethod(PARAMETER_TYPES);
+
         ClassLoader appClassLoader = null;
         if (pluginAnnotation.getPlugin() != null)
             appClassLoader = pluginManager.getPluginRegistry().getAppClassLoader(pluginAnnotation.getPlugin());
 
+        if (isRedefinitionObserver(pluginAnnotation)) {
+            // cannot change the class, notified once per class by the redefinition bus
+            hotswapTransformer.registerRedefinitionListener(appClassLoader, annot.classNameRegexp(), new RedefinitionListener() {
+                @Override
+                public void onRedefinition(RedefinitionEvent event) {
+                    OnClassLoadedHandler.this.onRedefinition(pluginAnnotation, event);
+                }
+            });
+            return true;
+        }
+
+        // resolved once, not on each class
+        List<LoadEvent> events = Arrays.asList(annot.events());
+        final boolean define = events.contains(LoadEvent.DEFINE);
+        final boolean redefine = events.contains(LoadEvent.REDEFINE);
+
         hotswapTransformer.registerTransformer(appClassLoader, annot.classNameRegexp(), new ClassFileTransformer() {
             @Override
             public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
-                List<LoadEvent> events = Arrays.asList(annot.events());
-                if ((classBeingRedefined == null) ? !events.contains(LoadEvent.DEFINE) : !events.contains(LoadEvent.REDEFINE)) {
+                if ((classBeingRedefined == null) ? !define : !redefine) {
                     // Hotswap reload which is the client not interested of
                     return classfileBuffer;
                 }
@@ -89,25 +128,7 @@ public class OnClassLoadedHandler implements PluginHandler<OnClassLoadEvent> {
     public byte[] transform(PluginAnnotation<OnClassLoadEvent> pluginAnnotation,
                             ClassLoader classLoader, String className,
                             Class<?> redefiningClass, ProtectionDomain protectionDomain, byte[] bytes) {
-        // skip synthetic classes
-        if (pluginAnnotation.getAnnotation().skipSynthetic()) {
-            if (isSynthaticClass(className) || (redefiningClass != null && redefiningClass.isSynthetic()))
-                return bytes;
-        }
-
-        // skip anonymous class
-        if (pluginAnnotation.getAnnotation().skipAnonymous()) {
-            if (className.matches("\\$\\d+$"))
-                return bytes;
-        }
-
-        // ensure classloader initiated
-        if (classLoader != null)
-            pluginManager.initClassLoader(classLoader, protectionDomain);
-
-        // check disabled plugins
-        //noinspection unchecked
-        if (pluginManager.getPluginConfiguration(classLoader).isDisabledPlugin(pluginAnnotation.getPluginClass()))
+        if (skip(pluginAnnotation, classLoader, className, redefiningClass, protectionDomain))
             return bytes;
 
         // default result
@@ -116,65 +137,85 @@ public class OnClassLoadedHandler implements PluginHandler<OnClassLoadEvent> {
         // we may need to crate CtClass on behalf of the client and close it after invocation.
         CtClass ctClass = null;
 
-        List<Object> args = new ArrayList<Object>();
-        for (Class<?> type : pluginAnnotation.getMethod().getParameterTypes()) {
-            if (type.isAssignableFrom(ClassLoader.class)) {
-                args.add(classLoader);
-            } else if (type.isAssignableFrom(String.class)) {
-                args.add(className);
-            } else if (type.isAssignableFrom(Class.class)) {
-                args.add(redefiningClass);
-            } else if (type.isAssignableFrom(ProtectionDomain.class)) {
-                args.add(protectionDomain);
-            } else if (type.isAssignableFrom(byte[].class)) {
-                args.add(bytes);
-            } else if (type.isAssignableFrom(ClassPool.class)) {
-                ClassPool classPool = new ClassPool();
-                classPool.appendSystemPath();
-                LOGGER.trace("Adding loader classpath " + classLoader);
-                classPool.appendClassPath(new LoaderClassPath(classLoader));
-                args.add(classPool);
-            } else if (type.isAssignableFrom(CtClass.class)) {
-                try {
-                    ctClass = createCtClass(bytes, classLoader);
-                    args.add(ctClass);
-                } catch (IOException e) {
-                    LOGGER.error("Unable create CtClass for '" + className + "'.", e);
+        // child pool of the shared classloader pool, common for ClassPool and CtClass parameters
+        ClassPool classPool = null;
+
+        HandlerMethod handlerMethod = pluginAnnotation.getHandlerMethod(PARAMETER_TYPES);
+        Object[] args = new Object[handlerMethod.getParameterCount()];
+        for (int i = 0; i < args.length; i++) {
+            switch (handlerMethod.getKind(i)) {
+                case CLASS_LOADER:
+                    args[i] = classLoader;
+                    break;
+                case CLASS_NAME:
+                    args[i] = className;
+                    break;
+                case REDEFINING_CLASS:
+                    args[i] = redefiningClass;
+                    break;
+                case PROTECTION_DOMAIN:
+                    args[i] = protectionDomain;
+                    break;
+                case BYTES:
+                    args[i] = bytes;
+                    break;
+                case CLASS_POOL:
+                    if (classPool == null)
+                        classPool = createClassPool(classLoader);
+                    args[i] = classPool;
+                    break;
+                case CT_CLASS:
+                    try {
+                        if (classPool == null)
+                            classPool = createClassPool(classLoader);
+                        ctClass = createCtClass(className, bytes, classPool);
+                        args[i] = ctClass;
+                    } catch (IOException e) {
+                        LOGGER.error("Unable create CtClass for '" + className + "'.", e);
+                        return result;
+                    } catch (NotFoundException e) {
+                        LOGGER.error("Unable create CtClass for '" + className + "'.", e);
+                        return result;
+                    }
+                    break;
+                case CLASS_METADATA:
+                    args[i] = new ClassMetadata(className, bytes);
+                    break;
+                case LOAD_EVENT:
+                    args[i] = redefiningClass == null ? LoadEvent.DEFINE : LoadEvent.REDEFINE;
+                    break;
+                case APP_CLASS_LOADER_EXECUTOR:
+                    args[i] = new AppClassLoaderExecutor(classLoader, protectionDomain);
+                    break;
+                default:
+                    LOGGER.error("Unable to call init method on plugin '" + pluginAnnotation.getPluginClass() + "'." +
+                            " Method parameter type '" + handlerMethod.getParameterType(i) + "' is not recognized for @Init annotation.");
                     return result;
-                }
-            } else if (type.isAssignableFrom(LoadEvent.class)) {
-                args.add(redefiningClass == null ? LoadEvent.DEFINE : LoadEvent.REDEFINE);
-            } else if (type.isAssignableFrom(AppClassLoaderExecutor.class)) {
-                args.add(new AppClassLoaderExecutor(classLoader, protectionDomain));
-            } else {
-                LOGGER.error("Unable to call init method on plugin '" + pluginAnnotation.getPluginClass() + "'." +
-                        " Method parameter type '" + type + "' is not recognized for @Init annotation.");
-                return result;
             }
         }
         try {
             // call method on plugin (or if plugin null -> static method)
-            Object resultObject = pluginAnnotation.getMethod().invoke(pluginAnnotation.getPlugin(), args.toArray());
+            Object resultObject = handlerMethod.invoke(args);
 
             if (resultObject == null) {
                 // Ok, nothing has changed
             } else if (resultObject instanceof byte[]) {
                 result = (byte[]) resultObject;
+            } else if (resultObject == ctClass) {
+                // the same instance as the parameter, serialized below only if modified
             } else if (resultObject instanceof CtClass) {
                 result = ((CtClass) resultObject).toBytecode();
 
                 // detach on behalf of the clinet - only if this is another instance than we created (it is closed elsewhere)
-                if (resultObject != ctClass) {
-                    ((CtClass) resultObject).detach();
-                }
+                ((CtClass) resultObject).detach();
             } else {
                 LOGGER.error("Unknown result of @OnClassLoadEvent method '" + result.getClass().getName() + "'.");
             }
 
             // close CtClass if created from here
             if (ctClass != null) {
-                // if result not set from the method, use class
-                if (resultObject == null) {
+                // if result not set from the method, use class - unless the method did not touch it
+                if ((resultObject == null || resultObject == ctClass) && ctClass.isModified()) {
                     result = ctClass.toBytecode();
                 }
                 ctClass.detach();
@@ -198,19 +239,133 @@ public class OnClassLoadedHandler implements PluginHandler<OnClassLoadEvent> {
     }
 
     /**
-     * Creats javaassist CtClass for bytecode manipulation. Add default classloader.
+     * Redefinition callback as registered in initMethod: hotswapTransformer.registerRedefinitionListener().
+     * Resolve method parameters from the event shared by all listeners of the class.
+     */
+    public void onRedefinition(PluginAnnotation<OnClassLoadEvent> pluginAnnotation, RedefinitionEvent event) {
+        ClassLoader classLoader = event.getClassLoader();
+        if (skip(pluginAnnotation, classLoader, event.getClassName(), event.getRedefinedClass(), event.getProtectionDomain()))
+            return;
+
+        HandlerMethod handlerMethod = pluginAnnotation.getHandlerMethod(PARAMETER_TYPES);
+        Object[] args = new Object[handlerMethod.getParameterCount()];
+        for (int i = 0; i < args.length; i++) {
+            switch (handlerMethod.getKind(i)) {
+                case CLASS_LOADER:
+                    args[i] = classLoader;
+                    break;
+                case CLASS_NAME:
+                    args[i] = event.getClassName();
+                    break;
+                case REDEFINING_CLASS:
+                    args[i] = event.getRedefinedClass();
+                    break;
+                case PROTECTION_DOMAIN:
+                    args[i] = event.getProtectionDomain();
+                    break;
+                case BYTES:
+                    args[i] = event.getBytes();
+                    break;
+                case CLASS_METADATA:
+                    args[i] = event.getClassMetadata();
+                    break;
+                case LOAD_EVENT:
+                    args[i] = LoadEvent.REDEFINE;
+                    break;
+                case APP_CLASS_LOADER_EXECUTOR:
+                    args[i] = new AppClassLoaderExecutor(classLoader, event.getProtectionDomain());
+                    break;
+                default:
+                    LOGGER.error("Unable to call redefinition method on plugin '" + pluginAnnotation.getPluginClass() + "'." +
+                            " Method parameter type '" + handlerMethod.getParameterType(i) + "' is not recognized for @OnClassLoadEvent annotation.");
+                    return;
+            }
+        }
+
+        try {
+            handlerMethod.invoke(args);
+        } catch (IllegalAccessException e) {
+            LOGGER.error("IllegalAccessException in redefinition method on plugin '" +
+                    pluginAnnotation.getPluginClass() + "' class '" + event.getClassName() + "'.", e);
+        } catch (InvocationTargetException e) {
+            LOGGER.error("InvocationTargetException in redefinition method on plugin '" +
+                    pluginAnnotation.getPluginClass() + "' class '" + event.getClassName() + "'.", e);
+        }
+    }
+
+    /**
+     * Method called only on REDEFINE which cannot change the class - returns void and has no javassist
+     * parameter (ClassPool, CtClass). Such method is notified via redefinition bus instead of the transformer chain.
+     */
+    protected boolean isRedefinitionObserver(PluginAnnotation<OnClassLoadEvent> pluginAnnotation) {
+        LoadEvent[] events = pluginAnnotation.getAnnotation().events();
+        if (events.length != 1 || events[0] != LoadEvent.REDEFINE)
+            return false;
+
+        if (pluginAnnotation.getMethod().getReturnType() != void.class)
+            return false;
+
+        HandlerMethod handlerMethod = pluginAnnotation.getHandlerMethod(PARAMETER_TYPES);
+        return !handlerMethod.hasKind(CLASS_POOL) && !handlerMethod.hasKind(CT_CLASS);
+    }
+
+    // common checks before the method call, ensures the classloader is initialized
+    private boolean skip(PluginAnnotation<OnClassLoadEvent> pluginAnnotation, ClassLoader classLoader, String className,
+                         Class<?> redefiningClass, ProtectionDomain protectionDomain) {
+        // skip synthetic classes
+        if (pluginAnnotation.getAnnotation().skipSynthetic()) {
+            if (isSynthaticClass(className) || (redefiningClass != null && redefiningClass.isSynthetic()))
+                return true;
+        }
+
+        // skip anonymous class
+        if (pluginAnnotation.getAnnotation().skipAnonymous()) {
+            if (ANONYMOUS_CLASS.matcher(className).matches())
+                return true;
+        }
+
+        // ensure classloader initiated
+        if (classLoader != null)
+            pluginManager.initClassLoader(classLoader, protectionDomain);
+
+        // check disabled plugins
+        //noinspection unchecked
+        return pluginManager.getPluginConfiguration(classLoader).isDisabledPlugin(pluginAnnotation.getPluginClass());
+    }
+
+    /**
+     * Creates a new child pool of the shared classloader pool. Lookups of referenced classes are cached
+     * in the shared pool, while the transformed class definition is discarded with the child pool.
      *
-     * @param bytes       new class definition
      * @param classLoader loader
+     * @return new pool
+     */
+    private ClassPool createClassPool(ClassLoader classLoader) {
+        LOGGER.trace("Creating class pool for classloader " + classLoader);
+        return pluginManager.getClassPoolRegistry().createClassPool(classLoader);
+    }
+
+    /**
+     * Creats javaassist CtClass for bytecode manipulation.
+     * <p/>
+     * The class definition is registered as a class path of the (child) pool and the class is obtained lazily -
+     * the bytecode is parsed on first access to the class members and the class reports isModified() only
+     * after an actual change. Hence a method which just checks the class does not pay for parsing nor
+     * for regenerating the bytecode.
+     *
+     * @param className class name (null if unknown)
+     * @param bytes     new class definition
+     * @param classPool pool of the classloader
      * @return created class
-     * @throws NotFoundException
+     * @throws IOException
      */
-    private CtClass createCtClass(byte[] bytes, ClassLoader classLoader) throws IOException {
-        ClassPool cp = new ClassPool();
-        cp.appendSystemPath();
-        cp.appendClassPath(new LoaderClassPath(classLoader));
+    private CtClass createCtClass(String className, byte[] bytes, ClassPool classPool) throws IOException, NotFoundException {
+        if (className == null)
+            return classPool.makeClass(new ByteArrayInputStream(bytes));
 
-        return cp.makeClass(new ByteArrayInputStream(bytes));
+        String name = className.replace('/', '.');
+        classPool.insertClassPath(new ByteArrayClassPath(name, bytes));
+        return classPool.get(name);
     }
 
 
@@ -3,6 +3,7 @@ package org.hotswap.agent.annotation.handler;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 
 /**
  * DTO for resolved plugin annotation properties.
@@ -27,6 +28,9 @@ public class PluginAnnotation<T extends Annotation> {
     // annotation is on a method (and field property is empty)
     Method method;
 
+    // compiled invocations of the method by supported types of a handler, created on first use
+    private volatile HandlerMethodEntry handlerMethods;
+
     public PluginAnnotation(Class pluginClass, Object plugin, T annotation, Method method) {
         this.pluginClass = pluginClass;
         this.plugin = plugin;
@@ -64,6 +68,40 @@ public class PluginAnnotation<T extends Annotation> {
         return field;
     }
 
+    /**
+     * Return compiled invocation of the annotated method for the supported types. It is created on the first call
+     * with the supported types, handlers should pass a constant array (found by identity without comparison).
+     *
+     * @param supportedTypes types the handler can provide in the order of resolution
+     * @return the handler method
+     */
+    public HandlerMethod getHandlerMethod(Class<?>... supportedTypes) {
+        HandlerMethod result = findHandlerMethod(handlerMethods, supportedTypes);
+        if (result != null)
+            return result;
+
+        synchronized (this) {
+            result = findHandlerMethod(handlerMethods, supportedTypes);
+            if (result == null) {
+                result = new HandlerMethod(method, plugin, supportedTypes);
+                handlerMethods = new HandlerMethodEntry(supportedTypes, result, handlerMethods);
+            }
+            return result;
+        }
+    }
+
+    private static HandlerMethod findHandlerMethod(HandlerMethodEntry entry, Class<?>[] supportedTypes) {
+        for (HandlerMethodEntry e = entry; e != null; e = e.next) {
+            if (e.supportedTypes == supportedTypes)
+                return e.handlerMethod;
+        }
+        for (HandlerMethodEntry e = entry; e != null; e = e.next) {
+            if (Arrays.equals(e.supportedTypes, supportedTypes))
+                return e.handlerMethod;
+        }
+        return null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -97,4 +135,19 @@ public class PluginAnnotation<T extends Annotation> {
                 ", method=" + method +
                 '}';
     }
+
+    /**
+     * Immutable list of compiled invocations by supported types.
+     */
+    private static class HandlerMethodEntry {
+        final Class<?>[] supportedTypes;
+        final HandlerMethod handlerMethod;
+        final HandlerMethodEntry next;
+
+        HandlerMethodEntry(Class<?>[] supportedTypes, HandlerMethod handlerMethod, HandlerMethodEntry next) {
+            this.supportedTypes = supportedTypes;
+            this.handlerMethod = handlerMethod;
+            this.next = next;
+        }
+    }
 }
@@ -9,7 +9,9 @@ import org.hotswap.agent.javassist.CtClass;
 import org.hotswap.agent.javassist.LoaderClassPath;
 import org.hotswap.agent.javassist.NotFoundException;
 import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.ClassFileReader;
 import org.hotswap.agent.util.IOUtils;
+import org.hotswap.agent.util.classloader.ClassPoolRegistry;
 import org.hotswap.agent.watch.WatchFileEvent;
 
 import java.io.ByteArrayInputStream;
@@ -19,9 +21,6 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 
 /**
  * Command to schedule after resource change.
@@ -33,16 +32,40 @@ public class WatchEventCommand<T extends Annotation> extends MergeableCommand {
 
     private static AgentLogger LOGGER = AgentLogger.getLogger(WatchEventCommand.class);
 
+    // types of method parameters in the order of resolution and their kinds, see HandlerMethod
+    static final Class<?>[] PARAMETER_TYPES = {ClassLoader.class, URI.class, URL.class, ClassPool.class,
+            FileEvent.class, CtClass.class, String.class};
+    private static final int CLASS_LOADER = 0;
+    private static final int FILE_URI = 1;
+    private static final int FILE_URL = 2;
+    private static final int CLASS_POOL = 3;
+    private static final int FILE_EVENT = 4;
+    private static final int CT_CLASS = 5;
+    private static final int CLASS_NAME = 6;
+
     private final PluginAnnotation<T> pluginAnnotation;
     private final WatchEventDTO watchEventDTO;
     private final WatchFileEvent event;
     private final ClassLoader classLoader;
 
+    // pool of CtClass parameter, null to create a standalone pool
+    private final ClassPoolRegistry classPoolRegistry;
+
     public WatchEventCommand(PluginAnnotation<T> pluginAnnotation, WatchFileEvent event, ClassLoader classLoader) {
+        this(pluginAnnotation, event, classLoader, WatchEventDTO.parse(pluginAnnotation.getAnnotation()), null);
+    }
+
+    /**
+     * @param watchEventDTO     parsed annotation of the handler, the event is already accepted by it
+     * @param classPoolRegistry registry to create pool of CtClass parameter, null to create a standalone pool
+     */
+    public WatchEventCommand(PluginAnnotation<T> pluginAnnotation, WatchFileEvent event, ClassLoader classLoader,
+                             WatchEventDTO watchEventDTO, ClassPoolRegistry classPoolRegistry) {
         this.pluginAnnotation = pluginAnnotation;
-        this.watchEventDTO = WatchEventDTO.parse(pluginAnnotation.getAnnotation());
+        this.watchEventDTO = watchEventDTO;
         this.event = event;
         this.classLoader = classLoader;
+        this.classPoolRegistry = classPoolRegistry;
     }
 
     @Override
@@ -90,41 +113,23 @@ public class WatchEventCommand<T extends Annotation> extends MergeableCommand {
         final T annot = pluginAnnotation.getAnnotation();
         Object plugin = pluginAnnotation.getPlugin();
 
-        // regular files filter
-        if (watchEventDTO.isOnlyRegularFiles() && !event.isFile()) {
-            LOGGER.trace("Skipping URI {} because it is not a regular file.", event.getURI());
-            return;
-        }
-
-        // watch type filter
-        if (!Arrays.asList(watchEventDTO.getEvents()).contains(event.getEventType())) {
-            LOGGER.trace("Skipping URI {} because it is not a requested event.", event.getURI());
-            return;
-        }
-
-        // resource name filter regexp
-        if (watchEventDTO.getFilter() != null && watchEventDTO.getFilter().length() > 0) {
-            if (!event.getURI().toString().matches(watchEventDTO.getFilter())) {
-                LOGGER.trace("Skipping URI {} because it does not match filter.", event.getURI(), watchEventDTO.getFilter());
-                return;
-            }
-        }
+        // regular files, watch type and resource name filters are applied by WatchEventDTO.accept() before
+        // the command is scheduled
 
-        //we may need to crate CtClass on behalf of the client and close it after invocation.
+        // class name read from the class file header, CtClass is created only for a CtClass parameter
+        String className = null;
         CtClass ctClass = null;
 
         // class file regexp
         if (watchEventDTO.isClassFileEvent()) {
             try {
-                // TODO creating class only to check name may slow down if lot of handlers is in use.
-                ctClass = createCtClass(event.getURI(), classLoader);
-            } catch (Exception e) {
-                LOGGER.error("Unable create CtClass for URI '{}'.", e, event.getURI());
+                className = ClassFileReader.readClassName(event.getURI());
+            } catch (IOException e) {
+                LOGGER.error("Unable to read class name from URI '{}'.", e, event.getURI());
                 return;
             }
 
-            // unable to create CtClass or it's name does not match
-            if (ctClass == null || !ctClass.getName().matches(watchEventDTO.getClassNameRegexp()))
+            if (!watchEventDTO.getClassNamePattern().matcher(className).matches())
                 return;
         }
 
@@ -132,35 +137,56 @@ public class WatchEventCommand<T extends Annotation> extends MergeableCommand {
                 pluginAnnotation.getMethod().getName(), plugin.getClass().getName(), event);
 
 
-        List<Object> args = new ArrayList<Object>();
-        for (Class<?> type : pluginAnnotation.getMethod().getParameterTypes()) {
-            if (type.isAssignableFrom(ClassLoader.class)) {
-                args.add(classLoader);
-            } else if (type.isAssignableFrom(URI.class)) {
-                args.add(event.getURI());
-            } else if (type.isAssignableFrom(URL.class)) {
-                try {
-                    args.add(event.getURI().toURL());
-                } catch (MalformedURLException e) {
-                    LOGGER.error("Unable to convert URI '{}' to URL.", e, event.getURI());
+        HandlerMethod handlerMethod = pluginAnnotation.getHandlerMethod(PARAMETER_TYPES);
+        Object[] args = new Object[handlerMethod.getParameterCount()];
+        for (int i = 0; i < args.length; i++) {
+            int kind = handlerMethod.getKind(i);
+            if (!watchEventDTO.isClassFileEvent() && (kind == CT_CLASS || kind == CLASS_NAME))
+                kind = HandlerMethod.UNKNOWN;
+
+            switch (kind) {
+                case CLASS_LOADER:
+                    args[i] = classLoader;
+                    break;
+                case FILE_URI:
+                    args[i] = event.getURI();
+                    break;
+                case FILE_URL:
+                    try {
+                        args[i] = event.getURI().toURL();
+                    } catch (MalformedURLException e) {
+                        LOGGER.error("Unable to convert URI '{}' to URL.", e, event.getURI());
+                        return;
+                    }
+                    break;
+                case CLASS_POOL:
+                    args[i] = ClassPool.getDefault();
+                    break;
+                case FILE_EVENT:
+                    args[i] = event.getEventType();
+                    break;
+                case CT_CLASS:
+                    if (ctClass == null) {
+                        try {
+                            ctClass = createCtClass(event.getURI(), classLoader);
+                        } catch (Exception e) {
+                            LOGGER.error("Unable create CtClass for URI '{}'.", e, event.getURI());
+                            return;
+                        }
+                    }
+                    args[i] = ctClass;
+                    break;
+                case CLASS_NAME:
+                    args[i] = className;
+                    break;
+                default:
+                    LOGGER.error("Unable to call method {} on plugin {}. Method parameter type {} is not recognized.",
+                            pluginAnnotation.getMethod().getName(), plugin.getClass().getName(), handlerMethod.getParameterType(i));
                     return;
-                }
-            } else if (type.isAssignableFrom(ClassPool.class)) {
-                args.add(ClassPool.getDefault());
-            } else if (type.isAssignableFrom(FileEvent.class)) {
-                args.add(event.getEventType());
-            } else if (watchEventDTO.isClassFileEvent() && type.isAssignableFrom(CtClass.class)) {
-                args.add(ctClass);
-            } else if (watchEventDTO.isClassFileEvent() && type.isAssignableFrom(String.class)) {
-                args.add(ctClass.getName());
-            } else {
-                LOGGER.error("Unable to call method {} on plugin {}. Method parameter type {} is not recognized.",
-                        pluginAnnotation.getMethod().getName(), plugin.getClass().getName(), type);
-                return;
             }
         }
         try {
-            pluginAnnotation.getMethod().invoke(plugin, args.toArray());
+            handlerMethod.invoke(args);
 
             // close CtClass if created from here
             if (ctClass != null) {
@@ -177,7 +203,8 @@ public class WatchEventCommand<T extends Annotation> extends MergeableCommand {
 
 
     /**
-     * Creats javaassist CtClass for bytecode manipulation. Add default classloader.
+     * Creats javaassist CtClass for bytecode manipulation in a new child pool of the shared classloader pool
+     * (cached definitions of changed class files are invalidated by the change set stage).
      *
      * @param uri         uri
      * @param classLoader loader
@@ -185,9 +212,13 @@ public class WatchEventCommand<T extends Annotation> extends MergeableCommand {
      * @throws org.hotswap.agent.javassist.NotFoundException
      */
     private CtClass createCtClass(URI uri, ClassLoader classLoader) throws NotFoundException, IOException {
-        ClassPool cp = new ClassPool();
-        cp.appendClassPath(new LoaderClassPath(classLoader));
-
+        ClassPool cp;
+        if (classPoolRegistry != null) {
+            cp = classPoolRegistry.createClassPool(classLoader);
+        } else {
+            cp = new ClassPool();
+            cp.appendClassPath(new LoaderClassPath(classLoader));
+        }
         return cp.makeClass(new ByteArrayInputStream(IOUtils.toByteArray(uri)));
     }
 }
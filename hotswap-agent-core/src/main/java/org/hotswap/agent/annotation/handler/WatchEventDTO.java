@@ -6,9 +6,16 @@ import org.hotswap.agent.annotation.OnResourceFileEvent;
 import org.hotswap.agent.watch.WatchFileEvent;
 
 import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Container to merge attributes from similar annotations: OnClassFileEvent and OnResourceFileEvent.
+ * <p/>
+ * Filters are compiled once per annotation and evaluated by {@link #accept(WatchFileEvent)} in the watcher
+ * thread, before a command is created and scheduled.
  */
 public class WatchEventDTO {
     private final boolean classFileEvent;
@@ -19,6 +26,11 @@ public class WatchEventDTO {
     private final String path;
     private final boolean onlyRegularFiles;
 
+    // compiled events, classNameRegexp and filter (null if no filter)
+    private final Set<FileEvent> eventSet;
+    private final Pattern classNamePattern;
+    private final UriFilter uriFilter;
+
     /**
      * Parse the annotation to fill in the container.
      */
@@ -39,6 +51,10 @@ public class WatchEventDTO {
         onlyRegularFiles = true;
         filter = null;
         path = null;
+
+        eventSet = toSet(events);
+        classNamePattern = Pattern.compile(classNameRegexp);
+        uriFilter = null;
     }
 
     public WatchEventDTO(OnResourceFileEvent annotation) {
@@ -49,6 +65,14 @@ public class WatchEventDTO {
         events = annotation.events();
         onlyRegularFiles = annotation.onlyRegularFiles();
         classNameRegexp = null;
+
+        eventSet = toSet(events);
+        classNamePattern = null;
+        uriFilter = filter == null || filter.isEmpty() ? null : UriFilter.compile(filter);
+    }
+
+    private static Set<FileEvent> toSet(FileEvent[] events) {
+        return events.length == 0 ? EnumSet.noneOf(FileEvent.class) : EnumSet.copyOf(Arrays.asList(events));
     }
 
     public boolean isClassFileEvent() {
@@ -67,6 +91,13 @@ public class WatchEventDTO {
         return classNameRegexp;
     }
 
+    /**
+     * @return compiled classNameRegexp, null for resource events
+     */
+    public Pattern getClassNamePattern() {
+        return classNamePattern;
+    }
+
     public String getFilter() {
         return filter;
     }
@@ -80,14 +111,14 @@ public class WatchEventDTO {
     }
 
     /**
-     * Check if this handler supports actual event.
+     * Check if this handler supports actual event. Cheap checks go first, the file type check touches filesystem.
      * @param event file event fired by filesystem
      * @return true if supports - should continue handling
      */
     public boolean accept(WatchFileEvent event) {
 
-        // all handlers currently support only files
-        if (!event.isFile()) {
+        // watch type filter
+        if (!eventSet.contains(event.getEventType())) {
             return false;
         }
 
@@ -96,6 +127,124 @@ public class WatchEventDTO {
             return false;
         }
 
+        // resource name filter
+        if (uriFilter != null && !uriFilter.matches(event.getURI().toString())) {
+            return false;
+        }
+
+        // all handlers currently support only files
+        if (!event.isFile()) {
+            return false;
+        }
+
         return true;
     }
+
+    /**
+     * Compiled resource filter matched against the event URI.
+     * <ul>
+     * <li>Glob - a filter starting with '*' (e.g. *.properties), '*' matches any characters and '?' a single one.</li>
+     * <li>Regexp - otherwise. A regexp ".*" followed by a fixed-length tail (e.g. .*\.properties) is matched
+     * as a suffix without the regexp engine.</li>
+     * </ul>
+     */
+    abstract static class UriFilter {
+
+        abstract boolean matches(String uri);
+
+        static UriFilter compile(String filter) {
+            if (filter.startsWith("*")) {
+                String tail = filter.substring(1);
+                if (tail.indexOf('*') < 0 && tail.indexOf('?') < 0)
+                    return new SuffixFilter(tail.toCharArray(), new boolean[tail.length()]);
+                return new RegexpFilter(Pattern.compile(globToRegexp(filter)));
+            }
+
+            if (filter.startsWith(".*")) {
+                SuffixFilter suffix = SuffixFilter.parse(filter.substring(2));
+                if (suffix != null)
+                    return suffix;
+            }
+            return new RegexpFilter(Pattern.compile(filter));
+        }
+
+        private static String globToRegexp(String glob) {
+            StringBuilder regexp = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : glob.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        regexp.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regexp.append(c == '*' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0)
+                regexp.append(Pattern.quote(literal.toString()));
+            return regexp.toString();
+        }
+    }
+
+    /**
+     * Fixed-length suffix, a character matches literally or any character (unescaped '.' in a regexp).
+     */
+    static class SuffixFilter extends UriFilter {
+        private final char[] chars;
+        private final boolean[] any;
+
+        SuffixFilter(char[] chars, boolean[] any) {
+            this.chars = chars;
+            this.any = any;
+        }
+
+        // null if the regexp is not a fixed-length sequence of literals, '.' and escaped '.'
+        static SuffixFilter parse(String regexp) {
+            StringBuilder chars = new StringBuilder();
+            boolean[] any = new boolean[regexp.length()];
+            for (int i = 0; i < regexp.length(); i++) {
+                char c = regexp.charAt(i);
+                if (c == '\\') {
+                    if (i + 1 >= regexp.length() || regexp.charAt(i + 1) != '.')
+                        return null;
+                    chars.append(regexp.charAt(++i));
+                } else if (c == '.') {
+                    any[chars.length()] = true;
+                    chars.append(c);
+                } else if (Character.isLetterOrDigit(c) || c == '/' || c == '_' || c == '-') {
+                    chars.append(c);
+                } else {
+                    return null;
+                }
+            }
+            return new SuffixFilter(chars.toString().toCharArray(), Arrays.copyOf(any, chars.length()));
+        }
+
+        @Override
+        boolean matches(String uri) {
+            int offset = uri.length() - chars.length;
+            if (offset < 0)
+                return false;
+            for (int i = 0; i < chars.length; i++) {
+                if (!any[i] && uri.charAt(offset + i) != chars[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    static class RegexpFilter extends UriFilter {
+        private final Pattern pattern;
+
+        RegexpFilter(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean matches(String uri) {
+            return pattern.matcher(uri).matches();
+        }
+    }
 }
@@ -3,6 +3,7 @@ package org.hotswap.agent.annotation.handler;
 import org.hotswap.agent.config.PluginManager;
 import org.hotswap.agent.command.Command;
 import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.watch.ChangeSetCollector;
 import org.hotswap.agent.watch.WatchFileEvent;
 import org.hotswap.agent.watch.WatchEventListener;
 
@@ -42,6 +43,9 @@ public class WatchHandler<T extends Annotation> implements PluginHandler<T> {
 
         ClassLoader classLoader = pluginManager.getPluginRegistry().getAppClassLoader(pluginAnnotation.getPlugin());
 
+        // compile the invocation at registration time, not on the first event
+        pluginAnnotation.getHandlerMethod(WatchEventCommand.PARAMETER_TYPES);
+
         try {
             registerResources(pluginAnnotation, classLoader);
         } catch (IOException e) {
@@ -116,7 +120,8 @@ public class WatchHandler<T extends Annotation> implements PluginHandler<T> {
      * Using pluginManager.registerResourceListener() add new listener on URI.
      * <p/>
      * There might be several same events for a resource change (either from filesystem or when IDE clears and reloads
-     * a class multiple time on rebuild). Use command scheduler to group same events into single invocation.
+     * a class multiple time on rebuild). Use change set collector to group same events into single invocation
+     * and to process all changes of a build in a single batch.
      */
     private void registerResourceListener(final PluginAnnotation<T> pluginAnnotation, final WatchEventDTO watchEventDTO,
                                           final ClassLoader classLoader, URI uri) throws IOException {
@@ -124,8 +129,13 @@ public class WatchHandler<T extends Annotation> implements PluginHandler<T> {
             @Override
             public void onEvent(WatchFileEvent event) {
                 if (watchEventDTO.accept(event)) {
-                    Command command = new WatchEventCommand(pluginAnnotation, event, classLoader);
-                    pluginManager.getScheduler().scheduleCommand(command, watchEventDTO.getTimeout());
+                    Command command = new WatchEventCommand(pluginAnnotation, event, classLoader, watchEventDTO,
+                            pluginManager.getClassPoolRegistry());
+                    ChangeSetCollector changeSetCollector = pluginManager.getChangeSetCollector();
+                    if (changeSetCollector != null)
+                        changeSetCollector.addEvent(event, command, watchEventDTO.getTimeout());
+                    else
+                        pluginManager.getScheduler().scheduleCommand(command, watchEventDTO.getTimeout());
                     LOGGER.trace("Resource changed {}", event);
                 }
             }
@@ -0,0 +1,64 @@
+package org.hotswap.agent.annotation.processor;
+
+import org.hotswap.agent.annotation.Plugin;
+import org.hotswap.agent.util.scanner.PluginIndex;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Compile time annotation processor to generate plugin index ({@link PluginIndex#INDEX_DIRECTORY}).
+ * <p/>
+ * Each plugin gets an empty index entry named by the plugin class name, hence indexes of multiple modules do not
+ * collide when the modules are merged into a single JAR. Plugin attributes are read from the plugin class itself.
+ * <p/>
+ * The processor is registered as a service in agent JAR and hence it runs automatically while compiling any plugin
+ * project with the agent on classpath. At runtime the plugin registry reads the index instead of scanning
+ * and parsing all classes in plugin package.
+ */
+@SupportedAnnotationTypes("org.hotswap.agent.annotation.Plugin")
+public class PluginIndexProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Elements elements = processingEnv.getElementUtils();
+        TypeElement pluginAnnotation = elements.getTypeElement(Plugin.class.getName());
+        if (pluginAnnotation == null)
+            return false;
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(pluginAnnotation)) {
+            if (element instanceof TypeElement) {
+                TypeElement pluginClass = (TypeElement) element;
+                writeIndexEntry(elements.getBinaryName(pluginClass).toString(), pluginClass);
+            }
+        }
+
+        return false;
+    }
+
+    private void writeIndexEntry(String pluginClassName, Element pluginClass) {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    PluginIndex.INDEX_DIRECTORY + pluginClassName, pluginClass);
+            // create the empty resource
+            file.openWriter().close();
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write plugin index: " + e, pluginClass);
+        }
+    }
+}
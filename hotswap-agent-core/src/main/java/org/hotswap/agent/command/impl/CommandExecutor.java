@@ -4,30 +4,38 @@ import org.hotswap.agent.command.Command;
 import org.hotswap.agent.logging.AgentLogger;
 
 /**
- * Execute a command in a separate thread.
+ * Execute a command in a worker thread of {@link CommandExecutorPool}.
  *
  * @author Jiri Bubnik
  */
-public class CommandExecutor extends Thread {
+public class CommandExecutor implements Runnable {
     private static AgentLogger LOGGER = AgentLogger.getLogger(CommandExecutor.class);
 
     final Command command;
 
     public CommandExecutor(Command command) {
         this.command = command;
-        setDaemon(true);
     }
 
     @Override
     public void run() {
         try {
-            LOGGER.trace("Executing command {}", command);
-            command.executeCommand();
+            executeCommand();
         } finally {
             finished();
         }
     }
 
+    // execute the command without finished() notification
+    void executeCommand() {
+        try {
+            LOGGER.trace("Executing command {}", command);
+            command.executeCommand();
+        } catch (Throwable e) {
+            LOGGER.error("Error executing command {}", e, command);
+        }
+    }
+
     /**
      * Method template to register finish event
      */
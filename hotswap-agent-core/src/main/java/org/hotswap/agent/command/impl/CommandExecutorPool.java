@@ -0,0 +1,343 @@
+package org.hotswap.agent.command.impl;
+
+import org.hotswap.agent.command.Command;
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of worker threads executing scheduled commands.
+ * <p/>
+ * Equal commands (by equals()) are never executed concurrently - if an equal command is already running,
+ * the new command waits in a per-command queue and is submitted to the pool after all previous equal commands finish.
+ * Different commands run in parallel up to the pool size, additional commands wait in the pool queue.
+ * <p/>
+ * Optionally commands may run on virtual threads (Java 21+), which are resolved by reflection. In this mode
+ * the number of concurrently running commands is not limited.
+ */
+public class CommandExecutorPool {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(CommandExecutorPool.class);
+
+    /**
+     * Default pool size - commands are often waiting for IO (e.g. a file being written), hence more threads than CPUs.
+     */
+    public static final int DEFAULT_POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    // idle worker threads are released after this timeout
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    // actual executor - ThreadPoolExecutor or virtual thread per task executor
+    private final ExecutorService executor;
+
+    // null in virtual thread mode
+    private final ThreadPoolExecutor threadPool;
+
+    private final int poolSize;
+
+    // running command -> equal commands waiting for it to finish (guarded by itself)
+    private final Map<Command, Queue<SerialTask>> runningCommands = new HashMap<Command, Queue<SerialTask>>();
+
+    // statistics
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicInteger largestQueueSize = new AtomicInteger();
+
+    /**
+     * Create pool with default size using platform threads.
+     */
+    public CommandExecutorPool() {
+        this(DEFAULT_POOL_SIZE, false);
+    }
+
+    /**
+     * Create the pool.
+     *
+     * @param poolSize       maximum number of worker threads (values less than 1 mean default size)
+     * @param virtualThreads run each command on a new virtual thread if supported by the JVM
+     */
+    public CommandExecutorPool(int poolSize, boolean virtualThreads) {
+        this.poolSize = poolSize > 0 ? poolSize : DEFAULT_POOL_SIZE;
+
+        ExecutorService virtualExecutor = virtualThreads ? createVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            executor = virtualExecutor;
+            threadPool = null;
+            LOGGER.debug("Scheduled commands are executed on virtual threads.");
+        } else {
+            threadPool = new ThreadPoolExecutor(this.poolSize, this.poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new CommandThreadFactory());
+            threadPool.allowCoreThreadTimeOut(true);
+            executor = threadPool;
+            LOGGER.debug("Scheduled commands are executed by pool of {} threads.", this.poolSize);
+        }
+    }
+
+    /**
+     * Execute the command. If an equal command is running, the command is delayed until it finishes.
+     *
+     * @param command  the command
+     * @param executor wrapper to run the command, finished() is called after the command is executed
+     */
+    public void execute(Command command, CommandExecutor executor) {
+        execute(new SerialTask(command, executor));
+    }
+
+    /**
+     * Execute the commands in parallel and wait until all of them finish.
+     * <p/>
+     * Commands not yet started by a worker are executed by the calling thread. The caller may be a worker of this
+     * pool (e.g. a command processing a batch of commands), it helps instead of blocking a worker needed by the batch.
+     * Equal commands are serialized in the same way as by {@link #execute(Command, CommandExecutor)}.
+     *
+     * @param commands the commands
+     */
+    public void executeAll(Collection<Command> commands) {
+        final CountDownLatch finished = new CountDownLatch(commands.size());
+        List<SerialTask> tasks = new ArrayList<SerialTask>(commands.size());
+        for (Command command : commands) {
+            SerialTask task = new SerialTask(command, new CommandExecutor(command) {
+                @Override
+                public void finished() {
+                    finished.countDown();
+                }
+            });
+            tasks.add(task);
+            execute(task);
+        }
+
+        // tasks waiting for an equal running command are left to the pool
+        for (SerialTask task : tasks) {
+            if (task.submitted)
+                task.run();
+        }
+
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(SerialTask task) {
+        submittedCount.incrementAndGet();
+        Command command = task.command;
+
+        synchronized (runningCommands) {
+            Queue<SerialTask> waiting = runningCommands.get(command);
+            if (waiting != null) {
+                waiting.add(task);
+                waitingCount.incrementAndGet();
+                LOGGER.trace("{} waits for running equal command.", command);
+                updateLargestQueueSize();
+                return;
+            }
+            runningCommands.put(command, new ArrayDeque<SerialTask>());
+        }
+
+        submit(task);
+    }
+
+    /**
+     * Is an equal command running (or waiting for the running one)?
+     *
+     * @param command the command
+     * @return true if equal command was submitted and not finished yet
+     */
+    public boolean isRunning(Command command) {
+        synchronized (runningCommands) {
+            return runningCommands.containsKey(command);
+        }
+    }
+
+    /**
+     * Stop accepting new commands. Running commands are finished.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void submit(SerialTask task) {
+        task.submitted = true;
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Command executor pool is shut down, command is not executed.");
+            // release waiting commands
+            if (task.started.compareAndSet(false, true))
+                task.done();
+        }
+        updateLargestQueueSize();
+    }
+
+    private void updateLargestQueueSize() {
+        int size = getQueueSize();
+        int largest = largestQueueSize.get();
+        while (size > largest && !largestQueueSize.compareAndSet(largest, size))
+            largest = largestQueueSize.get();
+
+        if (size > largest && size >= 10 * poolSize)
+            LOGGER.debug("Command executor queue depth reached {} (pool size {}).", size, poolSize);
+    }
+
+    /**
+     * Maximum number of worker threads (not applied in virtual thread mode).
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return true if commands run on virtual threads.
+     */
+    public boolean isVirtualThreads() {
+        return threadPool == null;
+    }
+
+    /**
+     * Current number of worker threads (live virtual threads are not tracked - returns number of running commands).
+     */
+    public int getThreadCount() {
+        if (threadPool != null)
+            return threadPool.getPoolSize();
+        synchronized (runningCommands) {
+            return runningCommands.size();
+        }
+    }
+
+    /**
+     * Number of threads currently executing a command.
+     */
+    public int getActiveCount() {
+        if (threadPool != null)
+            return threadPool.getActiveCount();
+        synchronized (runningCommands) {
+            return runningCommands.size();
+        }
+    }
+
+    /**
+     * Number of commands waiting for execution - either for a free worker or for an equal running command.
+     */
+    public int getQueueSize() {
+        return (threadPool != null ? threadPool.getQueue().size() : 0) + waitingCount.get();
+    }
+
+    /**
+     * Highest observed queue size since the pool was created.
+     */
+    public int getLargestQueueSize() {
+        return largestQueueSize.get();
+    }
+
+    /**
+     * Total number of commands passed to execute().
+     */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * Total number of executed commands.
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CommandExecutorPool{" +
+                "poolSize=" + poolSize +
+                ", virtualThreads=" + isVirtualThreads() +
+                ", threads=" + getThreadCount() +
+                ", active=" + getActiveCount() +
+                ", queueSize=" + getQueueSize() +
+                ", largestQueueSize=" + getLargestQueueSize() +
+                ", submitted=" + getSubmittedCount() +
+                ", completed=" + getCompletedCount() +
+                '}';
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() on Java 21+, null otherwise
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            LOGGER.warning("Virtual threads are not supported by this JVM, using thread pool to execute commands.");
+        } catch (Exception e) {
+            LOGGER.warning("Unable to create virtual thread executor, using thread pool to execute commands.", e);
+        }
+        return null;
+    }
+
+    /**
+     * Runs the command and submits the next waiting equal command afterwards.
+     */
+    private class SerialTask implements Runnable {
+        final Command command;
+        final CommandExecutor executor;
+
+        // passed to the executor (not waiting for an equal command)
+        volatile boolean submitted;
+
+        // run by a worker or by the caller of executeAll(), whichever comes first
+        final AtomicBoolean started = new AtomicBoolean();
+
+        SerialTask(Command command, CommandExecutor executor) {
+            this.command = command;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true))
+                return;
+
+            try {
+                executor.executeCommand();
+            } finally {
+                completedCount.incrementAndGet();
+                done();
+            }
+        }
+
+        // release next equal command and notify the executor, equal command is not running anymore at this point
+        void done() {
+            try {
+                next();
+            } finally {
+                executor.finished();
+            }
+        }
+
+        private void next() {
+            SerialTask next;
+            synchronized (runningCommands) {
+                Queue<SerialTask> waiting = runningCommands.get(command);
+                next = waiting == null ? null : waiting.poll();
+                if (next == null)
+                    runningCommands.remove(command);
+                else
+                    waitingCount.decrementAndGet();
+            }
+
+            if (next != null)
+                submit(next);
+        }
+    }
+
+    private static class CommandThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "HotswapAgent-CommandExecutor-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
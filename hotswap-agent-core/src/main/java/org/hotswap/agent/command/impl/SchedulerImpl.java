@@ -6,10 +6,21 @@ import org.hotswap.agent.command.MergeableCommand;
 import org.hotswap.agent.command.Scheduler;
 import org.hotswap.agent.logging.AgentLogger;
 
-import java.util.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Default command scheduler implementation.
+ * <p/>
+ * Scheduled commands are kept in a delay queue, the scheduler thread sleeps exactly until the next
+ * command deadline. If the same (equals) command is scheduled again, the previous queue entry becomes
+ * stale and is discarded when it is taken from the queue.
+ * <p/>
+ * Commands are executed by a bounded {@link CommandExecutorPool}, equal commands never run concurrently.
  *
  * @author Jiri Bubnik
  */
@@ -18,11 +29,40 @@ public class SchedulerImpl implements Scheduler {
 
     int DEFAULT_SCHEDULING_TIMEOUT = 100;
 
+    // command -> current schedule of the command (any other queued schedule of the command is stale)
     final Map<Command, DuplicateScheduleConfig> scheduledCommands = Collections.synchronizedMap(new HashMap<Command, DuplicateScheduleConfig>());
-    final Set<Command> runningCommands = Collections.synchronizedSet(new HashSet<Command>());
+
+    // schedules ordered by time
+    final DelayQueue<DuplicateScheduleConfig> queue = new DelayQueue<DuplicateScheduleConfig>();
+
+    // executes commands and tracks running ones
+    final CommandExecutorPool executorPool;
 
     Thread runner;
-    boolean stopped;
+    volatile boolean stopped;
+
+    /**
+     * Create scheduler with default executor pool.
+     */
+    public SchedulerImpl() {
+        this(new CommandExecutorPool());
+    }
+
+    /**
+     * Create scheduler executing commands with the pool.
+     *
+     * @param executorPool the pool
+     */
+    public SchedulerImpl(CommandExecutorPool executorPool) {
+        this.executorPool = executorPool;
+    }
+
+    /**
+     * Pool executing the commands (e.g. to read execution statistics).
+     */
+    public CommandExecutorPool getExecutorPool() {
+        return executorPool;
+    }
 
     @Override
     public void scheduleCommand(Command command) {
@@ -38,76 +78,90 @@ public class SchedulerImpl implements Scheduler {
     public void scheduleCommand(Command command, int timeout, DuplicateSheduleBehaviour behaviour) {
         synchronized (scheduledCommands) {
             Command targetCommand = command;
-            if (scheduledCommands.containsKey(command) && (command instanceof MergeableCommand)) {
-                // get existing equals command and merge it
-                for (Command scheduledCommand : scheduledCommands.keySet()) {
-                    if (command.equals(scheduledCommand)) {
-                        targetCommand = ((MergeableCommand) command).merge(scheduledCommand);
-                        break;
-                    }
-                }
+            if (command instanceof MergeableCommand) {
+                // get existing equals command (the schedule holds the instance used as the map key) and merge it
+                DuplicateScheduleConfig scheduled = scheduledCommands.get(command);
+                if (scheduled != null)
+                    targetCommand = ((MergeableCommand) command).merge(scheduled.getCommand());
             }
 
-            // map may already contain equals command, put will replace it and reset timer
-            scheduledCommands.put(targetCommand, new DuplicateScheduleConfig(System.currentTimeMillis() + timeout, behaviour));
+            // map may already contain equals command - replace it (including the key) and restart timer,
+            // the old queue entry is left in the queue as stale
+            DuplicateScheduleConfig config = new DuplicateScheduleConfig(targetCommand,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout), behaviour);
+            scheduledCommands.remove(targetCommand);
+            scheduledCommands.put(targetCommand, config);
+            queue.put(config);
             LOGGER.trace("{} scheduled for execution in {}ms", targetCommand, timeout);
         }
     }
 
     /**
-     * One cycle of the scheduler agent. Process all commands which are not currently
-     * running and time lower than current milliseconds.
+     * Process a command which timeout expired.
      *
-     * @return true if the agent should continue (false for fatal error)
+     * @param config schedule taken from the queue
      */
-    private boolean processCommands() {
-        Long currentTime = System.currentTimeMillis();
+    private void processCommand(DuplicateScheduleConfig config) {
         synchronized (scheduledCommands) {
-            for (Iterator<Map.Entry<Command, DuplicateScheduleConfig>> it = scheduledCommands.entrySet().iterator(); it.hasNext(); ) {
-                Map.Entry<Command, DuplicateScheduleConfig> entry = it.next();
-                DuplicateScheduleConfig config = entry.getValue();
-                Command command = entry.getKey();
-
-                // if timeout
-                if (config.getTime() < currentTime) {
-                    // command is currently running
-                    if (runningCommands.contains(command)) {
-                        if (config.getBehaviour().equals(DuplicateSheduleBehaviour.SKIP)) {
-                            LOGGER.debug("Skipping duplicate running command {}", command);
-                            it.remove();
-                        } else if (config.getBehaviour().equals(DuplicateSheduleBehaviour.RUN_DUPLICATE)) {
-                            executeCommand(command);
-                            it.remove();
-                        }
-                    } else {
-                        executeCommand(command);
-                        it.remove();
-                    }
+            Command command = config.getCommand();
+
+            // rescheduled in the meantime
+            if (scheduledCommands.get(command) != config)
+                return;
+
+            // command is currently running
+            if (executorPool.isRunning(command)) {
+                if (config.getBehaviour().equals(DuplicateSheduleBehaviour.SKIP)) {
+                    LOGGER.debug("Skipping duplicate running command {}", command);
+                    scheduledCommands.remove(command);
+                } else if (config.getBehaviour().equals(DuplicateSheduleBehaviour.RUN_DUPLICATE)) {
+                    // the pool serializes equal commands - the duplicate runs right after the running one
+                    scheduledCommands.remove(command);
+                    executeCommand(command);
+                } else {
+                    // WAIT_AND_RUN_AFTER - requeued by commandFinished()
+                    config.waitingForRunning = true;
                 }
+            } else {
+                scheduledCommands.remove(command);
+                executeCommand(command);
             }
         }
+    }
+
+    /**
+     * Running command finished, requeue waiting duplicate schedule (if any and no other equal command runs).
+     */
+    private void commandFinished(Command command) {
+        synchronized (scheduledCommands) {
+            if (executorPool.isRunning(command))
+                return;
 
-        return true;
+            DuplicateScheduleConfig waiting = scheduledCommands.get(command);
+            if (waiting != null && waiting.waitingForRunning) {
+                waiting.waitingForRunning = false;
+                queue.put(waiting);
+            }
+        }
     }
 
     /**
-     * Execute this command in a separate thread.
+     * Execute this command in the executor pool.
      *
      * @param command the command to execute
      */
-    private void executeCommand(Command command) {
+    private void executeCommand(final Command command) {
         if (command instanceof WatchEventCommand)
             LOGGER.trace("Executing {}", command); // too much output for debug
         else
             LOGGER.debug("Executing {}", command);
 
-        runningCommands.add(command);
-        new CommandExecutor(command) {
+        executorPool.execute(command, new CommandExecutor(command) {
             @Override
             public void finished() {
-                runningCommands.remove(command);
+                commandFinished(command);
             }
-        }.start();
+        });
     }
 
     @Override
@@ -115,18 +169,18 @@ public class SchedulerImpl implements Scheduler {
         runner = new Thread() {
             @Override
             public void run() {
-                for (; ; ) {
-                    if (stopped || !processCommands())
-                        break;
-
-                    // wait for 100 ms
+                while (!stopped) {
+                    // wait for next deadline
+                    DuplicateScheduleConfig config;
                     try {
-                        sleep(100);
+                        config = queue.take();
                     } catch (InterruptedException e) {
                         break;
                     }
-                }
 
+                    if (!stopped)
+                        processCommand(config);
+                }
             }
         };
 
@@ -137,20 +191,35 @@ public class SchedulerImpl implements Scheduler {
     @Override
     public void stop() {
         stopped = true;
+        if (runner != null)
+            runner.interrupt();
+        executorPool.shutdown();
+        LOGGER.debug("Scheduler stopped, {}", executorPool);
     }
 
-    private static class DuplicateScheduleConfig {
-        // time when to run
-        long time;
+    private static class DuplicateScheduleConfig implements Delayed {
+        // the command
+        final Command command;
+
+        // time when to run (System.nanoTime())
+        final long time;
 
         // behaviour in case of conflict (running same command in progress)
-        DuplicateSheduleBehaviour behaviour;
+        final DuplicateSheduleBehaviour behaviour;
+
+        // timeout expired while another instance was running, wait for it to finish
+        boolean waitingForRunning;
 
-        private DuplicateScheduleConfig(long time, DuplicateSheduleBehaviour behaviour) {
+        private DuplicateScheduleConfig(Command command, long time, DuplicateSheduleBehaviour behaviour) {
+            this.command = command;
             this.time = time;
             this.behaviour = behaviour;
         }
 
+        public Command getCommand() {
+            return command;
+        }
+
         public long getTime() {
             return time;
         }
@@ -158,5 +227,16 @@ public class SchedulerImpl implements Scheduler {
         public DuplicateSheduleBehaviour getBehaviour() {
             return behaviour;
         }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            long diff = time - ((DuplicateScheduleConfig) o).time;
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
     }
 }
@@ -7,10 +7,16 @@ import org.hotswap.agent.util.classloader.URLClassLoaderHelper;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Plugin configuration.
@@ -24,13 +30,32 @@ public class PluginConfiguration {
 
     private static final String PLUGIN_CONFIGURATION = "hotswap-agent.properties";
 
-    Properties properties = new Properties();
+    // plugin name -> index of the plugin in disabled plugin bit sets of all configurations
+    private static final ConcurrentMap<String, Integer> pluginIndexes = new ConcurrentHashMap<String, Integer>();
+    private static final List<String> pluginNames = new CopyOnWriteArrayList<String>();
+
+    // plugin class -> index of the plugin name, the @Plugin annotation is read only once
+    private static final ClassValue<Integer> pluginClassIndexes = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> pluginClass) {
+            return pluginIndex(pluginClass.getAnnotation(Plugin.class).name());
+        }
+    };
+
+    // incremented on reload of any configuration (child configurations inherit properties)
+    private static final AtomicInteger version = new AtomicInteger();
+
+    // replaced on reload
+    volatile Properties properties = new Properties();
 
     // if the property is not defined in this classloader, look for parent classloader and it's configuration
     PluginConfiguration parent;
 
-    // this configuration adheres to this classloader
-    ClassLoader classLoader;
+    // this configuration adheres to this classloader, weak reference to allow caching by classloader weak keys
+    WeakReference<ClassLoader> classLoader;
+
+    // disabled plugins resolved for plugin indexes known at the time of resolution
+    private volatile DisabledPlugins disabledPlugins = DisabledPlugins.EMPTY;
 
     // the hotswap-agent.properties file (or null if not defined for this classloader)
     URL configurationURL;
@@ -40,7 +65,7 @@ public class PluginConfiguration {
 
 
     public PluginConfiguration(ClassLoader classLoader) {
-        this.classLoader = classLoader;
+        this.classLoader = new WeakReference<ClassLoader>(classLoader);
         configurationURL = classLoader.getResource(PLUGIN_CONFIGURATION);
 
         try {
@@ -56,7 +81,7 @@ public class PluginConfiguration {
 
     public PluginConfiguration(PluginConfiguration parent, ClassLoader classLoader) {
         this.parent = parent;
-        this.classLoader = classLoader;
+        this.classLoader = new WeakReference<ClassLoader>(classLoader);
 
         // search for resources not known by parent classloader (defined in THIS classloader exclusively)
         // this is necessary in case of parent classloader precedence
@@ -124,6 +149,7 @@ public class PluginConfiguration {
     }
 
     private void initExtraClassPath() {
+        ClassLoader classLoader = getClassLoader();
         URL[] extraClassPath = getExtraClasspath();
         if (extraClassPath.length > 0) {
             if (classLoader instanceof URLClassLoader) {
@@ -178,6 +204,40 @@ public class PluginConfiguration {
             return false;
     }
 
+    /**
+     * Convenience method to get property as a boolean value using Boolean.valueOf().
+     *
+     * @param property     property name
+     * @param defaultValue value to return if property is not defined or empty
+     * @return the property value
+     */
+    public boolean getPropertyBoolean(String property, boolean defaultValue) {
+        String value = getProperty(property);
+        if (value == null || value.trim().isEmpty())
+            return defaultValue;
+        return Boolean.valueOf(value.trim());
+    }
+
+    /**
+     * Convenience method to get property as an int value.
+     *
+     * @param property     property name
+     * @param defaultValue value to return if property is not defined, empty or not a number
+     * @return the property value
+     */
+    public int getPropertyInt(String property, int defaultValue) {
+        String value = getProperty(property);
+        if (value == null || value.trim().isEmpty())
+            return defaultValue;
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.error("Invalid configuration value for {}: '{}' is not a number, using default {}.", property, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
     /**
      * Get extraClasspath property as URL[].
      *
@@ -226,18 +286,91 @@ public class PluginConfiguration {
      * Check if the plugin is disabled (in this classloader)
      */
     public boolean isDisabledPlugin(String pluginName) {
-        return HotswapAgent.isPluginDisabled(pluginName) || getDisabledPlugins().contains(pluginName);
+        return isDisabledPlugin(pluginIndex(pluginName));
     }
 
     /**
      * Check if the plugin is disabled (in this classloader)
      */
     public boolean isDisabledPlugin(Class<Object> pluginClass) {
-        Plugin pluginAnnotation = pluginClass.getAnnotation(Plugin.class);
-        return isDisabledPlugin(pluginAnnotation.name());
+        return isDisabledPlugin(pluginClassIndexes.get(pluginClass).intValue());
+    }
+
+    // single bit test unless a new plugin is checked or a configuration was reloaded
+    private boolean isDisabledPlugin(int pluginIndex) {
+        DisabledPlugins resolved = disabledPlugins;
+        if (pluginIndex >= resolved.size || resolved.version != version.get())
+            resolved = resolveDisabledPlugins();
+        return resolved.disabled.get(pluginIndex);
+    }
+
+    private synchronized DisabledPlugins resolveDisabledPlugins() {
+        int currentVersion = version.get();
+        int size = pluginNames.size();
+        if (disabledPlugins.size == size && disabledPlugins.version == currentVersion)
+            return disabledPlugins;
+
+        List<String> configured = getDisabledPlugins();
+        BitSet disabled = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            String pluginName = pluginNames.get(i);
+            if (HotswapAgent.isPluginDisabled(pluginName) || configured.contains(pluginName))
+                disabled.set(i);
+        }
+
+        disabledPlugins = new DisabledPlugins(size, currentVersion, disabled);
+        return disabledPlugins;
     }
 
+    private static int pluginIndex(String pluginName) {
+        Integer index = pluginIndexes.get(pluginName);
+        if (index == null) {
+            synchronized (pluginIndexes) {
+                index = pluginIndexes.get(pluginName);
+                if (index == null) {
+                    index = pluginNames.size();
+                    pluginNames.add(pluginName);
+                    pluginIndexes.put(pluginName, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reload properties from the configuration file after a change. Plugin packages and extraClasspath
+     * are not processed again.
+     */
+    public void reload() {
+        if (configurationURL == null)
+            return;
+
+        Properties reloaded = new Properties();
+        try {
+            InputStream inputStream = configurationURL.openStream();
+            try {
+                reloaded.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error while reloading 'hotswap-agent.properties' from URL " + configurationURL, e);
+            return;
+        }
+
+        properties = reloaded;
+        version.incrementAndGet();
+        LOGGER.debug("Configuration reloaded from '{}'", configurationURL);
+    }
 
+    /**
+     * Return URL of the configuration file.
+     *
+     * @return the URL or null if no hotswap-agent.properties is defined for the classloader
+     */
+    public URL getConfigurationURL() {
+        return configurationURL;
+    }
 
     private URL[] convertToURL(String resources) {
         List<URL> ret = new ArrayList<URL>();
@@ -277,7 +410,7 @@ public class PluginConfiguration {
      * @return the classloader
      */
     public ClassLoader getClassLoader() {
-        return classLoader;
+        return classLoader.get();
     }
 
     /**
@@ -288,4 +421,21 @@ public class PluginConfiguration {
     public boolean containsPropertyFile() {
         return containsPropertyFileDirectly;
     }
+
+    /**
+     * Immutable disabled flags of plugins with index lower than size.
+     */
+    private static class DisabledPlugins {
+        static final DisabledPlugins EMPTY = new DisabledPlugins(0, -1, new BitSet());
+
+        final int size;
+        final int version;
+        final BitSet disabled;
+
+        DisabledPlugins(int size, int version, BitSet disabled) {
+            this.size = size;
+            this.version = version;
+            this.disabled = disabled;
+        }
+    }
 }
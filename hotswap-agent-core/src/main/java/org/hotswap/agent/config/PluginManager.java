@@ -1,19 +1,35 @@
 package org.hotswap.agent.config;
 
+import org.hotswap.agent.annotation.FileEvent;
 import org.hotswap.agent.command.Scheduler;
+import org.hotswap.agent.command.impl.CommandExecutorPool;
 import org.hotswap.agent.command.impl.SchedulerImpl;
 import org.hotswap.agent.logging.AgentLogger;
 import org.hotswap.agent.util.HotswapTransformer;
 import org.hotswap.agent.util.classloader.ClassLoaderDefineClassPatcher;
 import org.hotswap.agent.util.classloader.ClassLoaderPatcher;
+import org.hotswap.agent.util.classloader.ClassPoolRegistry;
+import org.hotswap.agent.util.classloader.WeakClassLoaderMap;
+import org.hotswap.agent.watch.ChangeSetCollector;
+import org.hotswap.agent.watch.ClassPoolInvalidator;
+import org.hotswap.agent.watch.WatchEventListener;
+import org.hotswap.agent.watch.WatchFileEvent;
 import org.hotswap.agent.watch.Watcher;
 import org.hotswap.agent.watch.WatcherFactory;
 
 import java.io.IOException;
 import java.lang.instrument.ClassDefinition;
 import java.lang.instrument.Instrumentation;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.ProtectionDomain;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The main agent plugin manager, well known singleton controller.
@@ -40,11 +56,13 @@ public class PluginManager {
     // ensure singleton
     private PluginManager() {
         hotswapTransformer = new HotswapTransformer();
+        classPoolRegistry = new ClassPoolRegistry();
+        hotswapTransformer.setClassPoolRegistry(classPoolRegistry);
         pluginRegistry = new PluginRegistry(this, classLoaderPatcher);
 
         // create default configuration from this classloader
         ClassLoader classLoader = getClass().getClassLoader();
-        classLoaderConfigurations.put(classLoader, new PluginConfiguration(classLoader));
+        classLoaderInitializations.put(classLoader, new ClassLoaderInitialization(new PluginConfiguration(classLoader)));
     }
 
     // the instrumentation API
@@ -85,6 +103,7 @@ public class PluginManager {
      * <ul>
      * <li>Create new resource watcher using WatcherFactory and start it in separate thread.</li>
      * <li>Create new scheduler and start it in separate thread.</li>
+     * <li>Create change set collector to batch filesystem changes.</li>
      * <li>Scan for plugins</li>
      * <li>Register HotswapTransformer with the javaagent instrumentation class</li>
      * </ul>
@@ -95,27 +114,62 @@ public class PluginManager {
         this.instrumentation = instrumentation;
         if (watcher == null) {
             try {
-                watcher = new WatcherFactory().getWatcher();
+                watcher = new WatcherFactory().getWatcher(getPluginConfiguration(getClass().getClassLoader()));
             } catch (IOException e) {
                 LOGGER.debug("Unable to create default watcher.", e);
             }
         }
         watcher.run();
+        watchConfiguration(getPluginConfiguration(getClass().getClassLoader()));
 
         if (scheduler == null) {
-            scheduler = new SchedulerImpl();
+            scheduler = new SchedulerImpl(createExecutorPool());
         }
         scheduler.run();
 
+        if (changeSetCollector == null) {
+            CommandExecutorPool executorPool = scheduler instanceof SchedulerImpl ?
+                    ((SchedulerImpl) scheduler).getExecutorPool() : createExecutorPool();
+            changeSetCollector = new ChangeSetCollector(scheduler, executorPool, getPluginConfiguration(getClass()
+                    .getClassLoader()).getPropertyInt("changeSet.settleWindow", ChangeSetCollector.DEFAULT_SETTLE_WINDOW));
+            // once per changed class file, before handlers of the change set are executed
+            changeSetCollector.addPreprocessor(getClass().getClassLoader(), new ClassPoolInvalidator(classPoolRegistry));
+        }
+
+        PluginConfiguration configuration = getPluginConfiguration(getClass().getClassLoader());
+        classPoolRegistry.setCacheLimits(
+                configuration.getPropertyInt("classPool.cacheSize", ClassPoolRegistry.DEFAULT_CACHE_SIZE),
+                configuration.getPropertyInt("classPool.cacheMaxAge", (int) ClassPoolRegistry.DEFAULT_CACHE_MAX_AGE));
+
         pluginRegistry.scanPlugins(getClass().getClassLoader(), PLUGIN_PACKAGE);
 
         LOGGER.debug("Registering transformer ");
         instrumentation.addTransformer(hotswapTransformer);
     }
 
+    // scheduler executor pool configured by agent properties
+    private CommandExecutorPool createExecutorPool() {
+        PluginConfiguration configuration = getPluginConfiguration(getClass().getClassLoader());
+        return new CommandExecutorPool(configuration.getPropertyInt("scheduler.poolSize", 0),
+                configuration.getPropertyBoolean("scheduler.virtualThreads"));
+    }
+
     ClassLoaderPatcher classLoaderPatcher = new ClassLoaderDefineClassPatcher();
-    Map<ClassLoader, PluginConfiguration> classLoaderConfigurations = new HashMap<ClassLoader, PluginConfiguration>();
-    Set<ClassLoaderInitListener> classLoaderInitListeners = new HashSet<ClassLoaderInitListener>();
+
+    // classloader -> initialization, completed with the classloader configuration
+    final WeakClassLoaderMap<ClassLoaderInitialization> classLoaderInitializations = new WeakClassLoaderMap<ClassLoaderInitialization>();
+
+    // classloader -> resolved configuration (own or of a parent), see getPluginConfiguration()
+    final WeakClassLoaderMap<PluginConfiguration> resolvedConfigurations = new WeakClassLoaderMap<PluginConfiguration>();
+
+    // incremented on each invalidation of resolved configurations, discards a configuration resolved concurrently
+    private final AtomicInteger configurationGeneration = new AtomicInteger();
+
+    // configurations with a watched configuration file (weak keys, identity of PluginConfiguration)
+    private final Set<PluginConfiguration> watchedConfigurations =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<PluginConfiguration, Boolean>()));
+
+    Set<ClassLoaderInitListener> classLoaderInitListeners = new CopyOnWriteArraySet<ClassLoaderInitListener>();
 
     public void registerClassLoaderInitListener(ClassLoaderInitListener classLoaderInitListener) {
         classLoaderInitListeners.add(classLoaderInitListener);
@@ -129,35 +183,78 @@ public class PluginManager {
         initClassLoader(classLoader, classLoader.getClass().getProtectionDomain());
     }
 
-    public void initClassLoader(ClassLoader classLoader, ProtectionDomain protectionDomain) {
-
-        if (classLoaderConfigurations.containsKey(classLoader))
+    /**
+     * Patch the classloader with plugin classes and create its configuration - only once for each classloader.
+     * <p/>
+     * The check of an initialized classloader is a single concurrent map read. Different classloaders are initialized
+     * in parallel, concurrent calls for a classloader being initialized wait for the initializing thread. A nested
+     * call from the initializing thread (class loading triggered by the patch) returns immediately.
+     *
+     * @param classLoader      the classloader
+     * @param protectionDomain protection domain for patch classes
+     */
+    public void initClassLoader(final ClassLoader classLoader, final ProtectionDomain protectionDomain) {
+        ClassLoaderInitialization initialization = classLoaderInitializations.get(classLoader);
+        if (initialization != null && initialization.configuration != null)
             return;
 
         // parent of current classloader (system/bootstrap)
         if (classLoader.equals(getClass().getClassLoader().getParent()))
             return;
 
-        // synchronize ClassLoader patching - multiple classloaders may be patched at the same time
-        // and they may synchronize loading for security reasons and introduce deadlocks
-        synchronized (this) {
-            if (classLoaderConfigurations.containsKey(classLoader))
+        if (initialization == null) {
+            ClassLoaderInitialization created = new ClassLoaderInitialization(new Callable<PluginConfiguration>() {
+                @Override
+                public PluginConfiguration call() {
+                    // transformation
+                    if (classLoaderPatcher.isPatchAvailable(classLoader)) {
+                        classLoaderPatcher.patch(getClass().getClassLoader(), PLUGIN_PACKAGE.replace(".", "/"),
+                                classLoader, protectionDomain);
+                    }
+
+                    // create new configuration for the classloader
+                    return new PluginConfiguration(getPluginConfiguration(getClass().getClassLoader()), classLoader);
+                }
+            });
+
+            initialization = classLoaderInitializations.putIfAbsent(classLoader, created);
+            if (initialization == null) {
+                created.run();
+                try {
+                    created.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // allow another attempt
+                    classLoaderInitializations.remove(classLoader, created);
+                    LOGGER.error("Unable to initialize classloader {}.", e.getCause(), classLoader);
+                    return;
+                }
+
+                // configurations resolved from the parent are no longer valid
+                invalidateConfigurations(classLoader);
+                if (watcher != null)
+                    watchConfiguration(created.configuration);
+
+                // call listeners
+                for (ClassLoaderInitListener classLoaderInitListener : classLoaderInitListeners)
+                    classLoaderInitListener.onInit(classLoader);
                 return;
-
-            // transformation
-            if (classLoaderPatcher.isPatchAvailable(classLoader)) {
-                classLoaderPatcher.patch(getClass().getClassLoader(), PLUGIN_PACKAGE.replace(".", "/"),
-                        classLoader, protectionDomain);
             }
-
-            // create new configuration for the classloader
-            PluginConfiguration configuration = new PluginConfiguration(getPluginConfiguration(getClass().getClassLoader()), classLoader);
-            classLoaderConfigurations.put(classLoader, configuration);
         }
 
-        // call listeners
-        for (ClassLoaderInitListener classLoaderInitListener : classLoaderInitListeners)
-            classLoaderInitListener.onInit(classLoader);
+        // nested call from the initializing thread
+        if (!initialization.isDone() && initialization.owner == Thread.currentThread())
+            return;
+
+        // initialized by another thread
+        try {
+            initialization.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // reported by the initializing thread
+        }
     }
 
     /**
@@ -168,18 +265,131 @@ public class PluginManager {
      */
     public void closeClassLoader(ClassLoader classLoader) {
         pluginRegistry.closeClassLoader(classLoader);
-        classLoaderConfigurations.remove(classLoader);
+        classLoaderInitializations.remove(classLoader);
+        invalidateConfigurations(classLoader);
         hotswapTransformer.closeClassLoader(classLoader);
+        classPoolRegistry.closeClassLoader(classLoader);
+        if (changeSetCollector != null)
+            changeSetCollector.closeClassLoader(classLoader);
     }
 
 
+    /**
+     * Return configuration of the classloader or of the nearest initialized parent classloader.
+     * <p/>
+     * The resolved configuration is cached by classloader until the classloader or any of its parents
+     * is initialized or closed.
+     *
+     * @param classLoader the classloader
+     * @return the configuration, null for bootstrap classloader
+     */
     public PluginConfiguration getPluginConfiguration(ClassLoader classLoader) {
+        if (classLoader == null)
+            return null;
+
+        PluginConfiguration resolved = resolvedConfigurations.get(classLoader);
+        if (resolved != null)
+            return resolved;
+
+        int generation = configurationGeneration.get();
+
         // if needed, iterate to first parent loader with a known configuration
-        ClassLoader loader = classLoader;
-        while (loader != null && !classLoaderConfigurations.containsKey(loader))
-            loader = loader.getParent();
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            ClassLoaderInitialization initialization = classLoaderInitializations.get(loader);
+            if (initialization != null && initialization.configuration != null) {
+                resolvedConfigurations.put(classLoader, initialization.configuration);
+                // a classloader initialized or closed meanwhile may have been missed
+                if (configurationGeneration.get() != generation)
+                    resolvedConfigurations.remove(classLoader, initialization.configuration);
+                return initialization.configuration;
+            }
+        }
+        return null;
+    }
+
+    // remove configurations resolved for the classloader and its descendants
+    private void invalidateConfigurations(ClassLoader classLoader) {
+        configurationGeneration.incrementAndGet();
+        for (ClassLoader resolved : resolvedConfigurations.keys()) {
+            for (ClassLoader loader = resolved; loader != null; loader = loader.getParent()) {
+                if (loader == classLoader) {
+                    resolvedConfigurations.remove(resolved);
+                    break;
+                }
+            }
+        }
+    }
 
-        return classLoaderConfigurations.get(loader);
+    // reload the configuration when hotswap-agent.properties file changes (only a file on the filesystem),
+    // each configuration is watched once
+    void watchConfiguration(final PluginConfiguration configuration) {
+        URL configurationURL = configuration.getConfigurationURL();
+        if (configurationURL == null || !"file".equals(configurationURL.getProtocol()))
+            return;
+        if (!watchedConfigurations.add(configuration))
+            return;
+
+        final Path file;
+        try {
+            file = Paths.get(configurationURL.toURI());
+        } catch (Exception e) {
+            LOGGER.debug("Unable to watch configuration file {}.", e, configurationURL);
+            return;
+        }
+
+        // single file, not the classpath tree of its directory
+        watcher.addEventListener(configuration.getClassLoader(), file.toUri(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                if (event.getEventType() != FileEvent.DELETE)
+                    configuration.reload();
+            }
+        });
+    }
+
+    /**
+     * Once-only initialization of a classloader, run by the thread which registered it.
+     */
+    static class ClassLoaderInitialization extends FutureTask<PluginConfiguration> {
+        // thread running the initialization, its nested calls do not wait. Cleared on completion, the thread
+        // (and its context classloader) must not be retained by the value of the weak classloader map.
+        volatile Thread owner = Thread.currentThread();
+
+        // set on successful completion
+        volatile PluginConfiguration configuration;
+
+        ClassLoaderInitialization(Callable<PluginConfiguration> initialization) {
+            super(initialization);
+        }
+
+        // already initialized classloader
+        ClassLoaderInitialization(PluginConfiguration configuration) {
+            super(new Callable<PluginConfiguration>() {
+                @Override
+                public PluginConfiguration call() {
+                    throw new IllegalStateException("Initialized classloader");
+                }
+            });
+            set(configuration);
+        }
+
+        @Override
+        protected void set(PluginConfiguration configuration) {
+            this.configuration = configuration;
+            super.set(configuration);
+            owner = null;
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            super.setException(t);
+            owner = null;
+        }
+
+        @Override
+        protected void done() {
+            owner = null;
+        }
     }
 
     //////////////////////////   AGENT SERVICES /////////////////////////////////////
@@ -227,6 +437,24 @@ public class PluginManager {
         return scheduler;
     }
 
+    protected ChangeSetCollector changeSetCollector;
+
+    /**
+     * Returns the change set collector service.
+     */
+    public ChangeSetCollector getChangeSetCollector() {
+        return changeSetCollector;
+    }
+
+    protected ClassPoolRegistry classPoolRegistry;
+
+    /**
+     * Returns the shared javassist ClassPool registry.
+     */
+    public ClassPoolRegistry getClassPoolRegistry() {
+        return classPoolRegistry;
+    }
+
     /**
      * Redefine the supplied set of classes using the supplied bytecode.
      *
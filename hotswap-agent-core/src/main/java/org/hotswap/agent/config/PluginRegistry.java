@@ -5,6 +5,7 @@ import org.hotswap.agent.annotation.Plugin;
 import org.hotswap.agent.annotation.handler.AnnotationProcessor;
 import org.hotswap.agent.logging.AgentLogger;
 import org.hotswap.agent.util.classloader.ClassLoaderPatcher;
+import org.hotswap.agent.util.classloader.WeakClassLoaderMap;
 import org.hotswap.agent.util.scanner.ClassPathAnnotationScanner;
 import org.hotswap.agent.util.scanner.ClassPathScanner;
 
@@ -31,6 +32,12 @@ public class PluginRegistry {
         return registeredPlugins;
     }
 
+    // plugin instance -> ClassLoader (reverse of registeredPlugins, compared by identity)
+    private final Map<Object, ClassLoader> pluginClassLoaders = Collections.synchronizedMap(new IdentityHashMap<Object, ClassLoader>());
+
+    // classloader -> parent classloaders starting with the direct parent (the parent chain is immutable)
+    private final WeakClassLoaderMap<ClassLoader[]> parentClassLoaders = new WeakClassLoaderMap<ClassLoader[]>();
+
     // plugin manager instance
     private PluginManager pluginManager;
 
@@ -154,12 +161,17 @@ public class PluginRegistry {
 
         Object pluginInstance = instantiate(clazz);
         registeredPlugins.get(clazz).put(appClassLoader, pluginInstance);
+        // register before processing annotations, init handlers resolve the classloader of the plugin
+        if (pluginInstance != null)
+            pluginClassLoaders.put(pluginInstance, appClassLoader);
 
         if (annotationProcessor.processAnnotations(pluginInstance)) {
             LOGGER.info("Plugin '{}' initialized in ClassLoader '{}'.", pluginClass, appClassLoader);
         } else {
             LOGGER.error("Plugin '{}' NOT initialized in ClassLoader '{}', error while processing annotations.", pluginClass, appClassLoader);
             registeredPlugins.get(clazz).remove(appClassLoader);
+            if (pluginInstance != null)
+                pluginClassLoaders.remove(pluginInstance);
         }
 
         return pluginInstance;
@@ -181,14 +193,14 @@ public class PluginRegistry {
                     "Please check your mapPreviousState.");
         }
 
-        if (!registeredPlugins.containsKey(pluginClass))
+        Map<ClassLoader, Object> plugins = registeredPlugins.get(pluginClass);
+        if (plugins == null)
             throw new IllegalArgumentException(String.format("Plugin %s is not known to the registry.", pluginClass));
 
-        for (Map.Entry<ClassLoader, Object> registeredClassLoaderEntry : registeredPlugins.get(pluginClass).entrySet()) {
-            if (isParentClassLoader(registeredClassLoaderEntry.getKey(), classLoader)) {
-                //noinspection unchecked
-                return (T) registeredClassLoaderEntry.getValue();
-            }
+        Object plugin = findPlugin(plugins, classLoader, true);
+        if (plugin != null) {
+            //noinspection unchecked
+            return (T) plugin;
         }
 
         // not found
@@ -204,17 +216,38 @@ public class PluginRegistry {
      * @return true/false
      */
     public boolean hasPlugin(Class<?> pluginClass, ClassLoader classLoader, boolean checkParent) {
-        if (!registeredPlugins.containsKey(pluginClass))
-            return false;
-
-        for (Map.Entry<ClassLoader, Object> registeredClassLoaderEntry : registeredPlugins.get(pluginClass).entrySet()) {
-            if (checkParent && isParentClassLoader(registeredClassLoaderEntry.getKey(), classLoader)) {
-                return true;
-            } else if (registeredClassLoaderEntry.getKey().equals(classLoader)) {
-                return true;
-            }
+        Map<ClassLoader, Object> plugins = registeredPlugins.get(pluginClass);
+        return plugins != null && findPlugin(plugins, classLoader, checkParent) != null;
+    }
+
+    // lookup the plugin in the classloader and optionally in parent classloaders, the nearest classloader first
+    private Object findPlugin(Map<ClassLoader, Object> plugins, ClassLoader classLoader, boolean checkParent) {
+        if (classLoader == null)
+            return null;
+
+        Object plugin = plugins.get(classLoader);
+        if (plugin != null || !checkParent)
+            return plugin;
+
+        for (ClassLoader parent : getParentClassLoaders(classLoader)) {
+            plugin = plugins.get(parent);
+            if (plugin != null)
+                return plugin;
         }
-        return false;
+        return null;
+    }
+
+    // memoized parent chain of the classloader
+    private ClassLoader[] getParentClassLoaders(ClassLoader classLoader) {
+        ClassLoader[] parents = parentClassLoaders.get(classLoader);
+        if (parents == null) {
+            List<ClassLoader> chain = new ArrayList<ClassLoader>();
+            for (ClassLoader parent = classLoader.getParent(); parent != null; parent = parent.getParent())
+                chain.add(parent);
+            parents = chain.toArray(new ClassLoader[chain.size()]);
+            parentClassLoaders.put(classLoader, parents);
+        }
+        return parents;
     }
 
     /**
@@ -224,11 +257,19 @@ public class PluginRegistry {
      * @return the classloader this plugin is associated with
      */
     public ClassLoader getAppClassLoader(Object plugin) {
-        // search with for loop. Maybe performance improvement to create reverse map if this is used heavily
+        ClassLoader classLoader = pluginClassLoaders.get(plugin);
+        if (classLoader != null)
+            return classLoader;
+
+        // plugin registered directly into registeredPlugins map, search with for loop and remember the result
         for (Map<ClassLoader, Object> plugins : registeredPlugins.values()) {
-            for (Map.Entry<ClassLoader, Object> entry : plugins.entrySet()) {
-                if (entry.getValue().equals(plugin))
-                    return entry.getKey();
+            synchronized (plugins) {
+                for (Map.Entry<ClassLoader, Object> entry : plugins.entrySet()) {
+                    if (entry.getValue() == plugin) {
+                        pluginClassLoaders.put(plugin, entry.getKey());
+                        return entry.getKey();
+                    }
+                }
             }
         }
 
@@ -247,16 +288,6 @@ public class PluginRegistry {
         }
     }
 
-    // check if parentClassLoader is parent of classLoader
-    private boolean isParentClassLoader(ClassLoader parentClassLoader, ClassLoader classLoader) {
-        if (parentClassLoader.equals(classLoader))
-            return true;
-        else if (classLoader.getParent() != null)
-            return isParentClassLoader(parentClassLoader, classLoader.getParent());
-        else
-            return false;
-    }
-
     /**
      * Create a new instance of the plugin.
      *
@@ -281,7 +312,10 @@ public class PluginRegistry {
      */
     public void closeClassLoader(ClassLoader classLoader) {
         for (Map<ClassLoader, Object> plugins : registeredPlugins.values()) {
-            plugins.remove(classLoader);
+            Object plugin = plugins.remove(classLoader);
+            if (plugin != null)
+                pluginClassLoaders.remove(plugin);
         }
+        parentClassLoaders.remove(classLoader);
     }
 }
@@ -10,13 +10,14 @@ import org.hotswap.agent.command.Command;
 import org.hotswap.agent.command.ReflectionCommand;
 import org.hotswap.agent.command.Scheduler;
 import org.hotswap.agent.config.PluginConfiguration;
-import org.hotswap.agent.javassist.CannotCompileException;
-import org.hotswap.agent.javassist.CtClass;
 import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.IOUtils;
 import org.hotswap.agent.util.PluginManagerInvoker;
 import org.hotswap.agent.util.classloader.*;
+import org.hotswap.agent.watch.ChangeSetCollector;
+import org.hotswap.agent.watch.ChangeSetRedefiner;
 
-import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -26,7 +27,8 @@ import java.util.Map;
  * Hotswap class changes directly via JPDA API.
  * <p/>
  * This plugin creates an instance for each classloader with autoHotswap agent property set. Then it listens
- * for .class file change and executes hotswap via JPDA API.
+ * for .class file change and executes hotswap via JPDA API (instrumentation API if no JPDA port is configured).
+ * All classes changed in one change set (e.g. a build) are reloaded together by {@link ChangeSetRedefiner}.
  *
  * @author Jiri Bubnik
  * @see HotSwapperJpda
@@ -42,36 +44,46 @@ public class HotswapperPlugin {
     @Init
     PluginManager pluginManager;
 
+    @Init
+    ChangeSetCollector changeSetCollector;
+
     // synchronize on this map to wait for previous processing
     final Map<Class<?>, byte[]> reloadMap = new HashMap<Class<?>, byte[]>();
 
     // command to do actual hotswap. Single command to merge possible multiple reload actions.
     Command hotswapCommand;
 
+    // redefines classes of whole change set, null if change sets are not available
+    ChangeSetRedefiner changeSetRedefiner;
+
     /**
      * For each changed class create a reload command.
      */
     @OnClassFileEvent(classNameRegexp = ".*", events = {FileEvent.MODIFY})
-    public void watchReload(CtClass ctClass, ClassLoader appClassLoader, URL url) throws IOException, CannotCompileException {
-        if (!ClassLoaderHelper.isClassLoaded(appClassLoader, ctClass.getName())) {
-            LOGGER.trace("Class {} not loaded yet, no need for autoHotswap, skipped URL {}", ctClass.getName(), url);
+    public void watchReload(String className, ClassLoader appClassLoader, URL url) throws URISyntaxException {
+        // all changed classes are redefined by the change set redefiner before this handler
+        if (changeSetRedefiner != null)
+            return;
+
+        if (!ClassLoaderHelper.isClassLoaded(appClassLoader, className)) {
+            LOGGER.trace("Class {} not loaded yet, no need for autoHotswap, skipped URL {}", className, url);
             return;
         }
 
-        LOGGER.debug("Class {} will be reloaded from URL {}", ctClass.getName(), url);
+        LOGGER.debug("Class {} will be reloaded from URL {}", className, url);
 
         // search for a class to reload
         Class clazz;
         try {
-            clazz  = appClassLoader.loadClass(ctClass.getName());
+            clazz  = appClassLoader.loadClass(className);
         } catch (ClassNotFoundException e) {
             LOGGER.warning("Hotswapper tries to reload class {}, which is not known to application classLoader {}.",
-                    ctClass.getName(), appClassLoader);
+                    className, appClassLoader);
             return;
         }
 
         synchronized (reloadMap) {
-            reloadMap.put(clazz, ctClass.toBytecode());
+            reloadMap.put(clazz, IOUtils.toByteArray(url.toURI()));
         }
         scheduler.scheduleCommand(hotswapCommand, 100, Scheduler.DuplicateSheduleBehaviour.SKIP);
     }
@@ -100,6 +112,20 @@ public class HotswapperPlugin {
                 }
             };
         }
+
+        if (changeSetCollector != null) {
+            // single redefinition of all changed classes, before handlers of the change set are executed
+            changeSetRedefiner = new ChangeSetRedefiner(pluginManager, appClassLoader) {
+                @Override
+                protected void redefine(Map<Class<?>, byte[]> classes) {
+                    synchronized (reloadMap) {
+                        reloadMap.putAll(classes);
+                    }
+                    hotswapCommand.executeCommand();
+                }
+            };
+            changeSetCollector.addPreprocessor(appClassLoader, changeSetRedefiner);
+        }
     }
 
     /**
@@ -0,0 +1,142 @@
+package org.hotswap.agent.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Read the class name (this_class) of a class file without javassist.
+ * <p/>
+ * The name follows the constant pool, hence the pool entries are skipped (only their lengths are read) and
+ * only the single name string is decoded. No ClassPool, CtClass or other objects are created.
+ */
+public class ClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /**
+     * @param uri class file URI
+     * @return class name in java.lang.String form
+     * @throws IOException unable to read the file or not a class file
+     */
+    public static String readClassName(URI uri) throws IOException {
+        if (IOUtils.URL_PROTOCOL_FILE.equals(uri.getScheme()))
+            return readClassName(Paths.get(uri));
+        return readClassName(ByteBuffer.wrap(IOUtils.toByteArray(uri.toURL().openStream())));
+    }
+
+    /**
+     * @param file class file
+     * @return class name in java.lang.String form
+     * @throws IOException unable to read the file or not a class file
+     */
+    public static String readClassName(Path file) throws IOException {
+        return readClassName(ByteBuffer.wrap(IOUtils.toByteArray(file)));
+    }
+
+    /**
+     * @param buffer class file content from the current position
+     * @return class name in java.lang.String form
+     * @throws IOException not a class file
+     */
+    public static String readClassName(ByteBuffer buffer) throws IOException {
+        try {
+            int start = buffer.position();
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a class file, invalid magic number.");
+            buffer.getInt(); // minor and major version
+
+            // offset of each constant pool entry (tag)
+            int count = buffer.getShort() & 0xFFFF;
+            int[] offsets = new int[count];
+            for (int i = 1; i < count; i++) {
+                offsets[i] = buffer.position();
+                int tag = buffer.get();
+                switch (tag) {
+                    case 1: // Utf8
+                        skip(buffer, buffer.getShort() & 0xFFFF);
+                        break;
+                    case 7: // Class
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        skip(buffer, 2);
+                        break;
+                    case 15: // MethodHandle
+                        skip(buffer, 3);
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        skip(buffer, 4);
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        skip(buffer, 8);
+                        i++; // takes two entries
+                        break;
+                    default:
+                        throw new IOException("Not a class file, invalid constant pool tag " + tag);
+                }
+            }
+
+            buffer.getShort(); // access flags
+            int thisClass = buffer.getShort() & 0xFFFF;
+            int classOffset = entry(offsets, thisClass);
+            if (buffer.get(classOffset) != 7)
+                throw new IOException("Not a class file, this_class is not a class entry.");
+
+            int nameOffset = entry(offsets, buffer.getShort(classOffset + 1) & 0xFFFF);
+            if (buffer.get(nameOffset) != 1)
+                throw new IOException("Not a class file, class name is not a Utf8 entry.");
+
+            String name = decode(buffer, nameOffset + 1);
+            buffer.position(start);
+            return name.replace('/', '.');
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Not a class file, unexpected end of file.", e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Not a class file, invalid constant pool.", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not a class file, invalid constant pool.", e);
+        }
+    }
+
+    private static void skip(ByteBuffer buffer, int length) {
+        buffer.position(buffer.position() + length);
+    }
+
+    private static int entry(int[] offsets, int index) throws IOException {
+        if (index <= 0 || index >= offsets.length || offsets[index] == 0)
+            throw new IOException("Not a class file, invalid constant pool index " + index);
+        return offsets[index];
+    }
+
+    // modified UTF-8 string with length prefix at the offset, ASCII without decoder
+    private static String decode(ByteBuffer buffer, int offset) throws IOException {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(offset + 2 + i);
+            if (b < 0) {
+                byte[] bytes = new byte[length + 2];
+                for (int j = 0; j < bytes.length; j++)
+                    bytes[j] = buffer.get(offset + j);
+                return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+}
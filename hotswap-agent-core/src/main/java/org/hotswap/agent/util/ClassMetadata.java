@@ -0,0 +1,132 @@
+package org.hotswap.agent.util;
+
+import org.hotswap.agent.javassist.bytecode.AccessFlag;
+import org.hotswap.agent.javassist.bytecode.AnnotationsAttribute;
+import org.hotswap.agent.javassist.bytecode.ClassFile;
+import org.hotswap.agent.javassist.bytecode.annotation.Annotation;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lightweight read only view of a class definition - name, superclass, interfaces and class annotations.
+ * <p/>
+ * Use as a parameter of @OnClassLoadEvent / @OnClassFileEvent method instead of CtClass if the method only
+ * checks the class (e.g. presence of an annotation). The class file is parsed to javassist ClassFile on first
+ * access without a ClassPool and CtClass, hence referenced classes are never resolved and the bytecode
+ * is not regenerated after the method call.
+ */
+public class ClassMetadata {
+
+    // class name in java.lang.String form
+    private final String name;
+
+    private final byte[] bytes;
+
+    // parsed on first access
+    private ClassFile classFile;
+
+    /**
+     * @param className class name in java/lang/String or java.lang.String form, null to read it from the bytecode
+     * @param bytes     class definition
+     */
+    public ClassMetadata(String className, byte[] bytes) {
+        this.name = className == null ? null : className.replace('/', '.');
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return class name in java.lang.String form
+     */
+    public String getName() {
+        if (name != null)
+            return name;
+        try {
+            return ClassFileReader.readClassName(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid class definition", e);
+        }
+    }
+
+    /**
+     * @return superclass name (java.lang.Object for an interface)
+     */
+    public String getSuperclassName() {
+        return getClassFile().getSuperclass();
+    }
+
+    /**
+     * @return names of directly implemented interfaces
+     */
+    public List<String> getInterfaceNames() {
+        return Arrays.asList(getClassFile().getInterfaces());
+    }
+
+    /**
+     * @return class access flags, see {@link AccessFlag}
+     */
+    public int getAccessFlags() {
+        return getClassFile().getAccessFlags();
+    }
+
+    public boolean isInterface() {
+        return getClassFile().isInterface();
+    }
+
+    /**
+     * @return type names of class annotations (both runtime visible and invisible)
+     */
+    public List<String> getAnnotationNames() {
+        List<String> result = new ArrayList<String>();
+        addAnnotationNames(result, AnnotationsAttribute.visibleTag);
+        addAnnotationNames(result, AnnotationsAttribute.invisibleTag);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Check if the class is annotated.
+     *
+     * @param annotationClass annotation type name
+     * @return true if a class annotation (runtime visible or invisible) of the type exists
+     */
+    public boolean hasAnnotation(String annotationClass) {
+        return getAnnotationNames().contains(annotationClass);
+    }
+
+    /**
+     * @return original class definition
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    private void addAnnotationNames(List<String> result, String tag) {
+        AnnotationsAttribute ainfo = (AnnotationsAttribute) getClassFile().getAttribute(tag);
+        if (ainfo != null) {
+            for (Annotation annot : ainfo.getAnnotations())
+                result.add(annot.getTypeName());
+        }
+    }
+
+    private synchronized ClassFile getClassFile() {
+        if (classFile == null) {
+            try {
+                classFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytes)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Invalid class definition of class " + name, e);
+            }
+        }
+        return classFile;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassMetadata{" + getName() + "}";
+    }
+}
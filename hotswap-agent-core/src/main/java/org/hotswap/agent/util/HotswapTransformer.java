@@ -3,6 +3,7 @@ package org.hotswap.agent.util;
 import org.hotswap.agent.command.Command;
 import org.hotswap.agent.config.PluginManager;
 import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.classloader.ClassPoolRegistry;
 
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
@@ -29,41 +30,45 @@ public class HotswapTransformer implements ClassFileTransformer {
             "sun.reflect.DelegatingClassLoader"
     ));
 
-    protected Map<Pattern, List<ClassFileTransformer>> registeredTransformers = new HashMap<Pattern, List<ClassFileTransformer>>();
+    // immutable snapshot of registered transformers (by classloader and regexp), replaced on each registration
+    // change. Writers are synchronized on this instance, transform() only reads the reference.
+    protected volatile TransformerRegistry transformerRegistry = TransformerRegistry.EMPTY;
 
-    // keep track about which classloader requested which transformer
-    protected Map<ClassFileTransformer, ClassLoader> classLoaderTransformers = new HashMap<ClassFileTransformer, ClassLoader>();
+    // observers of class redefinition notified after transformers
+    protected final RedefinitionBus redefinitionBus = new RedefinitionBus();
 
     protected Map<ClassLoader, Object> seenClassLoaders = new WeakHashMap<ClassLoader, Object>();
 
+    // cached class definitions to invalidate on redefinition, may be null
+    private volatile ClassPoolRegistry classPoolRegistry;
+
+    public void setClassPoolRegistry(ClassPoolRegistry classPoolRegistry) {
+        this.classPoolRegistry = classPoolRegistry;
+    }
+
     /**
      * Register a transformer for a regexp matching class names.
      * Used by {@link org.hotswap.agent.annotation.OnClassLoadEvent} annotation respective
      * {@link org.hotswap.agent.annotation.handler.OnClassLoadedHandler}.
      *
-     * @param classLoader the classloader to which this transformation is associated
+     * @param classLoader the classloader to which this transformation is associated. The transformer is applied
+     *                    only to classes defined by this classloader (or its children). If null, the transformer
+     *                    is applied to all classes and it is never unregistered by closeClassLoader().
      * @param classNameRegexp regexp to match fully qualified class name.
      *                        Because "." is any character in regexp, this will match / in the transform method as well
-     *                        (diffentence between java/lang/String and java.lang.String).
+     *                        (diffentence between java/lang/String and java.lang.String). Plain class names and
+     *                        package prefixes (e.g. "my.package.*") are indexed, see {@link TransformerIndex}.
      * @param transformer     the transformer to be called for each class matching regexp.
      */
-    public void registerTransformer(ClassLoader classLoader, String classNameRegexp, ClassFileTransformer transformer) {
+    public synchronized void registerTransformer(ClassLoader classLoader, String classNameRegexp, ClassFileTransformer transformer) {
         LOGGER.debug("Registering transformer for class regexp '{}'.", classNameRegexp);
 
-        Pattern pattern = Pattern.compile(normalizeTypeRegexp(classNameRegexp));
+        String normalizedRegexp = normalizeTypeRegexp(classNameRegexp);
 
-        // register pattern
-        List<ClassFileTransformer> transformerList = registeredTransformers.get(pattern);
-        if (transformerList == null) {
-            transformerList = new LinkedList<ClassFileTransformer>();
-            registeredTransformers.put(pattern, transformerList);
-        }
-        transformerList.add(transformer);
+        // fail fast on invalid regexp before any registration change
+        Pattern.compile(normalizedRegexp);
 
-        // register classloader association to allow classloader unregistration
-        if (classLoader != null) {
-            classLoaderTransformers.put(transformer, classLoader);
-        }
+        transformerRegistry = transformerRegistry.register(classLoader, normalizedRegexp, transformer);
     }
 
     /**
@@ -72,29 +77,39 @@ public class HotswapTransformer implements ClassFileTransformer {
      * @param classNameRegexp regexp to match fully qualified class name.
      * @param transformer     currently registered transformer
      */
-    public void removeTransformer(String classNameRegexp, ClassFileTransformer transformer) {
-        Pattern pattern = Pattern.compile(normalizeTypeRegexp(classNameRegexp));
+    public synchronized void removeTransformer(String classNameRegexp, ClassFileTransformer transformer) {
+        transformerRegistry = transformerRegistry.remove(normalizeTypeRegexp(classNameRegexp), transformer);
+    }
 
-        List<ClassFileTransformer> transformerList = registeredTransformers.get(pattern);
-        if (transformerList != null) {
-            transformerList.remove(transformer);
-        }
+    /**
+     * Register an observer of class redefinition. Unlike a transformer, the listener cannot change the class
+     * definition and is notified once per redefined class after all transformers are applied, see {@link RedefinitionBus}.
+     *
+     * @param classLoader     the classloader to which this listener is associated (null for all classes)
+     * @param classNameRegexp regexp to match fully qualified class name
+     * @param listener        the listener
+     */
+    public void registerRedefinitionListener(ClassLoader classLoader, String classNameRegexp, RedefinitionListener listener) {
+        LOGGER.debug("Registering redefinition listener for class regexp '{}'.", classNameRegexp);
+        redefinitionBus.addListener(classLoader, normalizeTypeRegexp(classNameRegexp), listener);
     }
 
     /**
-     * Remove all transformers registered with a classloader
+     * Remove registered redefinition listener.
+     *
+     * @param listener currently registered listener
+     */
+    public void removeRedefinitionListener(RedefinitionListener listener) {
+        redefinitionBus.removeListener(listener);
+    }
+
+    /**
+     * Remove all transformers and redefinition listeners registered with a classloader
      * @param classLoader
      */
-    public void closeClassLoader(ClassLoader classLoader) {
-        for (Iterator<Map.Entry<ClassFileTransformer, ClassLoader>> entryIterator = classLoaderTransformers.entrySet().iterator();
-                entryIterator.hasNext(); ) {
-            Map.Entry<ClassFileTransformer, ClassLoader> entry = entryIterator.next();
-            if (entry.getValue().equals(classLoader)) {
-                entryIterator.remove();
-                for (List<ClassFileTransformer> transformerList : registeredTransformers.values())
-                    transformerList.remove(entry.getKey());
-            }
-        }
+    public synchronized void closeClassLoader(ClassLoader classLoader) {
+        transformerRegistry = transformerRegistry.closeClassLoader(classLoader);
+        redefinitionBus.closeClassLoader(classLoader);
 
         LOGGER.debug("All transformers removed for classLoader {}", classLoader);
     }
@@ -102,10 +117,13 @@ public class HotswapTransformer implements ClassFileTransformer {
     /**
      * Main transform method called by Java instrumentation.
      * <p/>
-     * <p>It does not do the instrumentation itself, instead iterates registered transformers and compares
-     * registration class regexp - if the regexp matches, the classloader is called.
+     * <p>It does not do the instrumentation itself, instead looks up transformers registered globally or with
+     * the defining classloader hierarchy in the compiled class name index - for each matching registration
+     * class regexp the transformer is called.
      * <p/>
      * <p>Note that class bytes may be send to multiple transformers, but the order is not defined.
+     * <p/>
+     * <p>On redefinition, registered redefinition listeners are notified with the transformed class.
      *
      * @see ClassFileTransformer#transform(ClassLoader, String, Class, java.security.ProtectionDomain, byte[])
      */
@@ -117,25 +135,23 @@ public class HotswapTransformer implements ClassFileTransformer {
         // ensure classloader initialized
        ensureClassLoaderInitialized(classLoader, protectionDomain);
 
+        // cached class definition is stale
+        ClassPoolRegistry registry = classPoolRegistry;
+        if (redefiningClass != null && className != null && registry != null)
+            registry.invalidate(className);
+
         byte[] result = bytes;
         try {
-            // call transform on all registered transformers
-            for (Pattern pattern : new LinkedList<Pattern>(registeredTransformers.keySet())) {
-                if ((className != null && pattern.matcher(className).matches()) ||
-                        (redefiningClass != null && pattern.matcher(redefiningClass.getName()).matches())) {
-                    for (ClassFileTransformer transformer : new LinkedList<ClassFileTransformer>(registeredTransformers.get(pattern))) {
-                        LOGGER.trace("Transforming class '" + className +
-                                "' with transformer '" + transformer + "' " + "@ClassLoader" + classLoader + ".");
-                        result = transformer.transform(classLoader, className, redefiningClass, protectionDomain, result);
-                    }
-                }
-            }
+            // call transform on all matching transformers (registry snapshot is immutable, no copy needed)
+            result = transformerRegistry.transform(classLoader, className, redefiningClass, protectionDomain, result);
+
+            // observers get the final definition
+            if (redefiningClass != null)
+                redefinitionBus.redefined(classLoader, className, redefiningClass, protectionDomain, result);
         } catch (Throwable t) {
             LOGGER.error("Error transforming class '" + className + "'.", t);
         }
 
-
-
         return result;
     }
 
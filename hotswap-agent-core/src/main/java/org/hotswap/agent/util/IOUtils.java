@@ -1,12 +1,16 @@
 package org.hotswap.agent.util;
 
-import org.hotswap.agent.javassist.ClassPool;
-import org.hotswap.agent.javassist.CtClass;
 import org.hotswap.agent.logging.AgentLogger;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 /**
  * IO utils (similar to apache commons).
@@ -14,67 +18,222 @@ import java.net.URL;
 public class IOUtils {
     private static AgentLogger LOGGER = AgentLogger.getLogger(IOUtils.class);
 
-    // some IDEs remove and recreate whole package multiple times while recompiling -
-    // we may need to wait for a file to be available on a filesystem
-    private static int WAIT_FOR_FILE_MAX_SECONDS = 5;
-
     /** URL protocol for a file in the file system: "file" */
     public static final String URL_PROTOCOL_FILE = "file";
 
     /** URL protocol for a JBoss VFS resource: "vfs" */
     public static final String URL_PROTOCOL_VFS = "vfs";
 
+    /**
+     * Maximum time (milliseconds) to wait for a file being recreated.
+     */
+    public static final long WAIT_FOR_FILE_MAX_MILLIS = 5000;
+
+    // chunk of a channel read, larger heap buffer reads would allocate (and cache) temporary direct buffer of the size
+    private static final int CHANNEL_CHUNK = 64 * 1024;
+
     /**
      * Download URI to byte array.
-     *
-     * Wait for the file to exists up to 5 seconds - it may be recreated while IDE recompilation,
-     * automatic retry will avoid false errors.
+     * <p/>
+     * A local file is read by {@link #toByteArray(Path)}. Other URIs (e.g. JAR entry) are read from the URL stream.
      *
      * @param uri uri to process
      * @return byte array
      * @throws IllegalArgumentException for download problems
      */
     public static byte[] toByteArray(URI uri) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-
-        InputStream inputStream = null;
-        int tryCount = 0;
-        while (inputStream == null) {
+        if (URL_PROTOCOL_FILE.equals(uri.getScheme())) {
+            Path file = null;
             try {
-                inputStream = uri.toURL().openStream();
-            } catch (FileNotFoundException e) {
-                // some IDEs remove and recreate whole package multiple times while recompiling -
-                // we may need to waitForResult for the file.
-                if (tryCount > WAIT_FOR_FILE_MAX_SECONDS * 10) {
-                    LOGGER.trace("File not found, exiting with exception...", e);
+                file = Paths.get(uri);
+            } catch (RuntimeException e) {
+                // not a valid file URI, try the stream
+            }
+            if (file != null) {
+                try {
+                    return toByteArray(file);
+                } catch (NoSuchFileException e) {
+                    LOGGER.trace("File not found {}", e, uri);
                     throw new IllegalArgumentException(e);
-                } else {
-                    tryCount++;
-                    LOGGER.trace("File not found, waiting...", e);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        }
+
+        InputStream inputStream;
+        try {
+            inputStream = uri.toURL().openStream();
+        } catch (FileNotFoundException e) {
+            LOGGER.trace("File not found {}", e, uri);
+            throw new IllegalArgumentException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        try {
+            return toByteArray(inputStream);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Read a file to byte array of the file size, without intermediate buffers.
+     * <p/>
+     * Wait for the file to exist up to {@link #WAIT_FOR_FILE_MAX_MILLIS} - some IDEs remove and recreate whole
+     * package while recompiling.
+     *
+     * @param file the file
+     * @return file content
+     * @throws IOException read error or the file does not exist
+     */
+    public static byte[] toByteArray(Path file) throws IOException {
+        return toByteArray(file, WAIT_FOR_FILE_MAX_MILLIS);
+    }
+
+    /**
+     * Read a file to byte array of the file size, without intermediate buffers.
+     *
+     * @param file    the file
+     * @param timeout maximum wait in milliseconds for the file to exist, 0 to fail immediately
+     * @return file content
+     * @throws IOException read error or the file does not exist
+     */
+    public static byte[] toByteArray(Path file, long timeout) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            if (timeout <= 0 || !waitForFile(file, timeout))
+                throw e;
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8)
+                throw new IOException("File " + file + " is too large.");
+
+            byte[] bytes = new byte[(int) size];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.position() < bytes.length) {
+                buffer.limit(Math.min(buffer.position() + CHANNEL_CHUNK, bytes.length));
+                if (channel.read(buffer) < 0)
+                    break;
+            }
+
+            if (buffer.position() < bytes.length) {
+                // truncated while reading
+                return Arrays.copyOf(bytes, buffer.position());
+            } else if (channel.size() > size) {
+                // appended while reading
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length + CHANNEL_CHUNK);
+                outputStream.write(bytes);
+                outputStream.write(toByteArray(Channels.newInputStream(channel)));
+                return outputStream.toByteArray();
+            }
+            return bytes;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Wait for a file to be created. Filesystem events of the nearest existing ancestor directory wake up
+     * the check, the wait on an event is limited by growing timeout for watch services without native events.
+     *
+     * @param file    the file
+     * @param timeout maximum wait in milliseconds
+     * @return true if the file exists
+     */
+    static boolean waitForFile(Path file, long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        long backoff = 10;
+
+        WatchService watchService = null;
+        try {
+            try {
+                watchService = file.getFileSystem().newWatchService();
+            } catch (IOException e) {
+                LOGGER.trace("Unable to create watch service, waiting for {} without events.", e, file);
+            } catch (UnsupportedOperationException e) {
+                LOGGER.trace("Unable to create watch service, waiting for {} without events.", e, file);
+            }
+
+            Path watched = null;
+            while (!Files.exists(file)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+
+                long wait = Math.min(remaining, backoff);
+                backoff = Math.min(backoff * 2, 500);
+
+                Path dir = watchService == null ? null : existingAncestor(file);
+                if (dir != null && !dir.equals(watched)) {
                     try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e1) {
+                        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+                        watched = dir;
+                        // created before registration
+                        continue;
+                    } catch (IOException e) {
+                        LOGGER.trace("Unable to watch {} for {}", e, dir, file);
                     }
                 }
-            } catch (Exception e) {
-                throw new IllegalStateException(e);
+
+                LOGGER.trace("File {} not found, waiting...", file);
+                if (watchService != null && watched != null) {
+                    WatchKey key = watchService.poll(wait, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                } else {
+                    Thread.sleep(wait);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Files.exists(file);
+        } finally {
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    LOGGER.trace("Unable to close watch service", e);
+                }
             }
         }
+    }
+
+    private static Path existingAncestor(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        while (dir != null && !Files.isDirectory(dir))
+            dir = dir.getParent();
+        return dir;
+    }
 
+    /**
+     * Read the whole stream and close it.
+     *
+     * @param inputStream the stream
+     * @return stream content
+     * @throws IOException read error
+     */
+    public static byte[] toByteArray(InputStream inputStream) throws IOException {
         try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             byte[] chunk = new byte[4096];
             int bytesRead;
-            InputStream stream = uri.toURL().openStream();
-
-            while ((bytesRead = stream.read(chunk)) > 0) {
+            while ((bytesRead = inputStream.read(chunk)) > 0) {
                 outputStream.write(chunk, 0, bytesRead);
             }
-
-        } catch (IOException e) {
-            throw new IllegalArgumentException(e);
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
         }
-
-        return outputStream.toByteArray();
     }
 
     /**
@@ -108,6 +267,6 @@ public class IOUtils {
      * @throws IOException any exception on class instantiation
      */
     public static String urlToClassName(URI uri) throws IOException {
-        return ClassPool.getDefault().makeClass(uri.toURL().openStream()).getName();
+        return ClassFileReader.readClassName(uri);
     }
 }
@@ -0,0 +1,179 @@
+package org.hotswap.agent.util;
+
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Notification of class redefinition to observers which do not transform the bytecode.
+ * <p/>
+ * Many plugins only need to know that a class was redefined (e.g. to flush a framework cache) and register
+ * a catch-all class name regexp. Such observers are not chained as ClassFileTransformers - after all transformers
+ * are applied, a single {@link RedefinitionEvent} is created for the class and passed to each matching listener.
+ * The event parses the class definition at most once, regardless of the number of listeners.
+ * <p/>
+ * Listeners are scoped by classloader the same way as transformers in {@link TransformerRegistry} - a listener
+ * is notified of classes of its classloader hierarchy and of its child classloaders. Registrations
+ * are kept in an immutable snapshot replaced on each change, notification only reads the reference.
+ */
+public class RedefinitionBus {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(RedefinitionBus.class);
+
+    // regexp matching any class name, no matcher is evaluated
+    private static final String ANY_CLASS = "^.*$";
+
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    // listeners registered without classloader
+    private volatile Registration[] global = NO_REGISTRATIONS;
+
+    // classloader -> listeners registered with this classloader, unmodifiable
+    private volatile Map<ClassLoader, Registration[]> classLoaderRegistrations = Collections.emptyMap();
+
+    /**
+     * Register a listener.
+     *
+     * @param classLoader      owning classloader (notified only for classes of its hierarchy and of its children)
+     *                         or null for all classes
+     * @param normalizedRegexp class name regexp in ^regexp$ form
+     * @param listener         the listener
+     */
+    public synchronized void addListener(ClassLoader classLoader, String normalizedRegexp, RedefinitionListener listener) {
+        Registration registration = new Registration(normalizedRegexp, listener);
+        if (classLoader == null) {
+            global = add(global, registration);
+        } else {
+            Map<ClassLoader, Registration[]> copy = new LinkedHashMap<ClassLoader, Registration[]>(classLoaderRegistrations);
+            Registration[] registrations = copy.get(classLoader);
+            copy.put(classLoader, add(registrations == null ? NO_REGISTRATIONS : registrations, registration));
+            classLoaderRegistrations = Collections.unmodifiableMap(copy);
+        }
+    }
+
+    /**
+     * Remove all registrations of the listener.
+     *
+     * @param listener the listener
+     */
+    public synchronized void removeListener(RedefinitionListener listener) {
+        global = remove(global, listener);
+
+        Map<ClassLoader, Registration[]> copy = new LinkedHashMap<ClassLoader, Registration[]>(classLoaderRegistrations);
+        for (Iterator<Map.Entry<ClassLoader, Registration[]>> it = copy.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<ClassLoader, Registration[]> entry = it.next();
+            Registration[] registrations = remove(entry.getValue(), listener);
+            if (registrations.length == 0)
+                it.remove();
+            else
+                entry.setValue(registrations);
+        }
+        classLoaderRegistrations = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Remove all listeners registered with the classloader.
+     *
+     * @param classLoader the classloader
+     */
+    public synchronized void closeClassLoader(ClassLoader classLoader) {
+        if (!classLoaderRegistrations.containsKey(classLoader))
+            return;
+
+        Map<ClassLoader, Registration[]> copy = new LinkedHashMap<ClassLoader, Registration[]>(classLoaderRegistrations);
+        copy.remove(classLoader);
+        classLoaderRegistrations = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Notify all listeners registered globally, with the classloader hierarchy or with its descendants matching
+     * the class name. If neither the hierarchy nor the descendants contain any classloader with registered listeners,
+     * all listeners are notified.
+     *
+     * @param classLoader      defining classloader
+     * @param className        class name in the internal form
+     * @param redefinedClass   the class being redefined
+     * @param protectionDomain protection domain of the class
+     * @param bytes            the new class definition after all transformations
+     */
+    public void redefined(ClassLoader classLoader, String className, Class<?> redefinedClass,
+                          ProtectionDomain protectionDomain, byte[] bytes) {
+        Registration[] globalRegistrations = global;
+        Map<ClassLoader, Registration[]> registrations = classLoaderRegistrations;
+        if (globalRegistrations.length == 0 && registrations.isEmpty())
+            return;
+
+        RedefinitionEvent event = new RedefinitionEvent(classLoader, className, redefinedClass, protectionDomain, bytes);
+        notify(globalRegistrations, event);
+
+        boolean inKnownHierarchy = false;
+        if (classLoader != null) {
+            for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+                Registration[] loaderRegistrations = registrations.get(loader);
+                if (loaderRegistrations != null) {
+                    inKnownHierarchy = true;
+                    notify(loaderRegistrations, event);
+                }
+            }
+
+            // child classloaders delegating to the defining classloader
+            for (Map.Entry<ClassLoader, Registration[]> entry : registrations.entrySet()) {
+                if (TransformerRegistry.isDescendant(entry.getKey(), classLoader)) {
+                    inKnownHierarchy = true;
+                    notify(entry.getValue(), event);
+                }
+            }
+        }
+
+        if (!inKnownHierarchy) {
+            for (Registration[] loaderRegistrations : registrations.values())
+                notify(loaderRegistrations, event);
+        }
+    }
+
+    private void notify(Registration[] registrations, RedefinitionEvent event) {
+        for (Registration registration : registrations) {
+            if (registration.matches(event.getClassName())) {
+                try {
+                    registration.listener.onRedefinition(event);
+                } catch (Throwable t) {
+                    LOGGER.error("Error notifying redefinition of class '" + event.getClassName() + "'.", t);
+                }
+            }
+        }
+    }
+
+    private static Registration[] add(Registration[] registrations, Registration registration) {
+        Registration[] result = Arrays.copyOf(registrations, registrations.length + 1);
+        result[registrations.length] = registration;
+        return result;
+    }
+
+    private static Registration[] remove(Registration[] registrations, RedefinitionListener listener) {
+        List<Registration> result = new ArrayList<Registration>(registrations.length);
+        for (Registration registration : registrations) {
+            if (registration.listener != listener)
+                result.add(registration);
+        }
+        return result.size() == registrations.length ? registrations : result.toArray(new Registration[result.size()]);
+    }
+
+    /**
+     * Listener with compiled class name regexp.
+     */
+    private static class Registration {
+        // null for any class
+        final Pattern pattern;
+        final RedefinitionListener listener;
+
+        Registration(String normalizedRegexp, RedefinitionListener listener) {
+            this.pattern = ANY_CLASS.equals(normalizedRegexp) ? null : Pattern.compile(normalizedRegexp);
+            this.listener = listener;
+        }
+
+        boolean matches(String className) {
+            return pattern == null || (className != null && pattern.matcher(className).matches());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.hotswap.agent.util;
+
+import java.security.ProtectionDomain;
+
+/**
+ * Immutable descriptor of a redefined class shared by all listeners notified by {@link RedefinitionBus}.
+ * <p/>
+ * The class definition is parsed once to {@link ClassMetadata} on first access by any listener.
+ */
+public class RedefinitionEvent {
+
+    private final ClassLoader classLoader;
+
+    // class name in the internal form (java/lang/String) as passed to ClassFileTransformer
+    private final String className;
+
+    private final Class<?> redefinedClass;
+
+    private final ProtectionDomain protectionDomain;
+
+    private final byte[] bytes;
+
+    // created on first access
+    private ClassMetadata classMetadata;
+
+    public RedefinitionEvent(ClassLoader classLoader, String className, Class<?> redefinedClass,
+                             ProtectionDomain protectionDomain, byte[] bytes) {
+        this.classLoader = classLoader;
+        this.className = className;
+        this.redefinedClass = redefinedClass;
+        this.protectionDomain = protectionDomain;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return defining classloader of the class
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * @return class name in the internal form (java/lang/String)
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return the class being redefined
+     */
+    public Class<?> getRedefinedClass() {
+        return redefinedClass;
+    }
+
+    public ProtectionDomain getProtectionDomain() {
+        return protectionDomain;
+    }
+
+    /**
+     * @return the new class definition after all transformations - must not be modified
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return read only view of the new class definition, the same instance for all listeners
+     */
+    public synchronized ClassMetadata getClassMetadata() {
+        if (classMetadata == null)
+            classMetadata = new ClassMetadata(className, bytes);
+        return classMetadata;
+    }
+}
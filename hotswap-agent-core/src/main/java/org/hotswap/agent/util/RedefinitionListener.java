@@ -0,0 +1,17 @@
+package org.hotswap.agent.util;
+
+/**
+ * Observer of class redefinition registered with {@link RedefinitionBus}.
+ * <p/>
+ * Unlike a ClassFileTransformer the listener cannot change the class definition, it is notified after all
+ * transformers are applied with the final definition.
+ */
+public interface RedefinitionListener {
+
+    /**
+     * Called for each redefined class matching the listener class name regexp.
+     *
+     * @param event the redefined class, shared by all listeners
+     */
+    void onRedefinition(RedefinitionEvent event);
+}
@@ -0,0 +1,260 @@
+package org.hotswap.agent.util;
+
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled dispatch index of transformers registered by class name regexp.
+ * <p/>
+ * Most registrations are plain class names (e.g. "org.hibernate.cfg.Configuration") or a package
+ * prefix (e.g. basePackage + ".*"). Such literal regexps are stored in a character trie keyed on the class name
+ * and a class is dispatched by a single walk over its name. Only the residue of "true" regexps
+ * (alternatives, character classes, quantifiers, ...) is evaluated by a regexp matcher.
+ * <p/>
+ * In a literal regexp unescaped '.' is considered to be a name separator and it matches any of '.', '/'
+ * and '$' (transform is called with internal name java/lang/String, redefined class name is java.lang.String
+ * and '.' is commonly used for inner class in registration as well).
+ * <p/>
+ * The index is immutable, HotswapTransformer creates a new instance on each registration change.
+ */
+public class TransformerIndex {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(TransformerIndex.class);
+
+    private static final ClassFileTransformer[] NO_TRANSFORMERS = new ClassFileTransformer[0];
+
+    /**
+     * Index without any transformer.
+     */
+    public static final TransformerIndex EMPTY = new TransformerIndex(new Node(), new Pattern[0], new ClassFileTransformer[0][]);
+
+    // trie of literal class names and prefixes
+    private final Node root;
+
+    // regexps which cannot be indexed and associated transformers (same index)
+    private final Pattern[] regexps;
+    private final ClassFileTransformer[][] regexpTransformers;
+
+    private TransformerIndex(Node root, Pattern[] regexps, ClassFileTransformer[][] regexpTransformers) {
+        this.root = root;
+        this.regexps = regexps;
+        this.regexpTransformers = regexpTransformers;
+    }
+
+    /**
+     * Compile the index.
+     *
+     * @param registeredTransformers normalized class name regexp (^regexp$ form) -> transformers
+     * @return new index instance
+     */
+    public static TransformerIndex build(Map<String, List<ClassFileTransformer>> registeredTransformers) {
+        NodeBuilder rootBuilder = new NodeBuilder();
+        List<Pattern> regexps = new ArrayList<Pattern>();
+        List<ClassFileTransformer[]> regexpTransformers = new ArrayList<ClassFileTransformer[]>();
+
+        for (Map.Entry<String, List<ClassFileTransformer>> entry : registeredTransformers.entrySet()) {
+            if (entry.getValue().isEmpty())
+                continue;
+
+            Literal literal = Literal.parse(entry.getKey());
+            if (literal == null) {
+                regexps.add(Pattern.compile(entry.getKey()));
+                regexpTransformers.add(entry.getValue().toArray(new ClassFileTransformer[entry.getValue().size()]));
+            } else {
+                NodeBuilder node = rootBuilder;
+                for (int i = 0; i < literal.name.length(); i++) {
+                    node = node.child(literal.name.charAt(i));
+                }
+                if (literal.prefix)
+                    node.prefix.addAll(entry.getValue());
+                else
+                    node.exact.addAll(entry.getValue());
+            }
+        }
+
+        return new TransformerIndex(rootBuilder.build(),
+                regexps.toArray(new Pattern[regexps.size()]),
+                regexpTransformers.toArray(new ClassFileTransformer[regexpTransformers.size()][]));
+    }
+
+    /**
+     * Call all transformers matching the class name. Result of each transformer is passed to the next one.
+     * <p/>
+     * Class name is resolved from className or (if null) from redefiningClass.
+     *
+     * @see ClassFileTransformer#transform(ClassLoader, String, Class, java.security.ProtectionDomain, byte[])
+     */
+    public byte[] transform(ClassLoader classLoader, String className, Class<?> redefiningClass,
+                            ProtectionDomain protectionDomain, byte[] bytes) throws IllegalClassFormatException {
+        byte[] result = bytes;
+
+        String name = className != null ? className : (redefiningClass != null ? redefiningClass.getName() : null);
+        if (name != null) {
+            Node node = root;
+            result = transform(node.prefix, classLoader, className, redefiningClass, protectionDomain, result);
+            for (int i = 0; i < name.length() && node != null; i++) {
+                node = node.child(canonical(name.charAt(i)));
+                if (node != null)
+                    result = transform(node.prefix, classLoader, className, redefiningClass, protectionDomain, result);
+            }
+            if (node != null)
+                result = transform(node.exact, classLoader, className, redefiningClass, protectionDomain, result);
+        }
+
+        for (int i = 0; i < regexps.length; i++) {
+            Pattern pattern = regexps[i];
+            if ((className != null && pattern.matcher(className).matches()) ||
+                    (redefiningClass != null && pattern.matcher(redefiningClass.getName()).matches())) {
+                result = transform(regexpTransformers[i], classLoader, className, redefiningClass, protectionDomain, result);
+            }
+        }
+
+        return result;
+    }
+
+    private byte[] transform(ClassFileTransformer[] transformers, ClassLoader classLoader, String className,
+                             Class<?> redefiningClass, ProtectionDomain protectionDomain, byte[] bytes) throws IllegalClassFormatException {
+        byte[] result = bytes;
+        for (ClassFileTransformer transformer : transformers) {
+            if (LOGGER.isLevelEnabled(AgentLogger.Level.TRACE))
+                LOGGER.trace("Transforming class '{}' with transformer '{}' @ClassLoader {}.", className, transformer, classLoader);
+            result = transformer.transform(classLoader, className, redefiningClass, protectionDomain, result);
+        }
+        return result;
+    }
+
+    /**
+     * Check if the index contains no transformer.
+     */
+    public boolean isEmpty() {
+        return regexps.length == 0 && root.isEmpty();
+    }
+
+    // name separators are all indexed as '.'
+    private static char canonical(char c) {
+        return (c == '/' || c == '$') ? '.' : c;
+    }
+
+    /**
+     * Literal class name or prefix parsed from a regexp.
+     */
+    static class Literal {
+        final String name;
+        final boolean prefix;
+
+        Literal(String name, boolean prefix) {
+            this.name = name;
+            this.prefix = prefix;
+        }
+
+        /**
+         * Parse normalized regexp.
+         *
+         * @param regexp regexp in ^regexp$ form
+         * @return literal or null if the regexp is not a plain class name / package prefix
+         */
+        static Literal parse(String regexp) {
+            int start = regexp.startsWith("^") ? 1 : 0;
+            int end = regexp.length();
+            if (end > start && regexp.charAt(end - 1) == '$' && !isEscaped(regexp, end - 1))
+                end--;
+
+            boolean prefix = false;
+            if (end - start >= 2 && regexp.charAt(end - 1) == '*' && regexp.charAt(end - 2) == '.' && !isEscaped(regexp, end - 2)) {
+                prefix = true;
+                end -= 2;
+            }
+
+            StringBuilder name = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                char c = regexp.charAt(i);
+                if (c == '.' || c == '/') {
+                    name.append('.');
+                } else if (c == '\\') {
+                    if (i + 1 >= end)
+                        return null;
+                    char escaped = regexp.charAt(++i);
+                    if (escaped == '.' || escaped == '/' || escaped == '$')
+                        name.append('.');
+                    else
+                        return null;
+                } else if (c != '$' && Character.isJavaIdentifierPart(c)) {
+                    name.append(c);
+                } else {
+                    return null;
+                }
+            }
+
+            return new Literal(name.toString(), prefix);
+        }
+
+        // odd number of backslashes before position
+        private static boolean isEscaped(String regexp, int pos) {
+            int count = 0;
+            for (int i = pos - 1; i >= 0 && regexp.charAt(i) == '\\'; i--)
+                count++;
+            return count % 2 == 1;
+        }
+    }
+
+    /**
+     * Immutable trie node. Children are sorted by character for binary search.
+     */
+    private static class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+
+        // transformers for class name ending at this node
+        ClassFileTransformer[] exact = NO_TRANSFORMERS;
+
+        // transformers for any class name starting with this node
+        ClassFileTransformer[] prefix = NO_TRANSFORMERS;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        boolean isEmpty() {
+            return keys.length == 0 && exact.length == 0 && prefix.length == 0;
+        }
+    }
+
+    /**
+     * Mutable node used only while building the index.
+     */
+    private static class NodeBuilder {
+        TreeMap<Character, NodeBuilder> children = new TreeMap<Character, NodeBuilder>();
+        List<ClassFileTransformer> exact = new ArrayList<ClassFileTransformer>();
+        List<ClassFileTransformer> prefix = new ArrayList<ClassFileTransformer>();
+
+        NodeBuilder child(char c) {
+            NodeBuilder child = children.get(c);
+            if (child == null) {
+                child = new NodeBuilder();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        Node build() {
+            Node node = new Node();
+            node.keys = new char[children.size()];
+            node.children = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, NodeBuilder> entry : children.entrySet()) {
+                node.keys[i] = entry.getKey();
+                node.children[i++] = entry.getValue().build();
+            }
+            if (!exact.isEmpty())
+                node.exact = exact.toArray(new ClassFileTransformer[exact.size()]);
+            if (!prefix.isEmpty())
+                node.prefix = prefix.toArray(new ClassFileTransformer[prefix.size()]);
+            return node;
+        }
+    }
+}
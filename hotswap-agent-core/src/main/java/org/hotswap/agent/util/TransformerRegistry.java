@@ -0,0 +1,227 @@
+package org.hotswap.agent.util;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.*;
+
+/**
+ * Immutable snapshot of registered transformers indexed by owning classloader and class name regexp.
+ * <p/>
+ * Transformers registered without a classloader (static plugin methods) are applied to all classes. Transformers
+ * registered with a classloader are applied to classes visible to this classloader - classes defined by this
+ * classloader or by any of its parent classloaders - and to classes defined by any of its child classloaders.
+ * A class defined by a shared parent classloader (e.g. a library in the server lib directory) thus reaches
+ * transformers of all webapps delegating to it. If neither the defining classloader hierarchy nor its descendants
+ * contain any classloader with registered transformers (e.g. OSGi bundle or JBoss module classloader without parent
+ * delegation to the application classloader), all transformers are applied as there is no way to tell which
+ * ones are relevant.
+ * <p/>
+ * Each modification returns a new instance - only the modified classloader scope is rebuilt, other scopes
+ * are shared with the previous snapshot.
+ */
+public class TransformerRegistry {
+
+    /**
+     * Registry without any transformer.
+     */
+    public static final TransformerRegistry EMPTY = new TransformerRegistry(Scope.EMPTY,
+            Collections.<ClassLoader, Scope>emptyMap());
+
+    // transformers registered without classloader
+    private final Scope global;
+
+    // classloader -> transformers registered with this classloader
+    private final Map<ClassLoader, Scope> classLoaderScopes;
+
+    // classloaders and their scope indexes in registration order
+    private final ClassLoader[] allClassLoaders;
+    private final TransformerIndex[] allClassLoaderIndexes;
+
+    private TransformerRegistry(Scope global, Map<ClassLoader, Scope> classLoaderScopes) {
+        this.global = global;
+        this.classLoaderScopes = classLoaderScopes;
+
+        allClassLoaders = new ClassLoader[classLoaderScopes.size()];
+        allClassLoaderIndexes = new TransformerIndex[classLoaderScopes.size()];
+        int i = 0;
+        for (Map.Entry<ClassLoader, Scope> entry : classLoaderScopes.entrySet()) {
+            allClassLoaders[i] = entry.getKey();
+            allClassLoaderIndexes[i++] = entry.getValue().index;
+        }
+    }
+
+    /**
+     * Create new registry with the transformer added.
+     *
+     * @param classLoader      owning classloader or null for a global transformer
+     * @param normalizedRegexp class name regexp in ^regexp$ form
+     * @param transformer      the transformer
+     * @return the new registry
+     */
+    public TransformerRegistry register(ClassLoader classLoader, String normalizedRegexp, ClassFileTransformer transformer) {
+        if (classLoader == null)
+            return new TransformerRegistry(global.add(normalizedRegexp, transformer), classLoaderScopes);
+
+        Map<ClassLoader, Scope> scopes = new LinkedHashMap<ClassLoader, Scope>(classLoaderScopes);
+        Scope scope = scopes.get(classLoader);
+        scopes.put(classLoader, (scope == null ? Scope.EMPTY : scope).add(normalizedRegexp, transformer));
+        return new TransformerRegistry(global, Collections.unmodifiableMap(scopes));
+    }
+
+    /**
+     * Create new registry with the transformer removed.
+     *
+     * @param normalizedRegexp class name regexp in ^regexp$ form
+     * @param transformer      the transformer
+     * @return the new registry (this instance if the transformer is not registered)
+     */
+    public TransformerRegistry remove(String normalizedRegexp, ClassFileTransformer transformer) {
+        if (global.contains(normalizedRegexp, transformer))
+            return new TransformerRegistry(global.remove(normalizedRegexp, transformer), classLoaderScopes);
+
+        for (Map.Entry<ClassLoader, Scope> entry : classLoaderScopes.entrySet()) {
+            if (entry.getValue().contains(normalizedRegexp, transformer)) {
+                Map<ClassLoader, Scope> scopes = new LinkedHashMap<ClassLoader, Scope>(classLoaderScopes);
+                Scope scope = entry.getValue().remove(normalizedRegexp, transformer);
+                if (scope.registrations.isEmpty())
+                    scopes.remove(entry.getKey());
+                else
+                    scopes.put(entry.getKey(), scope);
+                return new TransformerRegistry(global, Collections.unmodifiableMap(scopes));
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Create new registry without any transformer registered with the classloader.
+     *
+     * @param classLoader the classloader
+     * @return the new registry (this instance if the classloader has no transformer)
+     */
+    public TransformerRegistry closeClassLoader(ClassLoader classLoader) {
+        if (!classLoaderScopes.containsKey(classLoader))
+            return this;
+
+        Map<ClassLoader, Scope> scopes = new LinkedHashMap<ClassLoader, Scope>(classLoaderScopes);
+        scopes.remove(classLoader);
+        return new TransformerRegistry(global, Collections.unmodifiableMap(scopes));
+    }
+
+    /**
+     * Call all global transformers and transformers registered with the classloader hierarchy or with
+     * its descendants matching the class name.
+     *
+     * @see ClassFileTransformer#transform(ClassLoader, String, Class, java.security.ProtectionDomain, byte[])
+     */
+    public byte[] transform(ClassLoader classLoader, String className, Class<?> redefiningClass,
+                            ProtectionDomain protectionDomain, byte[] bytes) throws IllegalClassFormatException {
+        byte[] result = global.index.transform(classLoader, className, redefiningClass, protectionDomain, bytes);
+
+        if (allClassLoaderIndexes.length == 0)
+            return result;
+
+        boolean inKnownHierarchy = false;
+        if (classLoader != null) {
+            for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+                Scope scope = classLoaderScopes.get(loader);
+                if (scope != null) {
+                    inKnownHierarchy = true;
+                    result = scope.index.transform(classLoader, className, redefiningClass, protectionDomain, result);
+                }
+            }
+
+            // child classloaders delegating to the defining classloader
+            for (int i = 0; i < allClassLoaders.length; i++) {
+                if (isDescendant(allClassLoaders[i], classLoader)) {
+                    inKnownHierarchy = true;
+                    result = allClassLoaderIndexes[i].transform(classLoader, className, redefiningClass,
+                            protectionDomain, result);
+                }
+            }
+        }
+
+        if (!inKnownHierarchy) {
+            for (TransformerIndex index : allClassLoaderIndexes)
+                result = index.transform(classLoader, className, redefiningClass, protectionDomain, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Check that the classloader delegates to the ancestor classloader via its parent chain.
+     *
+     * @param classLoader the classloader
+     * @param ancestor    the possible (not null) ancestor
+     * @return true if the ancestor is a parent, grandparent, ... of the classloader
+     */
+    static boolean isDescendant(ClassLoader classLoader, ClassLoader ancestor) {
+        for (ClassLoader loader = classLoader.getParent(); loader != null; loader = loader.getParent()) {
+            if (loader == ancestor)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return all transformers registered with the classloader.
+     *
+     * @param classLoader the classloader (null for global transformers)
+     * @return normalized regexp -> transformers (unmodifiable)
+     */
+    public Map<String, List<ClassFileTransformer>> getRegistrations(ClassLoader classLoader) {
+        Scope scope = classLoader == null ? global : classLoaderScopes.get(classLoader);
+        return scope == null ? Collections.<String, List<ClassFileTransformer>>emptyMap() : scope.registrations;
+    }
+
+    /**
+     * Classloaders with at least one registered transformer.
+     */
+    public Set<ClassLoader> getClassLoaders() {
+        return classLoaderScopes.keySet();
+    }
+
+    /**
+     * Transformers registered by one owner (classloader or global) and its compiled index.
+     */
+    private static class Scope {
+        static final Scope EMPTY = new Scope(Collections.<String, List<ClassFileTransformer>>emptyMap());
+
+        // normalized regexp -> transformers, unmodifiable
+        final Map<String, List<ClassFileTransformer>> registrations;
+        final TransformerIndex index;
+
+        Scope(Map<String, List<ClassFileTransformer>> registrations) {
+            this.registrations = registrations;
+            this.index = registrations.isEmpty() ? TransformerIndex.EMPTY : TransformerIndex.build(registrations);
+        }
+
+        boolean contains(String normalizedRegexp, ClassFileTransformer transformer) {
+            List<ClassFileTransformer> transformers = registrations.get(normalizedRegexp);
+            return transformers != null && transformers.contains(transformer);
+        }
+
+        Scope add(String normalizedRegexp, ClassFileTransformer transformer) {
+            Map<String, List<ClassFileTransformer>> copy = new LinkedHashMap<String, List<ClassFileTransformer>>(registrations);
+            List<ClassFileTransformer> transformers = copy.get(normalizedRegexp);
+            transformers = transformers == null ? new ArrayList<ClassFileTransformer>() : new ArrayList<ClassFileTransformer>(transformers);
+            transformers.add(transformer);
+            copy.put(normalizedRegexp, Collections.unmodifiableList(transformers));
+            return new Scope(Collections.unmodifiableMap(copy));
+        }
+
+        Scope remove(String normalizedRegexp, ClassFileTransformer transformer) {
+            Map<String, List<ClassFileTransformer>> copy = new LinkedHashMap<String, List<ClassFileTransformer>>(registrations);
+            List<ClassFileTransformer> transformers = new ArrayList<ClassFileTransformer>(copy.get(normalizedRegexp));
+            transformers.remove(transformer);
+            if (transformers.isEmpty())
+                copy.remove(normalizedRegexp);
+            else
+                copy.put(normalizedRegexp, Collections.unmodifiableList(transformers));
+            return new Scope(Collections.unmodifiableMap(copy));
+        }
+    }
+}
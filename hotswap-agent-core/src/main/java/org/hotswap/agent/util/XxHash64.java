@@ -0,0 +1,111 @@
+package org.hotswap.agent.util;
+
+/**
+ * 64-bit xxHash (XXH64) of a byte array - fast non-cryptographic hash, used to detect content changes.
+ * <p/>
+ * Port of the reference algorithm (https://github.com/Cyan4973/xxHash), results are identical
+ * to XXH64() of the C library.
+ */
+public class XxHash64 {
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {
+    }
+
+    /**
+     * Hash whole array with seed 0.
+     *
+     * @param bytes data
+     * @return the hash
+     */
+    public static long hash(byte[] bytes) {
+        return hash(bytes, 0, bytes.length, 0);
+    }
+
+    /**
+     * Hash part of an array.
+     *
+     * @param bytes  data
+     * @param offset start offset
+     * @param length number of bytes
+     * @param seed   the seed
+     * @return the hash
+     */
+    public static long hash(byte[] bytes, int offset, int length, long seed) {
+        int end = offset + length;
+        int i = offset;
+        long h;
+
+        if (length >= 32) {
+            long v1 = seed + PRIME64_1 + PRIME64_2;
+            long v2 = seed + PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - PRIME64_1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, readLong(bytes, i));
+                v2 = round(v2, readLong(bytes, i + 8));
+                v3 = round(v3, readLong(bytes, i + 16));
+                v4 = round(v4, readLong(bytes, i + 24));
+                i += 32;
+            } while (i <= limit);
+
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + PRIME64_5;
+        }
+
+        h += length;
+
+        for (; i + 8 <= end; i += 8) {
+            h ^= round(0, readLong(bytes, i));
+            h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+        }
+        if (i + 4 <= end) {
+            h ^= (readInt(bytes, i) & 0xFFFFFFFFL) * PRIME64_1;
+            h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+            i += 4;
+        }
+        for (; i < end; i++) {
+            h ^= (bytes[i] & 0xFF) * PRIME64_5;
+            h = Long.rotateLeft(h, 11) * PRIME64_1;
+        }
+
+        // avalanche
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+
+    // little endian
+    private static long readLong(byte[] b, int i) {
+        return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 | (b[i + 2] & 0xFFL) << 16 | (b[i + 3] & 0xFFL) << 24
+                | (b[i + 4] & 0xFFL) << 32 | (b[i + 5] & 0xFFL) << 40 | (b[i + 6] & 0xFFL) << 48 | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
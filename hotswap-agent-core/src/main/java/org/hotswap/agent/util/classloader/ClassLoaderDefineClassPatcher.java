@@ -10,6 +10,7 @@ import org.hotswap.agent.util.scanner.ScannerVisitor;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.ProtectionDomain;
+import java.util.*;
 
 /**
  * Classloader patch which will redefine each patch via Javassist in the target classloader.
@@ -22,6 +23,9 @@ import java.security.ProtectionDomain;
  * (e.g. to set some initialized property). Although the class resides in parent classloader it cannot
  * be redefined in child classloader with other definition - the classloader already knows about this class.
  * This is the reason, why plugin class cannot be executed in child classloader.
+ * <p/>
+ * Classes on the path are scanned and parsed only once for each source classloader, the same parsed classes
+ * are then defined in every patched classloader.
  *
  * @author Jiri Bubnik
  */
@@ -29,13 +33,74 @@ public class ClassLoaderDefineClassPatcher implements ClassLoaderPatcher {
 
     private static AgentLogger LOGGER = AgentLogger.getLogger(ClassLoaderDefineClassPatcher.class);
 
+    // classLoaderFrom -> path -> parsed classes (the same agent classes are copied into each application classloader)
+    private final Map<ClassLoader, Map<String, List<CtClass>>> patchClassCache = new WeakHashMap<ClassLoader, Map<String, List<CtClass>>>();
+
     @Override
     public void patch(final ClassLoader classLoaderFrom, final String pluginPath,
                       final ClassLoader classLoaderTo, final ProtectionDomain protectionDomain) {
 
+        List<CtClass> patchClasses = getPatchClasses(classLoaderFrom, pluginPath);
+
+        // defining class from a CtClass is not thread safe
+        synchronized (patchClasses) {
+            for (CtClass patchClass : patchClasses) {
+                try {
+                    // skip plugin classes
+                    // TODO this should be skipped only in patching application classloader. To copy
+                    // classes into agent classloader, Plugin class must be copied as well
+//                    if (patchClass.hasAnnotation(Plugin.class)) {
+//                        LOGGER.trace("Skipping plugin class: " + patchClass.getName());
+//                        continue;
+//                    }
+
+                    try {
+                        // force to load class in classLoaderFrom (it may not yet be loaded) and if the classLoaderTo
+                        // is parent of classLoaderFrom, after definition in classLoaderTo will classLoaderFrom return
+                        // class from parent classloader instead own definition (hence change of behaviour).
+                        classLoaderFrom.loadClass(patchClass.getName());
+                        // and load the class in classLoaderTo as well. NOw the class is defined in BOTH classloaders.
+                        patchClass.toClass(classLoaderTo, protectionDomain);
+                    } catch (CannotCompileException e) {
+                        LOGGER.trace("Skipping class definition in {} in app classloader {} - " +
+                                "class is probably already defined.", patchClass.getName(), classLoaderTo);
+                    }
+                } catch (Throwable e) {
+                    LOGGER.trace("Skipping class definition app classloader {} - " +
+                            "unknown error.", e, classLoaderTo);
+                }
+            }
+        }
+
+        LOGGER.debug("Classloader {} patched with plugin classes from agent classloader {}.", classLoaderTo, classLoaderFrom);
+
+    }
+
+    /**
+     * Scan and parse classes on the path only once for each classloader.
+     */
+    private List<CtClass> getPatchClasses(ClassLoader classLoaderFrom, String pluginPath) {
+        synchronized (patchClassCache) {
+            Map<String, List<CtClass>> pathCache = patchClassCache.get(classLoaderFrom);
+            if (pathCache == null) {
+                pathCache = new HashMap<String, List<CtClass>>();
+                patchClassCache.put(classLoaderFrom, pathCache);
+            }
+
+            List<CtClass> patchClasses = pathCache.get(pluginPath);
+            if (patchClasses == null) {
+                patchClasses = scanPatchClasses(classLoaderFrom, pluginPath);
+                pathCache.put(pluginPath, patchClasses);
+            }
+            return patchClasses;
+        }
+    }
+
+    private List<CtClass> scanPatchClasses(ClassLoader classLoaderFrom, String pluginPath) {
         final ClassPool cp = new ClassPool();
         cp.appendClassPath(new LoaderClassPath(getClass().getClassLoader()));
 
+        final List<CtClass> patchClasses = new ArrayList<CtClass>();
         Scanner scanner = new ClassPathScanner();
 
         try {
@@ -43,39 +108,19 @@ public class ClassLoaderDefineClassPatcher implements ClassLoaderPatcher {
                 @Override
                 public void visit(InputStream file) throws IOException {
                     try {
-                        CtClass patchClass = cp.makeClass(file);
-
-                        // skip plugin classes
-                        // TODO this should be skipped only in patching application classloader. To copy
-                         // classes into agent classloader, Plugin class must be copied as well
-//                        if (patchClass.hasAnnotation(Plugin.class)) {
-//                            LOGGER.trace("Skipping plugin class: " + patchClass.getName());
-//                            return;
-//                        }
-
-                        try {
-                            // force to load class in classLoaderFrom (it may not yet be loaded) and if the classLoaderTo
-                            // is parent of classLoaderFrom, after definition in classLoaderTo will classLoaderFrom return
-                            // class from parent classloader instead own definition (hence change of behaviour).
-                            classLoaderFrom.loadClass(patchClass.getName());
-                            // and load the class in classLoaderTo as well. NOw the class is defined in BOTH classloaders.
-                            patchClass.toClass(classLoaderTo, protectionDomain);
-                        } catch (CannotCompileException e) {
-                            LOGGER.trace("Skipping class definition in {} in app classloader {} - " +
-                                    "class is probably already defined.", patchClass.getName(), classLoaderTo);
-                        }
+                        patchClasses.add(cp.makeClass(file));
                     } catch (Throwable e) {
-                        LOGGER.trace("Skipping class definition app classloader {} - " +
-                                "unknown error.", e, classLoaderTo);
+                        LOGGER.trace("Skipping class definition - unable to parse class file.", e);
+                    } finally {
+                        file.close();
                     }
                 }
             });
         } catch (IOException e) {
-            LOGGER.error("Exception while scanning 'org/hotswap/agent/plugin'", e);
+            LOGGER.error("Exception while scanning '{}'", e, pluginPath);
         }
 
-        LOGGER.debug("Classloader {} patched with plugin classes from agent classloader {}.", classLoaderTo, classLoaderFrom);
-
+        return patchClasses;
     }
 
     @Override
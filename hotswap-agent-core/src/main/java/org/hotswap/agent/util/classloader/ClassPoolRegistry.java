@@ -0,0 +1,313 @@
+package org.hotswap.agent.util.classloader;
+
+import org.hotswap.agent.javassist.ClassPath;
+import org.hotswap.agent.javassist.ClassPool;
+import org.hotswap.agent.javassist.CtClass;
+import org.hotswap.agent.javassist.LoaderClassPath;
+import org.hotswap.agent.javassist.NotFoundException;
+import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Shared javassist ClassPools - one per classloader.
+ * <p/>
+ * Creating a new ClassPool with system path and loader classpath for each transformation is expensive, especially
+ * each pool looks up and reads class files of referenced classes (superclass, interfaces, method parameter types, ...)
+ * through the classloader again. The registry keeps a shared pool for each classloader (weak key) which caches
+ * only the class files (bytes) read from the classpath, not CtClass definitions - a CtClass is mutable and must not
+ * be shared. The cache is bounded by size and entry age (least recently used entries are evicted).
+ * <p/>
+ * The shared pool should be used for lookups only, each lookup parses the cached class file to a new CtClass.
+ * A transformation should obtain a new child pool by {@link #createClassPool(ClassLoader)}. The child pool creates
+ * and keeps its own CtClass for each class it returns, the class files are read from the cache of the shared pool
+ * (no classloader resource lookup). Classes created (makeClass()) or modified (renamed, frozen, ...) in the child pool
+ * are not visible to the shared pool or other child pools and are discarded with the pool.
+ * <p/>
+ * Cached definition of a class must be invalidated after the class is redefined or the class file changes
+ * ({@link #invalidate(String)}).
+ */
+public class ClassPoolRegistry {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(ClassPoolRegistry.class);
+
+    /**
+     * Default maximum number of cached class files per classloader.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    /**
+     * Default maximum time (milliseconds) of a cached class file without access.
+     */
+    public static final long DEFAULT_CACHE_MAX_AGE = 60000;
+
+    // classloader -> shared pool. Null key is bootstrap classloader.
+    private final Map<ClassLoader, SharedClassPool> classPools = new WeakHashMap<ClassLoader, SharedClassPool>();
+
+    private volatile int cacheSize = DEFAULT_CACHE_SIZE;
+
+    private volatile long cacheMaxAge = DEFAULT_CACHE_MAX_AGE;
+
+    /**
+     * Set cache limits of shared pools.
+     *
+     * @param cacheSize   maximum number of cached class files per classloader
+     * @param cacheMaxAge maximum time (milliseconds) of a cached class file without access
+     */
+    public void setCacheLimits(int cacheSize, long cacheMaxAge) {
+        this.cacheSize = cacheSize;
+        this.cacheMaxAge = cacheMaxAge;
+    }
+
+    /**
+     * Returns shared pool of the classloader. Use only for lookups, returned classes are not cached.
+     *
+     * @param classLoader the classloader (null for bootstrap classloader)
+     * @return shared pool reading class files of system path and loader classpath through the cache
+     */
+    public ClassPool getClassPool(ClassLoader classLoader) {
+        synchronized (classPools) {
+            SharedClassPool classPool = classPools.get(classLoader);
+            if (classPool == null) {
+                classPool = new SharedClassPool(classLoader);
+                classPools.put(classLoader, classPool);
+            }
+            return classPool;
+        }
+    }
+
+    /**
+     * Create a new child pool of the shared pool. All classes are defined and cached only in the child pool,
+     * class files are read through the cache of the shared pool.
+     *
+     * @param classLoader the classloader (null for bootstrap classloader)
+     * @return new pool
+     */
+    public ClassPool createClassPool(ClassLoader classLoader) {
+        return new ChildClassPool((SharedClassPool) getClassPool(classLoader), classLoader);
+    }
+
+    /**
+     * Remove cached class file of a class from all shared pools.
+     *
+     * @param className class name (java.lang.String or java/lang/String form)
+     */
+    public void invalidate(String className) {
+        String name = className.replace('/', '.');
+        List<SharedClassPool> pools;
+        synchronized (classPools) {
+            pools = new ArrayList<SharedClassPool>(classPools.values());
+        }
+        for (SharedClassPool classPool : pools) {
+            classPool.invalidate(name);
+        }
+    }
+
+    /**
+     * Remove shared pool of a classloader.
+     *
+     * @param classLoader the classloader
+     */
+    public void closeClassLoader(ClassLoader classLoader) {
+        synchronized (classPools) {
+            classPools.remove(classLoader);
+        }
+    }
+
+    /**
+     * Shared pool with bounded cache of class files.
+     */
+    private class SharedClassPool extends ClassPool {
+        // weak reference, the pool is a value of a weak map keyed by the classloader
+        final WeakReference<ClassLoader> classLoaderReference;
+
+        // locates class files on system path and loader classpath, never defines classes
+        final ClassPool source = new ClassPool(null);
+
+        // class files for this pool and child pools
+        final BoundedCache<ClassFileEntry> classFiles = new BoundedCache<ClassFileEntry>();
+
+        SharedClassPool(ClassLoader classLoader) {
+            super(null);
+            source.appendSystemPath();
+            if (classLoader != null) {
+                LOGGER.trace("Creating shared class pool for classloader {}", classLoader);
+                source.appendClassPath(new LoaderClassPath(classLoader));
+                classLoaderReference = new WeakReference<ClassLoader>(classLoader);
+            } else {
+                classLoaderReference = null;
+            }
+            appendClassPath(new SharedClassPath(this));
+        }
+
+        // associated classloader for toClass(), default for bootstrap classloader
+        @Override
+        public ClassLoader getClassLoader() {
+            return classLoaderReference == null ? super.getClassLoader() : classLoaderReference.get();
+        }
+
+        // only primitive types are cached, each lookup returns a new definition
+        @Override
+        protected void cacheCtClass(String classname, CtClass c, boolean dynamic) {
+        }
+
+        /**
+         * Returns cached class file of the class, the file is read on the first access.
+         *
+         * @param classname class name
+         * @return the class file or null if not found
+         */
+        ClassFileEntry getClassFile(String classname) {
+            ClassFileEntry classFile = classFiles.get(classname);
+            if (classFile != null)
+                return classFile;
+
+            URL url = source.find(classname);
+            if (url == null)
+                return null;
+
+            try {
+                InputStream inputStream = url.openStream();
+                try {
+                    classFile = new ClassFileEntry(url, IOUtils.toByteArray(inputStream));
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Unable to read class file {} of class {}", e, url, classname);
+                return null;
+            }
+            classFiles.put(classname, classFile);
+            return classFile;
+        }
+
+        void invalidate(String classname) {
+            classFiles.remove(classname);
+        }
+    }
+
+    /**
+     * Access ordered cache bounded by size and entry age.
+     */
+    private class BoundedCache<T> {
+        // access ordered entries
+        private final LinkedHashMap<String, CacheEntry<T>> cache = new LinkedHashMap<String, CacheEntry<T>>(16, 0.75f, true);
+
+        synchronized T get(String name) {
+            CacheEntry<T> entry = cache.get(name);
+            if (entry == null)
+                return null;
+
+            long now = System.currentTimeMillis();
+            if (now - entry.lastAccess > cacheMaxAge) {
+                cache.remove(name);
+                return null;
+            }
+            entry.lastAccess = now;
+            return entry.value;
+        }
+
+        synchronized void put(String name, T value) {
+            cache.put(name, new CacheEntry<T>(value));
+            evict();
+        }
+
+        synchronized T remove(String name) {
+            CacheEntry<T> entry = cache.remove(name);
+            return entry == null ? null : entry.value;
+        }
+
+        // remove least recently used entries over size limit and expired entries
+        private void evict() {
+            long expired = System.currentTimeMillis() - cacheMaxAge;
+            for (Iterator<CacheEntry<T>> it = cache.values().iterator(); it.hasNext(); ) {
+                CacheEntry<T> entry = it.next();
+                if (cache.size() > cacheSize || entry.lastAccess < expired)
+                    it.remove();
+                else
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Cached value and last access time.
+     */
+    private static class CacheEntry<T> {
+        final T value;
+        long lastAccess;
+
+        CacheEntry(T value) {
+            this.value = value;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Class file content and its location.
+     */
+    private static class ClassFileEntry {
+        final URL url;
+        final byte[] bytes;
+
+        ClassFileEntry(URL url, byte[] bytes) {
+            this.url = url;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Class path of the shared pool and child pools - class files from the cache of the shared pool.
+     */
+    private static class SharedClassPath implements ClassPath {
+        final SharedClassPool sharedClassPool;
+
+        SharedClassPath(SharedClassPool sharedClassPool) {
+            this.sharedClassPool = sharedClassPool;
+        }
+
+        @Override
+        public InputStream openClassfile(String classname) throws NotFoundException {
+            ClassFileEntry classFile = sharedClassPool.getClassFile(classname);
+            if (classFile == null)
+                throw new NotFoundException(classname);
+            return new ByteArrayInputStream(classFile.bytes);
+        }
+
+        @Override
+        public URL find(String classname) {
+            ClassFileEntry classFile = sharedClassPool.getClassFile(classname);
+            return classFile == null ? null : classFile.url;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Child pool for a single transformation. Each class is a new CtClass of this pool, modifications do not
+     * affect the shared pool or other child pools.
+     */
+    private static class ChildClassPool extends ClassPool {
+        final WeakReference<ClassLoader> classLoaderReference;
+
+        ChildClassPool(SharedClassPool sharedClassPool, ClassLoader classLoader) {
+            // no parent pool, definitions of the shared pool must not be returned
+            super(null);
+            appendClassPath(new SharedClassPath(sharedClassPool));
+            classLoaderReference = classLoader == null ? null : new WeakReference<ClassLoader>(classLoader);
+        }
+
+        // associated classloader for toClass(), default for bootstrap classloader
+        @Override
+        public ClassLoader getClassLoader() {
+            return classLoaderReference == null ? super.getClassLoader() : classLoaderReference.get();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.hotswap.agent.util.classloader;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent map with weakly referenced classloader keys compared by identity.
+ * <p/>
+ * Lookup is a single ConcurrentHashMap read without locking. Entries of garbage collected classloaders
+ * are removed on subsequent modifications. Null (bootstrap classloader) key is never present.
+ *
+ * @param <V> value type
+ */
+public class WeakClassLoaderMap<V> {
+
+    private final ConcurrentMap<Key, V> map = new ConcurrentHashMap<Key, V>();
+
+    // cleared keys to remove
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<ClassLoader>();
+
+    /**
+     * @param classLoader the classloader
+     * @return value or null if not present
+     */
+    public V get(ClassLoader classLoader) {
+        if (classLoader == null)
+            return null;
+        return map.get(new LookupKey(classLoader));
+    }
+
+    public boolean containsKey(ClassLoader classLoader) {
+        return get(classLoader) != null;
+    }
+
+    /**
+     * @return previous value or null
+     */
+    public V put(ClassLoader classLoader, V value) {
+        expunge();
+        return map.put(new WeakKey(classLoader, queue), value);
+    }
+
+    /**
+     * Atomically associate the value if the classloader is not present.
+     *
+     * @return current value or null if the value was associated
+     */
+    public V putIfAbsent(ClassLoader classLoader, V value) {
+        expunge();
+        return map.putIfAbsent(new WeakKey(classLoader, queue), value);
+    }
+
+    /**
+     * @return removed value or null
+     */
+    public V remove(ClassLoader classLoader) {
+        expunge();
+        if (classLoader == null)
+            return null;
+        return map.remove(new LookupKey(classLoader));
+    }
+
+    /**
+     * Remove the entry only if currently associated with the value.
+     *
+     * @return true if removed
+     */
+    public boolean remove(ClassLoader classLoader, V value) {
+        expunge();
+        return classLoader != null && map.remove(new LookupKey(classLoader), value);
+    }
+
+    /**
+     * @return snapshot of live classloader keys
+     */
+    public List<ClassLoader> keys() {
+        expunge();
+        List<ClassLoader> keys = new ArrayList<ClassLoader>(map.size());
+        for (Key key : map.keySet()) {
+            ClassLoader classLoader = key.getClassLoader();
+            if (classLoader != null)
+                keys.add(classLoader);
+        }
+        return keys;
+    }
+
+    /**
+     * @return number of entries of live classloaders
+     */
+    public int size() {
+        expunge();
+        return map.size();
+    }
+
+    private void expunge() {
+        Reference<? extends ClassLoader> reference;
+        while ((reference = queue.poll()) != null)
+            map.remove(reference);
+    }
+
+    /**
+     * Common identity equality of stored and lookup keys.
+     */
+    private interface Key {
+        ClassLoader getClassLoader();
+    }
+
+    private static boolean equals(Key key, Object o) {
+        if (key == o)
+            return true;
+        if (!(o instanceof Key))
+            return false;
+        ClassLoader classLoader = key.getClassLoader();
+        return classLoader != null && classLoader == ((Key) o).getClassLoader();
+    }
+
+    private static class WeakKey extends WeakReference<ClassLoader> implements Key {
+        // identity hash of the referent, stable after the referent is cleared
+        private final int hash;
+
+        WeakKey(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+            super(classLoader, queue);
+            if (classLoader == null)
+                throw new NullPointerException("Classloader must not be null.");
+            hash = System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public ClassLoader getClassLoader() {
+            return get();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return WeakClassLoaderMap.equals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // short lived key for lookup, no reference object is created
+    private static class LookupKey implements Key {
+        private final ClassLoader classLoader;
+
+        LookupKey(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return WeakClassLoaderMap.equals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(classLoader);
+        }
+    }
+}
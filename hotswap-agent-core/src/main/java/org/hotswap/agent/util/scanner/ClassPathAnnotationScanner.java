@@ -1,15 +1,19 @@
 package org.hotswap.agent.util.scanner;
 
+import org.hotswap.agent.annotation.Plugin;
 import org.hotswap.agent.javassist.bytecode.AnnotationsAttribute;
 import org.hotswap.agent.javassist.bytecode.ClassFile;
 import org.hotswap.agent.javassist.bytecode.annotation.Annotation;
 import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.IOUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.LinkedList;
-import java.util.List;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Scan a directory for annotation returning class names.
@@ -20,6 +24,9 @@ import java.util.List;
 public class ClassPathAnnotationScanner {
     private static AgentLogger LOGGER = AgentLogger.getLogger(ClassPathAnnotationScanner.class);
 
+    // parallel class file parsers
+    private static final int PARSER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     // Annotation name to search for
     String annotation;
 
@@ -36,6 +43,10 @@ public class ClassPathAnnotationScanner {
 
     /**
      * Run the scan - search path for files containing annotation.
+     * <p/>
+     * For @Plugin annotation the build time {@link PluginIndex} is used. Only locations without the index are
+     * scanned (the whole path if the scanner cannot scan a single location). Files are read by the scanner thread,
+     * class files are parsed in parallel.
      *
      * @param classLoader classloader to resolve path
      * @param path        path to scan {@link org.hotswap.agent.util.scanner.Scanner#scan(ClassLoader, String, ScannerVisitor)}
@@ -43,23 +54,90 @@ public class ClassPathAnnotationScanner {
      * @throws IOException scan exception.
      */
     public List<String> scanPlugins(ClassLoader classLoader, String path) throws IOException {
-        final List<String> files = new LinkedList<String>();
-        scanner.scan(classLoader, path, new ScannerVisitor() {
+        if (!Plugin.class.getName().equals(annotation))
+            return scan(classLoader, path, null);
+
+        PluginIndex index = PluginIndex.load(classLoader, path);
+        Set<String> plugins = new LinkedHashSet<String>(index.getPluginClassNames());
+
+        List<URL> unindexedLocations = index.getUnindexedLocations();
+        if (!unindexedLocations.isEmpty()) {
+            LOGGER.debug("Plugin index not available for {}, scanning path '{}'.", unindexedLocations, path);
+            plugins.addAll(scan(classLoader, path, scanner instanceof ClassPathScanner ? unindexedLocations : null));
+        }
+
+        return new ArrayList<String>(plugins);
+    }
+
+    // scan the locations (all locations of the path if null) and parse class files in parallel
+    private List<String> scan(ClassLoader classLoader, String path, List<URL> locations) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(PARSER_THREADS, new ThreadFactory() {
             @Override
-            public void visit(InputStream file) throws IOException {
-                ClassFile cf;
-                try {
-                    DataInputStream dstream = new DataInputStream(file);
-                    cf = new ClassFile(dstream);
-                } catch (IOException e) {
-                    throw new IOException("Stream not a valid classFile", e);
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "HotswapAgent-ClassPathAnnotationScanner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            ScannerVisitor visitor = new ScannerVisitor() {
+                @Override
+                public void visit(InputStream file) throws IOException {
+                    final byte[] bytes = IOUtils.toByteArray(file);
+                    results.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            return parse(bytes);
+                        }
+                    }));
                 }
+            };
 
-                if (hasAnnotation(cf))
-                    files.add(cf.getName());
+            if (locations == null) {
+                scanner.scan(classLoader, path, visitor);
+            } else {
+                for (URL location : locations)
+                    ((ClassPathScanner) scanner).scanLocation(location, visitor);
             }
-        });
-        return files;
+
+            final List<String> files = new LinkedList<String>();
+            for (Future<String> result : results) {
+                String className = getResult(result);
+                if (className != null)
+                    files.add(className);
+            }
+            return files;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // class name if the class file contains the annotation, null otherwise
+    private String parse(byte[] bytes) throws IOException {
+        ClassFile cf;
+        try {
+            DataInputStream dstream = new DataInputStream(new ByteArrayInputStream(bytes));
+            cf = new ClassFile(dstream);
+        } catch (IOException e) {
+            throw new IOException("Stream not a valid classFile", e);
+        }
+
+        return hasAnnotation(cf) ? cf.getName() : null;
+    }
+
+    private String getResult(Future<String> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Scan interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Unable to parse class file", e.getCause());
+        }
     }
 
     /**
@@ -0,0 +1,141 @@
+package org.hotswap.agent.util.scanner;
+
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Build time generated list of plugins (see {@link org.hotswap.agent.annotation.processor.PluginIndexProcessor}).
+ * <p/>
+ * Each plugin has an empty index entry in {@link #INDEX_DIRECTORY} named by the plugin class name. Each classpath
+ * location (directory or JAR) containing the plugin package may have its own index. Locations without the index
+ * (e.g. classes compiled by an IDE without annotation processing) are reported by {@link #getUnindexedLocations()}
+ * and need to be scanned. An entry of a directory index is used only if the plugin class file still exists
+ * (the index is not cleaned when the plugin class is deleted without a full rebuild).
+ */
+public class PluginIndex {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(PluginIndex.class);
+
+    /**
+     * Index directory relative to the classpath root.
+     */
+    public static final String INDEX_DIRECTORY = "META-INF/hotswap-agent/plugins/";
+
+    private final List<String> pluginClassNames;
+    private final List<URL> unindexedLocations;
+
+    private PluginIndex(List<String> pluginClassNames, List<URL> unindexedLocations) {
+        this.pluginClassNames = pluginClassNames;
+        this.unindexedLocations = unindexedLocations;
+    }
+
+    /**
+     * Read index of all locations of plugin package.
+     *
+     * @param classLoader classloader to resolve the plugin path
+     * @param pluginPath  plugin package path (e.g. org/hotswap/agent/plugin)
+     * @return index of all locations, plugins outside of plugin package are excluded
+     * @throws IOException unable to resolve plugin path
+     */
+    public static PluginIndex load(ClassLoader classLoader, String pluginPath) throws IOException {
+        String pluginPackagePrefix = pluginPath.replace('/', '.') + ".";
+        List<String> pluginClassNames = new ArrayList<String>();
+        List<URL> unindexedLocations = new ArrayList<URL>();
+        Set<String> visitedRoots = new HashSet<String>();
+
+        Enumeration<URL> en = classLoader.getResources(pluginPath);
+        while (en.hasMoreElements()) {
+            URL pluginDirURL = en.nextElement();
+            String root = getRoot(pluginDirURL, pluginPath);
+
+            // the same root with multiple directory entries
+            if (root != null && !visitedRoots.add(root))
+                continue;
+
+            boolean indexed = false;
+            try {
+                if (root != null && root.startsWith(ClassPathScanner.JAR_URL_PREFIX))
+                    indexed = readJarIndex(root, pluginPackagePrefix, pluginClassNames);
+                else if (root != null && root.startsWith(ClassPathScanner.FILE_URL_PREFIX))
+                    indexed = readDirectoryIndex(root, pluginPackagePrefix, pluginClassNames);
+            } catch (Exception e) {
+                LOGGER.debug("Unable to read plugin index at {}, the location will be scanned.", e, root);
+            }
+
+            if (indexed)
+                LOGGER.trace("Plugin index at {} loaded.", root);
+            else
+                unindexedLocations.add(pluginDirURL);
+        }
+
+        return new PluginIndex(pluginClassNames, unindexedLocations);
+    }
+
+    // classpath root URL (with trailing slash) of the plugin path location
+    private static String getRoot(URL pluginDirURL, String pluginPath) {
+        String url = pluginDirURL.toString();
+        if (url.endsWith("/"))
+            url = url.substring(0, url.length() - 1);
+        if (!url.endsWith(pluginPath))
+            return null;
+        return url.substring(0, url.length() - pluginPath.length());
+    }
+
+    private static boolean readJarIndex(String root, String pluginPackagePrefix, List<String> pluginClassNames) throws IOException {
+        // shared cached JAR file of the classloader, do not close it
+        JarFile jarFile = ((JarURLConnection) new URL(root).openConnection()).getJarFile();
+
+        boolean indexed = false;
+        for (Enumeration<JarEntry> jarEntries = jarFile.entries(); jarEntries.hasMoreElements(); ) {
+            JarEntry jarEntry = jarEntries.nextElement();
+            String name = jarEntry.getName();
+            if (name.startsWith(INDEX_DIRECTORY) && !jarEntry.isDirectory()) {
+                indexed = true;
+                String className = name.substring(INDEX_DIRECTORY.length());
+                if (className.startsWith(pluginPackagePrefix))
+                    pluginClassNames.add(className);
+            }
+        }
+        return indexed;
+    }
+
+    private static boolean readDirectoryIndex(String root, String pluginPackagePrefix, List<String> pluginClassNames) throws Exception {
+        File rootDirectory = new File(new URL(root).toURI());
+        File[] files = new File(rootDirectory, INDEX_DIRECTORY).listFiles();
+        if (files == null)
+            return false;
+
+        for (File file : files) {
+            String className = file.getName();
+            if (!file.isFile() || !className.startsWith(pluginPackagePrefix))
+                continue;
+
+            // stale entry of a deleted plugin - incremental compilation removes the class file, not the index entry
+            if (new File(rootDirectory, className.replace('.', '/') + ".class").isFile())
+                pluginClassNames.add(className);
+            else
+                LOGGER.debug("Plugin index entry {} at {} without class file ignored.", className, root);
+        }
+        return true;
+    }
+
+    /**
+     * Plugin class names from all indexed locations.
+     */
+    public List<String> getPluginClassNames() {
+        return pluginClassNames;
+    }
+
+    /**
+     * Plugin path locations without an index.
+     */
+    public List<URL> getUnindexedLocations() {
+        return unindexedLocations;
+    }
+}
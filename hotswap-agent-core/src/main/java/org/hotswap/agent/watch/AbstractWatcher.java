@@ -0,0 +1,429 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common part of watcher implementations - listener registry and event release pipeline.
+ * <p/>
+ * An implementation detects changes and passes raw events to {@link #addEvent(Path, FileEvent)}. Events
+ * are collapsed by {@link EventCoalescer}, released by {@link #releaseEvents()} in time given by
+ * {@link #getReleaseTimeout()}, filtered by {@link ContentHashFilter} and dispatched to listeners registered
+ * on the path or its ancestors.
+ * <p/>
+ * A listener may watch a single file instead of a directory tree, it receives only events of the file.
+ * <p/>
+ * A physical directory is registered once, regardless of how many listeners (plugin handlers of all classloaders)
+ * watch it - the event is dispatched to the directory registration which fans it out to its listeners. A listener
+ * which registered the directory by another path (symbolic link, non-normalized path) receives event paths
+ * under its own prefix.
+ * <p/>
+ * A newly registered directory is reconciled with the stored snapshot in a background thread, the content hash
+ * filter is seeded with the reconciled state - events on files unchanged since the JVM loaded them are dropped.
+ */
+public abstract class AbstractWatcher implements Watcher {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(AbstractWatcher.class);
+
+    // directory registrations indexed by path prefix, guarded by itself
+    private final PathTrie<DirectoryRegistration> listeners = new PathTrie<DirectoryRegistration>();
+
+    // single registration per physical directory (real path) shared by all listeners, guarded by listeners
+    private final Map<Path, DirectoryRegistration> registrations = new HashMap<Path, DirectoryRegistration>();
+
+    // registrations with listeners of a classloader, guarded by listeners
+    private final Map<ClassLoader, Set<DirectoryRegistration>> classLoaderRegistrations =
+            new HashMap<ClassLoader, Set<DirectoryRegistration>>();
+
+    // number of registered listeners, guarded by listeners
+    private int listenerCount;
+
+    // collapse event bursts of a path to a single net event
+    private final EventCoalescer coalescer = new EventCoalescer(EventCoalescer.DEFAULT_WINDOW);
+
+    // drop MODIFY events without content change, null if disabled
+    private volatile ContentHashFilter contentHashFilter = new ContentHashFilter();
+
+    // persisted state of watched directories to report changes made before start, null if disabled
+    private volatile SnapshotStore snapshotStore;
+
+    // reconciles new directories with the snapshot
+    private final ThreadPoolExecutor reconcileExecutor = createReconcileExecutor();
+
+    // serializes release of events detected by multiple threads (native watch thread and fallback poller)
+    private final Object releaseLock = new Object();
+
+    @Override
+    public synchronized void addEventListener(ClassLoader classLoader, URI pathPrefix, WatchEventListener listener) {
+        File path;
+        try {
+            // check that it is regular file
+            // toString() is weird and solves HiarchicalUriException for URI like "file:./src/resources/file.txt".
+            path = new File(pathPrefix);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Unable to watch for path {}, not a local regular file or directory.", pathPrefix);
+            LOGGER.trace("Unable to watch for path {} exception", e, pathPrefix);
+            return;
+        }
+
+        Path prefix = Paths.get(pathPrefix);
+        Path realPath = toRealPath(prefix);
+
+        DirectoryRegistration registration;
+        synchronized (listeners) {
+            registration = registrations.get(realPath);
+        }
+
+        if (registration == null) {
+            try {
+                if (path.isFile())
+                    addFile(path.toPath());
+                else
+                    addDirectory(path.toURI());
+            } catch (IOException e) {
+                LOGGER.error("Unable to watch path with prefix '{}' for changes.", e, pathPrefix);
+                return;
+            }
+
+            SnapshotStore store = snapshotStore;
+            if (store != null && path.isDirectory())
+                reconcile(store, path.toPath());
+
+            registration = new DirectoryRegistration(prefix, realPath);
+        }
+
+        synchronized (listeners) {
+            // closeClassLoader() may have removed the registration in the meantime, attach it again
+            DirectoryRegistration current = registrations.get(realPath);
+            if (current != null) {
+                registration = current;
+            } else {
+                registrations.put(realPath, registration);
+                listeners.add(registration.path, registration);
+            }
+
+            registration.add(classLoader, prefix, listener);
+            listenerCount++;
+
+            if (classLoader != null) {
+                Set<DirectoryRegistration> registered = classLoaderRegistrations.get(classLoader);
+                if (registered == null) {
+                    registered = new HashSet<DirectoryRegistration>();
+                    classLoaderRegistrations.put(classLoader, registered);
+                }
+                registered.add(registration);
+            }
+
+            LOGGER.debug("Watching '{}' for classloader {} ({} directories for {} listeners).", prefix, classLoader,
+                    registrations.size(), listenerCount);
+        }
+    }
+
+    @Override
+    public void addEventListener(ClassLoader classLoader, URL pathPrefix, WatchEventListener listener) {
+        try {
+            addEventListener(classLoader, pathPrefix.toURI(), listener);
+        } catch (URISyntaxException e) {
+            throw new RuntimeException("Unable to convert URL to URI " + pathPrefix, e);
+        }
+    }
+
+    /**
+     * Remove all listeners registered with a classloader. A directory without listeners is not dispatched to anymore.
+     *
+     * @param classLoader
+     */
+    public void closeClassLoader(ClassLoader classLoader) {
+        if (classLoader == null)
+            return;
+
+        synchronized (listeners) {
+            Set<DirectoryRegistration> registered = classLoaderRegistrations.remove(classLoader);
+            if (registered != null) {
+                for (DirectoryRegistration registration : registered) {
+                    listenerCount -= registration.remove(classLoader);
+                    if (registration.isEmpty()) {
+                        registrations.remove(registration.realPath);
+                        listeners.remove(registration.path, registration);
+                    }
+                }
+            }
+        }
+
+        LOGGER.debug("All watch listeners removed for classLoader {}", classLoader);
+    }
+
+    /**
+     * @return number of physical directories with listeners (each registered and dispatched once)
+     */
+    public int getWatchedDirectories() {
+        synchronized (listeners) {
+            return registrations.size();
+        }
+    }
+
+    /**
+     * @return number of listeners registered by addEventListener()
+     */
+    public int getListenerCount() {
+        synchronized (listeners) {
+            return listenerCount;
+        }
+    }
+
+    // the same directory may be registered via symbolic link or non-normalized path
+    private static Path toRealPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) {
+            return path.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * Start watching the directory tree.
+     *
+     * @param path directory
+     * @throws IOException the directory cannot be watched
+     */
+    public abstract void addDirectory(URI path) throws IOException;
+
+    /**
+     * Start watching a single file. Only events of the file are dispatched to its listeners, the default
+     * implementation watches the directory tree of the file.
+     *
+     * @param file the file
+     * @throws IOException the file cannot be watched
+     */
+    protected void addFile(Path file) throws IOException {
+        addDirectory(file.getParent().toUri());
+    }
+
+    /**
+     * Event coalescing stage between change detection and listeners.
+     *
+     * @return the coalescer (e.g. to change the window or read statistics)
+     */
+    public EventCoalescer getEventCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * @return filter of events without content change, null if disabled
+     */
+    public ContentHashFilter getContentHashFilter() {
+        return contentHashFilter;
+    }
+
+    /**
+     * @param contentHashFilter filter of events without content change, null to disable
+     */
+    public void setContentHashFilter(ContentHashFilter contentHashFilter) {
+        this.contentHashFilter = contentHashFilter;
+    }
+
+    /**
+     * @return persisted state of watched directories, null if disabled
+     */
+    public SnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    /**
+     * @param snapshotStore persisted state of watched directories to report changes made before start,
+     *                      null to disable
+     */
+    public void setSnapshotStore(SnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    // changes made while the JVM was not running or before the directory was registered, off the registering thread
+    private void reconcile(final SnapshotStore store, final Path dir) {
+        reconcileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (Map.Entry<Path, FileEvent> event : store.reconcile(dir, contentHashFilter).entrySet())
+                        addEvent(event.getKey(), event.getValue());
+                } catch (IOException e) {
+                    LOGGER.warning("Unable to compare directory '{}' with the stored snapshot.", e, dir);
+                }
+            }
+        });
+    }
+
+    // single daemon thread released when idle
+    private static ThreadPoolExecutor createReconcileExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "HotswapAgent-SnapshotReconcile");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Pass a detected change to the release pipeline.
+     *
+     * @param path      changed path
+     * @param eventType event type
+     */
+    protected void addEvent(Path path, FileEvent eventType) {
+        coalescer.addEvent(path, eventType, now());
+    }
+
+    /**
+     * @return time in milliseconds until the next pending event is due, -1 if there is no pending event
+     */
+    protected long getReleaseTimeout() {
+        return coalescer.getTimeout(now());
+    }
+
+    /**
+     * Dispatch due events to listeners. Content of a file is hashed only if any listener is registered on the path.
+     * <p/>
+     * May be called by multiple detecting threads, a listener is never called by two of them at once.
+     */
+    protected void releaseEvents() {
+        synchronized (releaseLock) {
+            for (Map.Entry<Path, FileEvent> event : coalescer.flush(now()).entrySet()) {
+                List<DirectoryRegistration> pathRegistrations = getRegistrations(event.getKey());
+                if (pathRegistrations.isEmpty())
+                    continue;
+
+                ContentHashFilter filter = contentHashFilter;
+                if (filter == null || filter.accept(event.getKey(), event.getValue()))
+                    callListeners(pathRegistrations, event.getValue(), event.getKey());
+            }
+        }
+    }
+
+    // notify listeners registered on the path or its ancestors about new event
+    protected void callListeners(final FileEvent eventType, final Path path) {
+        callListeners(getRegistrations(path), eventType, path);
+    }
+
+    // registrations on the path or its ancestors
+    private List<DirectoryRegistration> getRegistrations(Path path) {
+        synchronized (listeners) {
+            return listeners.get(path);
+        }
+    }
+
+    private void callListeners(List<DirectoryRegistration> pathRegistrations, FileEvent eventType, Path path) {
+        if (pathRegistrations.isEmpty())
+            return;
+
+        for (DirectoryRegistration registration : pathRegistrations)
+            registration.onEvent(eventType, path);
+    }
+
+    /**
+     * Listeners of a physical directory with reference count per owner classloader.
+     */
+    private static class DirectoryRegistration {
+        // path as registered first, key in the trie
+        final Path path;
+        final Path realPath;
+
+        // listeners, copy on write - dispatched without lock
+        final List<ListenerEntry> entries = new CopyOnWriteArrayList<ListenerEntry>();
+
+        // owner classloader -> number of listeners
+        final Map<ClassLoader, Integer> references = new HashMap<ClassLoader, Integer>();
+
+        DirectoryRegistration(Path path, Path realPath) {
+            this.path = path;
+            this.realPath = realPath;
+        }
+
+        void add(ClassLoader classLoader, Path prefix, WatchEventListener listener) {
+            entries.add(new ListenerEntry(classLoader, prefix, listener));
+            Integer count = references.get(classLoader);
+            references.put(classLoader, count == null ? 1 : count + 1);
+        }
+
+        // remove listeners of the classloader, return number of removed listeners
+        int remove(ClassLoader classLoader) {
+            Integer count = references.remove(classLoader);
+            if (count == null)
+                return 0;
+
+            List<ListenerEntry> removed = new ArrayList<ListenerEntry>(count);
+            for (ListenerEntry entry : entries) {
+                if (entry.classLoader == classLoader)
+                    removed.add(entry);
+            }
+            entries.removeAll(removed);
+            return count;
+        }
+
+        boolean isEmpty() {
+            return references.isEmpty();
+        }
+
+        // event path is under the registration path
+        void onEvent(FileEvent eventType, Path eventPath) {
+            // event is immutable, shared by all listeners with the same prefix
+            WatchFileEvent event = new HotswapWatchFileEvent(eventType, eventPath);
+            Map<Path, WatchFileEvent> rebasedEvents = null;
+
+            for (ListenerEntry entry : entries) {
+                WatchFileEvent listenerEvent = event;
+                if (!entry.prefix.equals(path)) {
+                    if (rebasedEvents == null)
+                        rebasedEvents = new HashMap<Path, WatchFileEvent>();
+                    listenerEvent = rebasedEvents.get(entry.prefix);
+                    if (listenerEvent == null) {
+                        listenerEvent = new HotswapWatchFileEvent(eventType, entry.prefix.resolve(path.relativize(eventPath)));
+                        rebasedEvents.put(entry.prefix, listenerEvent);
+                    }
+                }
+
+                try {
+                    entry.listener.onEvent(listenerEvent);
+                } catch (Throwable e) {
+                    LOGGER.error("Error in watch event '{}' listener '{}'", e, listenerEvent, entry.listener);
+                }
+            }
+        }
+    }
+
+    /**
+     * Listener with its owner classloader and the path it was registered with.
+     */
+    private static class ListenerEntry {
+        final ClassLoader classLoader;
+        final Path prefix;
+        final WatchEventListener listener;
+
+        ListenerEntry(ClassLoader classLoader, Path prefix, WatchEventListener listener) {
+            this.classLoader = classLoader;
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+    }
+
+    // monotonic time for the coalescer
+    protected static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,168 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.ClassFileReader;
+import org.hotswap.agent.util.IOUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable batch of filesystem changes collected until the filesystem settled (e.g. a whole IDE build).
+ * <p/>
+ * Contains the last event of each changed URI in order of the change. Content of changed class files is read
+ * once on first access and shared by all listeners of the change set ({@link #getClassFiles()}).
+ *
+ * @see ChangeSetCollector
+ */
+public class ChangeSet {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(ChangeSet.class);
+
+    private final List<WatchFileEvent> events;
+    private final List<WatchFileEvent> classFileEvents;
+    private final List<WatchFileEvent> resourceEvents;
+
+    // read on first access (guarded by this)
+    private List<ClassFile> classFiles;
+
+    public ChangeSet(Collection<WatchFileEvent> events) {
+        List<WatchFileEvent> classFiles = new ArrayList<WatchFileEvent>();
+        List<WatchFileEvent> resources = new ArrayList<WatchFileEvent>();
+        for (WatchFileEvent event : events) {
+            if (isClassFile(event.getURI()))
+                classFiles.add(event);
+            else
+                resources.add(event);
+        }
+
+        this.events = Collections.unmodifiableList(new ArrayList<WatchFileEvent>(events));
+        this.classFileEvents = Collections.unmodifiableList(classFiles);
+        this.resourceEvents = Collections.unmodifiableList(resources);
+    }
+
+    /**
+     * All events of the batch.
+     */
+    public List<WatchFileEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Events on .class files.
+     */
+    public List<WatchFileEvent> getClassFileEvents() {
+        return classFileEvents;
+    }
+
+    /**
+     * Events on other resources than .class files.
+     */
+    public List<WatchFileEvent> getResourceEvents() {
+        return resourceEvents;
+    }
+
+    /**
+     * Changed (created or modified) class files with their content, read once for all listeners.
+     * <p/>
+     * The change set is closed after the filesystem settled - a class file which does not exist anymore
+     * (or is not a valid class file) is skipped without waiting for it.
+     *
+     * @return readable class files in order of the change
+     */
+    public synchronized List<ClassFile> getClassFiles() {
+        if (classFiles == null) {
+            List<ClassFile> read = new ArrayList<ClassFile>();
+            for (WatchFileEvent event : classFileEvents) {
+                if (event.getEventType() == FileEvent.DELETE)
+                    continue;
+
+                URI uri = event.getURI();
+                try {
+                    byte[] bytes = readClassFile(uri);
+                    read.add(new ClassFile(event, ClassFileReader.readClassName(ByteBuffer.wrap(bytes)), bytes));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.debug("Unable to read class file {}, skipped.", e, uri);
+                } catch (IOException e) {
+                    LOGGER.debug("Unable to read class file {}, skipped.", e, uri);
+                }
+            }
+            classFiles = Collections.unmodifiableList(read);
+        }
+        return classFiles;
+    }
+
+    // local file without waiting for it to be recreated, other URIs by the URL stream
+    private static byte[] readClassFile(URI uri) throws IOException {
+        Path file = null;
+        if (IOUtils.URL_PROTOCOL_FILE.equals(uri.getScheme())) {
+            try {
+                file = Paths.get(uri);
+            } catch (RuntimeException e) {
+                // not a valid file URI, try the stream
+            }
+        }
+        return file != null ? IOUtils.toByteArray(file, 0) : IOUtils.toByteArray(uri);
+    }
+
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    private static boolean isClassFile(URI uri) {
+        String path = uri.getPath();
+        return path != null && path.endsWith(".class");
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "classFiles=" + classFileEvents.size() +
+                ", resources=" + resourceEvents.size() +
+                '}';
+    }
+
+    /**
+     * Content of a changed class file.
+     */
+    public static class ClassFile {
+        private final WatchFileEvent event;
+        private final String className;
+        private final byte[] bytes;
+
+        ClassFile(WatchFileEvent event, String className, byte[] bytes) {
+            this.event = event;
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+        public WatchFileEvent getEvent() {
+            return event;
+        }
+
+        public URI getURI() {
+            return event.getURI();
+        }
+
+        /**
+         * @return class name in java.lang.String form
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return content of the class file, shared - do not modify
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.command.Command;
+import org.hotswap.agent.command.MergeableCommand;
+import org.hotswap.agent.command.Scheduler;
+import org.hotswap.agent.command.impl.CommandExecutorPool;
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Group filesystem changes into change sets.
+ * <p/>
+ * An IDE build produces events file by file. Instead of scheduling a command for each event, event handler
+ * commands are collected until the filesystem is quiet for the settle window (or the longest handler timeout,
+ * if greater). Then the whole batch is processed in a single scheduler command:
+ * <ul>
+ * <li>preprocessors are notified with the change set, e.g. {@link ChangeSetRedefiner} redefines all changed
+ * classes in one call</li>
+ * <li>all collected commands are executed in parallel by the scheduler executor pool, the batch waits
+ * for all of them</li>
+ * <li>registered {@link ChangeSetListener}s are notified once with the whole batch</li>
+ * </ul>
+ * <p/>
+ * Equal commands within a batch are merged in the same way as the scheduler does (the last one wins,
+ * {@link MergeableCommand} is merged).
+ */
+public class ChangeSetCollector {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(ChangeSetCollector.class);
+
+    /**
+     * Default settle window in milliseconds.
+     */
+    public static final int DEFAULT_SETTLE_WINDOW = 100;
+
+    private final Scheduler scheduler;
+
+    private final CommandExecutorPool executorPool;
+
+    private final int settleWindow;
+
+    // pending batch (guarded by this)
+    private Map<Command, Command> pendingCommands = new LinkedHashMap<Command, Command>();
+    private Map<URI, WatchFileEvent> pendingEvents = new LinkedHashMap<URI, WatchFileEvent>();
+    private int pendingTimeout;
+
+    // classloader -> listeners (guarded by itself)
+    private final Map<ClassLoader, List<ChangeSetListener>> listeners = new LinkedHashMap<ClassLoader, List<ChangeSetListener>>();
+
+    // classloader -> listeners notified before the commands are executed (guarded by listeners)
+    private final Map<ClassLoader, List<ChangeSetListener>> preprocessors = new LinkedHashMap<ClassLoader, List<ChangeSetListener>>();
+
+    // single command to process the pending batch, rescheduling restarts the settle window
+    private final Command processCommand = new Command() {
+        @Override
+        public void executeCommand() {
+            processChangeSet();
+        }
+
+        @Override
+        public String toString() {
+            return "ChangeSetCollector.processChangeSet()";
+        }
+    };
+
+    /**
+     * Create the collector.
+     *
+     * @param scheduler    scheduler to run the batch
+     * @param executorPool pool executing commands of the batch (the scheduler executor pool)
+     * @param settleWindow minimal time in milliseconds without any event to close the batch
+     */
+    public ChangeSetCollector(Scheduler scheduler, CommandExecutorPool executorPool, int settleWindow) {
+        this.scheduler = scheduler;
+        this.executorPool = executorPool;
+        this.settleWindow = settleWindow;
+    }
+
+    /**
+     * Add an event to the current batch.
+     *
+     * @param event   the event
+     * @param command command to process the event as part of the batch
+     * @param timeout minimal time in milliseconds to wait for other events (the event handler timeout)
+     */
+    public void addEvent(WatchFileEvent event, Command command, int timeout) {
+        int batchTimeout;
+        synchronized (this) {
+            pendingEvents.remove(event.getURI());
+            pendingEvents.put(event.getURI(), event);
+
+            Command existing = pendingCommands.remove(command);
+            if (existing != null && command instanceof MergeableCommand)
+                command = ((MergeableCommand) command).merge(existing);
+            pendingCommands.put(command, command);
+
+            pendingTimeout = Math.max(pendingTimeout, Math.max(settleWindow, timeout));
+            batchTimeout = pendingTimeout;
+        }
+
+        // restart the settle window
+        scheduler.scheduleCommand(processCommand, batchTimeout, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
+    }
+
+    /**
+     * Register a listener notified after each change set.
+     *
+     * @param classLoader classloader owning the listener (to unregister with closeClassLoader())
+     * @param listener    the listener
+     */
+    public void addListener(ClassLoader classLoader, ChangeSetListener listener) {
+        add(listeners, classLoader, listener);
+    }
+
+    /**
+     * Register a listener notified with each change set before commands of the batch are executed.
+     *
+     * @param classLoader classloader owning the listener (to unregister with closeClassLoader())
+     * @param listener    the listener
+     */
+    public void addPreprocessor(ClassLoader classLoader, ChangeSetListener listener) {
+        add(preprocessors, classLoader, listener);
+    }
+
+    private void add(Map<ClassLoader, List<ChangeSetListener>> map, ClassLoader classLoader, ChangeSetListener listener) {
+        synchronized (listeners) {
+            List<ChangeSetListener> classLoaderListeners = map.get(classLoader);
+            if (classLoaderListeners == null) {
+                classLoaderListeners = new ArrayList<ChangeSetListener>();
+                map.put(classLoader, classLoaderListeners);
+            }
+            classLoaderListeners.add(listener);
+        }
+    }
+
+    /**
+     * Remove all listeners registered with the classloader.
+     *
+     * @param classLoader the classloader
+     */
+    public void closeClassLoader(ClassLoader classLoader) {
+        synchronized (listeners) {
+            listeners.remove(classLoader);
+            preprocessors.remove(classLoader);
+        }
+    }
+
+    /**
+     * Close the pending batch, execute its commands and notify listeners.
+     */
+    void processChangeSet() {
+        Collection<Command> commands;
+        ChangeSet changeSet;
+        synchronized (this) {
+            if (pendingEvents.isEmpty())
+                return;
+
+            commands = pendingCommands.values();
+            changeSet = new ChangeSet(pendingEvents.values());
+            pendingCommands = new LinkedHashMap<Command, Command>();
+            pendingEvents = new LinkedHashMap<URI, WatchFileEvent>();
+            pendingTimeout = 0;
+        }
+
+        LOGGER.debug("Processing {} with {} commands.", changeSet, commands.size());
+
+        notify(preprocessors, changeSet);
+
+        // a slow handler does not delay other handlers of the batch, listeners are notified after all of them
+        executorPool.executeAll(commands);
+
+        notify(listeners, changeSet);
+    }
+
+    private void notify(Map<ClassLoader, List<ChangeSetListener>> map, ChangeSet changeSet) {
+        List<ChangeSetListener> notify = new ArrayList<ChangeSetListener>();
+        synchronized (listeners) {
+            for (List<ChangeSetListener> classLoaderListeners : map.values())
+                notify.addAll(classLoaderListeners);
+        }
+        for (ChangeSetListener listener : notify) {
+            try {
+                listener.onChangeSet(changeSet);
+            } catch (Throwable e) {
+                LOGGER.error("Error processing {} by listener {}", e, changeSet, listener);
+            }
+        }
+    }
+}
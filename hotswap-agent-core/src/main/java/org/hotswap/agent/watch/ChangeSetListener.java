@@ -0,0 +1,16 @@
+package org.hotswap.agent.watch;
+
+/**
+ * Listener notified once per change set, after all watch event handlers of the batch were executed.
+ *
+ * @see ChangeSetCollector#addListener(ClassLoader, ChangeSetListener)
+ */
+public interface ChangeSetListener {
+
+    /**
+     * Change set was processed.
+     *
+     * @param changeSet the batch of changes
+     */
+    public void onChangeSet(ChangeSet changeSet);
+}
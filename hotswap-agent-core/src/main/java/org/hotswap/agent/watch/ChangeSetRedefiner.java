@@ -0,0 +1,100 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.config.PluginManager;
+import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.IOUtils;
+import org.hotswap.agent.util.classloader.ClassLoaderHelper;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Redefine all classes of a classloader changed in a change set with a single
+ * {@link PluginManager#hotswap(Map)} call (or another single redefinition, see {@link #redefine(Map)}).
+ * <p/>
+ * A class is redefined if it is already loaded by the classloader and the changed class file is the resource
+ * the classloader resolves for the class name (class files of other classloaders with the same name are skipped).
+ * Register by {@link ChangeSetCollector#addPreprocessor(ClassLoader, ChangeSetListener)} to redefine classes before
+ * plugin handlers of the change set are executed.
+ */
+public class ChangeSetRedefiner implements ChangeSetListener {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(ChangeSetRedefiner.class);
+
+    private final PluginManager pluginManager;
+
+    private final ClassLoader classLoader;
+
+    /**
+     * @param pluginManager plugin manager with instrumentation
+     * @param classLoader   classloader of the classes to redefine
+     */
+    public ChangeSetRedefiner(PluginManager pluginManager, ClassLoader classLoader) {
+        this.pluginManager = pluginManager;
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public void onChangeSet(ChangeSet changeSet) {
+        Map<Class<?>, byte[]> reloadMap = new LinkedHashMap<Class<?>, byte[]>();
+        for (ChangeSet.ClassFile classFile : changeSet.getClassFiles()) {
+            Class<?> clazz = loadedClass(classFile.getClassName(), classFile.getURI());
+            if (clazz != null)
+                reloadMap.put(clazz, classFile.getBytes());
+        }
+
+        if (!reloadMap.isEmpty())
+            redefine(reloadMap);
+    }
+
+    /**
+     * Redefine all changed classes at once, by default with the instrumentation API.
+     *
+     * @param reloadMap class -> new bytecode
+     */
+    protected void redefine(Map<Class<?>, byte[]> reloadMap) {
+        pluginManager.hotswap(reloadMap);
+    }
+
+    // class loaded by the classloader from the class file
+    private Class<?> loadedClass(String className, URI uri) {
+        if (!ClassLoaderHelper.isClassLoaded(classLoader, className)) {
+            LOGGER.trace("Class {} not loaded yet, no need to redefine, skipped URI {}", className, uri);
+            return null;
+        }
+
+        URL resource = classLoader.getResource(className.replace('.', '/') + ".class");
+        if (resource == null || !isSameFile(uri, resource)) {
+            LOGGER.trace("Class {} is loaded from {}, not from URI {}, skipped.", className, resource, uri);
+            return null;
+        }
+
+        try {
+            return classLoader.loadClass(className);
+        } catch (ClassNotFoundException e) {
+            LOGGER.warning("Class {} is not known to classLoader {}.", className, classLoader);
+            return null;
+        }
+    }
+
+    private static boolean isSameFile(URI uri, URL resource) {
+        try {
+            URI resourceUri = resource.toURI();
+            if (IOUtils.URL_PROTOCOL_FILE.equals(uri.getScheme()) && IOUtils.URL_PROTOCOL_FILE.equals(resourceUri.getScheme()))
+                return Paths.get(uri).equals(Paths.get(resourceUri));
+            return uri.equals(resourceUri);
+        } catch (URISyntaxException e) {
+            return false;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSetRedefiner{classLoader=" + classLoader + '}';
+    }
+}
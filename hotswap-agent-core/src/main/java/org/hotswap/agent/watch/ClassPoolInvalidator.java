@@ -0,0 +1,39 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.ClassFileReader;
+import org.hotswap.agent.util.classloader.ClassPoolRegistry;
+
+import java.io.IOException;
+
+/**
+ * Invalidate cached class definitions of class files changed in a change set.
+ * <p/>
+ * Registered as a change set preprocessor, each changed class file is invalidated once per change set before
+ * handler commands create CtClass instances from the shared pools.
+ */
+public class ClassPoolInvalidator implements ChangeSetListener {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(ClassPoolInvalidator.class);
+
+    private final ClassPoolRegistry classPoolRegistry;
+
+    public ClassPoolInvalidator(ClassPoolRegistry classPoolRegistry) {
+        this.classPoolRegistry = classPoolRegistry;
+    }
+
+    @Override
+    public void onChangeSet(ChangeSet changeSet) {
+        for (WatchFileEvent event : changeSet.getClassFileEvents()) {
+            // class name of a deleted file is not known, the class is invalidated on redefinition
+            if (event.getEventType() == FileEvent.DELETE)
+                continue;
+
+            try {
+                classPoolRegistry.invalidate(ClassFileReader.readClassName(event.getURI()));
+            } catch (IOException e) {
+                LOGGER.trace("Unable to read class name from URI '{}'.", e, event.getURI());
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.XxHash64;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+/**
+ * Drop MODIFY events of files rewritten with identical content.
+ * <p/>
+ * Incremental builds often rewrite class files with the same bytes, each write would trigger class redefinition
+ * and framework refresh. The filter keeps a content digest (64-bit xxHash) of each file seen by an event
+ * in a primitive open addressing map keyed by hash of the path. A MODIFY event with the same digest as
+ * the previous event on the path is suppressed. The first event on a file after start passes, unless the digest
+ * was seeded from a stored snapshot ({@link #seed(Path, long)}).
+ * <p/>
+ * Files larger than {@link #MAX_FILE_SIZE} are not hashed and always pass.
+ */
+public class ContentHashFilter {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(ContentHashFilter.class);
+
+    /**
+     * Maximum size of a hashed file.
+     */
+    public static final long MAX_FILE_SIZE = 16 * 1024 * 1024;
+
+    // path hash -> content hash (guarded by this)
+    private final LongLongMap digests = new LongLongMap();
+
+    // number of suppressed events (guarded by this)
+    private long suppressedEvents;
+
+    /**
+     * Check the event and remember the current content digest.
+     *
+     * @param path      changed path
+     * @param eventType event type
+     * @return false if the event is MODIFY and the content did not change since the previous event
+     */
+    public boolean accept(Path path, FileEvent eventType) {
+        long key = pathKey(path);
+
+        if (eventType == FileEvent.DELETE || !Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            synchronized (this) {
+                digests.remove(key);
+            }
+            return true;
+        }
+
+        long digest;
+        try {
+            if (Files.size(path) > MAX_FILE_SIZE) {
+                synchronized (this) {
+                    digests.remove(key);
+                }
+                return true;
+            }
+            digest = XxHash64.hash(Files.readAllBytes(path));
+        } catch (IOException e) {
+            // deleted in the meantime, the DELETE event follows
+            LOGGER.trace("Unable to read {} for content hash.", e, path);
+            return true;
+        }
+
+        synchronized (this) {
+            int slot = digests.indexOf(key);
+            boolean unchanged = slot >= 0 && digests.valueAt(slot) == digest;
+            digests.put(key, digest);
+            if (unchanged && eventType == FileEvent.MODIFY) {
+                suppressedEvents++;
+                LOGGER.trace("Content of {} not changed, event suppressed.", path);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Set known content digest of a file without an event, e.g. from a stored snapshot. A digest of a previous
+     * event is not replaced.
+     *
+     * @param path   the file
+     * @param digest 64-bit xxHash of the content
+     */
+    public synchronized void seed(Path path, long digest) {
+        long key = pathKey(path);
+        if (digests.indexOf(key) < 0)
+            digests.put(key, digest);
+    }
+
+    /**
+     * @return number of suppressed MODIFY events
+     */
+    public synchronized long getSuppressedEvents() {
+        return suppressedEvents;
+    }
+
+    /**
+     * @return number of files with known digest
+     */
+    public synchronized int size() {
+        return digests.size();
+    }
+
+    // 64-bit hash of the path, collisions are not expected for any real number of files
+    private static long pathKey(Path path) {
+        String name = path.toString();
+        byte[] bytes = new byte[name.length() * 2];
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            bytes[i * 2] = (byte) c;
+            bytes[i * 2 + 1] = (byte) (c >>> 8);
+        }
+        return XxHash64.hash(bytes);
+    }
+
+    /**
+     * Open addressing (linear probing) map of long keys to long values without boxing. Keys are already
+     * well distributed hashes, the key 0 is reserved for an empty slot.
+     */
+    static class LongLongMap {
+        private long[] keys = new long[64];
+        private long[] values = new long[64];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return slot of the key or -1 if not present
+         */
+        int indexOf(long key) {
+            key = nonZero(key);
+            int mask = keys.length - 1;
+            for (int i = (int) key & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key)
+                    return i;
+            }
+            return -1;
+        }
+
+        long valueAt(int slot) {
+            return values[slot];
+        }
+
+        void put(long key, long value) {
+            key = nonZero(key);
+            if ((size + 1) * 2 > keys.length)
+                resize(keys.length * 2);
+
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            for (; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        void remove(long key) {
+            int i = indexOf(key);
+            if (i < 0)
+                return;
+
+            // shift following entries of the probe sequence back
+            int mask = keys.length - 1;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = (int) keys[j] & mask;
+                boolean movable = (j > i) ? (home <= i || home > j) : (home <= i && home > j);
+                if (movable) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[capacity];
+            values = new long[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0)
+                    put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static long nonZero(long key) {
+            return key == 0 ? 1 : key;
+        }
+    }
+}
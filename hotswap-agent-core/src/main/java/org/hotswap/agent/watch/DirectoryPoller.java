@@ -0,0 +1,140 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Detect changes of directory trees by periodic rescan against a {@link DirectorySnapshot}.
+ * <p/>
+ * Changes are passed to the release pipeline of the watcher. Used as a watcher backend if there is no native
+ * watch service and as a fallback for trees the native watch service cannot register (e.g. inotify watch limit).
+ */
+public class DirectoryPoller {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(DirectoryPoller.class);
+
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    private final AbstractWatcher watcher;
+
+    private final DirectorySnapshot snapshot;
+
+    // polled directory trees
+    private final List<Path> roots = new CopyOnWriteArrayList<Path>();
+
+    // milliseconds between rescans
+    private volatile int interval;
+
+    Thread runner;
+    volatile boolean stopped;
+
+    /**
+     * @param watcher  watcher to pass the changes to
+     * @param snapshot cached state of polled trees (may be shared with the watcher)
+     * @param interval milliseconds between rescans
+     */
+    public DirectoryPoller(AbstractWatcher watcher, DirectorySnapshot snapshot, int interval) {
+        this.watcher = watcher;
+        this.snapshot = snapshot;
+        setInterval(interval);
+    }
+
+    public void setInterval(int interval) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("Polling interval must be positive: " + interval);
+        this.interval = interval;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Start polling a directory tree. The current state is indexed, changes are reported from the next rescan.
+     *
+     * @param root the directory
+     * @throws IOException the path is not a directory
+     */
+    public void addRoot(Path root) throws IOException {
+        if (isPolled(root))
+            return;
+        if (!Files.isDirectory(root))
+            throw new NotDirectoryException(root.toString());
+
+        snapshot.add(root);
+        roots.add(root);
+        LOGGER.debug("Polling directory '{}' for changes every {}ms.", root, interval);
+    }
+
+    /**
+     * @param path directory
+     * @return true if the directory is inside a polled tree
+     */
+    public boolean isPolled(Path path) {
+        for (Path root : roots) {
+            if (path.startsWith(root))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rescan all polled trees and pass changes to the watcher.
+     */
+    public void poll() {
+        for (Path root : roots) {
+            for (Map.Entry<Path, FileEvent> event : snapshot.rescan(root).entrySet())
+                watcher.addEvent(event.getKey(), event.getValue());
+        }
+    }
+
+    /**
+     * Start polling in a daemon thread. Coalesced events are released between rescans.
+     */
+    public synchronized void start() {
+        if (runner != null)
+            return;
+
+        runner = new Thread() {
+            @Override
+            public void run() {
+                long nextPoll = AbstractWatcher.now();
+                while (!stopped) {
+                    if (AbstractWatcher.now() >= nextPoll) {
+                        poll();
+                        nextPoll = AbstractWatcher.now() + interval;
+                    }
+                    watcher.releaseEvents();
+
+                    // sleep until next rescan or the next pending event
+                    long sleep = nextPoll - AbstractWatcher.now();
+                    long timeout = watcher.getReleaseTimeout();
+                    if (timeout >= 0 && timeout < sleep)
+                        sleep = timeout;
+                    if (sleep > 0) {
+                        try {
+                            Thread.sleep(sleep);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+            }
+        };
+
+        runner.setName("HotswapAgent directory poller");
+        runner.setDaemon(true);
+        runner.start();
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+}
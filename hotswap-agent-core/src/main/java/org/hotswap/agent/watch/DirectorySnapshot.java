@@ -0,0 +1,187 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Cached state (size and last modified time) of files in directory trees.
+ * <p/>
+ * Used to detect changes without a native watch service - rescan a subtree and compare it with the cached state.
+ * Each directory keeps its own listing, hence a rescan of a subtree touches only directories in the subtree.
+ * Symbolic links are not followed.
+ */
+public class DirectorySnapshot {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(DirectorySnapshot.class);
+
+    // directory -> (child path -> state) (guarded by this)
+    private final Map<Path, Map<Path, FileState>> directories = new HashMap<Path, Map<Path, FileState>>();
+
+    /**
+     * Index a directory tree without reporting changes.
+     *
+     * @param root the directory
+     */
+    public synchronized void add(Path root) {
+        scan(root, null);
+    }
+
+    /**
+     * Rescan a directory subtree and update the cached state.
+     *
+     * @param dir the directory (root or any directory in the tree)
+     * @return changes since the last scan in order of detection
+     */
+    public synchronized Map<Path, FileEvent> rescan(Path dir) {
+        Map<Path, FileEvent> events = new LinkedHashMap<Path, FileEvent>();
+        scan(dir, events);
+        return events;
+    }
+
+    /**
+     * Update the cached state of a single path after an event of a watch service.
+     * A directory listing is not scanned, only the entry in the parent directory is updated.
+     *
+     * @param path changed path
+     */
+    public synchronized void update(Path path) {
+        Map<Path, FileState> listing = directories.get(path.getParent());
+        if (listing == null)
+            return;
+
+        FileState state = readState(path);
+        if (state != null) {
+            listing.put(path, state);
+        } else {
+            FileState previous = listing.remove(path);
+            if (previous != null && previous.directory)
+                delete(path, null);
+        }
+    }
+
+    /**
+     * @param dir directory
+     * @return true if the directory is indexed
+     */
+    public synchronized boolean contains(Path dir) {
+        return directories.containsKey(dir);
+    }
+
+    /**
+     * @return number of indexed directories
+     */
+    public synchronized int getDirectoryCount() {
+        return directories.size();
+    }
+
+    // compare directory listing with the cache and recurse to sub-directories, events are null for initial scan
+    private void scan(Path dir, Map<Path, FileEvent> events) {
+        Map<Path, FileState> previous = directories.get(dir);
+        Map<Path, FileState> current = new HashMap<Path, FileState>();
+        try {
+            DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+            try {
+                for (Path child : stream) {
+                    FileState state = readState(child);
+                    if (state == null)
+                        continue;
+                    current.put(child, state);
+
+                    FileState old = previous == null ? null : previous.get(child);
+                    if (events != null) {
+                        if (old == null)
+                            events.put(child, FileEvent.CREATE);
+                        else if (!state.directory && !state.equals(old))
+                            events.put(child, FileEvent.MODIFY);
+                    }
+                    if (state.directory)
+                        scan(child, events);
+                }
+            } finally {
+                stream.close();
+            }
+        } catch (NoSuchFileException e) {
+            // directory deleted
+            delete(dir, events);
+            return;
+        } catch (IOException e) {
+            LOGGER.warning("Unable to scan directory {}", e, dir);
+            return;
+        }
+
+        if (previous != null) {
+            for (Map.Entry<Path, FileState> entry : previous.entrySet()) {
+                if (!current.containsKey(entry.getKey())) {
+                    if (entry.getValue().directory)
+                        delete(entry.getKey(), events);
+                    if (events != null)
+                        events.put(entry.getKey(), FileEvent.DELETE);
+                }
+            }
+        }
+        directories.put(dir, current);
+    }
+
+    // remove a directory subtree from the cache
+    private void delete(Path dir, Map<Path, FileEvent> events) {
+        Map<Path, FileState> listing = directories.remove(dir);
+        if (listing == null)
+            return;
+        for (Map.Entry<Path, FileState> entry : listing.entrySet()) {
+            if (entry.getValue().directory)
+                delete(entry.getKey(), events);
+            if (events != null)
+                events.put(entry.getKey(), FileEvent.DELETE);
+        }
+    }
+
+    // null if the file does not exist
+    private static FileState readState(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return new FileState(attrs.isDirectory(), attrs.size(), attrs.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cached state of a file.
+     */
+    private static class FileState {
+        final boolean directory;
+        final long size;
+        final long lastModified;
+
+        FileState(boolean directory, long size, long lastModified) {
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            FileState that = (FileState) o;
+            return directory == that.directory && size == that.size && lastModified == that.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = directory ? 1 : 0;
+            result = 31 * result + (int) (size ^ (size >>> 32));
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            return result;
+        }
+    }
+}
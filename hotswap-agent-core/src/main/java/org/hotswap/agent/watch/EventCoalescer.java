@@ -0,0 +1,220 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collapse filesystem event bursts per path into a single net event.
+ * <p/>
+ * IDEs delete and recreate class files while recompiling, the watcher receives DELETE/CREATE/MODIFY sequences
+ * for a single change. Events of a path are collected until there is no other event for the window time,
+ * then the net event is released (e.g. DELETE+CREATE is MODIFY, CREATE+DELETE is nothing). A created or modified
+ * file is released only if it is stable - size and last modified time unchanged across two samples taken
+ * a window apart - to avoid reading a file in the middle of a write. An unstable file is released anyway
+ * after {@link #MAX_WAIT}.
+ * <p/>
+ * The coalescer has no thread, the watcher thread adds events and flushes due events in time
+ * given by {@link #getTimeout(long)}. Time is passed as argument (milliseconds of a monotonic clock).
+ */
+public class EventCoalescer {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(EventCoalescer.class);
+
+    /**
+     * Default window in milliseconds.
+     */
+    public static final int DEFAULT_WINDOW = 50;
+
+    /**
+     * Maximum time (milliseconds) to wait for a file to become stable.
+     */
+    public static final int MAX_WAIT = 5000;
+
+    // time without an event on a path to release it, 0 to release immediately (no stability check)
+    private volatile int window;
+
+    // pending events by path in order of the first event (guarded by this)
+    private final Map<Path, Pending> pending = new LinkedHashMap<Path, Pending>();
+
+    // statistics
+    private long receivedEvents;
+    private long releasedEvents;
+    private long collapsedEvents;
+
+    public EventCoalescer(int window) {
+        this.window = window;
+    }
+
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    /**
+     * Add an event of the watcher.
+     *
+     * @param path      changed path
+     * @param eventType event type
+     * @param now       current time
+     */
+    public synchronized void addEvent(Path path, FileEvent eventType, long now) {
+        receivedEvents++;
+
+        Pending p = pending.get(path);
+        if (p == null) {
+            p = new Pending(eventType, now);
+            pending.put(path, p);
+        } else {
+            p.eventType = merge(p.eventType, eventType);
+            p.count++;
+        }
+        p.lastEvent = now;
+        p.sample(path);
+    }
+
+    /**
+     * @param now current time
+     * @return time in milliseconds until the next pending event is due, 0 if already due, -1 if there is no pending event
+     */
+    public synchronized long getTimeout(long now) {
+        long timeout = -1;
+        for (Pending p : pending.values()) {
+            long due = Math.max(0, p.lastEvent + window - now);
+            if (timeout < 0 || due < timeout)
+                timeout = due;
+        }
+        return timeout;
+    }
+
+    /**
+     * Release due events.
+     *
+     * @param now current time
+     * @return net events by path (empty map if no event is due)
+     */
+    public synchronized Map<Path, FileEvent> flush(long now) {
+        Map<Path, FileEvent> result = new LinkedHashMap<Path, FileEvent>();
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Pending> entry = it.next();
+            Path path = entry.getKey();
+            Pending p = entry.getValue();
+
+            if (now - p.lastEvent < window)
+                continue;
+
+            if (p.eventType == null) {
+                // e.g. a temporary file created and deleted
+                LOGGER.trace("Events on {} collapsed to no change.", path);
+                collapsedEvents += p.count;
+                it.remove();
+                continue;
+            }
+
+            if (window > 0 && p.eventType != FileEvent.DELETE && !p.isStable(path)) {
+                if (now - p.firstEvent < MAX_WAIT) {
+                    // wait for another window
+                    p.lastEvent = now;
+                    continue;
+                }
+                LOGGER.debug("File {} is not stable after {}ms, releasing {} event.", path, MAX_WAIT, p.eventType);
+            }
+
+            result.put(path, p.eventType);
+            releasedEvents++;
+            collapsedEvents += p.count - 1;
+            it.remove();
+        }
+
+        if (!result.isEmpty() && LOGGER.isLevelEnabled(AgentLogger.Level.TRACE))
+            LOGGER.trace("Released {} events, total {} received, {} released, {} collapsed.", result.size(),
+                    receivedEvents, releasedEvents, collapsedEvents);
+        return result;
+    }
+
+    /**
+     * @return number of events added by the watcher
+     */
+    public synchronized long getReceivedEvents() {
+        return receivedEvents;
+    }
+
+    /**
+     * @return number of released net events
+     */
+    public synchronized long getReleasedEvents() {
+        return releasedEvents;
+    }
+
+    /**
+     * @return number of events merged to another event or dropped (net effect no change)
+     */
+    public synchronized long getCollapsedEvents() {
+        return collapsedEvents;
+    }
+
+    /**
+     * Net effect of two consecutive events on a path.
+     *
+     * @param previous net effect of previous events, null for no change
+     * @param next     the next event
+     * @return net effect, null for no change
+     */
+    static FileEvent merge(FileEvent previous, FileEvent next) {
+        if (previous == null)
+            return next == FileEvent.DELETE ? FileEvent.DELETE : FileEvent.CREATE;
+
+        switch (next) {
+            case CREATE:
+                // recreated file
+                return previous == FileEvent.DELETE ? FileEvent.MODIFY : previous;
+            case MODIFY:
+                return previous == FileEvent.CREATE ? FileEvent.CREATE : FileEvent.MODIFY;
+            case DELETE:
+                // a new file deleted again - no change
+                return previous == FileEvent.CREATE ? null : FileEvent.DELETE;
+            default:
+                return next;
+        }
+    }
+
+    /**
+     * Net event of a path with file state samples.
+     */
+    private static class Pending {
+        FileEvent eventType;
+        final long firstEvent;
+        long lastEvent;
+        int count = 1;
+
+        // last sample of the file, size -1 if the file does not exist
+        long size = -1;
+        long lastModified;
+
+        Pending(FileEvent eventType, long now) {
+            this.eventType = eventType;
+            this.firstEvent = now;
+        }
+
+        void sample(Path path) {
+            File file = path.toFile();
+            size = file.exists() ? file.length() : -1;
+            lastModified = file.lastModified();
+        }
+
+        // compare with the previous sample and store the new one
+        boolean isStable(Path path) {
+            File file = path.toFile();
+            if (file.isDirectory())
+                return true;
+
+            long previousSize = size;
+            long previousModified = lastModified;
+            sample(path);
+            return size >= 0 && size == previousSize && lastModified == previousModified;
+        }
+    }
+}
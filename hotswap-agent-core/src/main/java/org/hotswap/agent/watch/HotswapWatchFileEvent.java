@@ -0,0 +1,75 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Filesystem event on a path. Immutable, shared by all listeners of the event.
+ */
+public class HotswapWatchFileEvent implements WatchFileEvent {
+
+    private final FileEvent eventType;
+    private final Path path;
+
+    // created on first use (Path.toUri() checks the filesystem), benign race
+    private URI uri;
+
+    public HotswapWatchFileEvent(FileEvent eventType, Path path) {
+        this.eventType = eventType;
+        this.path = path;
+    }
+
+    @Override
+    public FileEvent getEventType() {
+        return eventType;
+    }
+
+    @Override
+    public URI getURI() {
+        URI result = uri;
+        if (result == null) {
+            result = path.toUri();
+            uri = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isFile() {
+        //return Files.isRegularFile(path); - did not work in some cases
+        return !isDirectory();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return Files.isDirectory(path);
+    }
+
+    @Override
+    public String toString() {
+        return "WatchFileEvent on path " + path + " for event " + eventType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        HotswapWatchFileEvent that = (HotswapWatchFileEvent) o;
+
+        if (eventType != that.eventType) return false;
+        if (!path.equals(that.path)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = eventType.hashCode();
+        result = 31 * result + path.hashCode();
+        return result;
+    }
+}
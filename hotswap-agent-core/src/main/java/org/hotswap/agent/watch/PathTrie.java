@@ -0,0 +1,124 @@
+package org.hotswap.agent.watch;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values (listeners) indexed by path prefix in a trie of path name components.
+ * <p/>
+ * Lookup of all values registered on a path or its ancestors walks only the components of the path,
+ * regardless of how many other paths are registered. Semantics of the match is the same as
+ * {@link Path#startsWith(Path)} - whole name components are compared.
+ * <p/>
+ * Not thread safe.
+ *
+ * @param <T> value type
+ */
+class PathTrie<T> {
+
+    // sentinel node, children are keyed by path root component
+    private final Node<T> root = new Node<T>(null, null);
+
+    /**
+     * Register value on a path prefix.
+     *
+     * @param path  absolute path prefix
+     * @param value the value
+     */
+    public void add(Path path, T value) {
+        Node<T> node = root.child(rootName(path), true);
+        for (int i = 0; i < path.getNameCount(); i++)
+            node = node.child(path.getName(i).toString(), true);
+
+        if (node.values == null)
+            node.values = new ArrayList<T>(1);
+        node.values.add(value);
+    }
+
+    /**
+     * Remove value registered on a path prefix.
+     *
+     * @param path  path prefix as registered
+     * @param value the value
+     * @return true if the value was registered
+     */
+    public boolean remove(Path path, T value) {
+        Node<T> node = find(path);
+        if (node == null || node.values == null || !node.values.remove(value))
+            return false;
+
+        if (node.values.isEmpty())
+            node.values = null;
+
+        // prune empty branch
+        while (node != root && node.values == null && (node.children == null || node.children.isEmpty())) {
+            node.parent.children.remove(node.name);
+            node = node.parent;
+        }
+        return true;
+    }
+
+    /**
+     * Return values registered on the path or any of its ancestors.
+     *
+     * @param path the path (e.g. changed file)
+     * @return values, the outermost prefix first
+     */
+    public List<T> get(Path path) {
+        List<T> result = new ArrayList<T>();
+        Node<T> node = root.child(rootName(path), false);
+        for (int i = 0; node != null; i++) {
+            if (node.values != null)
+                result.addAll(node.values);
+            node = i < path.getNameCount() ? node.child(path.getName(i).toString(), false) : null;
+        }
+        return result;
+    }
+
+    /**
+     * @return true if no value is registered
+     */
+    public boolean isEmpty() {
+        return root.children == null || root.children.isEmpty();
+    }
+
+    private Node<T> find(Path path) {
+        Node<T> node = root.child(rootName(path), false);
+        for (int i = 0; node != null && i < path.getNameCount(); i++)
+            node = node.child(path.getName(i).toString(), false);
+        return node;
+    }
+
+    private static String rootName(Path path) {
+        Path pathRoot = path.getRoot();
+        return pathRoot == null ? "" : pathRoot.toString();
+    }
+
+    private static class Node<T> {
+        final String name;
+        final Node<T> parent;
+
+        // created lazily, most nodes are only inner path components or leafs
+        Map<String, Node<T>> children;
+        List<T> values;
+
+        Node(String name, Node<T> parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        Node<T> child(String childName, boolean create) {
+            Node<T> child = children == null ? null : children.get(childName);
+            if (child == null && create) {
+                if (children == null)
+                    children = new HashMap<String, Node<T>>();
+                child = new Node<T>(childName, this);
+                children.put(childName, child);
+            }
+            return child;
+        }
+    }
+}
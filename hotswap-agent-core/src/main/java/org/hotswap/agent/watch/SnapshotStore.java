@@ -0,0 +1,451 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.util.XxHash64;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Persistent state of watched directory trees to detect changes made while the JVM was not running.
+ * <p/>
+ * On shutdown, state (relative path, size, last modified time and content hash) of all files of each reconciled
+ * root is written to a file in the store directory. The file is keyed by the root and the owner of the store,
+ * stores of different owners (e.g. a test run and the application watching the same directory) do not share it. When the root is watched again after restart,
+ * current state is compared with the stored one and the difference is reported as synthetic CREATE/MODIFY/DELETE
+ * events - changes made while the JVM was down or before the directory was registered with the watch service.
+ * <p/>
+ * Both states are arrays sorted by relative path, the diff is a linear merge split into independent ranges
+ * processed in a fork/join pool. Content hash is compared only for files with the same size and different
+ * last modified time, a file rewritten with identical content is not reported.
+ * <p/>
+ * Content hashes are computed during reconciliation (all files on the first start, then only new and changed
+ * files). Save on shutdown does not hash - a file changed after reconciliation is stored without the hash
+ * and reported as modified if its last modified time changes until the next start.
+ */
+public class SnapshotStore {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(SnapshotStore.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x48415353;
+    private static final int VERSION = 2;
+
+    // merge ranges with fewer entries are not split
+    private static final int THRESHOLD = 1024;
+
+    // directory of snapshot files
+    private final Path directory;
+
+    // owner of snapshot files
+    private final String owner;
+
+    // reconciled root -> state known at reconciliation (guarded by this)
+    private final Map<Path, Entries> roots = new LinkedHashMap<Path, Entries>();
+
+    // merge of large trees, created on first use
+    private ForkJoinPool pool;
+
+    /**
+     * @param directory directory of snapshot files, created on first save
+     */
+    public SnapshotStore(Path directory) {
+        this(directory, "");
+    }
+
+    /**
+     * @param directory directory of snapshot files, created on first save
+     * @param owner     owner of snapshot files (e.g. main class of the application)
+     */
+    public SnapshotStore(Path directory, String owner) {
+        this.directory = directory;
+        this.owner = owner;
+    }
+
+    /**
+     * Compare current state of a directory tree with the state stored on last shutdown and start tracking the tree
+     * for the next save. Nothing is reported on the first start or if the tree is inside an already reconciled root.
+     *
+     * @param root the directory
+     * @return files changed since the snapshot was stored
+     * @throws IOException unable to scan the directory
+     */
+    public Map<Path, FileEvent> reconcile(Path root) throws IOException {
+        return reconcile(root, null);
+    }
+
+    /**
+     * Reconcile a directory tree and seed the filter with content hashes of its current files, events on files
+     * with the content as of reconciliation (e.g. classes just loaded from the files) are dropped by the filter.
+     *
+     * @param root   the directory
+     * @param filter filter to seed, null to not seed
+     * @return files changed since the snapshot was stored
+     * @throws IOException unable to scan the directory
+     */
+    public Map<Path, FileEvent> reconcile(Path root, ContentHashFilter filter) throws IOException {
+        synchronized (this) {
+            for (Path reconciled : roots.keySet()) {
+                if (root.startsWith(reconciled))
+                    return Collections.emptyMap();
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        Entries current = Entries.scan(root);
+        Entries stored = load(root);
+
+        Map<Path, FileEvent> events = new ConcurrentHashMap<Path, FileEvent>();
+        if (stored != null)
+            merge(root, stored, current, events);
+        getPool().invoke(new HashTask(root, current, 0, current.size()));
+
+        if (filter != null) {
+            for (int i = 0; i < current.size(); i++) {
+                if (current.hashes[i] != 0)
+                    filter.seed(root.resolve(current.paths[i]), current.hashes[i]);
+            }
+        }
+
+        synchronized (this) {
+            roots.put(root, current);
+        }
+        LOGGER.debug("Reconciled {} files of '{}' with {} in {}ms, {} changes.", current.size(), root,
+                stored == null ? "no snapshot" : "snapshot of " + stored.size() + " files",
+                System.currentTimeMillis() - start, events.size());
+        return events;
+    }
+
+    /**
+     * Store current state of all reconciled roots. Only metadata of files is read, content hash known
+     * from reconciliation is kept for unchanged files.
+     */
+    public void save() {
+        Map<Path, Entries> saved;
+        synchronized (this) {
+            saved = new LinkedHashMap<Path, Entries>(roots);
+        }
+
+        for (Map.Entry<Path, Entries> root : saved.entrySet()) {
+            if (!Files.isDirectory(root.getKey()))
+                continue;
+            try {
+                Entries current = Entries.scan(root.getKey());
+                merge(root.getKey(), root.getValue(), current, null);
+                write(root.getKey(), current);
+                synchronized (this) {
+                    roots.put(root.getKey(), current);
+                }
+            } catch (IOException e) {
+                LOGGER.warning("Unable to store snapshot of directory '{}'.", e, root.getKey());
+            }
+        }
+    }
+
+    /**
+     * @param root the directory
+     * @return snapshot file of the root
+     */
+    public Path getFile(Path root) {
+        return directory.resolve(Long.toHexString(XxHash64.hash((owner + '\n' + root).getBytes(UTF_8))) + ".snapshot");
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool();
+        return pool;
+    }
+
+    // compare entries, events are null to only copy known content hashes to current entries
+    private void merge(Path root, Entries stored, Entries current, Map<Path, FileEvent> events) {
+        getPool().invoke(new MergeTask(root, stored, 0, stored.size(), current, 0, current.size(), events));
+    }
+
+    // layout: magic, version, owner length, owner, root length, root, count,
+    // count * (path length, path, size, last modified, hash)
+    private void write(Path root, Entries entries) throws IOException {
+        byte[] ownerBytes = owner.getBytes(UTF_8);
+        byte[] rootBytes = root.toString().getBytes(UTF_8);
+        byte[][] paths = new byte[entries.size()][];
+        long length = 4 + 4 + 4 + ownerBytes.length + 4 + rootBytes.length + 4;
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = entries.paths[i].getBytes(UTF_8);
+            length += 4 + paths[i].length + 8 + 8 + 8;
+        }
+
+        Files.createDirectories(directory);
+        Path file = getFile(root);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Snapshot of '" + root + "' is too large.");
+
+            // heap buffer, no mapping may stay open on the file while it is moved (not allowed on Windows)
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            buffer.putInt(ownerBytes.length).put(ownerBytes);
+            buffer.putInt(rootBytes.length).put(rootBytes);
+            buffer.putInt(paths.length);
+            for (int i = 0; i < paths.length; i++) {
+                buffer.putInt(paths[i].length).put(paths[i]);
+                buffer.putLong(entries.sizes[i]).putLong(entries.lastModified[i]).putLong(entries.hashes[i]);
+            }
+            buffer.flip();
+
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            try {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        LOGGER.debug("Stored snapshot of {} files of '{}' to {}.", paths.length, root, file);
+    }
+
+    // null if there is no valid snapshot of the root
+    private Entries load(Path root) {
+        Path file = getFile(root);
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try {
+            ByteBuffer buffer;
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE)
+                    return null;
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0)
+                        break;
+                }
+                buffer.flip();
+            } finally {
+                channel.close();
+            }
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+            if (!owner.equals(getString(buffer)) || !root.toString().equals(getString(buffer)))
+                return null;
+
+            int count = buffer.getInt();
+            Entries entries = new Entries(count);
+            for (int i = 0; i < count; i++) {
+                entries.paths[i] = getString(buffer);
+                entries.sizes[i] = buffer.getLong();
+                entries.lastModified[i] = buffer.getLong();
+                entries.hashes[i] = buffer.getLong();
+            }
+            return entries;
+        } catch (IOException e) {
+            LOGGER.debug("Unable to read snapshot {}.", e, file);
+        } catch (BufferUnderflowException e) {
+            LOGGER.debug("Snapshot {} is corrupted.", file);
+        }
+        return null;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // content hash, 0 if the file cannot be hashed
+    private static long hash(Path file, long size) {
+        if (size > ContentHashFilter.MAX_FILE_SIZE)
+            return 0;
+        try {
+            return XxHash64.hash(Files.readAllBytes(file));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * State of files of a directory tree sorted by relative path.
+     */
+    static class Entries {
+        final String[] paths;
+        final long[] sizes;
+        final long[] lastModified;
+        // content hash, 0 if not known
+        final long[] hashes;
+
+        Entries(int size) {
+            paths = new String[size];
+            sizes = new long[size];
+            lastModified = new long[size];
+            hashes = new long[size];
+        }
+
+        int size() {
+            return paths.length;
+        }
+
+        // regular files of the tree, symbolic links are not followed
+        static Entries scan(final Path root) throws IOException {
+            final SortedMap<String, BasicFileAttributes> files = new TreeMap<String, BasicFileAttributes>();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile())
+                        files.put(root.relativize(file).toString(), attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // deleted in the meantime
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            Entries entries = new Entries(files.size());
+            int i = 0;
+            for (Map.Entry<String, BasicFileAttributes> file : files.entrySet()) {
+                entries.paths[i] = file.getKey();
+                entries.sizes[i] = file.getValue().size();
+                entries.lastModified[i] = file.getValue().lastModifiedTime().toMillis();
+                i++;
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Merge of sorted ranges of stored and current entries. A large range is split by the middle path of the longer
+     * range, both halves are merged in parallel.
+     */
+    private static class MergeTask extends RecursiveAction {
+        private final Path root;
+        private final Entries stored;
+        private final int storedFrom, storedTo;
+        private final Entries current;
+        private final int currentFrom, currentTo;
+        private final Map<Path, FileEvent> events;
+
+        MergeTask(Path root, Entries stored, int storedFrom, int storedTo,
+                  Entries current, int currentFrom, int currentTo, Map<Path, FileEvent> events) {
+            this.root = root;
+            this.stored = stored;
+            this.storedFrom = storedFrom;
+            this.storedTo = storedTo;
+            this.current = current;
+            this.currentFrom = currentFrom;
+            this.currentTo = currentTo;
+            this.events = events;
+        }
+
+        @Override
+        protected void compute() {
+            int storedCount = storedTo - storedFrom;
+            int currentCount = currentTo - currentFrom;
+            if (storedCount + currentCount <= THRESHOLD) {
+                mergeRange();
+                return;
+            }
+
+            // paths less than the middle path go left, the rest right
+            int storedSplit, currentSplit;
+            if (storedCount >= currentCount) {
+                storedSplit = (storedFrom + storedTo) >>> 1;
+                currentSplit = insertionPoint(current.paths, currentFrom, currentTo, stored.paths[storedSplit]);
+            } else {
+                currentSplit = (currentFrom + currentTo) >>> 1;
+                storedSplit = insertionPoint(stored.paths, storedFrom, storedTo, current.paths[currentSplit]);
+            }
+
+            invokeAll(new MergeTask(root, stored, storedFrom, storedSplit, current, currentFrom, currentSplit, events),
+                    new MergeTask(root, stored, storedSplit, storedTo, current, currentSplit, currentTo, events));
+        }
+
+        private static int insertionPoint(String[] paths, int from, int to, String key) {
+            int index = Arrays.binarySearch(paths, from, to, key);
+            return index < 0 ? -index - 1 : index;
+        }
+
+        private void mergeRange() {
+            int i = storedFrom, j = currentFrom;
+            while (i < storedTo || j < currentTo) {
+                int cmp = i == storedTo ? 1 : j == currentTo ? -1 : stored.paths[i].compareTo(current.paths[j]);
+                if (cmp < 0) {
+                    addEvent(stored.paths[i], FileEvent.DELETE);
+                    i++;
+                } else if (cmp > 0) {
+                    addEvent(current.paths[j], FileEvent.CREATE);
+                    j++;
+                } else {
+                    compare(i++, j++);
+                }
+            }
+        }
+
+        private void compare(int i, int j) {
+            if (stored.sizes[i] == current.sizes[j] && stored.lastModified[i] == current.lastModified[j]) {
+                current.hashes[j] = stored.hashes[i];
+                return;
+            }
+
+            // different size is always a change, not hashed on save
+            boolean sameSize = stored.sizes[i] == current.sizes[j];
+            if (sameSize && events != null)
+                current.hashes[j] = hash(root.resolve(current.paths[j]), current.sizes[j]);
+
+            if (!sameSize || current.hashes[j] == 0 || current.hashes[j] != stored.hashes[i])
+                addEvent(current.paths[j], FileEvent.MODIFY);
+        }
+
+        private void addEvent(String path, FileEvent eventType) {
+            if (events != null)
+                events.put(root.resolve(path), eventType);
+        }
+    }
+
+    /**
+     * Compute missing content hashes of a range of entries, a large range is split in halves.
+     */
+    private static class HashTask extends RecursiveAction {
+        private final Path root;
+        private final Entries entries;
+        private final int from, to;
+
+        HashTask(Path root, Entries entries, int from, int to) {
+            this.root = root;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    if (entries.hashes[i] == 0)
+                        entries.hashes[i] = hash(root.resolve(entries.paths[i]), entries.sizes[i]);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new HashTask(root, entries, from, middle), new HashTask(root, entries, middle, to));
+        }
+    }
+}
@@ -14,7 +14,7 @@ public interface Watcher {
      *
      * @param classLoader the classloader to which this path is associated. May be null, but then this
      *                    listener will never be disassociated (even if application is undeployed)
-     * @param pathPrefix where to listen
+     * @param pathPrefix where to listen - a directory tree or a single file
      * @param listener   the listener
      */
     void addEventListener(ClassLoader classLoader, URI pathPrefix, WatchEventListener listener);
@@ -1,15 +1,36 @@
 package org.hotswap.agent.watch;
 
+import org.hotswap.agent.config.PluginConfiguration;
+import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.watch.nio.RecursiveWatcherNIO2;
 import org.hotswap.agent.watch.nio.WatcherNIO2;
+import org.hotswap.agent.watch.polling.PollingWatcher;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * Resolve watcher from java version (Java NIO2 implementation is preferred if available.)
+ * <p/>
+ * The implementation is selected by <code>watcher.type</code> configuration property:
+ * <ul>
+ * <li>nio2 (default) - NIO2 WatchService, directories are registered one by one.</li>
+ * <li>recursive - NIO2 WatchService with native recursive watch where supported, recovery of overflowed
+ * events by rescan and polling of trees which cannot be registered.</li>
+ * <li>polling - periodic rescan of directory trees each <code>watcher.pollingInterval</code> milliseconds.</li>
+ * <li>fully qualified class name of a {@link Watcher} implementation with a public no-arg constructor.</li>
+ * </ul>
+ * If the WatchService is not available, polling watcher is used.
+ * <p/>
+ * Unless <code>watcher.snapshot</code> is disabled, state of watched directories is stored on JVM shutdown
+ * and changes made until the next start are reported as events (see {@link SnapshotStore}). Snapshots are kept
+ * per <code>watcher.snapshotOwner</code> (the main class by default), processes with another owner watching
+ * the same directory do not overwrite them.
  *
  * @author Jiri Bubnik
  */
 public class WatcherFactory {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(WatcherFactory.class);
 
     public static double JAVA_VERSION = getVersion();
 
@@ -31,4 +52,84 @@ public class WatcherFactory {
         }
 
     }
+
+    /**
+     * Create and configure the watcher selected by configuration.
+     *
+     * @param configuration agent configuration
+     * @return the watcher, not started
+     * @throws IOException unable to create the watcher
+     */
+    public Watcher getWatcher(PluginConfiguration configuration) throws IOException {
+        String type = configuration.getProperty("watcher.type", "nio2").trim();
+        int pollingInterval = configuration.getPropertyInt("watcher.pollingInterval", DirectoryPoller.DEFAULT_INTERVAL);
+
+        Watcher watcher;
+        try {
+            if (type.equals("nio2")) {
+                watcher = getWatcher();
+            } else if (type.equals("recursive")) {
+                watcher = new RecursiveWatcherNIO2(pollingInterval);
+            } else if (type.equals("polling")) {
+                watcher = new PollingWatcher(pollingInterval);
+            } else {
+                watcher = createWatcher(type);
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Unable to create watcher '{}' ({}), changes are detected by polling every {}ms.",
+                    type, e.getMessage(), pollingInterval);
+            watcher = new PollingWatcher(pollingInterval);
+        }
+
+        if (watcher instanceof AbstractWatcher) {
+            AbstractWatcher abstractWatcher = (AbstractWatcher) watcher;
+            abstractWatcher.getEventCoalescer().setWindow(
+                    configuration.getPropertyInt("watcher.coalesceWindow", EventCoalescer.DEFAULT_WINDOW));
+            if (!configuration.getPropertyBoolean("watcher.contentHashFilter", true))
+                abstractWatcher.setContentHashFilter(null);
+            if (configuration.getPropertyBoolean("watcher.snapshot", true))
+                abstractWatcher.setSnapshotStore(createSnapshotStore(configuration));
+        }
+
+        LOGGER.debug("Using watcher {}.", watcher.getClass().getName());
+        return watcher;
+    }
+
+    // snapshot stored on JVM shutdown
+    private SnapshotStore createSnapshotStore(PluginConfiguration configuration) {
+        String directory = configuration.getProperty("watcher.snapshotDirectory", "").trim();
+        final SnapshotStore store = new SnapshotStore(directory.isEmpty() ?
+                Paths.get(System.getProperty("java.io.tmpdir"), "hotswap-agent-snapshot") : Paths.get(directory),
+                getSnapshotOwner(configuration));
+
+        Runtime.getRuntime().addShutdownHook(new Thread("HotswapAgent snapshot") {
+            @Override
+            public void run() {
+                store.save();
+            }
+        });
+        return store;
+    }
+
+    // configured owner or main class (jar) of the JVM - e.g. a test run and the application do not share snapshots
+    static String getSnapshotOwner(PluginConfiguration configuration) {
+        String owner = configuration.getProperty("watcher.snapshotOwner", "").trim();
+        if (owner.isEmpty()) {
+            String command = System.getProperty("sun.java.command", "").trim();
+            int space = command.indexOf(' ');
+            owner = space < 0 ? command : command.substring(0, space);
+        }
+        return owner;
+    }
+
+    // custom watcher implementation
+    private Watcher createWatcher(String className) {
+        try {
+            Class<?> watcherClass = Class.forName(className, true, getClass().getClassLoader());
+            return (Watcher) watcherClass.newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid watcher.type '" + className + "', expecting nio2, recursive, " +
+                    "polling or class name of a Watcher implementation.", e);
+        }
+    }
 }
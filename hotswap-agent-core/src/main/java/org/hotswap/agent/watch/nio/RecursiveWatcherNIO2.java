@@ -0,0 +1,178 @@
+package org.hotswap.agent.watch.nio;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.logging.AgentLogger;
+import org.hotswap.agent.watch.DirectoryPoller;
+import org.hotswap.agent.watch.DirectorySnapshot;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+/**
+ * NIO2 watcher with recursive registration and recovery of lost events.
+ * <p/>
+ * A directory tree is registered by a single native recursive watch if supported by the platform
+ * (FILE_TREE modifier on Windows), otherwise directory by directory. State of watched trees is cached
+ * by {@link DirectorySnapshot}:
+ * <ul>
+ * <li>OVERFLOW of the event queue - the directory subtree is rescanned against the snapshot and the difference
+ * is reported instead of the lost events.</li>
+ * <li>New directory - files created before the directory was registered are reported.</li>
+ * <li>Registration failure (e.g. inotify watch limit reached) - the tree is polled by {@link DirectoryPoller}.</li>
+ * </ul>
+ */
+public class RecursiveWatcherNIO2 extends WatcherNIO2 {
+    private static AgentLogger LOGGER = AgentLogger.getLogger(RecursiveWatcherNIO2.class);
+
+    // native recursive watch modifier, null if not available or not supported by the platform
+    private volatile WatchEvent.Modifier fileTree = getModifier("com.sun.nio.file.ExtendedWatchEventModifier", "FILE_TREE");
+
+    // roots of trees registered by a single recursive watch
+    private final Set<Path> treeRoots = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    // cached state of all watched trees
+    private final DirectorySnapshot snapshot = new DirectorySnapshot();
+
+    // polling of trees the WatchService failed to register
+    private final DirectoryPoller poller;
+
+    public RecursiveWatcherNIO2() throws IOException {
+        this(DirectoryPoller.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param pollingInterval milliseconds between rescans of trees which cannot be watched natively
+     */
+    public RecursiveWatcherNIO2(int pollingInterval) throws IOException {
+        super();
+        poller = new DirectoryPoller(this, snapshot, pollingInterval);
+    }
+
+    @Override
+    public void addDirectory(URI path) throws IOException {
+        Path dir;
+        try {
+            dir = Paths.get(path);
+        } catch (RuntimeException e) {
+            // report invalid URI
+            super.addDirectory(path);
+            return;
+        }
+
+        if (isRegistered(dir))
+            return;
+        if (!Files.isDirectory(dir)) {
+            // report not a directory
+            super.addDirectory(path);
+            return;
+        }
+
+        snapshot.add(dir);
+        if (registerTree(dir))
+            return;
+
+        try {
+            super.addDirectory(path);
+        } catch (IOException e) {
+            // e.g. "User limit of inotify watches reached"
+            LOGGER.warning("Unable to watch directory '{}' ({}), changes are detected by polling every {}ms.",
+                    dir, e.getMessage(), poller.getInterval());
+            unregisterAll(dir);
+            poller.addRoot(dir);
+            poller.start();
+        }
+    }
+
+    // register a tree by a native recursive watch
+    private boolean registerTree(Path dir) {
+        WatchEvent.Modifier modifier = fileTree;
+        if (modifier == null)
+            return false;
+
+        try {
+            register(dir, modifier);
+            treeRoots.add(dir);
+            LOGGER.debug("Registered recursive watch of '{}'.", dir);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            LOGGER.debug("Recursive watch not supported by the platform, directories are registered one by one.");
+            fileTree = null;
+            return false;
+        } catch (IOException e) {
+            LOGGER.debug("Unable to register recursive watch of '{}'.", e, dir);
+            return false;
+        }
+    }
+
+    @Override
+    protected boolean isRegistered(Path dir) {
+        return super.isRegistered(dir) || isInTree(dir) || poller.isPolled(dir);
+    }
+
+    // inside a tree registered by a single recursive watch
+    private boolean isInTree(Path path) {
+        for (Path root : treeRoots) {
+            if (path.startsWith(root))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void registerAll(Path start) throws IOException {
+        if (!isInTree(start))
+            super.registerAll(start);
+    }
+
+    @Override
+    protected void onEvent(Path path, FileEvent eventType) {
+        snapshot.update(path);
+        super.onEvent(path, eventType);
+
+        // files created in a new directory before it was registered
+        if (eventType == FileEvent.CREATE && snapshot.contains(path.getParent()) && Files.isDirectory(path, NOFOLLOW_LINKS)) {
+            for (Map.Entry<Path, FileEvent> event : snapshot.rescan(path).entrySet())
+                addEvent(event.getKey(), event.getValue());
+        }
+    }
+
+    @Override
+    protected void onOverflow(Path dir) {
+        Map<Path, FileEvent> events = snapshot.rescan(dir);
+        LOGGER.debug("Watch events of '{}' overflowed, rescan found {} changes.", dir, events.size());
+
+        for (Map.Entry<Path, FileEvent> event : events.entrySet()) {
+            addEvent(event.getKey(), event.getValue());
+            if (event.getValue() == FileEvent.CREATE && Files.isDirectory(event.getKey(), NOFOLLOW_LINKS)) {
+                try {
+                    registerAll(event.getKey());
+                } catch (IOException e) {
+                    LOGGER.warning("Unable to register events for directory {}", e, event.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the poller of trees which cannot be watched natively (e.g. to change the interval)
+     */
+    public DirectoryPoller getPoller() {
+        return poller;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        poller.stop();
+    }
+}
@@ -3,19 +3,21 @@ package org.hotswap.agent.watch.nio;
 
 import org.hotswap.agent.annotation.FileEvent;
 import org.hotswap.agent.logging.AgentLogger;
-import org.hotswap.agent.watch.WatchFileEvent;
-import org.hotswap.agent.watch.WatchEventListener;
-import org.hotswap.agent.watch.Watcher;
+import org.hotswap.agent.watch.AbstractWatcher;
+import org.hotswap.agent.watch.ContentHashFilter;
+import org.hotswap.agent.watch.EventCoalescer;
 
-import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.nio.file.StandardWatchEventKinds.*;
@@ -25,19 +27,38 @@ import static java.nio.file.StandardWatchEventKinds.*;
  * <p/>
  * Java 7 (NIO2) watch a directory (or tree) for changes to files.
  * <p/>
+ * Event bursts of a file are collapsed by {@link EventCoalescer} and rewrites with identical content are dropped
+ * by {@link ContentHashFilter} before listeners are notified.
+ * <p/>
  * By http://docs.oracle.com/javase/tutorial/essential/io/examples/WatchDir.java
  *
  * @author Jiri Bubnik
  */
-public class WatcherNIO2 implements Watcher {
+public class WatcherNIO2 extends AbstractWatcher {
     private static AgentLogger LOGGER = AgentLogger.getLogger(WatcherNIO2.class);
 
+    // maximum wait for a key, events added by other threads (e.g. startup reconciliation) are released at least
+    // this often
+    private static final long IDLE_TIMEOUT = 1000;
+
     private final WatchService watcher;
+
+    // bidirectional index of registered directories, updated concurrently by the registration walk
     private final Map<WatchKey, Path> keys;
-    private final Map<Path, List<WatchEventListener>> listeners = new HashMap<Path, List<WatchEventListener>>();
+    private final Map<Path, WatchKey> paths;
+
+    // directories registered without sub-directories to watch a single file
+    private final Set<Path> singleDirectories = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    // high sensitivity modifier, null if not available
+    private final WatchEvent.Modifier high = getModifier("com.sun.nio.file.SensitivityWatchEventModifier", "HIGH");
 
-    // keep track about which classloader requested which event
-    protected Map<WatchEventListener, ClassLoader> classLoaderListeners = new HashMap<WatchEventListener, ClassLoader>();
+    // directory tree walk, created on first registration
+    private ForkJoinPool registrationPool;
+
+    // startup metric - total number of registered directories and time spent in registration walk
+    private final AtomicInteger registeredDirectories = new AtomicInteger();
+    private final AtomicLong registrationTime = new AtomicLong();
 
 
     Thread runner;
@@ -45,7 +66,8 @@ public class WatcherNIO2 implements Watcher {
 
     public WatcherNIO2() throws IOException {
         this.watcher = FileSystems.getDefault().newWatchService();
-        this.keys = new HashMap<WatchKey, Path>();
+        this.keys = new ConcurrentHashMap<WatchKey, Path>();
+        this.paths = new ConcurrentHashMap<Path, WatchKey>();
     }
 
     @SuppressWarnings("unchecked")
@@ -53,72 +75,15 @@ public class WatcherNIO2 implements Watcher {
         return (WatchEvent<T>) event;
     }
 
-    @Override
-    public synchronized void addEventListener(ClassLoader classLoader, URI pathPrefix, WatchEventListener listener) {
-        File path;
-        try {
-            // check that it is regular file
-            // toString() is weird and solves HiarchicalUriException for URI like "file:./src/resources/file.txt".
-            path = new File(pathPrefix);
-        } catch (IllegalArgumentException e) {
-            LOGGER.warning("Unable to watch for path {}, not a local regular file or directory.", pathPrefix);
-            LOGGER.trace("Unable to watch for path {} exception", e, pathPrefix);
-            return;
-        }
-
-        try {
-            addDirectory(path.toURI());
-        } catch (IOException e) {
-            LOGGER.error("Unable to watch path with prefix '{}' for changes.", e, pathPrefix);
-            return;
-        }
-
-        List<WatchEventListener> list = listeners.get(Paths.get(pathPrefix));
-        if (list == null) {
-            list = new ArrayList<WatchEventListener>();
-            listeners.put(Paths.get(pathPrefix), list);
-        }
-        list.add(listener);
-
-        if (classLoader != null)
-            classLoaderListeners.put(listener, classLoader);
-    }
-
-    @Override
-    public void addEventListener(ClassLoader classLoader, URL pathPrefix, WatchEventListener listener) {
-        try {
-            addEventListener(classLoader, pathPrefix.toURI(), listener);
-        } catch (URISyntaxException e) {
-            throw new RuntimeException("Unable to convert URL to URI " + pathPrefix, e);
-        }
-    }
-
-    /**
-     * Remove all transformers registered with a classloader
-     * @param classLoader
-     */
-    public void closeClassLoader(ClassLoader classLoader) {
-        for (Iterator<Map.Entry<WatchEventListener, ClassLoader>> entryIterator = classLoaderListeners.entrySet().iterator();
-             entryIterator.hasNext(); ) {
-            Map.Entry<WatchEventListener, ClassLoader> entry = entryIterator.next();
-            if (entry.getValue().equals(classLoader)) {
-                entryIterator.remove();
-                for (List<WatchEventListener> transformerList : listeners.values())
-                    transformerList.remove(entry.getKey());
-            }
-        }
-
-        LOGGER.debug("All watch listeners removed for classLoader {}", classLoader);
-    }
-
     /**
      * Registers the given directory
      */
+    @Override
     public void addDirectory(URI path) throws IOException {
         try {
             Path dir = Paths.get(path);
 
-            if (keys.values().contains(dir))
+            if (isRegistered(dir))
                 return;
 
             registerAll(dir);
@@ -133,56 +98,207 @@ public class WatcherNIO2 implements Watcher {
 
 
     /**
-     * Register the given directory with the WatchService
+     * Register only the directory of the file, sub-directories are not watched.
      */
-    private void register(Path dir) throws IOException {
-        // check duplicate registration
-        if (keys.values().contains(dir))
+    @Override
+    protected void addFile(Path file) throws IOException {
+        Path dir = file.getParent();
+        if (isRegistered(dir) || paths.containsKey(dir))
             return;
 
+        register(dir);
+        singleDirectories.add(dir);
+        LOGGER.debug("Registered directory '{}' of file '{}'.", dir, file.getFileName());
+    }
+
+    /**
+     * @param dir directory
+     * @return true if the directory and its sub-directories are registered with the WatchService
+     */
+    protected boolean isRegistered(Path dir) {
+        return paths.containsKey(dir) && !singleDirectories.contains(dir);
+    }
+
+    /**
+     * Register the given directory with the WatchService
+     *
+     * @return true if the directory was not registered yet
+     */
+    private boolean register(Path dir) throws IOException {
+        return register(dir, null);
+    }
+
+    /**
+     * Register the given directory with the WatchService with an additional modifier.
+     *
+     * @param dir      the directory
+     * @param modifier additional modifier (e.g. FILE_TREE), may be null
+     * @return true if the directory was not registered yet
+     */
+    protected boolean register(Path dir, WatchEvent.Modifier modifier) throws IOException {
+        // check duplicate registration, a single directory is registered again with the modifier (e.g. FILE_TREE)
+        if (paths.containsKey(dir) && (modifier == null || !singleDirectories.contains(dir)))
+            return false;
+
+        List<WatchEvent.Modifier> modifiers = new ArrayList<WatchEvent.Modifier>(2);
+        if (modifier != null)
+            modifiers.add(modifier);
         // try to set high sensitivity
-        WatchEvent.Modifier high = get_com_sun_nio_file_SensitivityWatchEventModifier_HIGH();
-        WatchKey key =
-                (high == null) ?
-                        dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY) :
-                        dir.register(watcher, new WatchEvent.Kind<?>[]{ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY}, high);
+        if (high != null)
+            modifiers.add(high);
+
+        WatchKey key = dir.register(watcher, new WatchEvent.Kind<?>[]{ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY},
+                modifiers.toArray(new WatchEvent.Modifier[modifiers.size()]));
 
         keys.put(key, dir);
+        if (modifier != null)
+            singleDirectories.remove(dir);
+        return paths.put(dir, key) == null;
+    }
+
+    /**
+     * Cancel registration of a directory and all its sub-directories.
+     *
+     * @param start the directory
+     */
+    protected void unregisterAll(Path start) {
+        for (Iterator<Map.Entry<Path, WatchKey>> it = paths.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, WatchKey> entry = it.next();
+            if (entry.getKey().startsWith(start)) {
+                entry.getValue().cancel();
+                keys.remove(entry.getValue());
+                it.remove();
+            }
+        }
     }
 
     /**
      * Register the given directory, and all its sub-directories, with the
      * WatchService.
+     * <p/>
+     * Subtrees are walked in parallel (fork/join), large trees like target/classes with thousands of package
+     * directories are registered in linear time.
      */
-    private void registerAll(final Path start) throws IOException {
-        // register directory and sub-directories
-        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
-                    throws IOException {
-                register(dir);
-                return FileVisitResult.CONTINUE;
+    protected void registerAll(final Path start) throws IOException {
+        long startTime = System.currentTimeMillis();
+        AtomicInteger count = new AtomicInteger();
+
+        try {
+            getRegistrationPool().invoke(new RegisterDirectoryTask(start, count));
+        } catch (RegistrationException e) {
+            throw e.getCause();
+        }
+
+        // directories of single files are now registered with the whole tree
+        for (Iterator<Path> it = singleDirectories.iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(start))
+                it.remove();
+        }
+
+        long time = System.currentTimeMillis() - startTime;
+        registeredDirectories.addAndGet(count.get());
+        registrationTime.addAndGet(time);
+        LOGGER.debug("Registered {} directories of '{}' in {}ms (total {} directories in {}ms).", count.get(), start, time,
+                registeredDirectories.get(), registrationTime.get());
+    }
+
+    private synchronized ForkJoinPool getRegistrationPool() {
+        if (registrationPool == null)
+            registrationPool = new ForkJoinPool();
+        return registrationPool;
+    }
+
+    /**
+     * @return number of directories registered with the WatchService
+     */
+    public int getRegisteredDirectories() {
+        return registeredDirectories.get();
+    }
+
+    /**
+     * @return total time (milliseconds) spent in directory tree registration
+     */
+    public long getRegistrationTime() {
+        return registrationTime.get();
+    }
+
+    /**
+     * Register a directory and fork registration of its sub-directories (symbolic links are not followed).
+     */
+    private class RegisterDirectoryTask extends RecursiveAction {
+        private final Path dir;
+        private final AtomicInteger count;
+
+        RegisterDirectoryTask(Path dir, AtomicInteger count) {
+            this.dir = dir;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            List<RegisterDirectoryTask> subtasks = new ArrayList<RegisterDirectoryTask>();
+            try {
+                if (register(dir))
+                    count.incrementAndGet();
+
+                DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+                try {
+                    for (Path child : stream) {
+                        if (Files.isDirectory(child, NOFOLLOW_LINKS))
+                            subtasks.add(new RegisterDirectoryTask(child, count));
+                    }
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                throw new RegistrationException(e);
             }
-        });
+            invokeAll(subtasks);
+        }
+    }
+
+    // checked exception of the walk passed through fork/join
+    private static class RegistrationException extends RuntimeException {
+        RegistrationException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
     }
 
 
     /**
-     * Process all events for keys queued to the watcher
+     * Process all events for keys queued to the watcher and release coalesced events to listeners.
      *
      * @return true if should continue
      */
     private boolean processEvents() {
 
-        // wait for key to be signalled
+        // wait for key to be signalled or for the next pending event
         WatchKey key;
         try {
-            key = watcher.take();
+            long timeout = getReleaseTimeout();
+            key = watcher.poll(timeout < 0 ? IDLE_TIMEOUT : timeout, TimeUnit.MILLISECONDS);
         } catch (InterruptedException x) {
             return false;
         }
 
+        boolean accessible = key == null || processKey(key);
+
+        releaseEvents();
+
+        return accessible;
+    }
 
+    /**
+     * Pass events of the key to the coalescer.
+     *
+     * @return false if all directories are inaccessible
+     */
+    private boolean processKey(WatchKey key) {
         Path dir = keys.get(key);
         if (dir == null) {
             LOGGER.warning("WatchKey '{}' not recognized", key);
@@ -193,7 +309,7 @@ public class WatcherNIO2 implements Watcher {
             WatchEvent.Kind kind = event.kind();
 
             if (kind == OVERFLOW) {
-                LOGGER.warning("WatchKey '{}' overflowed", key);
+                onOverflow(dir);
                 continue;
             }
 
@@ -204,25 +320,14 @@ public class WatcherNIO2 implements Watcher {
 
             LOGGER.trace("Watch event '{}' on '{}'", event.kind().name(), child);
 
-            callListeners(event, child);
-
-            // if directory is created, and watching recursively, then
-            // register it and its sub-directories
-            if (kind == ENTRY_CREATE) {
-                try {
-                    if (Files.isDirectory(child, NOFOLLOW_LINKS)) {
-                        registerAll(child);
-                    }
-                } catch (IOException x) {
-                    LOGGER.warning("Unable to register events for directory {}", x, child);
-                }
-            }
+            onEvent(child, toAgentEvent(kind));
         }
 
         // reset key and remove from set if directory no longer accessible
         boolean valid = key.reset();
         if (!valid) {
             keys.remove(key);
+            paths.remove(dir);
 
             // all directories are inaccessible
             if (keys.isEmpty()) {
@@ -231,26 +336,39 @@ public class WatcherNIO2 implements Watcher {
         }
 
         return true;
-
     }
 
-    // notify listeners about new event
-    private void callListeners(final WatchEvent event, final Path path) {
-        for (Map.Entry<Path, List<WatchEventListener>> list : listeners.entrySet()) {
-            for (WatchEventListener listener : list.getValue()) {
-                if (path.startsWith(list.getKey())) {
-                    WatchFileEvent agentEvent = new HotswapWatchFileEvent(event, path);
-
-                    try {
-                        listener.onEvent(agentEvent);
-                    } catch (Throwable e) {
-                        LOGGER.error("Error in watch event '{}' listener '{}'", e, agentEvent, listener);
-                    }
+    /**
+     * Handle an event of the WatchService - pass it to the coalescer and register a new directory.
+     *
+     * @param path      changed path
+     * @param eventType event type
+     */
+    protected void onEvent(Path path, FileEvent eventType) {
+        addEvent(path, eventType);
+
+        // if directory is created, and watching recursively, then
+        // register it and its sub-directories
+        if (eventType == FileEvent.CREATE) {
+            try {
+                if (Files.isDirectory(path, NOFOLLOW_LINKS)) {
+                    registerAll(path);
                 }
+            } catch (IOException x) {
+                LOGGER.warning("Unable to register events for directory {}", x, path);
             }
         }
     }
 
+    /**
+     * Events of a directory were lost (the WatchService event queue overflowed).
+     *
+     * @param dir the directory of the overflowed key
+     */
+    protected void onOverflow(Path dir) {
+        LOGGER.warning("Watch events of '{}' overflowed, changes are lost.", dir);
+    }
+
     // translate constants between NIO event and ageent event
     private static FileEvent toAgentEvent(WatchEvent.Kind kind) {
         if (kind == ENTRY_CREATE)
@@ -282,81 +400,30 @@ public class WatcherNIO2 implements Watcher {
     @Override
     public void stop() {
         stopped = true;
-    }
-
-    /**
-     * Filesystem event.
-     */
-    public static class HotswapWatchFileEvent implements WatchFileEvent {
-
-        private final WatchEvent event;
-        private final Path path;
-
-        public HotswapWatchFileEvent(WatchEvent event, Path path) {
-            this.event = event;
-            this.path = path;
-        }
-
-        @Override
-        public FileEvent getEventType() {
-            return toAgentEvent(event.kind());
-        }
-
-        @Override
-        public URI getURI() {
-            return path.toUri();
-        }
-
-        @Override
-        public boolean isFile() {
-            //return Files.isRegularFile(path); - did not work in some cases
-            return !isDirectory();
-        }
-
-        @Override
-        public boolean isDirectory() {
-            return Files.isDirectory(path);
-        }
-
-        @Override
-        public String toString() {
-            return "WatchFileEvent on path " + path + " for event " + event.kind();
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            HotswapWatchFileEvent that = (HotswapWatchFileEvent) o;
-
-            if (!event.equals(that.event)) return false;
-            if (!path.equals(that.path)) return false;
-
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            int result = event.hashCode();
-            result = 31 * result + path.hashCode();
-            return result;
+        synchronized (this) {
+            if (registrationPool != null) {
+                registrationPool.shutdown();
+                registrationPool = null;
+            }
         }
     }
 
     /**
-     * Get modifier for high sensitivity on Watch events.
+     * Get a JDK specific modifier of Watch events - e.g. high sensitivity.
      *
+     * @param className modifier enum class
+     * @param name      modifier name
+     * @return the modifier or null if not available
      * @see <a href="https://github.com/HotswapProjects/HotswapAgent/issues/41">Issue#41</a>
      * @see <a href="http://stackoverflow.com/questions/9588737/is-java-7-watchservice-slow-for-anyone-else">Is Java 7 WatchService Slow for Anyone Else?</a>
      */
-    WatchEvent.Modifier get_com_sun_nio_file_SensitivityWatchEventModifier_HIGH() {
+    protected static WatchEvent.Modifier getModifier(String className, String name) {
         try {
-            Class<?> c = Class.forName("com.sun.nio.file.SensitivityWatchEventModifier");
-            Field f = c.getField("HIGH");
+            Class<?> c = Class.forName(className);
+            Field f = c.getField(name);
             return (WatchEvent.Modifier) f.get(c);
         } catch (Exception e) {
             return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,62 @@
+package org.hotswap.agent.watch.polling;
+
+import org.hotswap.agent.watch.AbstractWatcher;
+import org.hotswap.agent.watch.DirectoryPoller;
+import org.hotswap.agent.watch.DirectorySnapshot;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Paths;
+
+/**
+ * Watcher without a native watch service - directory trees are rescanned periodically.
+ * <p/>
+ * Portable fallback (e.g. network filesystems or exhausted inotify watches), the latency of change detection
+ * is given by the polling interval.
+ */
+public class PollingWatcher extends AbstractWatcher {
+
+    private final DirectoryPoller poller;
+
+    public PollingWatcher() {
+        this(DirectoryPoller.DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param interval milliseconds between rescans
+     */
+    public PollingWatcher(int interval) {
+        poller = new DirectoryPoller(this, new DirectorySnapshot(), interval);
+    }
+
+    @Override
+    public void addDirectory(URI path) throws IOException {
+        try {
+            poller.addRoot(Paths.get(path));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URI format " + path, e);
+        } catch (FileSystemNotFoundException e) {
+            throw new IOException("Invalid URI " + path, e);
+        } catch (SecurityException e) {
+            throw new IOException("Security exception for URI " + path, e);
+        }
+    }
+
+    /**
+     * @return the poller (e.g. to change the interval)
+     */
+    public DirectoryPoller getPoller() {
+        return poller;
+    }
+
+    @Override
+    public void run() {
+        poller.start();
+    }
+
+    @Override
+    public void stop() {
+        poller.stop();
+    }
+}
@@ -0,0 +1,112 @@
+package org.hotswap.agent.annotation.handler;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+/**
+ * Precompiled invocation of plugin methods.
+ */
+public class HandlerMethodTest {
+
+    @Test
+    public void testKinds() throws Exception {
+        HandlerMethod handlerMethod = new HandlerMethod(Handlers.class.getMethod("resolve", Object.class, String.class,
+                Integer.class), null, ClassLoader.class, String.class);
+
+        assertEquals("First assignable type", 0, handlerMethod.getKind(0));
+        assertEquals(1, handlerMethod.getKind(1));
+        assertEquals(HandlerMethod.UNKNOWN, handlerMethod.getKind(2));
+        assertTrue(handlerMethod.hasKind(1));
+        assertFalse(handlerMethod.hasKind(2));
+    }
+
+    @Test
+    public void testInvoke() throws Exception {
+        Handlers handlers = new Handlers();
+        Method instanceMethod = Handlers.class.getMethod("instance", String.class);
+        assertEquals("instance:a", new HandlerMethod(instanceMethod, handlers).invoke(new Object[]{"a"}));
+
+        Method staticMethod = Handlers.class.getDeclaredMethod("staticMethod", String.class);
+        assertEquals("static:b", new HandlerMethod(staticMethod, handlers).invoke(new Object[]{"b"}));
+
+        assertNull(new HandlerMethod(Handlers.class.getMethod("resolve", Object.class, String.class, Integer.class),
+                null).invoke(new Object[]{null, null, null}));
+    }
+
+    @Test
+    public void testException() throws Exception {
+        try {
+            new HandlerMethod(Handlers.class.getMethod("fail"), new Handlers()).invoke(new Object[0]);
+            fail("Exception expected");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testIllegalArguments() throws Exception {
+        HandlerMethod handlerMethod = new HandlerMethod(Handlers.class.getMethod("instance", String.class), new Handlers());
+        assertIllegalArgument(handlerMethod, new Object[]{1});
+        assertIllegalArgument(handlerMethod, new Object[0]);
+
+        HandlerMethod primitive = new HandlerMethod(Handlers.class.getMethod("primitive", long.class), null);
+        assertIllegalArgument(primitive, new Object[]{null});
+        assertEquals("Widening as Method.invoke()", 2L, primitive.invoke(new Object[]{1}));
+        assertEquals(3L, primitive.invoke(new Object[]{2L}));
+    }
+
+    private void assertIllegalArgument(HandlerMethod handlerMethod, Object[] args) throws Exception {
+        try {
+            handlerMethod.invoke(args);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // as Method.invoke()
+        }
+    }
+
+    @Test
+    public void testPluginAnnotationBySupportedTypes() throws Exception {
+        Method method = Handlers.class.getMethod("resolve", Object.class, String.class, Integer.class);
+        PluginAnnotation<Deprecated> pluginAnnotation = new PluginAnnotation<Deprecated>(Handlers.class, null, null, method);
+        Class<?>[] stringFirst = {String.class, ClassLoader.class};
+
+        HandlerMethod first = pluginAnnotation.getHandlerMethod(stringFirst);
+        assertSame("Cached", first, pluginAnnotation.getHandlerMethod(stringFirst));
+        assertSame("Equal types", first, pluginAnnotation.getHandlerMethod(String.class, ClassLoader.class));
+        assertEquals(0, first.getKind(0));
+
+        HandlerMethod other = pluginAnnotation.getHandlerMethod(ClassLoader.class, String.class);
+        assertNotSame("Other handler's types", first, other);
+        assertEquals(0, other.getKind(0));
+        assertEquals(1, other.getKind(1));
+
+        HandlerMethod none = pluginAnnotation.getHandlerMethod();
+        assertEquals(HandlerMethod.UNKNOWN, none.getKind(0));
+        assertSame(none, pluginAnnotation.getHandlerMethod());
+    }
+
+    public static class Handlers {
+        public static void resolve(Object any, String name, Integer unknown) {
+        }
+
+        public String instance(String value) {
+            return "instance:" + value;
+        }
+
+        private static String staticMethod(String value) {
+            return "static:" + value;
+        }
+
+        public static long primitive(long value) {
+            return value + 1;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("failure");
+        }
+    }
+}
@@ -1,10 +1,19 @@
 package org.hotswap.agent.annotation.handler;
 
+import org.hotswap.agent.annotation.LoadEvent;
 import org.hotswap.agent.annotation.OnClassLoadEvent;
+import org.hotswap.agent.config.PluginConfiguration;
 import org.hotswap.agent.config.PluginManager;
 import org.hotswap.agent.config.PluginRegistry;
+import org.hotswap.agent.javassist.CtClass;
+import org.hotswap.agent.javassist.CtField;
 import org.hotswap.agent.testData.SimplePlugin;
+import org.hotswap.agent.util.ClassMetadata;
 import org.hotswap.agent.util.HotswapTransformer;
+import org.hotswap.agent.util.IOUtils;
+import org.hotswap.agent.util.RedefinitionEvent;
+import org.hotswap.agent.util.RedefinitionListener;
+import org.hotswap.agent.util.classloader.ClassPoolRegistry;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.lib.legacy.ClassImposteriser;
@@ -13,7 +22,7 @@ import org.junit.Test;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.reflect.Method;
 
-import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.*;
 
 /**
  * @author Jiri Bubnik
@@ -27,6 +36,7 @@ public class OnClassLoadEventHandlerTest {
     PluginManager pluginManager = context.mock(PluginManager.class);
     PluginRegistry pluginRegistry = context.mock(PluginRegistry.class);
     HotswapTransformer hotswapTransformer = context.mock(HotswapTransformer.class);
+    ClassPoolRegistry classPoolRegistry = new ClassPoolRegistry();
 
     @Test
     public void testInitMethod() throws Exception {
@@ -54,8 +64,113 @@ public class OnClassLoadEventHandlerTest {
 
     }
 
+    @Test
+    public void testInitRedefinitionObserver() throws Exception {
+        context.checking(new Expectations() {{
+            allowing(pluginManager).getHotswapTransformer(); will(returnValue(hotswapTransformer));
+
+            oneOf(hotswapTransformer).registerRedefinitionListener(with(aNull(ClassLoader.class)),
+                    with(".*"), with(any(RedefinitionListener.class)));
+            oneOf(hotswapTransformer).registerTransformer(with(aNull(ClassLoader.class)),
+                    with(".*"), with(any(ClassFileTransformer.class)));
+        }});
+
+        OnClassLoadedHandler onClassLoadedHandler = new OnClassLoadedHandler(pluginManager);
+        assertTrue(onClassLoadedHandler.initMethod(annotation("redefined", ClassMetadata.class)));
+        assertTrue("CtClass parameter is chained", onClassLoadedHandler.initMethod(annotation("redefinedCtClass", CtClass.class)));
+    }
+
+    @Test
+    public void testOnRedefinition() throws Exception {
+        final PluginConfiguration pluginConfiguration = context.mock(PluginConfiguration.class);
+        context.checking(new Expectations() {{
+            allowing(pluginManager).getHotswapTransformer(); will(returnValue(hotswapTransformer));
+            allowing(pluginManager).getPluginConfiguration(null); will(returnValue(pluginConfiguration));
+            allowing(pluginConfiguration).isDisabledPlugin(with(any(Class.class))); will(returnValue(false));
+        }});
+
+        new OnClassLoadedHandler(pluginManager).onRedefinition(annotation("redefined", ClassMetadata.class),
+                new RedefinitionEvent(null, TransformPlugin.class.getName().replace('.', '/'), TransformPlugin.class, null, classBytes()));
+        assertEquals(TransformPlugin.class.getName(), TransformPlugin.checked);
+    }
+
+    private PluginAnnotation<OnClassLoadEvent> annotation(String methodName, Class<?> parameterType) throws Exception {
+        Method method = TransformPlugin.class.getMethod(methodName, parameterType);
+        return new PluginAnnotation<OnClassLoadEvent>(TransformPlugin.class,
+                null, method.getAnnotation(OnClassLoadEvent.class), method);
+    }
+
     @Test
     public void testTransform() throws Exception {
+        byte[] bytes = transform("checkClass");
+        assertSame("Unmodified class not regenerated", classBytes(), bytes);
+        assertEquals(TransformPlugin.class.getName(), TransformPlugin.checked);
+
+        bytes = transform("modifyClass");
+        assertNotSame(classBytes(), bytes);
+        assertTrue(bytes.length > classBytes().length);
+    }
+
+    @Test
+    public void testTransformClassMetadata() throws Exception {
+        assertSame(classBytes(), transform("checkMetadata"));
+        assertEquals(Object.class.getName(), TransformPlugin.checked);
+    }
+
+    // byte array instance of the test class, identity is checked by transform tests
+    private byte[] classBytes;
+
+    private byte[] classBytes() throws Exception {
+        if (classBytes == null) {
+            String path = TransformPlugin.class.getName().replace('.', '/') + ".class";
+            classBytes = IOUtils.toByteArray(getClass().getClassLoader().getResourceAsStream(path));
+        }
+        return classBytes;
+    }
+
+    private byte[] transform(String methodName) throws Exception {
+        final PluginConfiguration pluginConfiguration = context.mock(PluginConfiguration.class, methodName);
+        context.checking(new Expectations() {{
+            allowing(pluginManager).getHotswapTransformer(); will(returnValue(hotswapTransformer));
+            allowing(pluginManager).getPluginConfiguration(null); will(returnValue(pluginConfiguration));
+            allowing(pluginConfiguration).isDisabledPlugin(with(any(Class.class))); will(returnValue(false));
+            allowing(pluginManager).getClassPoolRegistry(); will(returnValue(classPoolRegistry));
+        }});
+
+        Method method = TransformPlugin.class.getMethod(methodName, methodName.equals("checkMetadata") ? ClassMetadata.class : CtClass.class);
+        PluginAnnotation<OnClassLoadEvent> pluginAnnotation = new PluginAnnotation<OnClassLoadEvent>(TransformPlugin.class,
+                null, method.getAnnotation(OnClassLoadEvent.class), method);
+
+        return new OnClassLoadedHandler(pluginManager).transform(pluginAnnotation, null,
+                TransformPlugin.class.getName().replace('.', '/'), null, null, classBytes());
+    }
 
+    public static class TransformPlugin {
+        static String checked;
+
+        @OnClassLoadEvent(classNameRegexp = ".*")
+        public static void checkClass(CtClass ctClass) throws Exception {
+            checked = ctClass.getName();
+            ctClass.getDeclaredMethod("checkClass");
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*")
+        public static void modifyClass(CtClass ctClass) throws Exception {
+            ctClass.addField(CtField.make("public int added;", ctClass));
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void redefined(ClassMetadata classMetadata) {
+            checked = classMetadata.getName();
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
+        public static void redefinedCtClass(CtClass ctClass) {
+        }
+
+        @OnClassLoadEvent(classNameRegexp = ".*")
+        public static void checkMetadata(ClassMetadata classMetadata) throws Exception {
+            checked = classMetadata.getSuperclassName();
+        }
     }
 }
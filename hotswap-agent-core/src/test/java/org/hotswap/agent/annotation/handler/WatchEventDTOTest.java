@@ -0,0 +1,60 @@
+package org.hotswap.agent.annotation.handler;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.annotation.OnClassFileEvent;
+import org.hotswap.agent.annotation.OnResourceFileEvent;
+import org.hotswap.agent.watch.HotswapWatchFileEvent;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+/**
+ * Filters evaluated before a command is scheduled.
+ */
+public class WatchEventDTOTest {
+
+    @Test
+    public void testUriFilter() {
+        assertFilter("*.properties", "file:/app/config.properties", "file:/app/config_properties");
+        assertFilter(".*.properties", "file:/app/config_properties", "file:/app/config.xml");
+        assertFilter(".*\\.properties", "file:/app/config.properties", "file:/app/config_properties");
+        assertFilter("*/META-INF/*.xml", "file:/app/META-INF/beans.xml", "file:/app/beans.xml");
+        assertFilter(".*(beans|faces)\\.xml", "file:/app/faces.xml", "file:/app/web.xml");
+
+        assertTrue(WatchEventDTO.UriFilter.compile(".*.properties") instanceof WatchEventDTO.SuffixFilter);
+        assertTrue(WatchEventDTO.UriFilter.compile(".*(beans|faces)\\.xml") instanceof WatchEventDTO.RegexpFilter);
+    }
+
+    private static void assertFilter(String filter, String matching, String notMatching) {
+        WatchEventDTO.UriFilter uriFilter = WatchEventDTO.UriFilter.compile(filter);
+        assertTrue(filter + " matches " + matching, uriFilter.matches(matching));
+        assertFalse(filter + " does not match " + notMatching, uriFilter.matches(notMatching));
+    }
+
+    @Test
+    public void testAccept() throws Exception {
+        WatchEventDTO resource = WatchEventDTO.parse(
+                Handlers.class.getMethod("properties").getAnnotation(OnResourceFileEvent.class));
+        assertTrue(resource.accept(new HotswapWatchFileEvent(FileEvent.MODIFY, Paths.get("/app/config.properties"))));
+        assertFalse("Event type", resource.accept(new HotswapWatchFileEvent(FileEvent.DELETE, Paths.get("/app/config.properties"))));
+        assertFalse("Filter", resource.accept(new HotswapWatchFileEvent(FileEvent.MODIFY, Paths.get("/app/config.xml"))));
+
+        WatchEventDTO classFile = WatchEventDTO.parse(
+                Handlers.class.getMethod("classFile").getAnnotation(OnClassFileEvent.class));
+        assertTrue(classFile.accept(new HotswapWatchFileEvent(FileEvent.CREATE, Paths.get("/app/Test.class"))));
+        assertFalse("Extension", classFile.accept(new HotswapWatchFileEvent(FileEvent.CREATE, Paths.get("/app/Test.java"))));
+        assertTrue(classFile.getClassNamePattern().matcher("org.example.Test").matches());
+    }
+
+    public static class Handlers {
+        @OnResourceFileEvent(path = "/", filter = "*.properties", events = {FileEvent.CREATE, FileEvent.MODIFY})
+        public void properties() {
+        }
+
+        @OnClassFileEvent(classNameRegexp = "org.example.*")
+        public void classFile() {
+        }
+    }
+}
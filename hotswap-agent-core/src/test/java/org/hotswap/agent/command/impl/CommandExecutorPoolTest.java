@@ -0,0 +1,136 @@
+package org.hotswap.agent.command.impl;
+
+import org.hotswap.agent.command.Command;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check bounded execution and serialization of equal commands.
+ */
+public class CommandExecutorPoolTest {
+
+    CommandExecutorPool pool = new CommandExecutorPool(2, false);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testEqualCommandsNotConcurrent() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            SleepCommand command = new SleepCommand("key", running, maxRunning);
+            pool.execute(command, new CommandExecutor(command) {
+                @Override
+                public void finished() {
+                    finished.countDown();
+                }
+            });
+        }
+
+        assertTrue("All commands executed", finished.await(5, TimeUnit.SECONDS));
+        assertEquals("Equal commands run one after another", 1, maxRunning.get());
+        assertFalse(pool.isRunning(new SleepCommand("key", running, maxRunning)));
+        assertEquals(10, pool.getCompletedCount());
+    }
+
+    @Test
+    public void testPoolSizeLimit() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            SleepCommand command = new SleepCommand("key" + i, running, maxRunning);
+            pool.execute(command, new CommandExecutor(command) {
+                @Override
+                public void finished() {
+                    finished.countDown();
+                }
+            });
+        }
+
+        assertTrue("Commands are queued", pool.getLargestQueueSize() > 0);
+        assertTrue("All commands executed", finished.await(5, TimeUnit.SECONDS));
+        assertEquals("Running commands limited by pool size", 2, maxRunning.get());
+        assertTrue(pool.getThreadCount() <= 2);
+    }
+
+    @Test
+    public void testExecuteAllFromWorker() throws Exception {
+        final CommandExecutorPool singleThreadPool = new CommandExecutorPool(1, false);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        Command batch = new Command() {
+            @Override
+            public void executeCommand() {
+                // the only worker waits for the batch
+                singleThreadPool.executeAll(Arrays.<Command>asList(new SleepCommand("a", running, maxRunning),
+                        new SleepCommand("b", running, maxRunning), new SleepCommand("c", running, maxRunning)));
+            }
+        };
+        try {
+            singleThreadPool.execute(batch, new CommandExecutor(batch) {
+                @Override
+                public void finished() {
+                    finished.countDown();
+                }
+            });
+
+            assertTrue("Batch executed by the waiting worker", finished.await(5, TimeUnit.SECONDS));
+            assertEquals(4, singleThreadPool.getCompletedCount());
+        } finally {
+            singleThreadPool.shutdown();
+        }
+    }
+
+    private static class SleepCommand implements Command {
+        final String key;
+        final AtomicInteger running;
+        final AtomicInteger maxRunning;
+
+        SleepCommand(String key, AtomicInteger running, AtomicInteger maxRunning) {
+            this.key = key;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public void executeCommand() {
+            int current = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), current));
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SleepCommand && key.equals(((SleepCommand) o).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+}
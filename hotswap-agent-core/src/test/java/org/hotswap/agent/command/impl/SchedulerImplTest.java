@@ -1,5 +1,6 @@
 package org.hotswap.agent.command.impl;
 
+import org.hotswap.agent.command.Command;
 import org.hotswap.agent.command.CommandExecutionListener;
 import org.hotswap.agent.command.ReflectionCommand;
 import org.hotswap.agent.command.Scheduler;
@@ -9,8 +10,14 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 /**
@@ -54,5 +61,60 @@ public class SchedulerImplTest {
         assertTrue("Event listener not called", WaitHelper.waitForResult(resultHolder));
     }
 
+    @Test
+    public void testDispatchDelay() throws Exception {
+        // wall-clock upper bound is not checked (loaded machine), only the lower bound and the order by timeout
+        final int[] timeouts = {300, 100, 200};
+        final long scheduledAt = System.nanoTime();
+
+        // timeout and actual delay of executed commands
+        final List<long[]> executed = Collections.synchronizedList(new ArrayList<long[]>());
+        final WaitHelper.ResultHolder resultHolder = new WaitHelper.ResultHolder();
+        for (final int timeout : timeouts) {
+            scheduler.scheduleCommand(new Command() {
+                @Override
+                public void executeCommand() {
+                    executed.add(new long[]{timeout, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduledAt)});
+                    if (executed.size() == timeouts.length)
+                        resultHolder.result = true;
+                }
+            }, timeout);
+        }
+
+        assertTrue("Commands not executed", WaitHelper.waitForResult(resultHolder, 5000));
+        List<Long> order = new ArrayList<Long>();
+        for (long[] execution : new ArrayList<long[]>(executed)) {
+            order.add(execution[0]);
+            assertTrue("Command executed before timeout (" + execution[1] + "ms)", execution[1] >= execution[0]);
+        }
+        assertEquals("Executed in order of timeouts", Arrays.asList(100L, 200L, 300L), order);
+    }
+
+    @Test
+    public void testRescheduleRestartsTimer() throws Exception {
+        final WaitHelper.ResultHolder resultHolder = new WaitHelper.ResultHolder();
+        final long[] executedAt = new long[1];
+        final int[] executionCount = new int[1];
+        command.setCommandExecutionListener(new CommandExecutionListener() {
+            @Override
+            public void commandExecuted(Object result) {
+                executedAt[0] = System.nanoTime();
+                executionCount[0]++;
+                resultHolder.result = true;
+            }
+        });
+
+        scheduler.scheduleCommand(command, 100);
+        Thread.sleep(50);
+        long rescheduledAt = System.nanoTime();
+        scheduler.scheduleCommand(command, 100);
+
+        assertTrue("Event listener not called", WaitHelper.waitForResult(resultHolder));
+        assertTrue("Timer restarted", executedAt[0] - rescheduledAt >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        Thread.sleep(150);
+        assertEquals("Stale schedule not executed", 1, executionCount[0]);
+    }
+
 
 }
@@ -3,8 +3,14 @@ package org.hotswap.agent.config;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Basic tests for configuration.
@@ -32,4 +38,53 @@ public class PluginConfigurationTest {
         File canonicalFile = tempFile.getCanonicalFile();
         assertEquals(canonicalFile.toURI().toURL(), pluginConfiguration.getWatchResources()[0]);
     }
+
+    @Test
+    public void testDisabledPlugins() throws Exception {
+        File directory = createTempDirectory();
+        writeConfiguration(directory, "disabledPlugins=Hibernate, Spring");
+        PluginConfiguration pluginConfiguration = new PluginConfiguration(
+                new URLClassLoader(new URL[]{directory.toURI().toURL()}, null));
+
+        assertTrue(pluginConfiguration.isDisabledPlugin("Hibernate"));
+        assertTrue(pluginConfiguration.isDisabledPlugin("Spring"));
+        assertFalse(pluginConfiguration.isDisabledPlugin("Jersey2"));
+        // plugin name first seen after the disabled flags were resolved
+        assertFalse(pluginConfiguration.isDisabledPlugin("PluginConfigurationTest-unknown"));
+    }
+
+    @Test
+    public void testReloadInvalidatesDisabledPlugins() throws Exception {
+        File directory = createTempDirectory();
+        writeConfiguration(directory, "disabledPlugins=Hibernate");
+        PluginConfiguration pluginConfiguration = new PluginConfiguration(
+                new URLClassLoader(new URL[]{directory.toURI().toURL()}, null));
+        assertTrue(pluginConfiguration.isDisabledPlugin("Hibernate"));
+        assertFalse(pluginConfiguration.isDisabledPlugin("Spring"));
+
+        writeConfiguration(directory, "disabledPlugins=Spring");
+        pluginConfiguration.reload();
+
+        assertFalse(pluginConfiguration.isDisabledPlugin("Hibernate"));
+        assertTrue(pluginConfiguration.isDisabledPlugin("Spring"));
+    }
+
+    private static File createTempDirectory() throws IOException {
+        File directory = File.createTempFile("hotswap-agent", "config");
+        directory.delete();
+        directory.mkdir();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private static void writeConfiguration(File directory, String content) throws IOException {
+        File file = new File(directory, "hotswap-agent.properties");
+        file.deleteOnExit();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
 }
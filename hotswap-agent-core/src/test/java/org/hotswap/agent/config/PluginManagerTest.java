@@ -0,0 +1,172 @@
+package org.hotswap.agent.config;
+
+import org.hotswap.agent.util.classloader.ClassLoaderPatcher;
+import org.hotswap.agent.util.classloader.WeakClassLoaderMap;
+import org.hotswap.agent.watch.Watcher;
+import org.hotswap.agent.watch.polling.PollingWatcher;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.ProtectionDomain;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Concurrent classloader initialization.
+ */
+public class PluginManagerTest {
+
+    @Test
+    public void testInitClassLoaderOnce() throws Exception {
+        final PluginManager pluginManager = PluginManager.getInstance();
+        final AtomicInteger patched = new AtomicInteger();
+        final ClassLoader classLoader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+
+        ClassLoaderPatcher classLoaderPatcher = pluginManager.classLoaderPatcher;
+        pluginManager.classLoaderPatcher = new ClassLoaderPatcher() {
+            @Override
+            public void patch(ClassLoader classLoaderFrom, String pluginPath, ClassLoader classLoaderTo, ProtectionDomain protectionDomain) {
+                patched.incrementAndGet();
+                // nested call from the patching thread does not wait for itself
+                pluginManager.initClassLoader(classLoaderTo, protectionDomain);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public boolean isPatchAvailable(ClassLoader classLoader) {
+                return true;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final CountDownLatch initialized = new CountDownLatch(8);
+            final AtomicInteger withConfiguration = new AtomicInteger();
+            for (int i = 0; i < 8; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        pluginManager.initClassLoader(classLoader, null);
+                        if (pluginManager.classLoaderInitializations.get(classLoader).configuration != null)
+                            withConfiguration.incrementAndGet();
+                        initialized.countDown();
+                    }
+                });
+            }
+
+            assertTrue(initialized.await(5, TimeUnit.SECONDS));
+            assertEquals("Patched once", 1, patched.get());
+            assertEquals("All threads return after the initialization", 8, withConfiguration.get());
+            assertNotSame(pluginManager.getPluginConfiguration(getClass().getClassLoader()),
+                    pluginManager.getPluginConfiguration(classLoader));
+        } finally {
+            executor.shutdownNow();
+            pluginManager.classLoaderPatcher = classLoaderPatcher;
+            pluginManager.closeClassLoader(classLoader);
+        }
+    }
+
+    @Test
+    public void testResolvedConfigurationInvalidatedForDescendants() throws Exception {
+        PluginManager pluginManager = PluginManager.getInstance();
+        ClassLoader parent = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        ClassLoader child = new URLClassLoader(new URL[0], parent);
+        ClassLoader unrelated = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        PluginConfiguration agentConfiguration = pluginManager.getPluginConfiguration(getClass().getClassLoader());
+        try {
+            assertSame(agentConfiguration, pluginManager.getPluginConfiguration(child));
+
+            pluginManager.initClassLoader(unrelated);
+            assertNotNull("Unrelated classloader keeps resolved configuration",
+                    pluginManager.resolvedConfigurations.get(child));
+
+            pluginManager.initClassLoader(parent);
+            assertNull("Descendant configuration invalidated", pluginManager.resolvedConfigurations.get(child));
+            PluginConfiguration parentConfiguration = pluginManager.getPluginConfiguration(parent);
+            assertNotSame(agentConfiguration, parentConfiguration);
+            assertSame(parentConfiguration, pluginManager.getPluginConfiguration(child));
+
+            pluginManager.closeClassLoader(parent);
+            assertSame(agentConfiguration, pluginManager.getPluginConfiguration(child));
+        } finally {
+            pluginManager.closeClassLoader(parent);
+            pluginManager.closeClassLoader(unrelated);
+        }
+    }
+
+    @Test
+    public void testConfigurationWatchedOnce() throws Exception {
+        PluginManager pluginManager = PluginManager.getInstance();
+        Path directory = Files.createTempDirectory("pluginManagerTest");
+        Files.write(directory.resolve("hotswap-agent.properties"), "autoHotswap=false".getBytes("UTF-8"));
+        ClassLoader classLoader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, null);
+        PluginConfiguration configuration = new PluginConfiguration(null, classLoader);
+
+        Watcher watcher = pluginManager.watcher;
+        PollingWatcher pollingWatcher = new PollingWatcher();
+        pluginManager.watcher = pollingWatcher;
+        try {
+            pluginManager.watchConfiguration(configuration);
+            pluginManager.watchConfiguration(configuration);
+            assertEquals("Single listener per configuration", 1, pollingWatcher.getListenerCount());
+        } finally {
+            pluginManager.watcher = watcher;
+        }
+    }
+
+    @Test
+    public void testInitializedClassLoaderCollectable() throws Exception {
+        WeakClassLoaderMap<PluginManager.ClassLoaderInitialization> initializations =
+                new WeakClassLoaderMap<PluginManager.ClassLoaderInitialization>();
+        WeakReference<ClassLoader> reference = initInThread(initializations,
+                new URLClassLoader(new URL[0], getClass().getClassLoader()));
+        assertEquals(1, initializations.size());
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull("Initialized classloader collected", reference.get());
+        assertEquals(0, initializations.size());
+    }
+
+    // initialize from a thread with the classloader as its context classloader (webapp thread)
+    private WeakReference<ClassLoader> initInThread(
+            final WeakClassLoaderMap<PluginManager.ClassLoaderInitialization> initializations,
+            final ClassLoader classLoader) throws InterruptedException {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                PluginManager.ClassLoaderInitialization initialization = new PluginManager.ClassLoaderInitialization(
+                        new Callable<PluginConfiguration>() {
+                            @Override
+                            public PluginConfiguration call() {
+                                return new PluginConfiguration(null, classLoader);
+                            }
+                        });
+                initializations.put(classLoader, initialization);
+                initialization.run();
+            }
+        };
+        thread.setContextClassLoader(classLoader);
+        thread.start();
+        thread.join();
+        assertNotNull(initializations.get(classLoader).configuration);
+        assertNull("Owner released", initializations.get(classLoader).owner);
+        return new WeakReference<ClassLoader>(classLoader);
+    }
+}
@@ -0,0 +1,87 @@
+package org.hotswap.agent.config;
+
+import org.hotswap.agent.testData.SimplePlugin;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plugin lookup by classloader hierarchy and plugin classloader resolution.
+ */
+public class PluginRegistryTest {
+
+    PluginRegistry pluginRegistry;
+
+    ClassLoader parent = new URLClassLoader(new URL[0], getClass().getClassLoader());
+    ClassLoader child = new URLClassLoader(new URL[0], parent);
+    ClassLoader grandChild = new URLClassLoader(new URL[0], child);
+    ClassLoader other = new URLClassLoader(new URL[0], getClass().getClassLoader());
+
+    SimplePlugin plugin = new SimplePlugin();
+
+    @Before
+    public void setUp() {
+        pluginRegistry = new PluginRegistry(PluginManager.getInstance(), null);
+        Map<ClassLoader, Object> plugins = Collections.synchronizedMap(new HashMap<ClassLoader, Object>());
+        plugins.put(parent, plugin);
+        pluginRegistry.getRegisteredPlugins().put(SimplePlugin.class, plugins);
+    }
+
+    @Test
+    public void testGetPluginFromParent() {
+        assertSame(plugin, pluginRegistry.getPlugin(SimplePlugin.class, parent));
+        assertSame(plugin, pluginRegistry.getPlugin(SimplePlugin.class, grandChild));
+        // memoized parent chain
+        assertSame(plugin, pluginRegistry.getPlugin(SimplePlugin.class, grandChild));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPluginNotInHierarchy() {
+        pluginRegistry.getPlugin(SimplePlugin.class, other);
+    }
+
+    @Test
+    public void testNearestPlugin() {
+        SimplePlugin childPlugin = new SimplePlugin();
+        pluginRegistry.getRegisteredPlugins().get(SimplePlugin.class).put(child, childPlugin);
+
+        assertSame(childPlugin, pluginRegistry.getPlugin(SimplePlugin.class, grandChild));
+        assertSame(plugin, pluginRegistry.getPlugin(SimplePlugin.class, parent));
+    }
+
+    @Test
+    public void testHasPlugin() {
+        assertTrue(pluginRegistry.hasPlugin(SimplePlugin.class, parent, false));
+        assertFalse(pluginRegistry.hasPlugin(SimplePlugin.class, child, false));
+        assertTrue(pluginRegistry.hasPlugin(SimplePlugin.class, child, true));
+        assertFalse(pluginRegistry.hasPlugin(SimplePlugin.class, other, true));
+        assertFalse(pluginRegistry.hasPlugin(String.class, parent, true));
+    }
+
+    @Test
+    public void testGetAppClassLoader() {
+        assertSame(parent, pluginRegistry.getAppClassLoader(plugin));
+        assertSame(parent, pluginRegistry.getAppClassLoader(plugin));
+    }
+
+    @Test
+    public void testCloseClassLoader() {
+        assertSame(parent, pluginRegistry.getAppClassLoader(plugin));
+        pluginRegistry.closeClassLoader(parent);
+
+        assertFalse(pluginRegistry.hasPlugin(SimplePlugin.class, child, true));
+        try {
+            pluginRegistry.getAppClassLoader(plugin);
+            fail("Plugin of closed classloader must not be found.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.hotswap.agent.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Read class name from the class file header.
+ */
+public class ClassFileReaderTest {
+
+    @Test
+    public void testReadClassName() throws Exception {
+        assertEquals(ClassFileReaderTest.class.getName(), ClassFileReader.readClassName(classFile(ClassFileReaderTest.class)));
+        assertEquals(Constants.class.getName(), ClassFileReader.readClassName(classFile(Constants.class)));
+        assertEquals(String.class.getName(), ClassFileReader.readClassName(
+                ByteBuffer.wrap(IOUtils.toByteArray(String.class.getResourceAsStream("String.class")))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidClassFile() throws Exception {
+        ClassFileReader.readClassName(ByteBuffer.wrap(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0}));
+    }
+
+    private static URI classFile(Class<?> clazz) throws Exception {
+        return clazz.getResource(clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class").toURI();
+    }
+
+    // long and double constants take two constant pool entries
+    static class Constants {
+        long l = 1234567890123L;
+        double d = 3.14159;
+        String s = "žluťoučký kůň";
+    }
+}
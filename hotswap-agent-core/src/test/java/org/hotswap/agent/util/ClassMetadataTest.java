@@ -0,0 +1,47 @@
+package org.hotswap.agent.util;
+
+import org.hotswap.agent.annotation.Plugin;
+import org.hotswap.agent.testData.SimplePlugin;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Class metadata read from the bytecode.
+ */
+public class ClassMetadataTest {
+
+    @Test
+    public void testMetadata() throws Exception {
+        ClassMetadata metadata = new ClassMetadata(null, classBytes(SimplePlugin.class));
+
+        assertEquals(SimplePlugin.class.getName(), metadata.getName());
+        assertEquals(Object.class.getName(), metadata.getSuperclassName());
+        assertTrue(metadata.getInterfaceNames().isEmpty());
+        assertFalse(metadata.isInterface());
+        assertEquals(Arrays.asList(Plugin.class.getName()), metadata.getAnnotationNames());
+        assertTrue(metadata.hasAnnotation(Plugin.class.getName()));
+        assertFalse(metadata.hasAnnotation(Deprecated.class.getName()));
+    }
+
+    @Test
+    public void testInterface() throws Exception {
+        ClassMetadata metadata = new ClassMetadata("org/hotswap/agent/util/ClassMetadataTest$TestInterface",
+                classBytes(TestInterface.class));
+
+        assertEquals(TestInterface.class.getName(), metadata.getName());
+        assertTrue(metadata.isInterface());
+        assertEquals(Arrays.asList(Serializable.class.getName()), metadata.getInterfaceNames());
+    }
+
+    private byte[] classBytes(Class<?> clazz) throws IOException {
+        return IOUtils.toByteArray(getClass().getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class"));
+    }
+
+    interface TestInterface extends Serializable {
+    }
+}
@@ -0,0 +1,81 @@
+package org.hotswap.agent.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * File reads.
+ */
+public class IOUtilsTest {
+
+    Path temp;
+
+    @Before
+    public void setup() throws IOException {
+        temp = Files.createTempDirectory("ioUtilsTest");
+    }
+
+    @After
+    public void tearDown() {
+        delete(temp.toFile());
+    }
+
+    @Test
+    public void testToByteArray() throws Exception {
+        byte[] bytes = new byte[200 * 1024];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) i;
+        Path file = temp.resolve("Test.class");
+        Files.write(file, bytes);
+
+        assertArrayEquals(bytes, IOUtils.toByteArray(file));
+        assertArrayEquals(bytes, IOUtils.toByteArray(file.toUri()));
+        assertArrayEquals(new byte[0], IOUtils.toByteArray(Files.createFile(temp.resolve("Empty.class"))));
+    }
+
+    @Test
+    public void testWaitForFile() throws Exception {
+        // package is removed and recreated by IDE recompilation
+        final Path file = temp.resolve("org/example/Test.class");
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    Path written = Files.write(temp.resolve("Test.tmp"), new byte[]{1, 2, 3});
+                    Files.createDirectories(file.getParent());
+                    Files.move(written, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }.start();
+
+        assertArrayEquals(new byte[]{1, 2, 3}, IOUtils.toByteArray(file));
+    }
+
+    @Test
+    public void testWaitForFileTimeout() throws Exception {
+        long start = System.currentTimeMillis();
+        assertFalse(IOUtils.waitForFile(temp.resolve("Missing.class"), 100));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,91 @@
+package org.hotswap.agent.util;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Notification of redefinition observers.
+ */
+public class RedefinitionBusTest {
+
+    final List<String> called = new ArrayList<String>();
+    final List<ClassMetadata> metadata = new ArrayList<ClassMetadata>();
+
+    ClassLoader parent = new URLClassLoader(new URL[0], getClass().getClassLoader());
+    ClassLoader webapp1 = new URLClassLoader(new URL[0], parent);
+    ClassLoader webapp2 = new URLClassLoader(new URL[0], parent);
+
+    byte[] bytes = new byte[]{1};
+
+    @Test
+    public void testSharedEvent() {
+        RedefinitionBus bus = new RedefinitionBus();
+        bus.addListener(null, "^.*$", listener("global"));
+        bus.addListener(parent, "^.*$", listener("parent"));
+        bus.addListener(webapp1, "^.*$", listener("webapp1"));
+        bus.addListener(webapp2, "^.*$", listener("webapp2"));
+        bus.addListener(webapp1, "^org.example.Other$", listener("other"));
+
+        bus.redefined(webapp1, "org/example/Test", Object.class, null, bytes);
+        assertEquals(Arrays.asList("global", "webapp1", "parent"), called);
+        assertEquals(3, metadata.size());
+        assertSame("Parsed once", metadata.get(0), metadata.get(1));
+        assertSame(metadata.get(0), metadata.get(2));
+    }
+
+    @Test
+    public void testParentDefinedClass() {
+        RedefinitionBus bus = new RedefinitionBus();
+        bus.addListener(parent, "^.*$", listener("parent"));
+        bus.addListener(webapp1, "^.*$", listener("webapp1"));
+
+        bus.redefined(parent, "org/example/Test", Object.class, null, bytes);
+        assertEquals(Arrays.asList("parent", "webapp1"), called);
+    }
+
+    @Test
+    public void testRemoveAndClose() {
+        RedefinitionListener global = listener("global");
+        RedefinitionBus bus = new RedefinitionBus();
+        bus.addListener(null, "^.*$", global);
+        bus.addListener(webapp1, "^.*$", listener("webapp1"));
+        bus.addListener(webapp2, "^.*$", listener("webapp2"));
+
+        bus.removeListener(global);
+        bus.closeClassLoader(webapp1);
+        bus.redefined(webapp2, "org/example/Test", Object.class, null, bytes);
+        assertEquals(Arrays.asList("webapp2"), called);
+    }
+
+    @Test
+    public void testListenerFailure() {
+        RedefinitionBus bus = new RedefinitionBus();
+        bus.addListener(null, "^.*$", new RedefinitionListener() {
+            @Override
+            public void onRedefinition(RedefinitionEvent event) {
+                throw new IllegalStateException("failure");
+            }
+        });
+        bus.addListener(null, "^.*$", listener("global"));
+
+        bus.redefined(webapp1, "org/example/Test", Object.class, null, bytes);
+        assertEquals(Arrays.asList("global"), called);
+    }
+
+    private RedefinitionListener listener(final String name) {
+        return new RedefinitionListener() {
+            @Override
+            public void onRedefinition(RedefinitionEvent event) {
+                called.add(name);
+                metadata.add(event.getClassMetadata());
+            }
+        };
+    }
+}
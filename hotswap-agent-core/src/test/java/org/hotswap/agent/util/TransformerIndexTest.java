@@ -0,0 +1,116 @@
+package org.hotswap.agent.util;
+
+import org.junit.Test;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that indexed lookup gives the same result as regexp matching for typical registrations.
+ */
+public class TransformerIndexTest {
+
+    final List<String> called = new ArrayList<String>();
+
+    @Test
+    public void testExactName() throws Exception {
+        TransformerIndex index = index("org.springframework.beans.factory.support.DefaultListableBeanFactory");
+
+        assertCalled(index, "org/springframework/beans/factory/support/DefaultListableBeanFactory");
+        assertNotCalled(index, "org/springframework/beans/factory/support/DefaultListableBeanFactoryX");
+        assertNotCalled(index, "org/springframework/beans/factory/support/DefaultListable");
+    }
+
+    @Test
+    public void testInnerClassSeparator() throws Exception {
+        TransformerIndex index = index("org.springframework.cglib.reflect.FastClass.Generator");
+
+        assertCalled(index, "org/springframework/cglib/reflect/FastClass$Generator");
+        assertNotCalled(index, "org/springframework/cglib/reflect/FastClass");
+    }
+
+    @Test
+    public void testPrefix() throws Exception {
+        TransformerIndex index = index("com.example.*");
+
+        assertCalled(index, "com/example/service/MyService");
+        assertCalled(index, "com/example");
+        assertNotCalled(index, "com/other/MyService");
+
+        index = index(".*");
+        assertCalled(index, "java/lang/String");
+    }
+
+    @Test
+    public void testRedefiningClassName() throws Exception {
+        TransformerIndex index = index("java.lang.String");
+
+        index.transform(null, null, String.class, null, new byte[0]);
+        assertEquals(1, called.size());
+    }
+
+    @Test
+    public void testRegexpResidue() throws Exception {
+        assertNull(TransformerIndex.Literal.parse("^(org.hibernate.ejb.HibernatePersistence)|(org.hibernate.jpa.HibernatePersistenceProvider)$"));
+        assertNull(TransformerIndex.Literal.parse("^.*\\$\\d+$"));
+        assertNotNull(TransformerIndex.Literal.parse("^com/sun/proxy/\\$Proxy.*$"));
+
+        TransformerIndex index = index(".*\\$\\d+");
+        assertCalled(index, "com/example/MyClass$1");
+        assertNotCalled(index, "com/example/MyClass$Inner");
+
+        index = index("(org.hibernate.ejb.HibernatePersistence)|(org.hibernate.jpa.HibernatePersistenceProvider)");
+        assertCalled(index, "org/hibernate/jpa/HibernatePersistenceProvider");
+    }
+
+    @Test
+    public void testChainResult() throws Exception {
+        Map<String, List<ClassFileTransformer>> registrations = new LinkedHashMap<String, List<ClassFileTransformer>>();
+        registrations.put("^com.example.*$", Collections.singletonList(appendByte((byte) 1)));
+        registrations.put("^com.example.MyClass$", Collections.singletonList(appendByte((byte) 2)));
+
+        byte[] result = TransformerIndex.build(registrations).transform(null, "com/example/MyClass", null, null, new byte[0]);
+        assertArrayEquals(new byte[]{1, 2}, result);
+    }
+
+    private TransformerIndex index(String regexp) {
+        Map<String, List<ClassFileTransformer>> registrations = new HashMap<String, List<ClassFileTransformer>>();
+        registrations.put("^" + regexp + "$", Collections.<ClassFileTransformer>singletonList(new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                    ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+                called.add(className);
+                return classfileBuffer;
+            }
+        }));
+        return TransformerIndex.build(registrations);
+    }
+
+    private ClassFileTransformer appendByte(final byte b) {
+        return new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                    ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+                byte[] result = Arrays.copyOf(classfileBuffer, classfileBuffer.length + 1);
+                result[classfileBuffer.length] = b;
+                return result;
+            }
+        };
+    }
+
+    private void assertCalled(TransformerIndex index, String className) throws IllegalClassFormatException {
+        called.clear();
+        index.transform(null, className, null, null, new byte[0]);
+        assertEquals("Transformer called for " + className, Collections.singletonList(className), called);
+    }
+
+    private void assertNotCalled(TransformerIndex index, String className) throws IllegalClassFormatException {
+        called.clear();
+        index.transform(null, className, null, null, new byte[0]);
+        assertTrue("Transformer not called for " + className, called.isEmpty());
+    }
+}
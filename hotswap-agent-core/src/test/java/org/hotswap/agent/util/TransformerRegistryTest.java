@@ -0,0 +1,95 @@
+package org.hotswap.agent.util;
+
+import org.junit.Test;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check classloader scoping of registered transformers.
+ */
+public class TransformerRegistryTest {
+
+    final List<String> called = new ArrayList<String>();
+
+    ClassLoader parent = new URLClassLoader(new URL[0], getClass().getClassLoader());
+    ClassLoader webapp1 = new URLClassLoader(new URL[0], parent);
+    ClassLoader webapp1Child = new URLClassLoader(new URL[0], webapp1);
+    ClassLoader webapp2 = new URLClassLoader(new URL[0], parent);
+    ClassLoader unrelated = new URLClassLoader(new URL[0], null);
+
+    @Test
+    public void testClassLoaderScope() throws Exception {
+        TransformerRegistry registry = TransformerRegistry.EMPTY
+                .register(null, "^.*$", transformer("global"))
+                .register(parent, "^.*$", transformer("parent"))
+                .register(webapp1, "^.*$", transformer("webapp1"))
+                .register(webapp2, "^.*$", transformer("webapp2"));
+
+        assertCalled(registry, webapp1, "global", "webapp1", "parent");
+        assertCalled(registry, webapp1Child, "global", "webapp1", "parent");
+        assertCalled(registry, webapp2, "global", "webapp2", "parent");
+        assertCalled(registry, parent, "global", "parent", "webapp1", "webapp2");
+    }
+
+    @Test
+    public void testParentDefinedClass() throws Exception {
+        TransformerRegistry registry = TransformerRegistry.EMPTY
+                .register(parent, "^.*$", transformer("parent"))
+                .register(webapp1Child, "^.*$", transformer("webapp1Child"));
+
+        // class of a shared library reaches transformers of the child classloaders
+        assertCalled(registry, parent, "parent", "webapp1Child");
+        assertCalled(registry, webapp1, "parent", "webapp1Child");
+        assertCalled(registry, webapp2, "parent");
+    }
+
+    @Test
+    public void testUnknownHierarchy() throws Exception {
+        TransformerRegistry registry = TransformerRegistry.EMPTY
+                .register(webapp1, "^.*$", transformer("webapp1"));
+
+        assertCalled(registry, unrelated, "webapp1");
+        assertCalled(registry, webapp2, "webapp1");
+    }
+
+    @Test
+    public void testCloseClassLoader() throws Exception {
+        ClassFileTransformer global = transformer("global");
+        TransformerRegistry registry = TransformerRegistry.EMPTY
+                .register(null, "^.*$", global)
+                .register(parent, "^.*$", transformer("parent"))
+                .register(webapp1, "^.*$", transformer("webapp1"));
+
+        registry = registry.closeClassLoader(webapp1);
+        assertCalled(registry, webapp1, "global", "parent");
+        assertEquals(1, registry.getClassLoaders().size());
+
+        registry = registry.remove("^.*$", global);
+        assertCalled(registry, webapp1, "parent");
+    }
+
+    private void assertCalled(TransformerRegistry registry, ClassLoader classLoader, String... expected) throws Exception {
+        called.clear();
+        registry.transform(classLoader, "com/example/MyClass", null, null, new byte[0]);
+        assertEquals(Arrays.asList(expected), called);
+    }
+
+    private ClassFileTransformer transformer(final String name) {
+        return new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                    ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+                called.add(name);
+                return classfileBuffer;
+            }
+        };
+    }
+}
@@ -0,0 +1,19 @@
+package org.hotswap.agent.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Hash values of the reference implementation.
+ */
+public class XxHash64Test {
+
+    @Test
+    public void testHash() throws Exception {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new byte[0]));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64.hash("abc".getBytes("UTF-8")));
+        assertEquals(0x1D9ED9E62CB19482L, XxHash64.hash(
+                "Hotswap Agent - content hash of a class file with more than 32 bytes!".getBytes("UTF-8")));
+    }
+}
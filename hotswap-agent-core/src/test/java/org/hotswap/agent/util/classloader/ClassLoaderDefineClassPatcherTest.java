@@ -37,4 +37,20 @@ public class ClassLoaderDefineClassPatcherTest {
         ;
     }
 
+    @Test
+    public void testPatchMultipleClassLoaders() throws Exception {
+        ClassLoaderDefineClassPatcher patcher = new ClassLoaderDefineClassPatcher();
+        ClassLoader appClassLoader1 = new URLClassLoader(new URL[]{}, getClass().getClassLoader());
+        ClassLoader appClassLoader2 = new URLClassLoader(new URL[]{}, getClass().getClassLoader());
+
+        // second patch uses cached plugin classes
+        patcher.patch(getClass().getClassLoader(), PluginManager.PLUGIN_PACKAGE.replace(".", "/"), appClassLoader1, null);
+        patcher.patch(getClass().getClassLoader(), PluginManager.PLUGIN_PACKAGE.replace(".", "/"), appClassLoader2, null);
+
+        assertEquals("Class created in first app classloader", appClassLoader1,
+                appClassLoader1.loadClass(AnonymousClassInfo.class.getName()).getClassLoader());
+        assertEquals("Class created in second app classloader", appClassLoader2,
+                appClassLoader2.loadClass(AnonymousClassInfo.class.getName()).getClassLoader());
+    }
+
 }
@@ -0,0 +1,151 @@
+package org.hotswap.agent.util.classloader;
+
+import org.hotswap.agent.javassist.ClassPool;
+import org.hotswap.agent.javassist.CtClass;
+import org.hotswap.agent.javassist.NotFoundException;
+import org.hotswap.agent.util.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Shared class file cache, child pools and invalidation.
+ */
+public class ClassPoolRegistryTest {
+
+    static final String COUNTED = "com.example.Counted";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    ClassPoolRegistry registry = new ClassPoolRegistry();
+
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    // classloader counting lookups of the COUNTED class file (not visible to the system path)
+    ClassLoader countingClassLoader;
+
+    final AtomicInteger lookups = new AtomicInteger();
+
+    @Before
+    public void setup() throws Exception {
+        File root = temporaryFolder.newFolder("classes");
+        File classFile = new File(root, COUNTED.replace('.', '/') + ".class");
+        classFile.getParentFile().mkdirs();
+        Files.write(classFile.toPath(), new ClassPool(true).makeClass(COUNTED).toBytecode());
+
+        countingClassLoader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null) {
+            @Override
+            public URL getResource(String name) {
+                if (name.equals(COUNTED.replace('.', '/') + ".class"))
+                    lookups.incrementAndGet();
+                return super.getResource(name);
+            }
+        };
+    }
+
+    @Test
+    public void testSharedPool() throws Exception {
+        ClassPool classPool = registry.getClassPool(countingClassLoader);
+        assertSame(classPool, registry.getClassPool(countingClassLoader));
+        assertSame(countingClassLoader, classPool.getClassLoader());
+
+        CtClass ctClass = classPool.get(COUNTED);
+        assertNotSame("Definition not shared", ctClass, classPool.get(COUNTED));
+        registry.createClassPool(countingClassLoader).get(COUNTED);
+        assertEquals("Class file cached", 1, lookups.get());
+    }
+
+    @Test
+    public void testChildPool() throws Exception {
+        CtClass shared = registry.getClassPool(classLoader).get(getClass().getName());
+
+        ClassPool childPool = registry.createClassPool(classLoader);
+        CtClass made = childPool.makeClass(new ByteArrayInputStream(classBytes()));
+
+        assertNotSame("New definition in the child pool", shared, made);
+        assertSame(made, childPool.get(getClass().getName()));
+        assertNotSame("Own definition of other classes", registry.getClassPool(classLoader).get(String.class.getName()),
+                childPool.get(String.class.getName()));
+        assertSame(childPool.get(String.class.getName()), childPool.get(String.class.getName()));
+        assertSame(classLoader, childPool.getClassLoader());
+    }
+
+    @Test
+    public void testModifiedClassIsolated() throws Exception {
+        String name = getClass().getName();
+        String renamed = name + "Renamed";
+
+        ClassPool childPool = registry.createClassPool(classLoader);
+        CtClass ctClass = childPool.get(name);
+        ctClass.replaceClassName(name, renamed);
+        ctClass.toBytecode();
+
+        ClassPool otherPool = registry.createClassPool(classLoader);
+        CtClass original = otherPool.get(name);
+        assertNotSame(ctClass, original);
+        assertEquals(name, original.getName());
+        assertFalse(original.isFrozen());
+        try {
+            otherPool.get(renamed);
+            fail("Renamed class must not be visible in other pool.");
+        } catch (NotFoundException e) {
+            // expected
+        }
+        assertEquals(name, registry.getClassPool(classLoader).get(name).getName());
+        assertFalse(registry.getClassPool(classLoader).get(name).isFrozen());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ClassPool classPool = registry.getClassPool(countingClassLoader);
+        classPool.get(COUNTED);
+        registry.createClassPool(countingClassLoader).get(COUNTED);
+
+        registry.invalidate(COUNTED.replace('.', '/'));
+
+        // class file is read again
+        assertNotNull(registry.createClassPool(countingClassLoader).get(COUNTED));
+        assertNotNull(classPool.get(COUNTED));
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        registry.setCacheLimits(2, ClassPoolRegistry.DEFAULT_CACHE_MAX_AGE);
+        ClassPool classPool = registry.getClassPool(countingClassLoader);
+
+        classPool.get(COUNTED);
+        classPool.get(String.class.getName());
+        classPool.get(Integer.class.getName());
+        classPool.get(COUNTED);
+
+        assertEquals("Least recently used evicted", 2, lookups.get());
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        registry.setCacheLimits(ClassPoolRegistry.DEFAULT_CACHE_SIZE, 0);
+        ClassPool classPool = registry.getClassPool(countingClassLoader);
+
+        classPool.get(COUNTED);
+        Thread.sleep(5);
+        classPool.get(COUNTED);
+
+        assertEquals("Expired", 2, lookups.get());
+    }
+
+    private byte[] classBytes() throws Exception {
+        return IOUtils.toByteArray(classLoader.getResourceAsStream(getClass().getName().replace('.', '/') + ".class"));
+    }
+}
@@ -0,0 +1,47 @@
+package org.hotswap.agent.util.classloader;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Identity keys and removal of collected classloaders.
+ */
+public class WeakClassLoaderMapTest {
+
+    @Test
+    public void testIdentity() {
+        WeakClassLoaderMap<String> map = new WeakClassLoaderMap<String>();
+        ClassLoader classLoader = new URLClassLoader(new URL[0]);
+
+        assertNull(map.putIfAbsent(classLoader, "first"));
+        assertEquals("first", map.putIfAbsent(classLoader, "second"));
+        assertEquals("first", map.get(classLoader));
+        assertNull(map.get(new URLClassLoader(new URL[0])));
+        assertNull(map.get(null));
+
+        assertFalse(map.remove(classLoader, "second"));
+        assertTrue(map.remove(classLoader, "first"));
+        assertFalse(map.containsKey(classLoader));
+    }
+
+    @Test
+    public void testCollectedClassLoader() throws Exception {
+        WeakClassLoaderMap<String> map = new WeakClassLoaderMap<String>();
+        ClassLoader classLoader = new URLClassLoader(new URL[0]);
+        map.put(classLoader, "value");
+        map.put(new URLClassLoader(new URL[0]), "collected");
+
+        for (int i = 0; i < 50 && map.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, map.size());
+        assertEquals("value", map.get(classLoader));
+        assertEquals(1, map.keys().size());
+        assertSame(classLoader, map.keys().get(0));
+    }
+}
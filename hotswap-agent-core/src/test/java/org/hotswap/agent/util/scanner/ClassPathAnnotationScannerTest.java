@@ -2,15 +2,32 @@ package org.hotswap.agent.util.scanner;
 
 import org.hotswap.agent.annotation.Plugin;
 import org.hotswap.agent.testData.SimplePlugin;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 /**
  * Test scanner.
  */
 public class ClassPathAnnotationScannerTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void testScanPlugins() throws Exception {
         ClassPathAnnotationScanner scanner = new ClassPathAnnotationScanner(Plugin.class.getName(), new ClassPathScanner());
@@ -18,4 +35,31 @@ public class ClassPathAnnotationScannerTest {
         assertArrayEquals("Plugin discovered", new String[]{SimplePlugin.class.getName()},
                 scanner.scanPlugins(getClass().getClassLoader(), "org/hotswap/agent/testData").toArray());
     }
+
+    @Test
+    public void testScanUnindexedLocationOnly() throws Exception {
+        File jar = temporaryFolder.newFile("plugin.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        out.putNextEntry(new ZipEntry("com/example/plugin/"));
+        out.putNextEntry(new ZipEntry(PluginIndex.INDEX_DIRECTORY + "com.example.plugin.MyPlugin"));
+        out.close();
+
+        File directory = temporaryFolder.newFolder("classes");
+        File pluginDir = new File(directory, "com/example/plugin");
+        pluginDir.mkdirs();
+
+        final List<URL> scanned = new ArrayList<URL>();
+        ClassPathAnnotationScanner scanner = new ClassPathAnnotationScanner(Plugin.class.getName(), new ClassPathScanner() {
+            @Override
+            public void scanLocation(URL pluginDirURL, ScannerVisitor visitor) throws IOException {
+                scanned.add(pluginDirURL);
+                super.scanLocation(pluginDirURL, visitor);
+            }
+        });
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL(), directory.toURI().toURL()}, null);
+        assertEquals(Arrays.asList("com.example.plugin.MyPlugin"), scanner.scanPlugins(classLoader, "com/example/plugin"));
+        assertEquals("Only the directory without index scanned", 1, scanned.size());
+        assertEquals(new File(scanned.get(0).toURI()), pluginDir.getCanonicalFile());
+    }
 }
@@ -0,0 +1,83 @@
+package org.hotswap.agent.util.scanner;
+
+import org.hotswap.agent.config.PluginManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check plugin index generated by annotation processor and index lookup in a JAR file.
+ */
+public class PluginIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testGeneratedIndex() throws Exception {
+        PluginIndex index = PluginIndex.load(getClass().getClassLoader(), PluginManager.PLUGIN_PACKAGE.replace(".", "/"));
+
+        assertTrue("Core plugin indexed",
+                index.getPluginClassNames().contains("org.hotswap.agent.plugin.hotswapper.HotswapperPlugin"));
+        assertTrue(index.getUnindexedLocations().isEmpty());
+    }
+
+    @Test
+    public void testJarIndex() throws Exception {
+        File jar = temporaryFolder.newFile("plugin.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        out.putNextEntry(new ZipEntry("com/example/plugin/"));
+        out.putNextEntry(new ZipEntry(PluginIndex.INDEX_DIRECTORY + "com.example.plugin.MyPlugin"));
+        out.putNextEntry(new ZipEntry(PluginIndex.INDEX_DIRECTORY + "com.example.other.OtherPlugin"));
+        out.close();
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+        PluginIndex index = PluginIndex.load(classLoader, "com/example/plugin");
+
+        assertEquals("Only plugins in plugin package", Arrays.asList("com.example.plugin.MyPlugin"),
+                index.getPluginClassNames());
+        assertTrue(index.getUnindexedLocations().isEmpty());
+    }
+
+    @Test
+    public void testStaleDirectoryIndex() throws Exception {
+        File root = temporaryFolder.newFolder("classes");
+        File pluginDir = new File(root, "com/example/plugin");
+        File indexDir = new File(root, PluginIndex.INDEX_DIRECTORY);
+        assertTrue(pluginDir.mkdirs());
+        assertTrue(indexDir.mkdirs());
+        assertTrue(new File(pluginDir, "MyPlugin.class").createNewFile());
+        assertTrue(new File(indexDir, "com.example.plugin.MyPlugin").createNewFile());
+        assertTrue(new File(indexDir, "com.example.plugin.DeletedPlugin").createNewFile());
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null);
+        PluginIndex index = PluginIndex.load(classLoader, "com/example/plugin");
+
+        assertEquals("Deleted plugin ignored", Arrays.asList("com.example.plugin.MyPlugin"), index.getPluginClassNames());
+        assertTrue(index.getUnindexedLocations().isEmpty());
+    }
+
+    @Test
+    public void testUnindexedLocation() throws Exception {
+        File jar = temporaryFolder.newFile("plugin.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        out.putNextEntry(new ZipEntry("com/example/plugin/"));
+        out.close();
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+        PluginIndex index = PluginIndex.load(classLoader, "com/example/plugin");
+
+        assertTrue(index.getPluginClassNames().isEmpty());
+        assertEquals(1, index.getUnindexedLocations().size());
+    }
+}
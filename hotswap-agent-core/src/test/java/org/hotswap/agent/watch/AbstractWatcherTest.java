@@ -0,0 +1,249 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Release pipeline and listener registry of the watcher.
+ */
+public class AbstractWatcherTest {
+
+    TestWatcher watcher = new TestWatcher();
+
+    Path temp;
+
+    final List<Path> hashedPaths = Collections.synchronizedList(new ArrayList<Path>());
+
+    @Before
+    public void setup() throws IOException {
+        temp = Files.createTempDirectory("abstractWatcherTest");
+        watcher.getEventCoalescer().setWindow(0);
+        watcher.setContentHashFilter(new ContentHashFilter() {
+            @Override
+            public boolean accept(Path path, FileEvent eventType) {
+                hashedPaths.add(path);
+                return super.accept(path, eventType);
+            }
+        });
+    }
+
+    @Test
+    public void testNoHashWithoutListener() throws Exception {
+        Path watched = Files.createDirectory(temp.resolve("watched"));
+        Path unwatched = Files.createDirectory(temp.resolve("unwatched"));
+        final List<WatchFileEvent> events = new ArrayList<WatchFileEvent>();
+        watcher.addEventListener(null, watched.toUri(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                events.add(event);
+            }
+        });
+
+        Path watchedFile = Files.write(watched.resolve("A.class"), new byte[]{1});
+        Path unwatchedFile = Files.write(unwatched.resolve("B.class"), new byte[]{2});
+        watcher.addEvent(watchedFile, FileEvent.MODIFY);
+        watcher.addEvent(unwatchedFile, FileEvent.MODIFY);
+        watcher.release();
+
+        assertEquals(Collections.singletonList(watchedFile), hashedPaths);
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testEventUnderOwnPrefix() throws Exception {
+        Path directory = Files.createDirectory(temp.resolve("classes"));
+        Path otherPath = temp.resolve("classes/../classes");
+
+        final List<URI> first = new ArrayList<URI>();
+        final List<URI> second = new ArrayList<URI>();
+        watcher.addEventListener(null, directory.toUri(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                first.add(event.getURI());
+            }
+        });
+        watcher.addEventListener(null, otherPath.toUri(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                second.add(event.getURI());
+            }
+        });
+        assertEquals("Single registration", 1, watcher.getWatchedDirectories());
+
+        Path file = Files.write(directory.resolve("A.class"), new byte[]{1});
+        watcher.addEvent(file, FileEvent.CREATE);
+        watcher.release();
+
+        assertEquals(Collections.singletonList(file.toUri()), first);
+        assertEquals(Collections.singletonList(otherPath.resolve("A.class").toUri()), second);
+    }
+
+    @Test
+    public void testAddListenerWhileClosingClassLoader() throws Exception {
+        final Path directory = Files.createDirectory(temp.resolve("classes"));
+        Path file = Files.write(directory.resolve("A.class"), new byte[]{1});
+
+        for (int i = 0; i < 200; i++) {
+            final ClassLoader undeployed = new URLClassLoader(new URL[0]);
+            final ClassLoader redeployed = new URLClassLoader(new URL[0]);
+            watcher.addEventListener(undeployed, directory.toUri(), NO_OP);
+
+            final AtomicInteger received = new AtomicInteger();
+            Thread close = new Thread() {
+                @Override
+                public void run() {
+                    watcher.closeClassLoader(undeployed);
+                }
+            };
+            close.start();
+            watcher.addEventListener(redeployed, directory.toUri(), new WatchEventListener() {
+                @Override
+                public void onEvent(WatchFileEvent event) {
+                    received.incrementAndGet();
+                }
+            });
+            close.join();
+
+            watcher.callListeners(FileEvent.MODIFY, file);
+            assertEquals("Listener attached in iteration " + i, 1, received.get());
+            watcher.closeClassLoader(redeployed);
+        }
+        assertEquals(0, watcher.getWatchedDirectories());
+    }
+
+    @Test
+    public void testReleaseFromTwoThreads() throws Exception {
+        Path directory = Files.createDirectory(temp.resolve("classes"));
+        Path first = Files.write(directory.resolve("A.class"), new byte[]{1});
+        Path second = Files.write(directory.resolve("B.class"), new byte[]{2});
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final AtomicInteger received = new AtomicInteger();
+        watcher.addEventListener(null, directory.toUri(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                int current = active.incrementAndGet();
+                if (current > maxActive.get())
+                    maxActive.set(current);
+                if (received.incrementAndGet() == 1) {
+                    entered.countDown();
+                    try {
+                        proceed.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                active.decrementAndGet();
+            }
+        });
+
+        // native watch thread blocked in the first listener call
+        watcher.addEvent(first, FileEvent.CREATE);
+        Thread watchThread = releaseThread();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // poller thread releases the next event meanwhile
+        watcher.addEvent(second, FileEvent.CREATE);
+        Thread pollerThread = releaseThread();
+        Thread.sleep(100);
+        proceed.countDown();
+        watchThread.join();
+        pollerThread.join();
+
+        assertEquals(2, received.get());
+        assertEquals("Listener called by a single thread at once", 1, maxActive.get());
+    }
+
+    private Thread releaseThread() {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    watcher.release();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testReconcileSeedsContentHashFilter() throws Exception {
+        Path directory = Files.createDirectory(temp.resolve("classes"));
+        Path loaded = Files.write(directory.resolve("Loaded.class"), new byte[]{1});
+        SnapshotStore store = new SnapshotStore(temp.resolve("store"));
+        store.reconcile(directory);
+        store.save();
+
+        // changed while the JVM was down, the new content is loaded on start
+        Files.write(loaded, new byte[]{2, 2});
+        Path created = Files.write(directory.resolve("Created.class"), new byte[]{3});
+
+        final List<WatchFileEvent> events = Collections.synchronizedList(new ArrayList<WatchFileEvent>());
+        watcher.setSnapshotStore(new SnapshotStore(temp.resolve("store")));
+        watcher.addEventListener(null, directory.toUri(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                events.add(event);
+            }
+        });
+
+        for (int i = 0; i < 1000 && events.isEmpty(); i++)
+            watcher.release();
+        assertEquals("Modify of the loaded content dropped", 1, events.size());
+        assertEquals(created.toUri(), events.get(0).getURI());
+
+        // rewritten with identical content after start
+        watcher.addEvent(loaded, FileEvent.MODIFY);
+        watcher.release();
+        assertEquals(1, events.size());
+    }
+
+    static final WatchEventListener NO_OP = new WatchEventListener() {
+        @Override
+        public void onEvent(WatchFileEvent event) {
+        }
+    };
+
+    // watcher without filesystem detection, events are added and released by the test
+    static class TestWatcher extends AbstractWatcher {
+        @Override
+        public void addDirectory(URI path) {
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        void release() throws InterruptedException {
+            Thread.sleep(5);
+            releaseEvents();
+        }
+    }
+}
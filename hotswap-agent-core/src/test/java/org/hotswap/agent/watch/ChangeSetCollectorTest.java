@@ -0,0 +1,177 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.command.Command;
+import org.hotswap.agent.command.impl.SchedulerImpl;
+import org.hotswap.agent.util.test.WaitHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that events are processed in a single batch.
+ */
+public class ChangeSetCollectorTest {
+
+    SchedulerImpl scheduler;
+    ChangeSetCollector collector;
+
+    final List<ChangeSet> changeSets = Collections.synchronizedList(new ArrayList<ChangeSet>());
+
+    @Before
+    public void setup() {
+        scheduler = new SchedulerImpl();
+        scheduler.run();
+        collector = new ChangeSetCollector(scheduler, scheduler.getExecutorPool(), 100);
+        collector.addListener(getClass().getClassLoader(), new ChangeSetListener() {
+            @Override
+            public void onChangeSet(ChangeSet changeSet) {
+                changeSets.add(changeSet);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void testSingleBatch() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        final WaitHelper.ResultHolder resultHolder = new WaitHelper.ResultHolder();
+
+        for (int i = 0; i < 10; i++) {
+            WatchFileEvent event = event("file:/tmp/classes/com/example/Class" + i + ".class");
+            collector.addEvent(event, new Command() {
+                @Override
+                public void executeCommand() {
+                    executed.incrementAndGet();
+                }
+            }, 50);
+            Thread.sleep(20);
+        }
+        collector.addEvent(event("file:/tmp/classes/application.properties"), new Command() {
+            @Override
+            public void executeCommand() {
+                resultHolder.result = true;
+            }
+        }, 50);
+
+        assertTrue("Batch processed", WaitHelper.waitForResult(resultHolder));
+        Thread.sleep(100);
+
+        assertEquals(10, executed.get());
+        assertEquals("Listener notified once", 1, changeSets.size());
+        assertEquals(10, changeSets.get(0).getClassFileEvents().size());
+        assertEquals(1, changeSets.get(0).getResourceEvents().size());
+    }
+
+    @Test
+    public void testEqualCommandsMerged() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        Command command = new Command() {
+            @Override
+            public void executeCommand() {
+                executed.incrementAndGet();
+            }
+        };
+
+        WatchFileEvent event = event("file:/tmp/classes/com/example/Class.class");
+        collector.addEvent(event, command, 50);
+        collector.addEvent(event, command, 50);
+
+        Thread.sleep(300);
+        assertEquals(1, executed.get());
+        assertEquals(1, changeSets.size());
+        assertEquals(1, changeSets.get(0).getEvents().size());
+    }
+
+    @Test
+    public void testCommandsInParallel() throws Exception {
+        final CountDownLatch fastExecuted = new CountDownLatch(1);
+        final AtomicInteger slowFinished = new AtomicInteger();
+
+        // the first command of the batch waits for the second one
+        collector.addEvent(event("file:/tmp/classes/com/example/Slow.class"), new Command() {
+            @Override
+            public void executeCommand() {
+                try {
+                    if (fastExecuted.await(5, TimeUnit.SECONDS))
+                        slowFinished.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 50);
+        collector.addEvent(event("file:/tmp/classes/com/example/Fast.class"), new Command() {
+            @Override
+            public void executeCommand() {
+                fastExecuted.countDown();
+            }
+        }, 50);
+
+        assertTrue(fastExecuted.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals("Slow command did not block the batch", 1, slowFinished.get());
+        assertEquals("Listener notified after all commands", 1, changeSets.size());
+    }
+
+    @Test
+    public void testPreprocessorBeforeCommands() throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        collector.addPreprocessor(getClass().getClassLoader(), new ChangeSetListener() {
+            @Override
+            public void onChangeSet(ChangeSet changeSet) {
+                order.add("preprocessor");
+            }
+        });
+
+        collector.addEvent(event("file:/tmp/classes/com/example/Class.class"), new Command() {
+            @Override
+            public void executeCommand() {
+                order.add("command");
+            }
+        }, 50);
+
+        Thread.sleep(300);
+        assertEquals(Arrays.asList("preprocessor", "command"), order);
+        assertEquals(1, changeSets.size());
+    }
+
+    private WatchFileEvent event(final String uri) {
+        return new WatchFileEvent() {
+            @Override
+            public FileEvent getEventType() {
+                return FileEvent.MODIFY;
+            }
+
+            @Override
+            public URI getURI() {
+                return URI.create(uri);
+            }
+
+            @Override
+            public boolean isFile() {
+                return true;
+            }
+
+            @Override
+            public boolean isDirectory() {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.config.PluginManager;
+import org.jmock.Expectations;
+import org.hotswap.agent.util.IOUtils;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.*;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Classes of a change set are redefined in a single call.
+ */
+public class ChangeSetRedefinerTest {
+
+    Mockery context = new Mockery() {{
+        setImposteriser(ClassImposteriser.INSTANCE);
+    }};
+
+    PluginManager pluginManager = context.mock(PluginManager.class);
+
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    public void testSingleRedefinition() throws Exception {
+        final URI testClass = classFile(ChangeSetRedefinerTest.class);
+        final URI collectorTestClass = classFile(ChangeSetCollectorTest.class);
+
+        final List<Map<Class<?>, byte[]>> reloadMaps = new ArrayList<Map<Class<?>, byte[]>>();
+        context.checking(new Expectations() {{
+            oneOf(pluginManager).hotswap(with(any(Map.class)));
+            will(new CustomAction("capture reload map") {
+                @Override
+                public Object invoke(Invocation invocation) {
+                    // noinspection unchecked
+                    reloadMaps.add(new HashMap<Class<?>, byte[]>((Map<Class<?>, byte[]>) invocation.getParameter(0)));
+                    return null;
+                }
+            });
+        }});
+
+        ChangeSet changeSet = new ChangeSet(Arrays.asList(event(testClass, FileEvent.MODIFY),
+                event(collectorTestClass, FileEvent.MODIFY),
+                event(URI.create("file:/tmp/classes/com/example/Missing.class"), FileEvent.MODIFY),
+                event(URI.create("file:/tmp/classes/application.properties"), FileEvent.MODIFY)));
+
+        new ChangeSetRedefiner(pluginManager, classLoader).onChangeSet(changeSet);
+        context.assertIsSatisfied();
+
+        Map<Class<?>, byte[]> reloadMap = reloadMaps.get(0);
+        assertEquals(new HashSet<Class<?>>(Arrays.<Class<?>>asList(ChangeSetRedefinerTest.class, ChangeSetCollectorTest.class)),
+                reloadMap.keySet());
+        assertArrayEquals(IOUtils.toByteArray(testClass), reloadMap.get(ChangeSetRedefinerTest.class));
+    }
+
+    @Test
+    public void testNoChangedLoadedClass() throws Exception {
+        context.checking(new Expectations() {{
+            never(pluginManager).hotswap(with(any(Map.class)));
+        }});
+
+        ChangeSet changeSet = new ChangeSet(Arrays.asList(event(classFile(ChangeSetRedefinerTest.class), FileEvent.DELETE),
+                event(URI.create("file:/tmp/classes/com/example/Missing.class"), FileEvent.MODIFY)));
+
+        new ChangeSetRedefiner(pluginManager, classLoader).onChangeSet(changeSet);
+        context.assertIsSatisfied();
+    }
+
+    @Test
+    public void testClassFilesReadOnce() throws Exception {
+        ChangeSet changeSet = new ChangeSet(Arrays.asList(event(classFile(ChangeSetRedefinerTest.class), FileEvent.MODIFY),
+                event(classFile(ChangeSetCollectorTest.class), FileEvent.DELETE),
+                event(URI.create("file:/tmp/classes/com/example/Missing.class"), FileEvent.MODIFY)));
+
+        long start = System.currentTimeMillis();
+        List<ChangeSet.ClassFile> classFiles = changeSet.getClassFiles();
+        assertTrue("No wait for a missing file", System.currentTimeMillis() - start < IOUtils.WAIT_FOR_FILE_MAX_MILLIS);
+
+        assertEquals(1, classFiles.size());
+        assertEquals(ChangeSetRedefinerTest.class.getName(), classFiles.get(0).getClassName());
+        assertSame("Shared by all listeners", classFiles, changeSet.getClassFiles());
+    }
+
+    private URI classFile(Class<?> clazz) throws Exception {
+        return classLoader.getResource(clazz.getName().replace('.', '/') + ".class").toURI();
+    }
+
+    private WatchFileEvent event(final URI uri, final FileEvent eventType) {
+        return new WatchFileEvent() {
+            @Override
+            public FileEvent getEventType() {
+                return eventType;
+            }
+
+            @Override
+            public URI getURI() {
+                return uri;
+            }
+
+            @Override
+            public boolean isFile() {
+                return true;
+            }
+
+            @Override
+            public boolean isDirectory() {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.util.classloader.ClassPoolRegistry;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Cached class files of changed classes are invalidated by the change set stage.
+ */
+public class ClassPoolInvalidatorTest {
+
+    final List<String> invalidated = new ArrayList<String>();
+
+    ClassPoolRegistry registry = new ClassPoolRegistry() {
+        @Override
+        public void invalidate(String className) {
+            invalidated.add(className.replace('/', '.'));
+            super.invalidate(className);
+        }
+    };
+
+    ClassLoader classLoader = getClass().getClassLoader();
+
+    @Test
+    public void testInvalidateChangedClass() throws Exception {
+        registry.createClassPool(classLoader).get(getClass().getName());
+        registry.createClassPool(classLoader).get(ChangeSet.class.getName());
+
+        URI classFile = classLoader.getResource(getClass().getName().replace('.', '/') + ".class").toURI();
+        new ClassPoolInvalidator(registry).onChangeSet(new ChangeSet(Arrays.<WatchFileEvent>asList(
+                new HotswapWatchFileEvent(FileEvent.MODIFY, Paths.get(classFile)))));
+
+        assertEquals(Collections.singletonList(getClass().getName()), invalidated);
+    }
+}
@@ -0,0 +1,77 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Suppress events of files rewritten with identical content.
+ */
+public class ContentHashFilterTest {
+
+    ContentHashFilter filter = new ContentHashFilter();
+
+    Path file;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("contentHashFilterTest", ".class");
+        Files.write(file, new byte[]{1, 2, 3});
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testSameContent() throws Exception {
+        assertTrue("First event passes", filter.accept(file, FileEvent.MODIFY));
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertFalse(filter.accept(file, FileEvent.MODIFY));
+
+        Files.write(file, new byte[]{1, 2, 4});
+        assertTrue(filter.accept(file, FileEvent.MODIFY));
+        assertEquals(1, filter.getSuppressedEvents());
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        assertTrue(filter.accept(file, FileEvent.CREATE));
+        assertEquals(1, filter.size());
+
+        assertTrue(filter.accept(file, FileEvent.DELETE));
+        assertEquals(0, filter.size());
+
+        assertTrue("No digest after delete", filter.accept(file, FileEvent.MODIFY));
+    }
+
+    @Test
+    public void testLongLongMap() {
+        ContentHashFilter.LongLongMap map = new ContentHashFilter.LongLongMap();
+        for (long i = 0; i < 1000; i++)
+            map.put(i * 64, i);
+        assertEquals(1000, map.size());
+
+        for (long i = 0; i < 1000; i += 2)
+            map.remove(i * 64);
+        assertEquals(500, map.size());
+
+        for (long i = 0; i < 1000; i++) {
+            int slot = map.indexOf(i * 64);
+            if (i % 2 == 0) {
+                assertEquals(-1, slot);
+            } else {
+                assertEquals(i, map.valueAt(slot));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Detect changes by rescan of a directory tree.
+ */
+public class DirectorySnapshotTest {
+
+    DirectorySnapshot snapshot = new DirectorySnapshot();
+
+    Path temp;
+
+    @Before
+    public void setup() throws IOException {
+        temp = Files.createTempDirectory("directorySnapshotTest");
+        Files.createDirectories(temp.resolve("a/b"));
+        Files.write(temp.resolve("a/Test.class"), new byte[]{1});
+        Files.write(temp.resolve("a/b/Test.class"), new byte[]{1});
+    }
+
+    @After
+    public void tearDown() {
+        delete(temp.toFile());
+    }
+
+    @Test
+    public void testAdd() throws Exception {
+        snapshot.add(temp);
+        assertEquals(3, snapshot.getDirectoryCount());
+        assertTrue(snapshot.contains(temp.resolve("a/b")));
+        assertTrue("No change", snapshot.rescan(temp).isEmpty());
+    }
+
+    @Test
+    public void testRescan() throws Exception {
+        snapshot.add(temp);
+
+        Files.write(temp.resolve("a/Test.class"), new byte[]{1, 2});
+        Files.createDirectories(temp.resolve("c"));
+        Files.write(temp.resolve("c/New.class"), new byte[]{1});
+        delete(temp.resolve("a/b").toFile());
+
+        Map<Path, FileEvent> events = snapshot.rescan(temp);
+        assertEquals(FileEvent.MODIFY, events.get(temp.resolve("a/Test.class")));
+        assertEquals(FileEvent.CREATE, events.get(temp.resolve("c")));
+        assertEquals(FileEvent.CREATE, events.get(temp.resolve("c/New.class")));
+        assertEquals(FileEvent.DELETE, events.get(temp.resolve("a/b")));
+        assertEquals("Deleted subtree", FileEvent.DELETE, events.get(temp.resolve("a/b/Test.class")));
+        assertEquals(5, events.size());
+        assertFalse(snapshot.contains(temp.resolve("a/b")));
+
+        assertTrue("Snapshot updated", snapshot.rescan(temp).isEmpty());
+    }
+
+    @Test
+    public void testRescanSubtree() throws Exception {
+        snapshot.add(temp);
+
+        Files.write(temp.resolve("a/b/Test.class"), new byte[]{1, 2});
+        Files.write(temp.resolve("New.class"), new byte[]{1});
+
+        Map<Path, FileEvent> events = snapshot.rescan(temp.resolve("a"));
+        assertEquals(1, events.size());
+        assertEquals(FileEvent.MODIFY, events.get(temp.resolve("a/b/Test.class")));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        snapshot.add(temp);
+
+        Files.write(temp.resolve("a/Test.class"), new byte[]{1, 2});
+        snapshot.update(temp.resolve("a/Test.class"));
+        delete(temp.resolve("a/b").toFile());
+        snapshot.update(temp.resolve("a/b"));
+
+        assertFalse(snapshot.contains(temp.resolve("a/b")));
+        assertTrue("Changes already known", snapshot.rescan(temp).isEmpty());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+}
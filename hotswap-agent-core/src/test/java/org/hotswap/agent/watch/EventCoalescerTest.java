@@ -0,0 +1,85 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Event bursts collapsing and file stability check.
+ */
+public class EventCoalescerTest {
+
+    EventCoalescer coalescer = new EventCoalescer(50);
+
+    Path file;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("eventCoalescerTest", ".class");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRecreate() throws Exception {
+        coalescer.addEvent(file, FileEvent.DELETE, 0);
+        coalescer.addEvent(file, FileEvent.CREATE, 10);
+        coalescer.addEvent(file, FileEvent.MODIFY, 20);
+
+        assertEquals(50, coalescer.getTimeout(20));
+        assertTrue("Not released within the window", coalescer.flush(60).isEmpty());
+
+        assertEquals(Collections.singletonMap(file, FileEvent.MODIFY), coalescer.flush(70));
+        assertEquals(-1, coalescer.getTimeout(70));
+        assertEquals(3, coalescer.getReceivedEvents());
+        assertEquals(1, coalescer.getReleasedEvents());
+        assertEquals(2, coalescer.getCollapsedEvents());
+    }
+
+    @Test
+    public void testTemporaryFile() throws Exception {
+        coalescer.addEvent(file, FileEvent.CREATE, 0);
+        coalescer.addEvent(file, FileEvent.DELETE, 10);
+
+        assertTrue(coalescer.flush(100).isEmpty());
+        assertEquals(-1, coalescer.getTimeout(100));
+        assertEquals(2, coalescer.getCollapsedEvents());
+    }
+
+    @Test
+    public void testUnstableFile() throws Exception {
+        coalescer.addEvent(file, FileEvent.MODIFY, 0);
+
+        // write in progress
+        FileOutputStream out = new FileOutputStream(file.toFile());
+        out.write(new byte[100]);
+        out.flush();
+
+        assertTrue("File changed since the event", coalescer.flush(50).isEmpty());
+        assertEquals("Next sample after the window", 50, coalescer.getTimeout(50));
+
+        out.close();
+        assertEquals(Collections.singletonMap(file, FileEvent.MODIFY), coalescer.flush(100));
+    }
+
+    @Test
+    public void testMerge() {
+        assertEquals(FileEvent.MODIFY, EventCoalescer.merge(FileEvent.DELETE, FileEvent.CREATE));
+        assertEquals(FileEvent.CREATE, EventCoalescer.merge(FileEvent.CREATE, FileEvent.MODIFY));
+        assertEquals(FileEvent.DELETE, EventCoalescer.merge(FileEvent.MODIFY, FileEvent.DELETE));
+        assertNull(EventCoalescer.merge(FileEvent.CREATE, FileEvent.DELETE));
+        assertEquals(FileEvent.CREATE, EventCoalescer.merge(null, FileEvent.CREATE));
+    }
+}
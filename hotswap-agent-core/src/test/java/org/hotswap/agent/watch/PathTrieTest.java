@@ -0,0 +1,46 @@
+package org.hotswap.agent.watch;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Listener lookup by path prefix.
+ */
+public class PathTrieTest {
+
+    Path root = Paths.get("/tmp/app").toAbsolutePath();
+
+    @Test
+    public void testGet() {
+        PathTrie<String> trie = new PathTrie<String>();
+        trie.add(root, "app");
+        trie.add(root.resolve("classes"), "classes");
+        trie.add(root.resolve("classes"), "classes2");
+        trie.add(root.resolve("resources"), "resources");
+
+        assertEquals(Arrays.asList("app", "classes", "classes2"), trie.get(root.resolve("classes/com/example/A.class")));
+        assertEquals(Arrays.asList("app", "classes", "classes2"), trie.get(root.resolve("classes")));
+        assertEquals(Arrays.asList("app"), trie.get(root.resolve("classes-other/A.class")));
+        assertEquals(Collections.emptyList(), trie.get(root.getParent()));
+    }
+
+    @Test
+    public void testRemove() {
+        PathTrie<String> trie = new PathTrie<String>();
+        trie.add(root, "app");
+        trie.add(root.resolve("classes"), "classes");
+
+        assertFalse(trie.remove(root.resolve("resources"), "classes"));
+        assertTrue(trie.remove(root.resolve("classes"), "classes"));
+        assertEquals(Arrays.asList("app"), trie.get(root.resolve("classes/A.class")));
+
+        assertTrue(trie.remove(root, "app"));
+        assertTrue("Empty branches pruned", trie.isEmpty());
+    }
+}
@@ -0,0 +1,162 @@
+package org.hotswap.agent.watch;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Report changes made between JVM runs.
+ */
+public class SnapshotStoreTest {
+
+    Path temp;
+    Path root;
+    Path storeDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        temp = Files.createTempDirectory("snapshotStoreTest");
+        root = Files.createDirectories(temp.resolve("classes"));
+        storeDirectory = temp.resolve("store");
+    }
+
+    @After
+    public void tearDown() {
+        delete(temp.toFile());
+    }
+
+    @Test
+    public void testReconcile() throws Exception {
+        Files.createDirectories(root.resolve("a"));
+        Files.write(root.resolve("a/Modified.class"), new byte[]{1});
+        Files.write(root.resolve("a/Touched.class"), new byte[]{1});
+        Files.write(root.resolve("a/Deleted.class"), new byte[]{1});
+
+        SnapshotStore store = new SnapshotStore(storeDirectory);
+        assertTrue("No snapshot on first start", store.reconcile(root).isEmpty());
+        store.save();
+        assertTrue(Files.isRegularFile(store.getFile(root)));
+
+        FileTime later = FileTime.fromMillis(System.currentTimeMillis() + 10000);
+        Files.write(root.resolve("a/Modified.class"), new byte[]{2});
+        Files.setLastModifiedTime(root.resolve("a/Modified.class"), later);
+        Files.write(root.resolve("a/Touched.class"), new byte[]{1});
+        Files.setLastModifiedTime(root.resolve("a/Touched.class"), later);
+        Files.delete(root.resolve("a/Deleted.class"));
+        Files.write(root.resolve("Created.class"), new byte[]{1});
+
+        Map<Path, FileEvent> events = new SnapshotStore(storeDirectory).reconcile(root);
+        assertEquals(FileEvent.MODIFY, events.get(root.resolve("a/Modified.class")));
+        assertEquals(FileEvent.DELETE, events.get(root.resolve("a/Deleted.class")));
+        assertEquals(FileEvent.CREATE, events.get(root.resolve("Created.class")));
+        assertEquals("Same content is not reported", 3, events.size());
+    }
+
+    @Test
+    public void testSaveLoadSaveInSameJvm() throws Exception {
+        Files.write(root.resolve("A.class"), new byte[]{1});
+
+        SnapshotStore store = new SnapshotStore(storeDirectory);
+        store.reconcile(root);
+        store.save();
+
+        // loads the stored snapshot, then replaces the file
+        SnapshotStore restarted = new SnapshotStore(storeDirectory);
+        assertTrue(restarted.reconcile(root).isEmpty());
+        Files.write(root.resolve("B.class"), new byte[]{2});
+        restarted.save();
+
+        Map<Path, FileEvent> events = new SnapshotStore(storeDirectory).reconcile(root);
+        assertTrue("Second snapshot stored", events.isEmpty());
+        assertEquals("No temporary file left", 1, storeDirectory.toFile().list().length);
+    }
+
+    @Test
+    public void testSaveDoesNotHash() throws Exception {
+        Files.write(root.resolve("Reconciled.class"), new byte[]{1});
+
+        SnapshotStore store = new SnapshotStore(storeDirectory);
+        store.reconcile(root);
+        Files.write(root.resolve("Created.class"), new byte[]{1});
+        store.save();
+
+        FileTime later = FileTime.fromMillis(System.currentTimeMillis() + 10000);
+        Files.setLastModifiedTime(root.resolve("Reconciled.class"), later);
+        Files.setLastModifiedTime(root.resolve("Created.class"), later);
+
+        Map<Path, FileEvent> events = new SnapshotStore(storeDirectory).reconcile(root);
+        assertEquals("Hash of a file created after reconciliation is not known", 1, events.size());
+        assertEquals(FileEvent.MODIFY, events.get(root.resolve("Created.class")));
+    }
+
+    @Test
+    public void testOwners() throws Exception {
+        Files.write(root.resolve("A.class"), new byte[]{1});
+
+        SnapshotStore application = new SnapshotStore(storeDirectory, "com.example.Application");
+        application.reconcile(root);
+        application.save();
+
+        // another process watching the same directory, stored after a change
+        SnapshotStore tests = new SnapshotStore(storeDirectory, "org.apache.maven.surefire.booter.ForkedBooter");
+        assertNotEquals(application.getFile(root), tests.getFile(root));
+        tests.reconcile(root);
+        Files.write(root.resolve("B.class"), new byte[]{1});
+        tests.save();
+
+        Map<Path, FileEvent> events = new SnapshotStore(storeDirectory, "com.example.Application").reconcile(root);
+        assertEquals("Own snapshot is not overwritten", FileEvent.CREATE, events.get(root.resolve("B.class")));
+    }
+
+    @Test
+    public void testReconcileLargeTree() throws Exception {
+        for (int i = 0; i < 3000; i++)
+            Files.write(root.resolve("Class" + i + ".class"), new byte[]{1});
+
+        SnapshotStore store = new SnapshotStore(storeDirectory);
+        store.reconcile(root);
+        store.save();
+
+        for (int i = 0; i < 3000; i += 3)
+            Files.delete(root.resolve("Class" + i + ".class"));
+        for (int i = 0; i < 3000; i += 5)
+            Files.write(root.resolve("Class" + i + "$1.class"), new byte[]{1});
+
+        Map<Path, FileEvent> events = new SnapshotStore(storeDirectory).reconcile(root);
+        assertEquals(1000 + 600, events.size());
+        assertEquals(FileEvent.DELETE, events.get(root.resolve("Class2997.class")));
+        assertEquals(FileEvent.CREATE, events.get(root.resolve("Class2995$1.class")));
+    }
+
+    @Test
+    public void testNestedRoot() throws Exception {
+        Files.createDirectories(root.resolve("a"));
+
+        SnapshotStore store = new SnapshotStore(storeDirectory);
+        store.reconcile(root);
+        Files.write(root.resolve("a/Test.class"), new byte[]{1});
+        assertTrue("Already reconciled by the parent", store.reconcile(root.resolve("a")).isEmpty());
+
+        store.save();
+        assertFalse(Files.exists(store.getFile(root.resolve("a"))));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+    }
+}
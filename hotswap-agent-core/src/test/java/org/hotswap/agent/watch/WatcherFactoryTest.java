@@ -1,8 +1,11 @@
 package org.hotswap.agent.watch;
 
+import org.hotswap.agent.config.PluginConfiguration;
+import org.hotswap.agent.watch.nio.WatcherNIO2;
 import org.junit.Test;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by bubnik on 2.11.13.
@@ -12,4 +15,10 @@ public class WatcherFactoryTest {
     public void testGetWatcher() throws Exception {
         assertNotNull(new WatcherFactory().getWatcher());
     }
+
+    @Test
+    public void testGetConfiguredWatcher() throws Exception {
+        Watcher watcher = new WatcherFactory().getWatcher(new PluginConfiguration(getClass().getClassLoader()));
+        assertTrue("Default watcher type", watcher instanceof WatcherNIO2);
+    }
 }
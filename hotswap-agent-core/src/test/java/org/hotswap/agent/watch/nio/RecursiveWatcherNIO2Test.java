@@ -0,0 +1,65 @@
+package org.hotswap.agent.watch.nio;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.watch.WatchEventListener;
+import org.hotswap.agent.watch.WatchFileEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Recursive watch of a directory tree.
+ */
+public class RecursiveWatcherNIO2Test {
+
+    RecursiveWatcherNIO2 watcher;
+    Path temp;
+
+    @Before
+    public void setup() throws IOException {
+        watcher = new RecursiveWatcherNIO2();
+        temp = Files.createTempDirectory("recursiveWatcherNIO2Test");
+
+        watcher.run();
+    }
+
+    @After
+    public void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    public void createTree() throws IOException {
+        final Set<Path> created = Collections.synchronizedSet(new HashSet<Path>());
+        watcher.addEventListener(null, temp.toUri(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                if (event.getEventType() == FileEvent.CREATE)
+                    created.add(Paths.get(event.getURI()));
+            }
+        });
+
+        // files of a new tree are reported even if created before the directories are registered
+        Files.createDirectories(temp.resolve("a/b/c"));
+        Files.write(temp.resolve("a/b/c/Test.class"), new byte[]{1});
+
+        Path file = temp.resolve("a/b/c/Test.class");
+        for (int i = 0; i < 1000 && !created.contains(file); i++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+            }
+        }
+        assertTrue("Created file in new directory tree, events: " + created, created.contains(file));
+    }
+}
@@ -12,8 +12,14 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.TestCase.assertTrue;
@@ -57,6 +63,86 @@ public class WatcherNIO2Test {
         assertTrue("Event listener called", waitForResult(resultHolder));
     }
 
+    @Test
+    public void registerTree() throws IOException {
+        WatcherNIO2 watcherNIO2 = new WatcherNIO2();
+        for (int i = 0; i < 10; i++)
+            new File(temp.toFile(), "tree/p" + i + "/sub").mkdirs();
+
+        watcherNIO2.addDirectory(new File(temp.toFile(), "tree").toURI());
+        assertEquals("Root, 10 packages, 10 subpackages", 21, watcherNIO2.getRegisteredDirectories());
+
+        // registered subtree is skipped
+        watcherNIO2.addDirectory(new File(temp.toFile(), "tree/p0").toURI());
+        watcherNIO2.addDirectory(temp.toUri());
+        assertEquals("Only the new root directory", 22, watcherNIO2.getRegisteredDirectories());
+
+        watcherNIO2.stop();
+    }
+
+    @Test
+    public void sharedRegistration() throws IOException {
+        WatcherNIO2 watcherNIO2 = new WatcherNIO2();
+        ClassLoader webapp1 = new URLClassLoader(new URL[0]);
+        ClassLoader webapp2 = new URLClassLoader(new URL[0]);
+        WatchEventListener listener = new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+            }
+        };
+
+        watcherNIO2.addEventListener(webapp1, temp.toUri(), listener);
+        watcherNIO2.addEventListener(webapp1, temp.toUri(), listener);
+        watcherNIO2.addEventListener(webapp2, temp.resolve("sub/..").toUri(), listener);
+        assertEquals("Same physical directory", 1, watcherNIO2.getWatchedDirectories());
+        assertEquals(3, watcherNIO2.getListenerCount());
+        assertEquals(1, watcherNIO2.getRegisteredDirectories());
+
+        watcherNIO2.closeClassLoader(webapp1);
+        assertEquals(1, watcherNIO2.getWatchedDirectories());
+        assertEquals(1, watcherNIO2.getListenerCount());
+
+        watcherNIO2.closeClassLoader(webapp2);
+        assertEquals(0, watcherNIO2.getWatchedDirectories());
+        assertEquals(0, watcherNIO2.getListenerCount());
+
+        watcherNIO2.stop();
+    }
+
+    @Test
+    public void watchSingleFile() throws Exception {
+        WatcherNIO2 watcherNIO2 = new WatcherNIO2();
+        watcherNIO2.getEventCoalescer().setWindow(0);
+        new File(temp.toFile(), "sub").mkdirs();
+        File file = new File(temp.toFile(), "hotswap-agent.properties");
+        file.createNewFile();
+
+        final List<URI> events = Collections.synchronizedList(new ArrayList<URI>());
+        watcherNIO2.addEventListener(null, file.toURI(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                events.add(event.getURI());
+            }
+        });
+        assertEquals("Directory tree of the file is not registered", 0, watcherNIO2.getRegisteredDirectories());
+        watcherNIO2.run();
+
+        new File(temp.toFile(), "other.class").createNewFile();
+        new File(temp.toFile(), "sub/test.class").createNewFile();
+        Files.write(file.toPath(), new byte[]{1});
+        for (int i = 0; i < 1000 && events.isEmpty(); i++)
+            Thread.sleep(10);
+        Thread.sleep(100);
+        // the write may be reported as several modifications of the file
+        assertEquals(Collections.singleton(file.toURI()), new HashSet<URI>(events));
+
+        // the tree is registered later
+        watcherNIO2.addDirectory(temp.toUri());
+        assertEquals("Sub-directory registered", 1, watcherNIO2.getRegisteredDirectories());
+
+        watcherNIO2.stop();
+    }
+
     // ensure it works on file:/ URIs as returned by classloader
     //@Test
     public void testTargetClasses() throws Exception {
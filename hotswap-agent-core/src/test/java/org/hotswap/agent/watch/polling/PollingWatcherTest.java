@@ -0,0 +1,74 @@
+package org.hotswap.agent.watch.polling;
+
+import org.hotswap.agent.annotation.FileEvent;
+import org.hotswap.agent.watch.WatchEventListener;
+import org.hotswap.agent.watch.WatchFileEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Detect changes by periodic rescan.
+ */
+public class PollingWatcherTest {
+
+    PollingWatcher watcher;
+    Path temp;
+
+    @Before
+    public void setup() throws IOException {
+        watcher = new PollingWatcher(20);
+        temp = Files.createTempDirectory("pollingWatcherTest");
+
+        watcher.run();
+    }
+
+    @After
+    public void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    public void createFile() throws IOException {
+        final ResultHolder resultHolder = new ResultHolder();
+        watcher.addEventListener(null, temp.toUri(), new WatchEventListener() {
+            @Override
+            public void onEvent(WatchFileEvent event) {
+                assertEquals("New file event type", FileEvent.CREATE, event.getEventType());
+                assertTrue("File name", event.getURI().toString().endsWith("test.class"));
+                resultHolder.result = true;
+            }
+        });
+
+        File testFile = new File(temp.toFile(), "test.class");
+        testFile.createNewFile();
+
+        assertTrue("Event listener called", waitForResult(resultHolder));
+    }
+
+    // each 10 ms check if result is true, max 10000 ms
+    private boolean waitForResult(ResultHolder resultHolder) {
+        for (int i = 0; i < 1000; i++) {
+            if (resultHolder.result)
+                return true;
+
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+            }
+        }
+        return false;
+    }
+
+    private static class ResultHolder {
+        volatile boolean result = false;
+    }
+}
@@ -7,6 +7,7 @@ import org.hotswap.agent.command.Scheduler;
 import org.hotswap.agent.javassist.CtClass;
 import org.hotswap.agent.logging.AgentLogger;
 import org.hotswap.agent.util.AnnotationHelper;
+import org.hotswap.agent.util.ClassMetadata;
 
 /**
  * Reload Hibernate configuration after entity create/change.
@@ -45,10 +46,10 @@ public class HibernatePlugin {
      * Reload after entity class change. It covers also @Entity annotation removal.
      */
     @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
-    public void entityReload(CtClass clazz, Class original) {
+    public void entityReload(ClassMetadata clazz, Class original) {
         // TODO list of entity/resource files is known to hibernate, better to check this list
         if (AnnotationHelper.hasAnnotation(original, ENTITY_ANNOTATION)
-                || AnnotationHelper.hasAnnotation(clazz, ENTITY_ANNOTATION)
+                || clazz.hasAnnotation(ENTITY_ANNOTATION)
                 ) {
             LOGGER.debug("Entity reload class {}, original classloader {}", clazz.getName(), original.getClassLoader());
             refresh(100);
@@ -20,6 +20,7 @@ import org.hotswap.agent.javassist.CtMethod;
 import org.hotswap.agent.javassist.NotFoundException;
 import org.hotswap.agent.logging.AgentLogger;
 import org.hotswap.agent.util.AnnotationHelper;
+import org.hotswap.agent.util.ClassMetadata;
 import org.hotswap.agent.util.PluginManagerInvoker;
 
 @Plugin(name = "Jersey2",
@@ -115,7 +116,7 @@ public class Jersey2Plugin {
 	 * the Jersey Application, or if was newly annotated and will be involved in configuring the application.
 	 */
     @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
-    public void invalidate(CtClass ctClass, Class original) throws Exception {
+    public void invalidate(ClassMetadata classMetadata, Class original) throws Exception {
     	if (allRegisteredClasses.contains(original)) {  
     		scheduler.scheduleCommand(reloadJerseyContainers);
     	} else {
@@ -124,7 +125,7 @@ public class Jersey2Plugin {
     		// during a reload called from reloadJerseyContainers, so this seems like the annotation is not being
     		// added
             if (AnnotationHelper.hasAnnotation(original, "javax.ws.rs.Path")
-            		|| AnnotationHelper.hasAnnotation(ctClass, "javax.ws.rs.Path")) {
+            		|| classMetadata.hasAnnotation("javax.ws.rs.Path")) {
             	allRegisteredClasses.add(original);
             	scheduler.scheduleCommand(reloadJerseyContainers);            	
             }    		
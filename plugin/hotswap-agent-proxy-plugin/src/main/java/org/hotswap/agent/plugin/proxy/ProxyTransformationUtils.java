@@ -3,11 +3,9 @@ package org.hotswap.agent.plugin.proxy;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Map;
-import java.util.WeakHashMap;
 
+import org.hotswap.agent.config.PluginManager;
 import org.hotswap.agent.javassist.ClassPool;
-import org.hotswap.agent.javassist.LoaderClassPath;
 import org.hotswap.agent.logging.AgentLogger;
 
 /**
@@ -17,47 +15,26 @@ import org.hotswap.agent.logging.AgentLogger;
  */
 public class ProxyTransformationUtils {
 	private static AgentLogger LOGGER = AgentLogger.getLogger(ProxyTransformationUtils.class);
-	private static Map<ClassLoader, ClassPool> classPoolMap = new WeakHashMap<>(3);
 	
 	/**
-	 * Creates one ClassPool per ClassLoader and caches it
+	 * Returns shared ClassPool of the ClassLoader (see ClassPoolRegistry)
 	 * 
 	 * @param classLoader
 	 * @return
 	 */
 	public static ClassPool getClassPool(ClassLoader classLoader) {
-		ClassPool classPool = classPoolMap.get(classLoader);
-		if (classPool == null) {
-			synchronized (classPoolMap) {
-				classPool = classPoolMap.get(classLoader);
-				if (classPool == null) {
-					classPool = createClassPool(classLoader);
-					classPoolMap.put(classLoader, classPool);
-				}
-			}
-		}
-		return classPool;
+		return PluginManager.getInstance().getClassPoolRegistry().getClassPool(classLoader);
 	}
 	
 	/**
-	 * Creates a ClassPool with supplied ClassLoader
+	 * Creates a ClassPool with supplied ClassLoader. Class files are read through the shared ClassPool of the ClassLoader.
 	 * 
 	 * @param classLoader
 	 * @return
 	 */
 	public static ClassPool createClassPool(final ClassLoader classLoader) {
-		ClassPool cp = new ClassPool() {
-			@Override
-			public ClassLoader getClassLoader() {
-				return classLoader;
-			}
-		};
-		cp.appendSystemPath();
-		if (classLoader != null) {
-			LOGGER.trace("Adding loader classpath " + classLoader);
-			cp.appendClassPath(new LoaderClassPath(classLoader));
-		}
-		return cp;
+		LOGGER.trace("Creating class pool for classloader " + classLoader);
+		return PluginManager.getInstance().getClassPoolRegistry().createClassPool(classLoader);
 	}
 	
 	private static final int BUFFER_SIZE = 8192;
@@ -1,8 +1,8 @@
 package org.hotswap.agent.plugin.spring;
 
+import org.hotswap.agent.config.PluginManager;
 import org.hotswap.agent.javassist.ClassPool;
 import org.hotswap.agent.javassist.CtClass;
-import org.hotswap.agent.javassist.LoaderClassPath;
 import org.hotswap.agent.logging.AgentLogger;
 import org.hotswap.agent.plugin.spring.signature.ClassfileSignatureComparer;
 
@@ -16,18 +16,10 @@ import org.hotswap.agent.plugin.spring.signature.ClassfileSignatureComparer;
 public class SpringChangesAnalyzer {
 	private static AgentLogger LOGGER = AgentLogger.getLogger(SpringPlugin.class);
 	
-	private ClassPool cp;
+	private ClassLoader classLoader;
 	
 	public SpringChangesAnalyzer(final ClassLoader classLoader) {
-		this.cp = new ClassPool() {
-			
-			@Override
-			public ClassLoader getClassLoader() {
-				return classLoader;
-			}
-		};
-		cp.appendSystemPath();
-		cp.appendClassPath(new LoaderClassPath(classLoader));
+		this.classLoader = classLoader;
 	}
 	
 	public boolean isReloadNeeded(Class<?> classBeingRedefined, byte[] classfileBuffer) {
@@ -39,6 +31,8 @@ public class SpringChangesAnalyzer {
 	private boolean classChangeNeedsReload(Class<?> classBeingRedefined, byte[] classfileBuffer) {
 		CtClass makeClass = null;
 		try {
+			// new definition in a child pool, other classes are looked up in the shared pool
+			ClassPool cp = PluginManager.getInstance().getClassPoolRegistry().createClassPool(classLoader);
 			makeClass = cp.makeClass(new java.io.ByteArrayInputStream(classfileBuffer));
 			return ClassfileSignatureComparer.isPoolClassDifferent(classBeingRedefined, cp);
 		} catch (Exception e) {
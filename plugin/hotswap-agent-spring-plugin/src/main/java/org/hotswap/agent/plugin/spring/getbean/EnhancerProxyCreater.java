@@ -4,12 +4,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.security.ProtectionDomain;
 
+import org.hotswap.agent.config.PluginManager;
 import org.hotswap.agent.javassist.CannotCompileException;
 import org.hotswap.agent.javassist.ClassPool;
 import org.hotswap.agent.javassist.CtClass;
 import org.hotswap.agent.javassist.CtMethod;
 import org.hotswap.agent.javassist.CtNewMethod;
-import org.hotswap.agent.javassist.LoaderClassPath;
 import org.hotswap.agent.javassist.NotFoundException;
 import org.hotswap.agent.logging.AgentLogger;
 
@@ -236,9 +236,6 @@ public class EnhancerProxyCreater {
 	}
 	
 	private ClassPool getCp(ClassLoader loader) {
-		ClassPool cp = new ClassPool();
-		cp.appendSystemPath();
-		cp.appendClassPath(new LoaderClassPath(loader));
-		return cp;
+		return PluginManager.getInstance().getClassPoolRegistry().createClassPool(loader);
 	}
 }